@@ -48,6 +48,8 @@ package flap.agents;
 
 
 
+import java.io.Serializable;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -71,11 +73,21 @@ import flap.kernel.*;
  * so that developers are forced to create new agent classes and stereotypes and cannot use
  * this (empty) class as a fully running agent.
  * 
+ * Agents are serializable, so that an idle agent can be passivated (stored on disk) and
+ * reactivated when a message arrives. An agent with state that cannot be serialized is
+ * never passivated; state that must not be stored should be declared transient and
+ * rebuilt in a readObject method.
+ * 
  * 
  * @author Luca Ferrari
  * @version 1.0
  */
-public abstract class Agent implements MessageHandler{
+public abstract class Agent implements MessageHandler, Serializable{
+	
+	/**
+	 * Agents are serialized when passivated.
+	 */
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * A mnemonic name for the agent. It is a descriptive name
@@ -92,41 +104,43 @@ public abstract class Agent implements MessageHandler{
 	 * has an invalid identifier in order to allow the platform to check
 	 * if the agent can be installed or not.
 	 * 
-	 * Please note that this id is automatically assigned by a static constructor
-	 * to the next valid for this agent class (and the whole platform).
+	 * Please note that this id is automatically assigned when the agent is installed in
+	 * its first context, so that it embeds the node of such context (see AgentID), or
+	 * the first time it is requested if the agent has no context.
 	 * It is important to note also that the id cannot be accessed (for writing)
 	 * by subclasses.
 	 */
-	private int id = getNextAgentID();
-	
-	
-	
-	/**
-	 * A static counter that keeps track of the next valid ID
-	 * to assign to an agent.
-	 */
-	public static int nextAgentID = 0;
+	private int id = 0;
 	
 	/**
 	 * The context to which the agent belongs.
 	 */
-	protected Context context = null;
+	protected transient Context context = null;
 	
 	/**
-	 * A logger for this agent.
+	 * The logger shared by all the agents, so that an agent does not
+	 * pay a reference for it and it does not need to be restored on reactivation.
 	 */
-	private Log logger = LogFactory.getLog( Agent.class );
+	private static final Log logger = LogFactory.getLog( Agent.class );
 	
 	
 	/**
-	 * A static service to get the next valid ID for an agent.
-	 * This method is used to initialize the id of the agent, that will
-	 * never set again. Please note that the whole method is synchronized
-	 * allowing a single thread to get access to the id generator.
+	 * A static service to get the next valid ID for an agent of the node
+	 * of this virtual machine.
 	 * @return the id to assign to the next agent
 	 */
-	public final synchronized static int getNextAgentID(){
-		return ++nextAgentID;
+	public final static int getNextAgentID(){
+		return AgentID.next( AgentID.getLocalNode() );
+	}
+	
+	/**
+	 * Makes sure that the ids assigned from now on are greater than the specified one.
+	 * This is used when agents that have been created by another run of the platform
+	 * are restored, so that new agents do not take their ids.
+	 * @param agentID the highest id in use
+	 */
+	public final static void reserveAgentID(int agentID){
+		AgentID.reserve( agentID );
 	}
 	
 	
@@ -173,6 +187,28 @@ public abstract class Agent implements MessageHandler{
 		logger.debug( String.format( "[agent id = %d (%s)] Please override this method to correctly handling the message", id, name ) );
 		return false;
 	}
+	
+	/**
+	 * Handling of a batch of incoming messages.
+	 * When more messages are waiting for the agent, the platform delivers them with
+	 * a single call to this method, in the same order they would have been handled one
+	 * at a time. Override this method to process the whole batch in one pass, for instance
+	 * to store all the messages with a single database write.
+	 * By default each message is passed to the handleMessage method; an exception thrown
+	 * while handling a message does not prevent the other messages from being handled.
+	 * Please note that the list is valid only during the call, and must not be kept.
+	 * @param messages the messages to handle, never empty
+	 */
+	public void handleMessages(List<Message> messages){
+		for( int i = 0; i < messages.size(); i++ ){
+			try{
+				handleMessage( messages.get( i ) );
+			}
+			catch( RuntimeException e ){
+				logger.error( String.format( "[agent id = %d (%s)] Exception caught while handling a message", id, name ), e );
+			}
+		}
+	}
 
 
 	/**
@@ -198,6 +234,9 @@ public abstract class Agent implements MessageHandler{
 	 * @return the id
 	 */
 	public synchronized final int getId() {
+		if( id == 0 )
+			id = getNextAgentID();
+		
 		return id;
 	}
 
@@ -213,10 +252,13 @@ public abstract class Agent implements MessageHandler{
 
 	/**
 	 * Set the context value in the current instance.
+	 * If the agent has not an id yet, it gets one of the node of the context.
 	 * @param context the context to set
 	 */
 	public synchronized final void setContext(Context context) {
 		this.context = context;
+		if( id == 0 && context != null )
+			id = AgentID.next( context.getNodeID() );
 	}
 
 
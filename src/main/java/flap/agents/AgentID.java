@@ -0,0 +1,243 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.agents;
+
+/**
+ * The layout of the agent ids, which are unique across all the nodes of a cluster.
+ * An id is a positive int made by:
+ * - the node that created the agent (NODE_BITS bits)
+ * - a sequence number within the node (SEQUENCE_BITS bits)
+ * - the shard of the agent within the node (SHARD_BITS bits).
+ * Each node numbers its agents with its own counter, whose lowest bits are used as
+ * shard, so that consecutive agents go to different shards and the ids of a node
+ * grow as they are assigned. The agents of the node 0 have the same ids the platform
+ * has always assigned. The counters replace the public Agent.nextAgentID counter,
+ * that has been removed: use Agent.getNextAgentID and Agent.reserveAgentID instead.
+ *
+ * Ids are never reused, so a node can create at most MAX_IDS_PER_NODE agents during
+ * the life of the virtual machine, killed agents included; then next throws an
+ * IllegalStateException. The bits of the node are taken from the ids of each node, so
+ * their number is read from the flap.nodeBits system property (4 by default, that is
+ * 16 nodes and about 134 millions ids per node) and must be the same on all the nodes
+ * of a cluster. A platform that does not run in a cluster can set it to 0, to get the
+ * 2^31 - 1 ids the platform has always assigned.
+ *
+ * The node of this virtual machine is read from the flap.node system property, and
+ * contexts can run as other nodes (see Context.setNodeID), so that a cluster can be
+ * simulated in a single virtual machine.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class AgentID {
+
+	/**
+	 * The highest number of bits of the node.
+	 */
+	private static final int MAX_NODE_BITS = 8;
+
+	/**
+	 * The number of bits of the node, read from the flap.nodeBits system property.
+	 */
+	public static final int NODE_BITS = readNodeBits();
+
+	/**
+	 * The number of bits of the shard.
+	 */
+	public static final int SHARD_BITS = 6;
+
+	/**
+	 * The number of bits of the sequence number.
+	 */
+	public static final int SEQUENCE_BITS = 31 - NODE_BITS - SHARD_BITS;
+
+	/**
+	 * The number of nodes.
+	 */
+	public static final int MAX_NODES = 1 << NODE_BITS;
+
+	/**
+	 * The number of shards of each node.
+	 */
+	public static final int MAX_SHARDS = 1 << SHARD_BITS;
+
+	/**
+	 * The bits of an id that are assigned by a node.
+	 */
+	private static final int LOCAL_MASK = (int) ( ( 1L << ( SEQUENCE_BITS + SHARD_BITS ) ) - 1 );
+
+	/**
+	 * The number of ids a node can assign during the life of the virtual machine.
+	 */
+	public static final int MAX_IDS_PER_NODE = LOCAL_MASK;
+
+	/**
+	 * The node of this virtual machine.
+	 */
+	private static final int localNode = Integer.getInteger( "flap.node", 0 );
+
+	/**
+	 * The last local part assigned by each node.
+	 */
+	private static final int counters[] = new int[ MAX_NODES ];
+
+	static{
+		checkNode( localNode );
+	}
+
+	/**
+	 * No instances of this class are required.
+	 */
+	private AgentID(){
+		super();
+	}
+
+	/**
+	 * Provides the node of this virtual machine.
+	 * @return the node id
+	 */
+	public static int getLocalNode(){
+		return localNode;
+	}
+
+	/**
+	 * Builds an id.
+	 * @param node the node
+	 * @param shard the shard
+	 * @param sequence the sequence number
+	 * @return the id
+	 */
+	public static int compose( int node, int shard, int sequence ){
+		checkNode( node );
+		if( shard < 0 || shard >= MAX_SHARDS || sequence < 0 || sequence >= ( 1 << SEQUENCE_BITS ) )
+			throw new IllegalArgumentException( String.format( "Not a valid shard (%d) or sequence number (%d)", shard, sequence ) );
+
+		return ( node << ( SEQUENCE_BITS + SHARD_BITS ) ) | ( sequence << SHARD_BITS ) | shard;
+	}
+
+	/**
+	 * Provides the node of an id.
+	 * @param agentID the id
+	 * @return the node that has created the agent
+	 */
+	public static int getNode( int agentID ){
+		return agentID >>> ( SEQUENCE_BITS + SHARD_BITS );
+	}
+
+	/**
+	 * Provides the shard of an id.
+	 * @param agentID the id
+	 * @return the shard of the agent within its node
+	 */
+	public static int getShard( int agentID ){
+		return agentID & ( MAX_SHARDS - 1 );
+	}
+
+	/**
+	 * Provides the sequence number of an id.
+	 * @param agentID the id
+	 * @return the sequence number within the node
+	 */
+	public static int getSequence( int agentID ){
+		return ( agentID & LOCAL_MASK ) >>> SHARD_BITS;
+	}
+
+	/**
+	 * Assigns a new id.
+	 * @param node the node that creates the agent
+	 * @return the id
+	 * @throws IllegalStateException if the node has run out of ids
+	 */
+	public static synchronized int next( int node ){
+		checkNode( node );
+		if( counters[ node ] == LOCAL_MASK )
+			throw new IllegalStateException( "The node " + node + " has run out of agent ids" );
+
+		return ( node << ( SEQUENCE_BITS + SHARD_BITS ) ) | ++counters[ node ];
+	}
+
+	/**
+	 * Makes sure that the ids assigned from now on by the node of the specified id are
+	 * greater than it.
+	 * @param agentID the highest id in use
+	 */
+	public static synchronized void reserve( int agentID ){
+		int node = getNode( agentID );
+		if( counters[ node ] < ( agentID & LOCAL_MASK ) )
+			counters[ node ] = agentID & LOCAL_MASK;
+	}
+
+	/**
+	 * Provides a readable form of an id.
+	 * @param agentID the id
+	 * @return the node, the shard and the sequence number of the id
+	 */
+	public static String toString( int agentID ){
+		return String.format( "%d:%d:%d", getNode( agentID ), getShard( agentID ), getSequence( agentID ) );
+	}
+
+	/**
+	 * Reads the number of bits of the node.
+	 * @return the number of bits
+	 */
+	private static int readNodeBits(){
+		int bits = Integer.getInteger( "flap.nodeBits", 4 );
+		if( bits < 0 || bits > MAX_NODE_BITS )
+			throw new IllegalArgumentException( String.format( "Not a valid number of node bits: %d, must be between 0 and %d", bits, MAX_NODE_BITS ) );
+
+		return bits;
+	}
+
+	/**
+	 * Checks that a node is valid.
+	 * @param node the node
+	 */
+	private static void checkNode( int node ){
+		if( node < 0 || node >= MAX_NODES )
+			throw new IllegalArgumentException( String.format( "Not a valid node: %d, must be between 0 and %d", node, MAX_NODES - 1 ) );
+	}
+
+}
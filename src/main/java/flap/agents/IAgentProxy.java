@@ -46,6 +46,9 @@
  */
 package flap.agents;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import flap.messaging.Message;
 
 /**
@@ -59,8 +62,37 @@ public interface IAgentProxy {
 	 * Handling an incoming message.
 	 * For a proxy this means that the message must be temporarly stored in the message queue,
 	 * and that it will be forwarded to the hidden agent as soon as possible.
-	 * @return always true (the proxy always handles the message, it stores int he message queue)
+	 * The caller is never suspended waiting for a thread to process the message, unless the
+	 * message queue of the agent is full and configured to block the senders.
+	 * @return true if the message has been accepted by the message queue, false if the queue
+	 * is full and has rejected it
 	 */
 	public abstract boolean handleMessage(Message msg);
 
+	/**
+	 * The stage returned when a message has been accepted at once. It is shared by
+	 * all the senders, so it must not be completed again.
+	 */
+	public static final CompletionStage<Boolean> ACCEPTED = CompletableFuture.completedFuture( Boolean.TRUE );
+
+	/**
+	 * The stage returned when a message has been refused at once. It is shared by
+	 * all the senders, so it must not be completed again.
+	 */
+	public static final CompletionStage<Boolean> REFUSED = CompletableFuture.completedFuture( Boolean.FALSE );
+
+	/**
+	 * Sends a message to the hidden agent without waiting for it to be processed.
+	 * The method returns immediately, providing a stage that is completed as soon as
+	 * the message has been accepted (or refused) by the agent message queue. The stage
+	 * does not tell anything about the message processing.
+	 * The default implementation hands the message to handleMessage, so it is suited
+	 * only to proxies whose handleMessage never suspends the caller.
+	 * @param msg the message to send
+	 * @return a stage completed with true if the message has been accepted, false otherwise
+	 */
+	public default CompletionStage<Boolean> sendMessage(Message msg){
+		return handleMessage( msg ) ? ACCEPTED : REFUSED;
+	}
+
 }
\ No newline at end of file
@@ -59,6 +59,8 @@ import flap.agents.*;
  */
 public class ExampleAgent1 extends Agent {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Ensure there is always a void/default constructor.
 	 */
@@ -77,15 +79,11 @@ public class ExampleAgent1 extends Agent {
 		Context myContext = getContext();
 		System.out.println( String.format( "Agent %d %s is running in context %s", getId(), getName(), context.getName()));
 		
-		for( int currentID : context.getInstalledAgentProxyIDs() )
-			if( currentID != getId() ){
-				Message message = new Message( MessagePriority.PRIORITY_NORMAL, 
-												String.format( "Hello agent %d from agent %d", currentID, getId() ) );
-				
-				IAgentProxy proxy = context.getAgentProxy( currentID );
-				if( proxy != null )
-					proxy.handleMessage( message );
-			}
+		// the same message is shared by all the addressees, and goes back to the pool
+		// once all of them have handled it
+		Message message = MessagePool.getDefault().acquire( MessagePriority.PRIORITY_NORMAL, 
+										String.format( "Hello from agent %d", getId() ) );
+		myContext.broadcast( message, getId() );
 		
 		System.out.println(  String.format( "Agent %d %s all done!", getId(), getName() ) );
 	}
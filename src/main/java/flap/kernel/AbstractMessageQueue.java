@@ -0,0 +1,904 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import flap.agents.Agent;
+import flap.agents.IAgentProxy;
+import flap.messaging.IMessageQueue;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+import flap.messaging.OverflowPolicy;
+
+/**
+ * The base class for all the message queues of the kernel.
+ * This class binds a message queue to its owning proxy and to the scheduler that
+ * processes its messages, and enforces the capacity of the queue, while the storage
+ * of the messages is left to the subclasses.
+ *
+ * When the queue is bounded, only the not administrative messages are counted and
+ * subject to the overflow policy: administrative messages are always accepted, so that
+ * the platform can always reach the agent.
+ *
+ * Since a context can host a huge number of idle agents, the queue keeps its own
+ * state as small as possible: the state of a bounded queue is allocated only if the
+ * queue is bounded, and the flags are plain fields updated atomically.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public abstract class AbstractMessageQueue implements IMessageQueue {
+
+	/**
+	 * The message can be stored in memory.
+	 */
+	private static final int ROOM_RESERVED   = 0;
+
+	/**
+	 * The overflow policy has taken care of the message.
+	 */
+	private static final int MESSAGE_HANDLED = 1;
+
+	/**
+	 * The message must be rejected.
+	 */
+	private static final int MESSAGE_REFUSED = 2;
+
+	/**
+	 * The proxy owning the message queue.
+	 */
+	private volatile AgentProxy ownerProxy = null;
+
+	/**
+	 * The scheduler that provides threads to process the messages of this queue.
+	 * A queue without a scheduler simply stores the messages.
+	 */
+	private volatile IScheduler scheduler = null;
+
+	/**
+	 * Tells if this queue has been already handed to the scheduler and its activation
+	 * has not yet completed (1) or not (0). It is used to schedule the queue only once,
+	 * so that a single thread at a time delivers messages to the owning agent.
+	 */
+	private volatile int scheduled = 0;
+
+	/**
+	 * The updater of the scheduled flag.
+	 */
+	private static final AtomicIntegerFieldUpdater<AbstractMessageQueue> SCHEDULED =
+			AtomicIntegerFieldUpdater.newUpdater( AbstractMessageQueue.class, "scheduled" );
+
+	/**
+	 * The number of threads waiting to suspend this queue.
+	 */
+	private volatile int suspenders = 0;
+
+	/**
+	 * The updater of the number of suspenders.
+	 */
+	private static final AtomicIntegerFieldUpdater<AbstractMessageQueue> SUSPENDERS =
+			AtomicIntegerFieldUpdater.newUpdater( AbstractMessageQueue.class, "suspenders" );
+
+	/**
+	 * What the suspenders wait on until the activation of the queue is released.
+	 */
+	private final Object activationReleased = new Object();
+
+	/**
+	 * Where the scheduler has placed this queue, for schedulers that split the queues
+	 * among their threads. It is written when the queue is registered, before the queue
+	 * can be scheduled.
+	 */
+	int schedulerSlot = 0;
+
+	/**
+	 * The metrics of the owning agent, null if the metrics of its context are disabled.
+	 */
+	volatile AgentMetrics metrics = null;
+
+	/**
+	 * When the queue has asked to be scheduled, in nanoseconds, if the metrics or the
+	 * dispatch events need it; zero otherwise.
+	 */
+	volatile long scheduledAt = 0;
+
+	/**
+	 * The state of a bounded queue, null if the queue is unbounded.
+	 */
+	private final Bounds bounds;
+
+	/**
+	 * The configuration the queue has been built with, null for an unbounded queue.
+	 */
+	private final MailboxConfiguration configuration;
+
+	/**
+	 * When the queue has been drained for the last time, in milliseconds.
+	 */
+	private volatile long lastActivity = System.currentTimeMillis();
+
+	/**
+	 * The default max number of messages processed for each activation.
+	 */
+	public static final int DEFAULT_THROUGHPUT = 64;
+
+	/**
+	 * The max number of messages an activation processes before releasing the
+	 * queue, so that a busy agent does not keep a worker forever.
+	 */
+	private volatile int throughput = DEFAULT_THROUGHPUT;
+
+	/**
+	 * Builds an unbounded queue.
+	 */
+	protected AbstractMessageQueue(){
+		this( null );
+	}
+
+	/**
+	 * Builds a queue with the specified configuration.
+	 * @param configuration the configuration of the queue, null for an unbounded queue
+	 */
+	protected AbstractMessageQueue( MailboxConfiguration configuration ){
+		super();
+		this.configuration = configuration;
+		if( configuration != null && configuration.isBounded() )
+			bounds = new Bounds( configuration );
+		else
+			bounds = null;
+	}
+
+
+	/**
+	 * Stores a message in memory.
+	 * @param message the message to store
+	 */
+	protected abstract void storeMessage( Message message );
+
+	/**
+	 * Removes from memory the next message to process: messages with an higher priority
+	 * are returned first, while messages with the same priority are returned in their
+	 * arrival order.
+	 * @return the message or null if no message is in memory
+	 */
+	protected abstract Message pollMessage();
+
+	/**
+	 * Removes from memory the oldest not administrative message, if the queue can do it
+	 * while other threads are storing or consuming messages. The removed message is
+	 * released, so that a pooled message goes back to its pool.
+	 * @return true if a message has been removed, false if no message has been removed
+	 */
+	protected abstract boolean removeOldestMessage();
+
+	/**
+	 * Tells if there are no messages in memory.
+	 * @return true if no message is in memory
+	 */
+	protected abstract boolean isStorageEmpty();
+
+	/**
+	 * Provides the number of messages in memory.
+	 * @return the number of messages in memory
+	 */
+	protected abstract int getStorageLength();
+
+	/**
+	 * Copies the messages in memory, in the order they would be removed, without
+	 * removing them. It is called only while the queue is not being drained.
+	 * @param messages where the messages are copied
+	 */
+	protected abstract void copyMessages( List<Message> messages );
+
+	/**
+	 * Provides the size of the message queue for a specific priority.
+	 * @param priority the priority to inspect
+	 * @return the number of waiting messages at the given priority
+	 */
+	public abstract int getQueueLengthByPriority( MessagePriority priority );
+
+
+	/* (non-Javadoc)
+	 * @see flap.messaging.IMessageQueue#addMessage(flap.messaging.Message)
+	 */
+	@Override
+	public final boolean addMessage( Message messaggio ){
+		if( messaggio == null )
+			return false;		// skip null messages
+
+		// messages sent asynchronously before this one are stored first
+		if( bounds != null && ! bounds.pendingSends.isEmpty() )
+			storePendingSends( bounds );
+
+		if( bounds != null
+				&& messaggio.getPriority() != MessagePriority.PRIORITY_ADMIN ){
+			int room = reserveRoom( bounds, messaggio );
+			if( room != ROOM_RESERVED )
+				return room == MESSAGE_HANDLED;
+		}
+
+		storeReservedMessage( messaggio );
+		return true;
+	}
+
+	/**
+	 * Stores a message without ever suspending the sender.
+	 * When the queue is full and configured to block the senders the message is refused,
+	 * so that the sender can apply its own back pressure. When the message has to be spilled
+	 * to disk, it is written by a thread of the sender pool and the stage is completed
+	 * afterwards; the messages sent after it wait for it, so that their order is kept.
+	 * @param message the message to store
+	 * @return a stage completed with true if the message has been accepted, false otherwise
+	 */
+	final CompletionStage<Boolean> sendMessage( Message message ){
+		if( message == null )
+			return IAgentProxy.REFUSED;
+
+		if( bounds == null || message.getPriority() == MessagePriority.PRIORITY_ADMIN ){
+			storeReservedMessage( message );
+			return IAgentProxy.ACCEPTED;
+		}
+
+		if( bounds.pendingSends.isEmpty()
+				&& ( bounds.spillStore == null || bounds.spillStore.isEmpty() )
+				&& tryReserveRoom( bounds ) ){
+			storeReservedMessage( message );
+			return IAgentProxy.ACCEPTED;
+		}
+
+		switch( bounds.overflowPolicy ){
+		case OVERFLOW_BLOCK:
+			bounds.overflowCounters.incrementAndGet( OverflowPolicy.OVERFLOW_BLOCK.ordinal() );
+			return IAgentProxy.REFUSED;
+
+		case OVERFLOW_SPILL:
+			PendingSend pending = new PendingSend( message );
+			bounds.pendingSends.offer( pending );
+			if( bounds.pendingSendsScheduled.compareAndSet( false, true ) )
+				SenderPool.execute( new PendingSendsTask( this ) );
+			return pending.result;
+
+		default:
+			// the drop policies never suspend the sender
+			return addMessage( message ) ? IAgentProxy.ACCEPTED : IAgentProxy.REFUSED;
+		}
+	}
+
+	/**
+	 * Stores the messages sent asynchronously that are waiting to be spilled, in the
+	 * order they have been sent, and completes their stages.
+	 * @param bounds the state of the bounded queue
+	 */
+	private void storePendingSends( Bounds bounds ){
+		synchronized( bounds.pendingSends ){
+			PendingSend pending = null;
+			while( ( pending = bounds.pendingSends.peek() ) != null ){
+				int room = reserveRoom( bounds, pending.message );
+				if( room == ROOM_RESERVED )
+					storeReservedMessage( pending.message );
+
+				// removed only once stored, so that the following messages wait for it
+				bounds.pendingSends.poll();
+				pending.result.complete( room != MESSAGE_REFUSED );
+			}
+		}
+	}
+
+	/**
+	 * Stores a message that has got its room in the queue, and schedules the queue.
+	 * @param messaggio the message to store
+	 */
+	private void storeReservedMessage( Message messaggio ){
+		storeMessage( messaggio );
+		AgentMetrics currentMetrics = metrics;
+		if( currentMetrics != null )
+			currentMetrics.messageEnqueued();
+		if( AgentEvents.isEnqueueEnabled() )
+			AgentEvents.messageEnqueued( getOwnerAgentID(), messaggio.getPriority().name(), getQueueLength() );
+
+		// wake up the scheduler, if the queue is not already active
+		activate();
+	}
+
+	/**
+	 * Stores a message moved from another queue. The overflow policy is not applied,
+	 * so that no moved message is lost: the queue can therefore exceed its capacity
+	 * until it is drained.
+	 * @param message the message to store
+	 */
+	final void transferMessage( Message message ){
+		if( bounds != null && message.getPriority() != MessagePriority.PRIORITY_ADMIN )
+			bounds.boundedSize.incrementAndGet();
+
+		storeMessage( message );
+		activate();
+	}
+
+	/**
+	 * Provides the next method to be processed, removing it from the queue.
+	 * Messages with an higher priority are returned first, while messages with the same
+	 * priority are returned in their arrival order. Spilled messages are returned once
+	 * the messages in memory have been processed.
+	 * If no message is found at any priority level, than null is returned.
+	 * @return the next message to process or null if none
+	 */
+	public final Message getNextMessage(){
+		Message message = null;
+		while( ( message = pollMessage() ) != null ){
+			if( bounds == null
+					|| message.getPriority() == MessagePriority.PRIORITY_ADMIN )
+				return message;
+
+			releaseRoom( bounds );
+
+			// is this an old message that has been dropped?
+			if( ! consumePendingDrop( bounds ) )
+				return message;
+
+			message.release();
+		}
+
+		if( bounds != null && bounds.spillStore != null && ! bounds.spillStore.isEmpty() )
+			return bounds.spillStore.read();
+
+		return null;
+	}
+
+	/**
+	 * Tells if the message queue is empty, that is if there are no messages that have not
+	 * yet been processed, neither in memory nor spilled to disk.
+	 * @return true if there are no messages
+	 */
+	@Override
+	public final boolean isEmpty(){
+		return isStorageEmpty()
+				&& ( bounds == null || bounds.spillStore == null || bounds.spillStore.isEmpty() );
+	}
+
+	/**
+	 * Provides the total amount of messages waiting to be processed, without any regard to the
+	 * priority of each message.
+	 * @return the total number of not-yet-processed messages
+	 */
+	public final int getQueueLength(){
+		int length = getStorageLength();
+		if( bounds != null ){
+			length -= bounds.pendingDrops.get();
+			if( bounds.spillStore != null )
+				length += bounds.spillStore.size();
+		}
+
+		return length;
+	}
+
+	/**
+	 * Makes room for a not administrative message, applying the overflow policy if the
+	 * queue is full.
+	 * @param bounds the state of the bounded queue
+	 * @param message the message that is going to be stored
+	 * @return ROOM_RESERVED if the message can be stored in memory, MESSAGE_HANDLED if
+	 * the message has been dropped or spilled, MESSAGE_REFUSED if it must be rejected
+	 */
+	private int reserveRoom( Bounds bounds, Message message ){
+		// once a message has been spilled, the following ones are spilled too
+		// so that their order is kept
+		if( bounds.spillStore != null && ! bounds.spillStore.isEmpty() )
+			return spill( bounds, message );
+
+		if( tryReserveRoom( bounds ) )
+			return ROOM_RESERVED;
+
+		// spilled messages are counted when written
+		if( bounds.overflowPolicy != OverflowPolicy.OVERFLOW_SPILL )
+			bounds.overflowCounters.incrementAndGet( bounds.overflowPolicy.ordinal() );
+
+		switch( bounds.overflowPolicy ){
+		case OVERFLOW_BLOCK:
+			return waitForRoom( bounds ) ? ROOM_RESERVED : MESSAGE_REFUSED;
+
+		case OVERFLOW_DROP_NEWEST:
+			message.release();
+			return MESSAGE_HANDLED;
+
+		case OVERFLOW_DROP_OLDEST:
+			// the new message takes the room of the oldest one
+			if( removeOldestMessage() )
+				return ROOM_RESERVED;
+
+			// the oldest message is discarded by the consumer, unless too many
+			// messages are already waiting to be discarded
+			if( bounds.pendingDrops.incrementAndGet() <= bounds.capacity ){
+				bounds.boundedSize.incrementAndGet();
+				return ROOM_RESERVED;
+			}
+
+			bounds.pendingDrops.decrementAndGet();
+			return MESSAGE_REFUSED;
+
+		case OVERFLOW_SPILL:
+			return spill( bounds, message );
+
+		default:
+			return MESSAGE_REFUSED;
+		}
+	}
+
+	/**
+	 * Tries to take a free slot of the queue.
+	 * @param bounds the state of the bounded queue
+	 * @return true if a slot has been taken, false if the queue is full
+	 */
+	private static boolean tryReserveRoom( Bounds bounds ){
+		int size;
+		do{
+			size = bounds.boundedSize.get();
+			if( size >= bounds.capacity )
+				return false;
+		}while( ! bounds.boundedSize.compareAndSet( size, size + 1 ) );
+
+		return true;
+	}
+
+	/**
+	 * Waits up to the block timeout for a free slot.
+	 * Blocked senders wait on the state of the bounded queue.
+	 * @param bounds the state of the bounded queue
+	 * @return true if a slot has been taken, false if the time is over
+	 */
+	private static boolean waitForRoom( Bounds bounds ){
+		long deadline = System.currentTimeMillis() + bounds.blockTimeout;
+		bounds.blockedSenders.incrementAndGet();
+		try{
+			synchronized( bounds ){
+				while( ! tryReserveRoom( bounds ) ){
+					long remaining = deadline - System.currentTimeMillis();
+					if( remaining <= 0 )
+						return false;
+
+					bounds.wait( remaining );
+				}
+
+				return true;
+			}
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally{
+			bounds.blockedSenders.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Frees the slot of a message that has left the queue, waking up a blocked sender.
+	 * @param bounds the state of the bounded queue
+	 */
+	private static void releaseRoom( Bounds bounds ){
+		bounds.boundedSize.decrementAndGet();
+		if( bounds.blockedSenders.get() > 0 )
+			synchronized( bounds ){
+				bounds.notifyAll();
+			}
+	}
+
+	/**
+	 * Tells if the consumer must discard the message it has just taken, because
+	 * the drop oldest policy has been applied.
+	 * @param bounds the state of the bounded queue
+	 * @return true if the message must be discarded
+	 */
+	private static boolean consumePendingDrop( Bounds bounds ){
+		int drops;
+		do{
+			drops = bounds.pendingDrops.get();
+			if( drops == 0 )
+				return false;
+		}while( ! bounds.pendingDrops.compareAndSet( drops, drops - 1 ) );
+
+		return true;
+	}
+
+	/**
+	 * Stores a message on disk and schedules the queue.
+	 * @param bounds the state of the bounded queue
+	 * @param message the message to spill
+	 * @return MESSAGE_HANDLED if the message has been spilled, MESSAGE_REFUSED otherwise
+	 */
+	private int spill( Bounds bounds, Message message ){
+		if( ! bounds.spillStore.write( message ) )
+			return MESSAGE_REFUSED;
+
+		// the message on disk is a copy
+		message.release();
+		bounds.overflowCounters.incrementAndGet( OverflowPolicy.OVERFLOW_SPILL.ordinal() );
+		activate();
+		return MESSAGE_HANDLED;
+	}
+
+	/**
+	 * Provides how many times an overflow policy has been applied to this queue.
+	 * For the blocking policy this is the number of senders that had to wait, while for
+	 * the spill policy this is the number of messages written to disk.
+	 * @param policy the policy to inspect
+	 * @return the number of overflows handled with the policy
+	 */
+	public final long getOverflowCount( OverflowPolicy policy ){
+		return bounds == null ? 0 : bounds.overflowCounters.get( policy.ordinal() );
+	}
+
+	/**
+	 * Provides the max number of not administrative messages this queue keeps in memory.
+	 * @return the capacity, or zero if the queue is unbounded
+	 */
+	public final int getCapacity(){
+		return bounds == null ? MailboxConfiguration.UNBOUNDED : bounds.capacity;
+	}
+
+
+	/**
+	 * Provides the max number of messages processed for each activation.
+	 * @return the throughput of the queue
+	 */
+	public final int getThroughput(){
+		return throughput;
+	}
+
+	/**
+	 * Sets the max number of messages processed for each activation.
+	 * An higher value amortizes the scheduling cost over more messages and allows
+	 * bigger batches, a lower one gives other agents a chance to run sooner.
+	 * @param throughput the number of messages, must be greater than zero
+	 */
+	public final void setThroughput( int throughput ){
+		if( throughput <= 0 )
+			throw new IllegalArgumentException( "The throughput must be greater than zero" );
+
+		this.throughput = throughput;
+	}
+
+
+	/**
+	 * Hands this queue to the scheduler if it is not already scheduled.
+	 * The queue is scheduled only on the transition from idle to active, so that
+	 * consecutive messages do not pay a new thread activation.
+	 */
+	protected final void activate(){
+		IScheduler currentScheduler = scheduler;
+		if( currentScheduler != null && SCHEDULED.compareAndSet( this, 0, 1 ) ){
+			// the activation wait is measured only if someone looks at it
+			if( metrics != null || AgentEvents.isDispatchEnabled() || AgentEvents.isLifecycleEnabled() )
+				scheduledAt = System.nanoTime();
+			else if( scheduledAt != 0 )
+				scheduledAt = 0;
+
+			currentScheduler.schedule( this );
+		}
+	}
+
+	/**
+	 * Releases the activation of this queue once the scheduler has drained it.
+	 * If a message has arrived after the last drain, the queue is scheduled again.
+	 */
+	final void deactivate(){
+		lastActivity = System.currentTimeMillis();
+		resume();
+	}
+
+	/**
+	 * Takes the activation of this queue, so that the scheduler cannot drain it.
+	 * If the queue is being drained, waits for the activation to be released.
+	 * @param timeout how many milliseconds to wait at most
+	 * @return true if the queue has been suspended, false if the time is over
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	final boolean suspend( long timeout ) throws InterruptedException {
+		if( SCHEDULED.compareAndSet( this, 0, 1 ) )
+			return true;
+
+		long deadline = System.currentTimeMillis() + timeout;
+		SUSPENDERS.incrementAndGet( this );
+		try{
+			synchronized( activationReleased ){
+				while( ! SCHEDULED.compareAndSet( this, 0, 1 ) ){
+					long remaining = deadline - System.currentTimeMillis();
+					if( remaining <= 0 )
+						return false;
+
+					activationReleased.wait( remaining );
+				}
+
+				return true;
+			}
+		}finally{
+			SUSPENDERS.decrementAndGet( this );
+			// the activation may have been left to this thread
+			if( scheduled == 0 && ! isEmpty() )
+				activate();
+		}
+	}
+
+	/**
+	 * Releases the activation of this queue. The activation is left to a thread waiting
+	 * to suspend the queue, if any, otherwise the queue is scheduled again if messages
+	 * are waiting.
+	 */
+	final void resume(){
+		scheduled = 0;
+		if( suspenders > 0 )
+			synchronized( activationReleased ){
+				activationReleased.notifyAll();
+			}
+		else if( ! isEmpty() )
+			activate();
+	}
+
+	/**
+	 * Provides the messages waiting in the queue, in memory or on disk, without
+	 * removing them. Messages that the drop oldest policy has already discarded are
+	 * not included. The queue must be suspended.
+	 * @return the messages in the order they would be delivered
+	 */
+	final List<Message> getPendingMessages(){
+		List<Message> messages = new ArrayList<Message>();
+		copyMessages( messages );
+		if( bounds != null ){
+			// the consumer discards the first messages it finds
+			int drops = bounds.pendingDrops.get();
+			for( Iterator<Message> iterator = messages.iterator(); drops > 0 && iterator.hasNext(); )
+				if( iterator.next().getPriority() != MessagePriority.PRIORITY_ADMIN ){
+					iterator.remove();
+					drops--;
+				}
+
+			if( bounds.spillStore != null )
+				bounds.spillStore.copyMessages( messages );
+		}
+
+		return messages;
+	}
+
+	/**
+	 * Tells if the queue has no messages and is not being drained.
+	 * @return true if the owning agent is not working
+	 */
+	final boolean isIdle(){
+		return scheduled == 0 && isEmpty();
+	}
+
+	/**
+	 * Provides the id of the owning agent.
+	 * @return the id, zero if the agent is not in memory
+	 */
+	final int getOwnerAgentID(){
+		AgentProxy proxy = ownerProxy;
+		Agent agent = proxy == null ? null : proxy.getResidentAgent();
+		return agent == null ? 0 : agent.getId();
+	}
+
+	/**
+	 * Provides the metrics of the owning agent.
+	 * @return the metrics, null if the metrics of the context are disabled
+	 */
+	public final AgentMetrics getMetrics(){
+		return metrics;
+	}
+
+	/**
+	 * Provides when the queue has been drained for the last time.
+	 * @return the time in milliseconds
+	 */
+	public final long getLastActivity(){
+		return lastActivity;
+	}
+
+	/**
+	 * Provides the configuration this queue has been built with.
+	 * @return the configuration, null for an unbounded queue
+	 */
+	public final MailboxConfiguration getConfiguration(){
+		return configuration;
+	}
+
+	/**
+	 * Returns the value of the ownerProxy for the current class instance.
+	 * @return the ownerProxy
+	 */
+	public final AgentProxy getOwnerProxy() {
+		return ownerProxy;
+	}
+
+	/**
+	 * Set the ownerProxy value in the current instance.
+	 * @param ownerProxy the ownerProxy to set
+	 */
+	public final void setOwnerProxy(AgentProxy ownerProxy) {
+		this.ownerProxy = ownerProxy;
+	}
+
+	/**
+	 * Returns the scheduler of this message queue.
+	 * @return the scheduler
+	 */
+	public final IScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Attaches this queue to a scheduler, detaching it from the previous one (if any).
+	 * If messages have been stored before the queue was attached, the queue is
+	 * immediately scheduled.
+	 * @param scheduler the scheduler to set
+	 */
+	public final synchronized void setScheduler(IScheduler scheduler) {
+		if( this.scheduler != null )
+			this.scheduler.unregister( this );
+
+		if( scheduler != null )
+			scheduler.register( this );
+
+		this.scheduler = scheduler;
+		if( ! isEmpty() )
+			activate();
+	}
+
+
+	/**
+	 * A message sent asynchronously that is waiting to be spilled.
+	 */
+	private static final class PendingSend {
+
+		final Message message;
+
+		final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+		PendingSend( Message message ){
+			super();
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Stores the pending asynchronous sends of a queue on a thread of the sender pool.
+	 */
+	private static final class PendingSendsTask implements Runnable {
+
+		private final AbstractMessageQueue queue;
+
+		PendingSendsTask( AbstractMessageQueue queue ){
+			super();
+			this.queue = queue;
+		}
+
+		@Override
+		public void run(){
+			Bounds bounds = queue.bounds;
+			do{
+				queue.storePendingSends( bounds );
+				bounds.pendingSendsScheduled.set( false );
+			}while( ! bounds.pendingSends.isEmpty() && bounds.pendingSendsScheduled.compareAndSet( false, true ) );
+		}
+	}
+
+	/**
+	 * The state of a bounded queue.
+	 * It is also the monitor blocked senders wait on.
+	 */
+	private static final class Bounds {
+
+		/**
+		 * The max number of not administrative messages in memory.
+		 */
+		final int capacity;
+
+		/**
+		 * What to do when the queue is full.
+		 */
+		final OverflowPolicy overflowPolicy;
+
+		/**
+		 * How long a sender waits for room with the blocking policy.
+		 */
+		final long blockTimeout;
+
+		/**
+		 * The number of not administrative messages in memory.
+		 */
+		final AtomicInteger boundedSize = new AtomicInteger( 0 );
+
+		/**
+		 * How many old messages must be discarded by the consumer, used
+		 * by the drop oldest policy when the oldest message cannot be removed by the sender.
+		 */
+		final AtomicInteger pendingDrops = new AtomicInteger( 0 );
+
+		/**
+		 * How many senders are waiting for room.
+		 */
+		final AtomicInteger blockedSenders = new AtomicInteger( 0 );
+
+		/**
+		 * The store of the spilled messages, used only by the spill policy.
+		 */
+		final MessageSpillStore spillStore;
+
+		/**
+		 * How many times each overflow policy has been applied, indexed by the policy ordinal.
+		 */
+		final AtomicLongArray overflowCounters = new AtomicLongArray( OverflowPolicy.values().length );
+
+		/**
+		 * The messages sent asynchronously that are waiting to be spilled, in the order
+		 * they have been sent.
+		 */
+		final ConcurrentLinkedQueue<PendingSend> pendingSends = new ConcurrentLinkedQueue<PendingSend>();
+
+		/**
+		 * Tells if a thread of the sender pool is storing the pending sends.
+		 */
+		final AtomicBoolean pendingSendsScheduled = new AtomicBoolean( false );
+
+		Bounds( MailboxConfiguration configuration ){
+			super();
+			capacity       = configuration.getCapacity();
+			overflowPolicy = configuration.getOverflowPolicy();
+			blockTimeout   = configuration.getBlockTimeout();
+			if( overflowPolicy == OverflowPolicy.OVERFLOW_SPILL )
+				spillStore = new MessageSpillStore( configuration.getSpillDirectory() );
+			else
+				spillStore = null;
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.ArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.Agent;
+import flap.messaging.*;
+
+/**
+ * The unit of work a scheduler executes for an agent.
+ * An activation drains up to the queue throughput messages delivering them to the
+ * owning agent. Consecutive
+ * messages that are not administrative are collected and delivered as a single batch,
+ * so that the dispatching cost is paid once per batch instead of once per message.
+ * At the end of the run the activation is released, and the queue is scheduled again
+ * if messages are still waiting.
+ * The activation has no state of its own, so that a message queue does not have to
+ * keep an activation object for the whole agent life.
+ * Deliveries and life cycle methods emit the flight recorder events of AgentEvents.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class AgentActivation {
+
+	/**
+	 * The logger of all the activations.
+	 */
+	private static Log logger = LogFactory.getLog( AgentActivation.class );
+
+	/**
+	 * The list used to collect a batch, one for each thread so that agents
+	 * do not have to keep a list each.
+	 */
+	private static final ThreadLocal<ArrayList<Message>> batches = new ThreadLocal<ArrayList<Message>>(){
+		@Override
+		protected ArrayList<Message> initialValue(){
+			return new ArrayList<Message>();
+		}
+	};
+
+	/**
+	 * No instances of this class are required.
+	 */
+	private AgentActivation(){
+		super();
+	}
+
+	/**
+	 * Processes up to throughput messages available in the queue, then releases
+	 * the queue so that it can be scheduled again.
+	 * Please note that the message priority is already handled from the message queue,
+	 * so there are no particular tasks to be performed here.
+	 * @param queue the queue to drain
+	 */
+	static void run( AbstractMessageQueue queue ){
+		ArrayList<Message> batch = batches.get();
+		AgentMetrics metrics = queue.metrics;
+		long scheduledAt = queue.scheduledAt;
+		long startTime = scheduledAt == 0 ? 0 : System.nanoTime();
+		long queueWait = scheduledAt == 0 ? 0 : Math.max( 0, startTime - scheduledAt );
+		int processed = 0;
+		try{
+			// a queue detached from its agent (for instance because the agent
+			// has been passivated) has nothing to deliver
+			AgentProxy proxy = queue.getOwnerProxy();
+			Agent targetAgent = proxy == null ? null : proxy.getResidentAgent();
+			if( targetAgent == null )
+				return;
+
+			int throughput = queue.getThroughput();
+			Message nextMessage = null;
+			for( ; processed < throughput && ( nextMessage = queue.getNextMessage() ) != null; processed++ ){
+				if( nextMessage.getPriority() == MessagePriority.PRIORITY_ADMIN ){
+					// messages already extracted are handled before the administrative one,
+					// as they arrived first
+					deliverBatch( batch, targetAgent, queueWait );
+					processAdministrativeMessage( nextMessage, targetAgent, queueWait );
+					nextMessage.release();
+				}
+				else
+					batch.add( nextMessage );
+			}
+
+			deliverBatch( batch, targetAgent, queueWait );
+		}
+		finally{
+			batch.clear();
+			if( metrics != null && startTime != 0 )
+				metrics.activationCompleted( startTime, queueWait, processed );
+			queue.deactivate();
+		}
+	}
+
+	/**
+	 * Executes the life cycle method of the agent an administrative message refers to.
+	 * @param message the administrative message
+	 * @param targetAgent the agent to which deliver the message
+	 * @param queueWait how long the agent has waited for a thread, in nanoseconds
+	 */
+	private static void processAdministrativeMessage( Message message, Agent targetAgent, long queueWait ){
+		Object event = AgentEvents.isLifecycleEnabled() ? AgentEvents.beginLifecycle() : null;
+		try{
+			logger.debug( "Administrative message " );
+			if( MessageType.TYPE_SETUP == message.getType() )
+				targetAgent.setUp();
+			else if(  MessageType.TYPE_RUN == message.getType() )
+				targetAgent.run();
+			else if(  MessageType.TYPE_SHUTDOWN == message.getType() )
+				targetAgent.die();
+			else
+				logger.debug( "Administrative message not understood!  " + message.getContent() );
+		}
+		catch( RuntimeException e ){
+			logger.error( String.format( "Exception caught while agent %d was processing an administrative message", targetAgent.getId() ), e );
+		}
+		finally{
+			if( event != null )
+				AgentEvents.commitLifecycle( event, targetAgent.getId(), message.getType().name(), message.getPriority().name(), queueWait );
+		}
+	}
+
+	/**
+	 * Delivers the collected messages to the agent, then releases the pooled
+	 * messages and empties the batch.
+	 * @param batch the messages to deliver, can be empty
+	 * @param targetAgent the agent to which deliver the messages
+	 * @param queueWait how long the agent has waited for a thread, in nanoseconds
+	 */
+	private static void deliverBatch( ArrayList<Message> batch, Agent targetAgent, long queueWait ){
+		if( batch.isEmpty() )
+			return;
+
+		Object event = AgentEvents.isDispatchEnabled() ? AgentEvents.beginDispatch() : null;
+		try{
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "Delivering %d messages to agent %d %s",
+								batch.size(),
+								targetAgent.getId(),
+								targetAgent.getName()
+							  )
+						);
+			targetAgent.handleMessages( batch );
+			logger.debug( "Messages delivered!" );
+		}
+		catch( RuntimeException e ){
+			logger.error( String.format( "Exception caught while agent %d was processing a batch of messages", targetAgent.getId() ), e );
+		}
+		finally{
+			if( event != null )
+				AgentEvents.commitDispatch( event, targetAgent.getId(), batch.get( 0 ).getPriority().name(), batch.size(), queueWait );
+			for( int i = 0; i < batch.size(); i++ )
+				batch.get( i ).release();
+
+			batch.clear();
+		}
+	}
+
+}
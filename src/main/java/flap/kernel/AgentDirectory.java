@@ -0,0 +1,293 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The yellow pages of a context.
+ * The directory indexes the installed agents by their mnemonic name, by their class
+ * and by the services they have registered, so that an agent can be found with a single
+ * lookup instead of walking all the installed agents. A service is described by a string,
+ * like "weather-forecast", that the agents offering and searching for it agree upon.
+ *
+ * The indexes are updated each time an agent is installed or killed, and each time an
+ * agent registers or deregisters a service. Each index entry is a compact set of ids that
+ * is changed in place, so that changes cost the same no matter how many agents share a key,
+ * while queries never lock and return a read-only view of the entry instead of a copy.
+ * Changes are serialized by the directory.
+ *
+ * Please note that an agent is indexed with the name it has when it is installed.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class AgentDirectory {
+
+	/**
+	 * The ids of the agents with a specific name.
+	 */
+	private final Map<String, AgentIdSet> agentsByName = new ConcurrentHashMap<String, AgentIdSet>();
+
+	/**
+	 * The ids of the agents of a specific class, indexed by the fully qualified class name.
+	 */
+	private final Map<String, AgentIdSet> agentsByClass = new ConcurrentHashMap<String, AgentIdSet>();
+
+	/**
+	 * The ids of the agents offering a service.
+	 */
+	private final Map<String, AgentIdSet> agentsByService = new ConcurrentHashMap<String, AgentIdSet>();
+
+	/**
+	 * The services registered by each agent, used to clean the service index
+	 * when the agent is killed. Accessed only by the synchronized methods.
+	 */
+	private final Map<Integer, String[]> servicesByAgent = new HashMap<Integer, String[]>();
+
+
+	/**
+	 * Indexes an installed agent.
+	 * @param agentID the id of the agent
+	 * @param name the name of the agent, can be null
+	 * @param clazz the fully qualified class name of the agent
+	 */
+	final synchronized void addAgent( int agentID, String name, String clazz ){
+		if( name != null )
+			addTo( agentsByName, name, agentID );
+
+		addTo( agentsByClass, clazz, agentID );
+	}
+
+	/**
+	 * Indexes many installed agents with the same name and class.
+	 * @param agentIDs the ids of the agents
+	 * @param name the name of the agents, can be null
+	 * @param clazz the fully qualified class name of the agents
+	 */
+	final synchronized void addAgents( int agentIDs[], String name, String clazz ){
+		if( name != null )
+			addTo( agentsByName, name, agentIDs );
+
+		addTo( agentsByClass, clazz, agentIDs );
+	}
+
+	/**
+	 * Removes an agent, and all its services, from the indexes.
+	 * @param agentID the id of the agent
+	 * @param name the name of the agent when it was installed, can be null
+	 * @param clazz the fully qualified class name of the agent
+	 */
+	final synchronized void removeAgent( int agentID, String name, String clazz ){
+		if( name != null )
+			removeFrom( agentsByName, name, agentID );
+
+		removeFrom( agentsByClass, clazz, agentID );
+
+		String services[] = servicesByAgent.remove( agentID );
+		if( services != null )
+			for( String service : services )
+				removeFrom( agentsByService, service, agentID );
+	}
+
+	/**
+	 * Registers a service offered by an agent.
+	 * @param agentID the id of the agent
+	 * @param service the description of the service
+	 * @return true if the service has been registered, false if it was already registered
+	 */
+	final synchronized boolean registerService( int agentID, String service ){
+		String services[] = servicesByAgent.get( agentID );
+		if( services == null )
+			services = new String[0];
+		else if( Arrays.asList( services ).contains( service ) )
+			return false;
+
+		services = Arrays.copyOf( services, services.length + 1 );
+		services[ services.length - 1 ] = service;
+		servicesByAgent.put( agentID, services );
+		addTo( agentsByService, service, agentID );
+		return true;
+	}
+
+	/**
+	 * Deregisters a service offered by an agent.
+	 * @param agentID the id of the agent
+	 * @param service the description of the service
+	 * @return true if the service has been deregistered, false if it was not registered
+	 */
+	final synchronized boolean deregisterService( int agentID, String service ){
+		String services[] = servicesByAgent.get( agentID );
+		if( services == null )
+			return false;
+
+		int index = Arrays.asList( services ).indexOf( service );
+		if( index < 0 )
+			return false;
+
+		if( services.length == 1 )
+			servicesByAgent.remove( agentID );
+		else{
+			String reduced[] = new String[ services.length - 1 ];
+			System.arraycopy( services, 0, reduced, 0, index );
+			System.arraycopy( services, index + 1, reduced, index, reduced.length - index );
+			servicesByAgent.put( agentID, reduced );
+		}
+
+		removeFrom( agentsByService, service, agentID );
+		return true;
+	}
+
+	/**
+	 * Provides the services offered by an agent.
+	 * @param agentID the id of the agent
+	 * @return the services, an empty array if none
+	 */
+	final synchronized String[] getServices( int agentID ){
+		String services[] = servicesByAgent.get( agentID );
+		return services == null ? new String[0] : services.clone();
+	}
+
+	/**
+	 * Provides the agents offering each service.
+	 * @return a copy of the ids of the agents indexed by service
+	 */
+	final synchronized Map<String, int[]> getServices(){
+		Map<String, int[]> services = new HashMap<String, int[]>();
+		for( Map.Entry<String, AgentIdSet> entry : agentsByService.entrySet() )
+			services.put( entry.getKey(), entry.getValue().toIntArray() );
+
+		return services;
+	}
+
+	/**
+	 * Provides the ids of the agents with the specified name.
+	 * @param name the name of the agents
+	 * @return a read-only view of the ids, empty if no agent has such name
+	 */
+	final Set<Integer> findByName( String name ){
+		return find( agentsByName, name );
+	}
+
+	/**
+	 * Provides the ids of the agents of the specified class.
+	 * @param clazz the fully qualified class name
+	 * @return a read-only view of the ids, empty if no agent has such class
+	 */
+	final Set<Integer> findByClass( String clazz ){
+		return find( agentsByClass, clazz );
+	}
+
+	/**
+	 * Provides the ids of the agents offering the specified service.
+	 * @param service the description of the service
+	 * @return a read-only view of the ids, empty if no agent offers the service
+	 */
+	final Set<Integer> findByService( String service ){
+		return find( agentsByService, service );
+	}
+
+	/**
+	 * Looks up an index. This method never locks.
+	 * @param index the index to look up
+	 * @param key the key to search for
+	 * @return a read-only view of the ids found
+	 */
+	private static Set<Integer> find( Map<String, AgentIdSet> index, String key ){
+		if( key == null )
+			return Collections.emptySet();
+
+		AgentIdSet ids = index.get( key );
+		return ids == null ? Collections.<Integer>emptySet() : ids;
+	}
+
+	/**
+	 * Adds an agent to an index entry.
+	 */
+	private static void addTo( Map<String, AgentIdSet> index, String key, int agentID ){
+		entry( index, key ).addId( agentID );
+	}
+
+	/**
+	 * Adds many agents to an index entry.
+	 */
+	private static void addTo( Map<String, AgentIdSet> index, String key, int agentIDs[] ){
+		AgentIdSet ids = entry( index, key );
+		for( int agentID : agentIDs )
+			ids.addId( agentID );
+	}
+
+	/**
+	 * Provides an index entry, creating it if missing.
+	 */
+	private static AgentIdSet entry( Map<String, AgentIdSet> index, String key ){
+		AgentIdSet ids = index.get( key );
+		if( ids == null ){
+			ids = new AgentIdSet();
+			index.put( key, ids );
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Removes an agent from an index entry, removing the entry when empty.
+	 */
+	private static void removeFrom( Map<String, AgentIdSet> index, String key, int agentID ){
+		AgentIdSet ids = index.get( key );
+		if( ids == null )
+			return;
+
+		ids.removeId( agentID );
+		if( ids.isEmpty() )
+			index.remove( key );
+	}
+
+}
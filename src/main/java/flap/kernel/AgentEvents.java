@@ -0,0 +1,289 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of the platform: a message stored in the queue of an
+ * agent, a batch of messages delivered to an agent and the execution of a life cycle
+ * method (setup, run, shutdown). Each event carries the agent id and the priority, and
+ * the delivery events carry the time the agent has waited for a thread and, as their
+ * duration, the time the agent has spent handling the messages. The events can therefore
+ * be correlated with the garbage collections and the locks of the same recording.
+ *
+ * When no recording has enabled an event, emitting it costs a check of a flag, so the
+ * events can be left on in production. The recorder is used only if the virtual machine
+ * provides it, so the platform still runs on virtual machines without it.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class AgentEvents {
+
+	/**
+	 * Tells if the virtual machine provides the flight recorder.
+	 */
+	private static final boolean available = isRecorderAvailable();
+
+	/**
+	 * No instances of this class are required.
+	 */
+	private AgentEvents(){
+		super();
+	}
+
+	/**
+	 * Checks if the flight recorder can be used.
+	 * @return true if the recorder is available
+	 */
+	private static boolean isRecorderAvailable(){
+		try{
+			Class.forName( "jdk.jfr.FlightRecorder" );
+			return Recorder.isAvailable();
+		}catch( ClassNotFoundException | LinkageError e ){
+			return false;
+		}
+	}
+
+	/**
+	 * Tells if a recording wants the events of the messages stored in the queues.
+	 * @return true if the events must be emitted
+	 */
+	static boolean isEnqueueEnabled(){
+		return available && Recorder.ENQUEUE.isEnabled();
+	}
+
+	/**
+	 * Tells if a recording wants the events of the messages delivered to the agents.
+	 * @return true if the events must be emitted
+	 */
+	static boolean isDispatchEnabled(){
+		return available && Recorder.DISPATCH.isEnabled();
+	}
+
+	/**
+	 * Tells if a recording wants the events of the life cycle methods.
+	 * @return true if the events must be emitted
+	 */
+	static boolean isLifecycleEnabled(){
+		return available && Recorder.LIFECYCLE.isEnabled();
+	}
+
+	/**
+	 * Emits the event of a message stored in a queue.
+	 * @param agentID the id of the agent that owns the queue
+	 * @param priority the priority of the message
+	 * @param mailboxDepth the number of messages in the queue
+	 */
+	static void messageEnqueued( int agentID, String priority, int mailboxDepth ){
+		Recorder.messageEnqueued( agentID, priority, mailboxDepth );
+	}
+
+	/**
+	 * Starts the event of the messages delivered to an agent.
+	 * @return the event to commit once the messages have been handled
+	 */
+	static Object beginDispatch(){
+		return Recorder.beginDispatch();
+	}
+
+	/**
+	 * Commits the event of the messages delivered to an agent.
+	 * @param event the event started by beginDispatch
+	 * @param agentID the id of the agent
+	 * @param priority the priority of the first message
+	 * @param messages the number of messages
+	 * @param queueWait how long the agent has waited for a thread, in nanoseconds
+	 */
+	static void commitDispatch( Object event, int agentID, String priority, int messages, long queueWait ){
+		Recorder.commitDispatch( event, agentID, priority, messages, queueWait );
+	}
+
+	/**
+	 * Starts the event of a life cycle method.
+	 * @return the event to commit once the method has completed
+	 */
+	static Object beginLifecycle(){
+		return Recorder.beginLifecycle();
+	}
+
+	/**
+	 * Commits the event of a life cycle method.
+	 * @param event the event started by beginLifecycle
+	 * @param agentID the id of the agent
+	 * @param phase the life cycle phase
+	 * @param priority the priority of the administrative message
+	 * @param queueWait how long the agent has waited for a thread, in nanoseconds
+	 */
+	static void commitLifecycle( Object event, int agentID, String phase, String priority, long queueWait ){
+		Recorder.commitLifecycle( event, agentID, phase, priority, queueWait );
+	}
+
+	/**
+	 * The only class that refers to the flight recorder, loaded once the recorder
+	 * is known to be available.
+	 */
+	private static final class Recorder {
+
+		static final EventType ENQUEUE = EventType.getEventType( MessageEnqueuedEvent.class );
+
+		static final EventType DISPATCH = EventType.getEventType( MessageDispatchEvent.class );
+
+		static final EventType LIFECYCLE = EventType.getEventType( AgentLifecycleEvent.class );
+
+		static boolean isAvailable(){
+			return FlightRecorder.isAvailable();
+		}
+
+		static void messageEnqueued( int agentID, String priority, int mailboxDepth ){
+			MessageEnqueuedEvent event = new MessageEnqueuedEvent();
+			event.agentID = agentID;
+			event.priority = priority;
+			event.mailboxDepth = mailboxDepth;
+			event.commit();
+		}
+
+		static Object beginDispatch(){
+			MessageDispatchEvent event = new MessageDispatchEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commitDispatch( Object started, int agentID, String priority, int messages, long queueWait ){
+			MessageDispatchEvent event = (MessageDispatchEvent) started;
+			event.end();
+			event.agentID = agentID;
+			event.priority = priority;
+			event.messages = messages;
+			event.queueWait = queueWait;
+			event.commit();
+		}
+
+		static Object beginLifecycle(){
+			AgentLifecycleEvent event = new AgentLifecycleEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commitLifecycle( Object started, int agentID, String phase, String priority, long queueWait ){
+			AgentLifecycleEvent event = (AgentLifecycleEvent) started;
+			event.end();
+			event.agentID = agentID;
+			event.phase = phase;
+			event.priority = priority;
+			event.queueWait = queueWait;
+			event.commit();
+		}
+	}
+
+	@Name( "flap.MessageEnqueued" )
+	@Label( "Message Enqueued" )
+	@Description( "A message stored in the queue of an agent" )
+	@Category( { "FLAP", "Messaging" } )
+	@StackTrace( false )
+	static final class MessageEnqueuedEvent extends Event {
+
+		@Label( "Agent" )
+		int agentID;
+
+		@Label( "Priority" )
+		String priority;
+
+		@Label( "Mailbox Depth" )
+		int mailboxDepth;
+	}
+
+	@Name( "flap.MessageDispatch" )
+	@Label( "Message Dispatch" )
+	@Description( "A batch of messages handled by an agent, the duration is the handler time" )
+	@Category( { "FLAP", "Messaging" } )
+	@StackTrace( false )
+	static final class MessageDispatchEvent extends Event {
+
+		@Label( "Agent" )
+		int agentID;
+
+		@Label( "Priority" )
+		String priority;
+
+		@Label( "Messages" )
+		int messages;
+
+		@Label( "Queue Wait" )
+		@Timespan( Timespan.NANOSECONDS )
+		long queueWait;
+	}
+
+	@Name( "flap.AgentLifecycle" )
+	@Label( "Agent Lifecycle" )
+	@Description( "A life cycle method of an agent, the duration is the method time" )
+	@Category( { "FLAP", "Lifecycle" } )
+	@StackTrace( false )
+	static final class AgentLifecycleEvent extends Event {
+
+		@Label( "Agent" )
+		int agentID;
+
+		@Label( "Phase" )
+		String phase;
+
+		@Label( "Priority" )
+		String priority;
+
+		@Label( "Queue Wait" )
+		@Timespan( Timespan.NANOSECONDS )
+		long queueWait;
+	}
+
+}
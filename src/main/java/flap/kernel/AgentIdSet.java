@@ -0,0 +1,333 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact set of agent ids, used as an entry of the agent directory.
+ * The ids are kept in an open addressing table of ints, so that an id costs a few bytes
+ * and no boxing, and adding or removing an id does not depend on the size of the set.
+ * Exactly one thread at a time can change the set, while any thread can query it
+ * without locking: the table is published with a volatile store each time it is
+ * replaced, and a query sees the changes made while it runs or not at all.
+ *
+ * The set is a read-only view to its users, the methods inherited from the
+ * collection framework that change the set are not supported.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class AgentIdSet extends AbstractSet<Integer> {
+
+	/**
+	 * The value of a slot that has never been used.
+	 */
+	private static final int FREE = Integer.MIN_VALUE;
+
+	/**
+	 * The value of a slot whose id has been removed.
+	 */
+	private static final int REMOVED = Integer.MIN_VALUE + 1;
+
+	/**
+	 * The slots of the set, the length is a power of two.
+	 */
+	private volatile int table[] = newTable( 2 );
+
+	/**
+	 * The number of ids in the set.
+	 */
+	private volatile int size = 0;
+
+	/**
+	 * The number of slots that are not free, including the removed ones.
+	 * Accessed only by the thread that changes the set.
+	 */
+	private int used = 0;
+
+
+	/**
+	 * Adds an id to the set.
+	 * @param agentID the id of the agent
+	 * @return false if the id was already in the set
+	 */
+	final boolean addId( int agentID ){
+		checkId( agentID );
+		if( ( used + 1 ) * 2 > table.length )
+			rehash( size + 1 );
+
+		int slots[]  = table;
+		int mask     = slots.length - 1;
+		int position = hash( agentID ) & mask;
+		int target   = -1;
+		while( slots[ position ] != FREE ){
+			if( slots[ position ] == agentID )
+				return false;
+			if( slots[ position ] == REMOVED && target < 0 )
+				target = position;
+
+			position = ( position + 1 ) & mask;
+		}
+
+		if( target < 0 ){
+			target = position;
+			used++;
+		}
+
+		slots[ target ] = agentID;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes an id from the set.
+	 * @param agentID the id of the agent
+	 * @return false if the id was not in the set
+	 */
+	final boolean removeId( int agentID ){
+		int slots[]  = table;
+		int position = find( slots, agentID );
+		if( position < 0 )
+			return false;
+
+		slots[ position ] = REMOVED;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Checks if an id is in the set. This method never locks.
+	 * @param agentID the id of the agent
+	 * @return true if the id is in the set
+	 */
+	final boolean containsId( int agentID ){
+		return find( table, agentID ) >= 0;
+	}
+
+	/**
+	 * Provides a copy of the ids in the set.
+	 * @return the ids
+	 */
+	final int[] toIntArray(){
+		int slots[] = table;
+		int ids[]   = new int[ slots.length ];
+		int count   = 0;
+		for( int slot : slots )
+			if( slot != FREE && slot != REMOVED )
+				ids[ count++ ] = slot;
+
+		return count == ids.length ? ids : Arrays.copyOf( ids, count );
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public final int size(){
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	@Override
+	public final boolean contains( Object o ){
+		return o instanceof Integer && containsId( ( (Integer) o ).intValue() );
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public final Iterator<Integer> iterator(){
+		return new Ids( table );
+	}
+
+	/**
+	 * Looks for the slot of an id.
+	 * @param slots the table to search
+	 * @param agentID the id of the agent
+	 * @return the position of the slot, -1 if the id is not in the table
+	 */
+	private static int find( int slots[], int agentID ){
+		if( agentID == FREE || agentID == REMOVED )
+			return -1;
+
+		int mask     = slots.length - 1;
+		int position = hash( agentID ) & mask;
+		for( int probes = 0; probes < slots.length; probes++ ){
+			int slot = slots[ position ];
+			if( slot == agentID )
+				return position;
+			if( slot == FREE )
+				return -1;
+
+			position = ( position + 1 ) & mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Replaces the table with one sized for the specified number of ids,
+	 * dropping the removed slots.
+	 * @param expected the number of ids the table must hold
+	 */
+	private void rehash( int expected ){
+		int length = 2;
+		while( length < expected * 4 )
+			length <<= 1;
+
+		int slots[] = newTable( length );
+		int mask    = length - 1;
+		for( int slot : table )
+			if( slot != FREE && slot != REMOVED ){
+				int position = hash( slot ) & mask;
+				while( slots[ position ] != FREE )
+					position = ( position + 1 ) & mask;
+
+				slots[ position ] = slot;
+			}
+
+		used  = size;
+		table = slots;
+	}
+
+	/**
+	 * Spreads the bits of an id, so that consecutive ids do not cluster.
+	 */
+	private static int hash( int agentID ){
+		int h = agentID * 0x9E3779B9;
+		return h ^ ( h >>> 16 );
+	}
+
+	/**
+	 * Builds a table of free slots.
+	 */
+	private static int[] newTable( int length ){
+		int slots[] = new int[ length ];
+		Arrays.fill( slots, FREE );
+		return slots;
+	}
+
+	/**
+	 * Rejects the ids used to mark the slots.
+	 */
+	private static void checkId( int agentID ){
+		if( agentID == FREE || agentID == REMOVED )
+			throw new IllegalArgumentException( "Invalid agent id " + agentID );
+	}
+
+
+	/**
+	 * An iterator over a table of the set.
+	 * @author Luca Ferrari
+	 * @version 1.0
+	 */
+	private static final class Ids implements Iterator<Integer> {
+
+		/**
+		 * The table being iterated.
+		 */
+		private final int slots[];
+
+		/**
+		 * The position of the next id, slots.length when done.
+		 */
+		private int position = -1;
+
+		/**
+		 * The next id, read once so that a concurrent change cannot alter it.
+		 */
+		private int nextID;
+
+		/**
+		 * Builds an iterator positioned on the first id.
+		 * @param slots the table to iterate
+		 */
+		Ids( int slots[] ){
+			super();
+			this.slots = slots;
+			advance();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext(){
+			return position < slots.length;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public Integer next(){
+			if( position >= slots.length )
+				throw new NoSuchElementException();
+
+			int agentID = nextID;
+			advance();
+			return agentID;
+		}
+
+		/**
+		 * Moves to the next slot holding an id.
+		 */
+		private void advance(){
+			while( ++position < slots.length ){
+				nextID = slots[ position ];
+				if( nextID != FREE && nextID != REMOVED )
+					return;
+			}
+		}
+	}
+
+}
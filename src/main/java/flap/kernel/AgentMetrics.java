@@ -0,0 +1,246 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of an agent, kept by its message queue while the metrics of its
+ * context are enabled (see Context.setMetricsEnabled).
+ * Many senders store messages at the same time, so the stored messages are counted
+ * by a striped counter; all the other counters are written only by the thread that
+ * runs the agent, which is a single one at a time, so they need no atomic update.
+ *
+ * The queue wait is measured for each activation, from the moment the queue asks
+ * to be scheduled to the moment a thread starts draining it, so that messages do
+ * not need to carry a timestamp.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class AgentMetrics implements AgentMetricsMBean {
+
+	/**
+	 * The metrics of the context of the agent.
+	 */
+	private final ContextMetrics contextMetrics;
+
+	/**
+	 * The queue of the agent.
+	 */
+	private final AbstractMessageQueue queue;
+
+	/**
+	 * The number of messages stored in the queue.
+	 */
+	private final LongAdder enqueued = new LongAdder();
+
+	/**
+	 * The number of messages handled.
+	 */
+	private volatile long processed = 0;
+
+	/**
+	 * The number of activations.
+	 */
+	private volatile long activations = 0;
+
+	/**
+	 * The time spent handling messages, in nanoseconds.
+	 */
+	private volatile long processingNanos = 0;
+
+	/**
+	 * The longest activation, in nanoseconds.
+	 */
+	private volatile long maxProcessingNanos = 0;
+
+	/**
+	 * The time spent waiting for a thread, in nanoseconds.
+	 */
+	private volatile long waitNanos = 0;
+
+	/**
+	 * The longest wait for a thread, in nanoseconds.
+	 */
+	private volatile long maxWaitNanos = 0;
+
+	/**
+	 * When the metrics have been enabled, in nanoseconds.
+	 */
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Builds the metrics of an agent.
+	 * @param contextMetrics the metrics of the context of the agent
+	 * @param queue the queue of the agent
+	 */
+	AgentMetrics( ContextMetrics contextMetrics, AbstractMessageQueue queue ){
+		super();
+		this.contextMetrics = contextMetrics;
+		this.queue = queue;
+	}
+
+	/**
+	 * Counts a message stored in the queue.
+	 */
+	final void messageEnqueued(){
+		enqueued.increment();
+		contextMetrics.messageEnqueued();
+	}
+
+	/**
+	 * Counts an activation of the agent. Called only by the thread that runs the agent.
+	 * @param startTime when the activation has started, in nanoseconds
+	 * @param wait how long the agent has waited for a thread, in nanoseconds
+	 * @param messages the number of messages handled
+	 */
+	final void activationCompleted( long startTime, long wait, int messages ){
+		long processing = System.nanoTime() - startTime;
+
+		processed += messages;
+		activations++;
+		processingNanos += processing;
+		waitNanos += wait;
+		if( processing > maxProcessingNanos )
+			maxProcessingNanos = processing;
+		if( wait > maxWaitNanos )
+			maxWaitNanos = wait;
+
+		contextMetrics.activationCompleted( wait, processing, messages );
+	}
+
+	/**
+	 * Provides the time spent handling messages.
+	 * @return the time in nanoseconds
+	 */
+	public final long getProcessingNanos(){
+		return processingNanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getMailboxDepth()
+	 */
+	@Override
+	public final int getMailboxDepth(){
+		return queue.getQueueLength();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getEnqueuedMessages()
+	 */
+	@Override
+	public final long getEnqueuedMessages(){
+		return enqueued.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getProcessedMessages()
+	 */
+	@Override
+	public final long getProcessedMessages(){
+		return processed;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getEnqueueRate()
+	 */
+	@Override
+	public final double getEnqueueRate(){
+		return enqueued.sum() * (double) TimeUnit.SECONDS.toNanos( 1 ) / Math.max( System.nanoTime() - startTime, 1 );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getElapsedMicros()
+	 */
+	@Override
+	public final long getElapsedMicros(){
+		return TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - startTime );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getActivations()
+	 */
+	@Override
+	public final long getActivations(){
+		return activations;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getMeanProcessingMicros()
+	 */
+	@Override
+	public final long getMeanProcessingMicros(){
+		long count = activations;
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros( processingNanos / count );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getMaxProcessingMicros()
+	 */
+	@Override
+	public final long getMaxProcessingMicros(){
+		return TimeUnit.NANOSECONDS.toMicros( maxProcessingNanos );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getMeanQueueWaitMicros()
+	 */
+	@Override
+	public final long getMeanQueueWaitMicros(){
+		long count = activations;
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros( waitNanos / count );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentMetricsMBean#getMaxQueueWaitMicros()
+	 */
+	@Override
+	public final long getMaxQueueWaitMicros(){
+		return TimeUnit.NANOSECONDS.toMicros( maxWaitNanos );
+	}
+
+}
@@ -45,6 +45,14 @@
  *
  */
 package flap.kernel;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import flap.agents.Agent;
 import flap.agents.IAgentProxy;
 import flap.messaging.*;
@@ -61,15 +69,38 @@ import flap.messaging.*;
 public class AgentProxy implements MessageHandler, IAgentProxy{
 
 	/**
-	 * The agent hidden behing this proxy.
+	 * The agent hidden behing this proxy, null while the agent is passivated.
 	 */
-	private Agent myOwningAgent = null;
+	private volatile Agent myOwningAgent = null;
 	
 	/**
 	 * A message queue that handles all the messages incoming and that must
-	 * be delivered to the hidden agent.
+	 * be delivered to the hidden agent, null while the agent is passivated.
+	 */
+	private volatile AbstractMessageQueue incomingMessageQueue = null;
+	
+	/**
+	 * The number of threads that are storing a message in the queue. The agent
+	 * cannot be passivated while a message is being stored.
+	 */
+	private volatile int activeSenders = 0;
+	
+	/**
+	 * The updater of the number of senders.
+	 */
+	private static final AtomicIntegerFieldUpdater<AgentProxy> ACTIVE_SENDERS =
+			AtomicIntegerFieldUpdater.newUpdater( AgentProxy.class, "activeSenders" );
+	
+	/**
+	 * What is needed to reactivate the agent, null if the agent is in memory.
+	 */
+	private PassivatedAgent passivatedAgent = null;
+	
+	/**
+	 * The proxy of the agent in the context it has been moved to, null if the
+	 * agent has not been moved.
 	 */
-	private IMessageQueue incomingMessageQueue = null;
+	private volatile AgentProxy forwardProxy = null;
 	
 	
 	/**
@@ -79,7 +110,7 @@ public class AgentProxy implements MessageHandler, IAgentProxy{
 	 * @param queue the message queue that will store the incoming messages that are going
 	 * to be delivered to the hidden agent
 	 */
-	public AgentProxy(Agent myAgent, MessageQueue queue){
+	public AgentProxy(Agent myAgent, AbstractMessageQueue queue){
 		super();
 		myOwningAgent = myAgent;
 		incomingMessageQueue = queue;
@@ -88,25 +119,390 @@ public class AgentProxy implements MessageHandler, IAgentProxy{
 		queue.setOwnerProxy( this );
 	}
 	
+	/**
+	 * Builds the proxy of an agent that is not in memory. The agent is loaded from
+	 * the store, and gets its message queue, the first time it is used.
+	 * @param context the context of the agent
+	 * @param store where the agent is kept
+	 * @param agentID the id of the agent
+	 * @param name the name of the agent
+	 * @param className the fully qualified class name of the agent
+	 * @param mailbox the configuration of the agent queue, null for an unbounded queue
+	 * @param throughput the throughput of the agent queue
+	 */
+	AgentProxy(Context context, AgentStore store, int agentID, String name, String className,
+			   MailboxConfiguration mailbox, int throughput){
+		super();
+		passivatedAgent = new PassivatedAgent( context, store, agentID, name, className, mailbox, throughput );
+	}
+	
 	/* (non-Javadoc)
 	 * @see flap.agents.IAgentProxy#handleMessage(flap.messaging.Message)
 	 */
 	@Override
 	public final boolean handleMessage(Message msg){
-		incomingMessageQueue.addMessage(msg);
-		return true;
+		while( true ){
+			// the sender is counted before looking at the queue, so that either the
+			// passivation sees the sender or the sender sees the passivation
+			ACTIVE_SENDERS.incrementAndGet( this );
+			try{
+				AbstractMessageQueue queue = incomingMessageQueue;
+				if( queue != null )
+					return queue.addMessage( msg );
+			}finally{
+				ACTIVE_SENDERS.decrementAndGet( this );
+			}
+			
+			// a missing queue means that the agent is passivated or is moving to another
+			// context: the sender is no more counted, so that a move can end while this waits
+			// for it, then the message is forwarded to the context the agent has been moved to
+			AgentProxy forward = forwardProxy;
+			if( forward == null ){
+				if( reactivate() != null )
+					continue;
+				
+				forward = forwardProxy;
+			}
+			
+			return forward != null && forward.handleMessage( msg );
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see flap.agents.IAgentProxy#sendMessage(flap.messaging.Message)
+	 */
+	@Override
+	public final CompletionStage<Boolean> sendMessage(final Message msg){
+		ACTIVE_SENDERS.incrementAndGet( this );
+		try{
+			AbstractMessageQueue queue = incomingMessageQueue;
+			if( queue != null )
+				return queue.sendMessage( msg );
+		}finally{
+			ACTIVE_SENDERS.decrementAndGet( this );
+		}
+		
+		AgentProxy forward = forwardProxy;
+		if( forward != null )
+			return forward.sendMessage( msg );
+		
+		// the agent is passivated or moving: reactivating it means loading it
+		// from the store, so the message is handled by another thread
+		final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+		SenderPool.execute( new Runnable(){
+			@Override
+			public void run(){
+				try{
+					result.complete( handleMessage( msg ) );
+				}catch( RuntimeException e ){
+					result.completeExceptionally( e );
+				}
+			}
+		} );
+		
+		return result;
 	}
 
 	/**
 	 * Returns the value of the myOwningAgent for the current class instance.
+	 * If the agent is passivated, it is reactivated.
 	 * Please note that this method is not available as a public API.
 	 * @return the myOwningAgent
 	 */
-	public synchronized final Agent getMyOwningAgent() {
+	public final Agent getMyOwningAgent() {
+		Agent agent = myOwningAgent;
+		if( agent == null ){
+			if( reactivate() != null )
+				agent = myOwningAgent;
+			else if( forwardProxy != null )
+				agent = forwardProxy.getMyOwningAgent();
+		}
+		
+		return agent;
+	}
+	
+	/**
+	 * Provides the agent only if it is in memory.
+	 * @return the agent or null if it is passivated
+	 */
+	final Agent getResidentAgent() {
 		return myOwningAgent;
 	}
 	
-
+	/**
+	 * Returns the message queue that stores the messages for the hidden agent.
+	 * Please note that this method is not available as a public API.
+	 * @return the message queue, null if the agent is passivated
+	 */
+	public final AbstractMessageQueue getMessageQueue() {
+		return incomingMessageQueue;
+	}
+	
+	/**
+	 * Tells if the agent has been passivated.
+	 * @return true if the agent is not in memory
+	 */
+	public final boolean isPassivated() {
+		return incomingMessageQueue == null && forwardProxy == null;
+	}
+	
+	/**
+	 * Tells if the agent has been moved to another context, so that this proxy
+	 * forwards the messages to the proxy of the agent in such context.
+	 * @return true if the agent has been moved
+	 */
+	public final boolean isForwarding() {
+		return forwardProxy != null;
+	}
+	
+	/**
+	 * Provides the number of messages the agent has still to handle.
+	 * If the agent has been moved, the messages are counted in the context it has been moved to.
+	 * @return the number of messages, zero if the agent is not in memory
+	 */
+	final int getBacklog() {
+		AbstractMessageQueue queue = incomingMessageQueue;
+		if( queue != null )
+			return queue.getQueueLength();
+		
+		AgentProxy forward = forwardProxy;
+		return forward == null ? 0 : forward.getBacklog();
+	}
+	
+	/**
+	 * Tells if the agent has not handled any message since the specified time.
+	 * @param time the time in milliseconds
+	 * @return true if the agent is in memory and idle since the time
+	 */
+	final boolean isIdleSince(long time) {
+		AbstractMessageQueue queue = incomingMessageQueue;
+		return queue != null && queue.getLastActivity() < time && queue.isIdle();
+	}
+	
+	/**
+	 * Stores the agent in the passivation store of the context, and releases the
+	 * agent and its message queue. The agent is not passivated if it is working, if a
+	 * message is being sent to it, or if it cannot be serialized.
+	 * @param context the context of the agent
+	 * @param store where the agent is stored
+	 * @return true if the agent has been passivated
+	 */
+	final synchronized boolean passivate(Context context, PassivationStore store) {
+		AbstractMessageQueue queue = incomingMessageQueue;
+		if( queue == null || ! queue.isIdle() )
+			return false;
+		
+		// hide the queue, then check that nobody is using it
+		incomingMessageQueue = null;
+		if( activeSenders > 0 || ! queue.isIdle() ){
+			incomingMessageQueue = queue;
+			return false;
+		}
+		
+		// from now on senders wait for the passivation to end
+		Agent agent = myOwningAgent;
+		if( ! store.store( agent.getId(), agent ) ){
+			incomingMessageQueue = queue;
+			return false;
+		}
+		
+		queue.setScheduler( null );
+		queue.setOwnerProxy( null );
+		passivatedAgent = new PassivatedAgent( context, store, agent.getId(), agent.getName(), agent.getClass().getName(),
+											   queue.getConfiguration(), queue.getThroughput() );
+		myOwningAgent   = null;
+		return true;
+	}
+	
+	/**
+	 * Moves the agent, with its pending messages, to a new message queue built by the
+	 * target context. The agent is moved when it is not running; senders that find the
+	 * agent moving wait for the move to end, and from then on this proxy forwards their
+	 * messages to the proxy returned, so that no message is lost or reordered.
+	 * The new queue is not attached to any scheduler.
+	 * @param target the context the agent is moved to
+	 * @param timeout how many milliseconds to wait for a running agent
+	 * @return the proxy of the agent for the target context, or null if the agent has
+	 * been running for longer than the timeout or has already been moved
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	final synchronized AgentProxy migrate(Context target, long timeout) throws InterruptedException {
+		if( forwardProxy != null )
+			return null;
+		
+		Agent agent = getMyOwningAgent();
+		AbstractMessageQueue queue = incomingMessageQueue;
+		if( agent == null || queue == null || ! queue.suspend( timeout ) )
+			return null;
+		
+		// hide the queue, then take the messages of the senders that found it before
+		incomingMessageQueue = null;
+		List<Message> pending = new ArrayList<Message>();
+		do{
+			Message message = null;
+			while( ( message = queue.getNextMessage() ) != null )
+				pending.add( message );
+			
+			if( activeSenders > 0 )
+				Thread.yield();
+		}while( activeSenders > 0 || ! queue.isEmpty() );
+		
+		AbstractMessageQueue targetQueue = target.createMessageQueue( queue.getConfiguration() );
+		targetQueue.setThroughput( queue.getThroughput() );
+		AgentProxy targetProxy = new AgentProxy( agent, targetQueue );
+		for( Message message : pending )
+			targetQueue.transferMessage( message );
+		agent.setContext( target );
+		
+		queue.setScheduler( null );
+		queue.setOwnerProxy( null );
+		myOwningAgent = null;
+		forwardProxy  = targetProxy;
+		return targetProxy;
+	}
 	
+	/**
+	 * Writes the agent and its pending messages to a snapshot. A passivated agent is
+	 * written as it is stored, without reactivating it, while an agent in memory is
+	 * written when it is not running and is not scheduled until it has been written.
+	 * @param writer the snapshot
+	 * @param timeout how many milliseconds to wait for a running agent
+	 * @return true if the agent has been written, false if it has been running for
+	 * longer than the timeout or it cannot be serialized
+	 * @throws IOException if the snapshot cannot be written
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	final synchronized boolean checkpoint(ContextSnapshot.Writer writer, long timeout) throws IOException, InterruptedException {
+		PassivatedAgent passivated = passivatedAgent;
+		if( passivated != null ){
+			byte state[] = passivated.store.read( passivated.agentID );
+			if( state == null )
+				return false;
+			
+			writer.writeAgent( passivated.agentID, passivated.name, passivated.className,
+							   passivated.mailbox, passivated.throughput, state, null );
+			return true;
+		}
+		
+		AbstractMessageQueue queue = incomingMessageQueue;
+		Agent agent = myOwningAgent;
+		if( queue == null || agent == null || ! queue.suspend( timeout ) )
+			return false;
+		
+		try{
+			byte state[] = writer.serialize( agent );
+			byte messages[] = null;
+			List<Message> pending = queue.getPendingMessages();
+			if( ! pending.isEmpty() )
+				messages = writer.serialize( pending.toArray( new Message[ pending.size() ] ) );
+			
+			writer.writeAgent( agent.getId(), agent.getName(), agent.getClass().getName(),
+							   queue.getConfiguration(), queue.getThroughput(), state, messages );
+			return true;
+		}catch( NotSerializableException e ){
+			// the agent, or one of its messages, keeps some state that cannot be stored
+			return false;
+		}finally{
+			queue.resume();
+		}
+	}
+	
+	/**
+	 * Kills the passivated agent without loading it, dropping it from its store,
+	 * so that nobody can reactivate it anymore.
+	 * @return the name and the class name of the agent, or null if the agent is in memory
+	 */
+	final synchronized String[] discard() {
+		PassivatedAgent passivated = passivatedAgent;
+		if( passivated == null )
+			return null;
+		
+		passivated.store.discard( passivated.agentID );
+		passivatedAgent = null;
+		return new String[]{ passivated.name, passivated.className };
+	}
+	
+	/**
+	 * Loads the passivated agent and gives it a new message queue.
+	 * @return the new queue, or null if the agent cannot be reactivated
+	 */
+	private synchronized AbstractMessageQueue reactivate() {
+		// already reactivated by another thread?
+		AbstractMessageQueue queue = incomingMessageQueue;
+		PassivatedAgent passivated = passivatedAgent;
+		if( queue != null || passivated == null )
+			return queue;
+		
+		Context context = passivated.context;
+		Agent agent = passivated.store.load( passivated.agentID );
+		if( agent == null )
+			return null;
+		
+		agent.setContext( context );
+		queue = context.createMessageQueue( passivated.mailbox );
+		queue.setThroughput( passivated.throughput );
+		queue.setOwnerProxy( this );
+		myOwningAgent = agent;
+		queue.setScheduler( context.getScheduler() );
+		incomingMessageQueue = queue;
+		
+		passivatedAgent = null;
+		return queue;
+	}
+	
+	
+	/**
+	 * What is needed to reactivate a passivated agent. It is kept apart so that
+	 * the proxy of an agent in memory does not pay for it.
+	 */
+	private static final class PassivatedAgent {
+		
+		/**
+		 * The context that has passivated the agent.
+		 */
+		final Context context;
+		
+		/**
+		 * Where the agent is kept.
+		 */
+		final AgentStore store;
+		
+		/**
+		 * The id of the passivated agent.
+		 */
+		final int agentID;
+		
+		/**
+		 * The name of the passivated agent.
+		 */
+		final String name;
+		
+		/**
+		 * The class name of the passivated agent.
+		 */
+		final String className;
+		
+		/**
+		 * The configuration of the queue of the passivated agent.
+		 */
+		final MailboxConfiguration mailbox;
+		
+		/**
+		 * The throughput of the queue of the passivated agent.
+		 */
+		final int throughput;
+		
+		PassivatedAgent( Context context, AgentStore store, int agentID, String name, String className,
+						 MailboxConfiguration mailbox, int throughput ){
+			super();
+			this.context    = context;
+			this.store      = store;
+			this.agentID    = agentID;
+			this.name       = name;
+			this.className  = className;
+			this.mailbox    = mailbox;
+			this.throughput = throughput;
+		}
+	}
 	
 }
@@ -0,0 +1,308 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The map of the agent proxies installed in a context, indexed by agent id.
+ * The map uses open addressing on primitive int keys, so that a lookup neither
+ * boxes the id nor follows a chain of entries, and lookups never lock: any number of
+ * agents can resolve proxies while agents are being installed or removed.
+ * Changes are serialized among themselves, since they are much rarer than lookups.
+ *
+ * A removed agent leaves its slot with the key but without the proxy, so that lookups
+ * of other keys are not broken; such slots are discarded when the table is rebuilt.
+ * The table is rebuilt (and published as a whole) when it becomes too crowded.
+ *
+ * Agent ids are always greater than zero, so zero marks a free slot.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class AgentRegistry {
+
+	/**
+	 * The smallest number of slots of a table.
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * A table of slots, never resized once published.
+	 */
+	private static final class Table {
+
+		/**
+		 * The agent id of each slot, zero if the slot has never been used.
+		 */
+		final AtomicIntegerArray keys;
+
+		/**
+		 * The proxy of each slot, null if the slot is free or the agent has been removed.
+		 */
+		final AtomicReferenceArray<AgentProxy> proxies;
+
+		/**
+		 * The number of slots with a key.
+		 */
+		int usedSlots = 0;
+
+		Table( int capacity ){
+			super();
+			keys    = new AtomicIntegerArray( capacity );
+			proxies = new AtomicReferenceArray<AgentProxy>( capacity );
+		}
+
+		/**
+		 * Provides the slot with the specified key, or the free slot the key would take.
+		 * @param id the key
+		 * @return the slot index
+		 */
+		final int slotOf( int id ){
+			int mask = keys.length() - 1;
+			int slot = mix( id ) & mask;
+			int key;
+			while( ( key = keys.get( slot ) ) != id && key != 0 )
+				slot = ( slot + 1 ) & mask;
+
+			return slot;
+		}
+	}
+
+	/**
+	 * The current table.
+	 */
+	private volatile Table table = new Table( MIN_CAPACITY );
+
+	/**
+	 * The number of installed agents.
+	 */
+	private volatile int size = 0;
+
+
+	/**
+	 * Spreads the bits of the id, since ids are consecutive numbers.
+	 * @param id the agent id
+	 * @return the hash of the id
+	 */
+	private static int mix( int id ){
+		int hash = id * 0x9E3779B9;
+		return hash ^ ( hash >>> 16 );
+	}
+
+	/**
+	 * Provides the proxy of an agent. This method never locks.
+	 * @param id the agent id
+	 * @return the proxy or null if the agent is not installed
+	 */
+	public final AgentProxy get( int id ){
+		if( id <= 0 )
+			return null;
+
+		Table current = table;
+		return current.proxies.get( current.slotOf( id ) );
+	}
+
+	/**
+	 * Tells if an agent is installed.
+	 * @param id the agent id
+	 * @return true if the agent has a proxy in this registry
+	 */
+	public final boolean containsKey( int id ){
+		return get( id ) != null;
+	}
+
+	/**
+	 * Installs the proxy of an agent, replacing the previous one (if any).
+	 * @param id the agent id, must be greater than zero
+	 * @param proxy the proxy of the agent
+	 * @return the previous proxy or null
+	 */
+	public final synchronized AgentProxy put( int id, AgentProxy proxy ){
+		if( id <= 0 )
+			throw new IllegalArgumentException( "Agent ids must be greater than zero" );
+
+		// keep the table at most half full
+		Table current = table;
+		if( ( current.usedSlots + 1 ) * 2 > current.keys.length() )
+			current = rebuild( size + 1 );
+
+		int slot = current.slotOf( id );
+		if( current.keys.get( slot ) == 0 ){
+			current.keys.set( slot, id );
+			current.usedSlots++;
+		}
+
+		AgentProxy previous = current.proxies.getAndSet( slot, proxy );
+		if( previous == null )
+			size++;
+
+		return previous;
+	}
+
+	/**
+	 * Installs the proxies of many agents with a single change: the table
+	 * is rebuilt at most once.
+	 * @param ids the agent ids, all greater than zero
+	 * @param proxies the proxies of the agents, in the same order of the ids
+	 */
+	public final synchronized void putAll( int ids[], AgentProxy proxies[] ){
+		for( int id : ids )
+			if( id <= 0 )
+				throw new IllegalArgumentException( "Agent ids must be greater than zero" );
+
+		Table current = table;
+		if( ( current.usedSlots + ids.length ) * 2 > current.keys.length() )
+			current = rebuild( size + ids.length );
+
+		for( int i = 0; i < ids.length; i++ ){
+			int slot = current.slotOf( ids[ i ] );
+			if( current.keys.get( slot ) == 0 ){
+				current.keys.set( slot, ids[ i ] );
+				current.usedSlots++;
+			}
+
+			if( current.proxies.getAndSet( slot, proxies[ i ] ) == null )
+				size++;
+		}
+	}
+
+	/**
+	 * Removes the proxy of an agent.
+	 * @param id the agent id
+	 * @return the removed proxy or null if the agent was not installed
+	 */
+	public final synchronized AgentProxy remove( int id ){
+		if( id <= 0 )
+			return null;
+
+		Table current = table;
+		AgentProxy previous = current.proxies.getAndSet( current.slotOf( id ), null );
+		if( previous != null )
+			size--;
+
+		return previous;
+	}
+
+	/**
+	 * Builds a new table with the installed agents only, and publishes it.
+	 * @param expectedSize the number of agents the table will contain
+	 * @return the new table
+	 */
+	private Table rebuild( int expectedSize ){
+		int capacity = MIN_CAPACITY;
+		while( capacity < expectedSize * 4 )
+			capacity <<= 1;
+
+		Table current = table;
+		Table rebuilt = new Table( capacity );
+		for( int i = 0; i < current.keys.length(); i++ ){
+			AgentProxy proxy = current.proxies.get( i );
+			if( proxy != null ){
+				int slot = rebuilt.slotOf( current.keys.get( i ) );
+				rebuilt.keys.set( slot, current.keys.get( i ) );
+				rebuilt.proxies.set( slot, proxy );
+				rebuilt.usedSlots++;
+			}
+		}
+
+		table = rebuilt;
+		return rebuilt;
+	}
+
+	/**
+	 * Provides the number of installed agents.
+	 * @return the number of agents
+	 */
+	public final int size(){
+		return size;
+	}
+
+	/**
+	 * Tells if no agent is installed.
+	 * @return true if the registry is empty
+	 */
+	public final boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Provides the ids of the installed agents. This method never locks, and
+	 * the ids are the ones of the agents installed at a time during the call.
+	 * @return the array of ids
+	 */
+	public final int[] ids(){
+		Table current = table;
+		int ids[] = new int[ size ];
+		int count = 0;
+		for( int i = 0; i < current.keys.length(); i++ )
+			if( current.proxies.get( i ) != null ){
+				if( count == ids.length )
+					ids = Arrays.copyOf( ids, count * 2 + 1 );
+
+				ids[ count++ ] = current.keys.get( i );
+			}
+
+		return count == ids.length ? ids : Arrays.copyOf( ids, count );
+	}
+
+	/**
+	 * Passes each installed proxy, with its agent id, to the visitor, without locking
+	 * and without allocating any object.
+	 * @param visitor the visitor of the proxies
+	 */
+	public final void forEach( ObjIntConsumer<AgentProxy> visitor ){
+		Table current = table;
+		for( int i = 0; i < current.keys.length(); i++ ){
+			AgentProxy proxy = current.proxies.get( i );
+			if( proxy != null )
+				visitor.accept( proxy, current.keys.get( i ) );
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.concurrent.CompletionStage;
+
+import flap.agents.IAgentProxy;
+import flap.messaging.Message;
+
+/**
+ * A proxy that stands in front of a group of identical agents, and delivers each
+ * message to one of them. Senders use the router as the proxy of a single agent,
+ * so that a busy role can be spread over many agents, and therefore over many threads,
+ * without the senders knowing how many agents there are.
+ * Subclasses choose the agent that receives each message.
+ *
+ * The group of agents is fixed when the router is built.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public abstract class AgentRouter implements IAgentProxy {
+
+	/**
+	 * The proxies of the agents the messages are delivered to.
+	 */
+	protected final IAgentProxy routees[];
+
+	/**
+	 * Builds a router for the specified agents.
+	 * @param routees the proxies of the agents, at least one
+	 */
+	protected AgentRouter(IAgentProxy... routees){
+		super();
+		if( routees == null || routees.length == 0 )
+			throw new IllegalArgumentException( "A router needs at least an agent" );
+
+		for( IAgentProxy routee : routees )
+			if( routee == null )
+				throw new IllegalArgumentException( "A router cannot deliver to a null agent" );
+
+		this.routees = routees.clone();
+	}
+
+	/**
+	 * Builds a router for the specified agents of a context.
+	 * @param context the context the agents are installed in
+	 * @param agentIDs the ids of the agents, at least one
+	 */
+	protected AgentRouter(Context context, int agentIDs[]){
+		this( lookup( context, agentIDs ) );
+	}
+
+	/**
+	 * Chooses the agent that receives a message.
+	 * @param msg the message to deliver
+	 * @return the index of the agent proxy in the routees array
+	 */
+	protected abstract int select(Message msg);
+
+	/* (non-Javadoc)
+	 * @see flap.agents.IAgentProxy#handleMessage(flap.messaging.Message)
+	 */
+	@Override
+	public final boolean handleMessage(Message msg){
+		return routees[ select( msg ) ].handleMessage( msg );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.agents.IAgentProxy#sendMessage(flap.messaging.Message)
+	 */
+	@Override
+	public final CompletionStage<Boolean> sendMessage(Message msg){
+		return routees[ select( msg ) ].sendMessage( msg );
+	}
+
+	/**
+	 * Sends a message to all the agents of the group, for instance to shut them down.
+	 * The same message instance is delivered to every agent, like Context.broadcast does,
+	 * so if the message is pooled the caller must not release it.
+	 * @param msg the message to send
+	 * @return the number of agents that have accepted the message
+	 */
+	public final int broadcast(Message msg){
+		int delivered = 0;
+		for( IAgentProxy routee : routees ){
+			msg.retain();
+			if( routee.handleMessage( msg ) )
+				delivered++;
+			else
+				msg.release();
+		}
+
+		// the reference of the sender
+		msg.release();
+		return delivered;
+	}
+
+	/**
+	 * Provides the number of agents of the group.
+	 * @return the number of agents
+	 */
+	public final int getRouteeCount(){
+		return routees.length;
+	}
+
+	/**
+	 * Provides the proxy of an agent of the group.
+	 * @param index the index of the agent, from zero to getRouteeCount() - 1
+	 * @return the proxy of the agent
+	 */
+	public final IAgentProxy getRoutee(int index){
+		return routees[ index ];
+	}
+
+	/**
+	 * Provides the number of messages an agent of the group has still to handle.
+	 * @param routee the proxy of the agent
+	 * @return the number of messages, zero if the proxy does not tell it
+	 */
+	static int getBacklog(IAgentProxy routee){
+		return routee instanceof AgentProxy ? ((AgentProxy) routee).getBacklog() : 0;
+	}
+
+	/**
+	 * Looks the proxies of the specified agents up.
+	 * @param context the context the agents are installed in
+	 * @param agentIDs the ids of the agents
+	 * @return the proxies of the agents
+	 */
+	private static IAgentProxy[] lookup(Context context, int agentIDs[]){
+		IAgentProxy proxies[] = new IAgentProxy[ agentIDs.length ];
+		for( int i = 0; i < agentIDs.length; i++ ){
+			proxies[ i ] = context.getAgentProxy( agentIDs[ i ] );
+			if( proxies[ i ] == null )
+				throw new IllegalArgumentException( "Agent " + agentIDs[ i ] + " is not installed in context " + context.getName() );
+		}
+
+		return proxies;
+	}
+
+}
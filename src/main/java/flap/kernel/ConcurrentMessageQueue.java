@@ -0,0 +1,266 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A message queue that does not use any monitor.
+ * Messages are stored in a lock-free multi-producer single-consumer queue for
+ * each priority level, so that many agents can send messages to the same agent
+ * without being serialized. Each priority queue keeps its size in a counter,
+ * so the length of the queue is computed without scanning the messages.
+ *
+ * The queues that have messages are tracked by a bitmap, so that the next queue
+ * to process is found in constant time whatever the number of priority levels is.
+ * The container of the queues is created when the first message arrives, and a queue
+ * is created when the first message of its priority arrives.
+ *
+ * Please note that this queue relies on the scheduler to be drained by a single
+ * thread at a time, so getNextMessage must not be called concurrently.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class ConcurrentMessageQueue extends AbstractMessageQueue {
+
+	/**
+	 * A queue for each priority, indexed by the priority level, null
+	 * until the first message arrives.
+	 */
+	private volatile AtomicReferenceArray<MpscLinkedQueue<Message>> lanes = null;
+
+	/**
+	 * The updater of the queues container.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentMessageQueue, AtomicReferenceArray> LANES =
+			AtomicReferenceFieldUpdater.newUpdater( ConcurrentMessageQueue.class, AtomicReferenceArray.class, "lanes" );
+
+	/**
+	 * A bitmap of the not empty queues: the bit at the position of a priority level is
+	 * set by a sender after it has stored a message in the queue of such level, and
+	 * cleared by the consumer when it finds the queue empty.
+	 */
+	private volatile int occupiedLanes = 0;
+
+	/**
+	 * The updater of the bitmap.
+	 */
+	private static final AtomicIntegerFieldUpdater<ConcurrentMessageQueue> OCCUPIED_LANES =
+			AtomicIntegerFieldUpdater.newUpdater( ConcurrentMessageQueue.class, "occupiedLanes" );
+
+	/**
+	 * Default constructor.
+	 */
+	public ConcurrentMessageQueue(){
+		this( null );
+	}
+
+	/**
+	 * Builds a message queue with the specified configuration.
+	 * @param configuration the configuration of the queue, null for an unbounded queue
+	 */
+	public ConcurrentMessageQueue( MailboxConfiguration configuration ){
+		super( configuration );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#storeMessage(flap.messaging.Message)
+	 */
+	@Override
+	protected void storeMessage(Message messaggio){
+		int level = messaggio.getPriority().getLevel();
+		getLane( level ).offer( messaggio );
+
+		// mark the queue as not empty, the bitmap is written only if needed
+		// to avoid contention among the senders
+		int bit = 1 << level;
+		if( ( occupiedLanes & bit ) == 0 )
+			setOccupied( bit );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#pollMessage()
+	 */
+	@Override
+	protected Message pollMessage(){
+		int occupied;
+		while( ( occupied = occupiedLanes ) != 0 ){
+			int level = Integer.numberOfTrailingZeros( occupied );
+			MpscLinkedQueue<Message> lane = lanes.get( level );
+			Message message = lane.poll();
+
+			// if the queue is now empty clear its bit, then check again to not lose
+			// a message stored in the meantime
+			if( lane.isEmpty() ){
+				int bit = 1 << level;
+				clearOccupied( bit );
+				if( ! lane.isEmpty() )
+					setOccupied( bit );
+			}
+
+			if( message != null )
+				return message;
+		}
+
+		// if here no message has been found in any priority queue
+		return null;
+	}
+
+	/**
+	 * The sender cannot remove a message from a single-consumer queue, so the
+	 * oldest message is always discarded by the consumer.
+	 * @return always false
+	 */
+	@Override
+	protected boolean removeOldestMessage(){
+		return false;
+	}
+
+	/**
+	 * Provides the queue of the specified level, creating it if needed.
+	 * @param level the priority level
+	 * @return the queue of the level
+	 */
+	@SuppressWarnings("unchecked")
+	private MpscLinkedQueue<Message> getLane( int level ){
+		AtomicReferenceArray<MpscLinkedQueue<Message>> currentLanes = lanes;
+		if( currentLanes == null ){
+			LANES.compareAndSet( this, null, new AtomicReferenceArray<MpscLinkedQueue<Message>>( MessagePriority.LEVEL_COUNT ) );
+			currentLanes = lanes;
+		}
+
+		MpscLinkedQueue<Message> lane = currentLanes.get( level );
+		if( lane == null ){
+			currentLanes.compareAndSet( level, null, new MpscLinkedQueue<Message>() );
+			lane = currentLanes.get( level );
+		}
+
+		return lane;
+	}
+
+	/**
+	 * Sets a bit of the bitmap of the not empty queues.
+	 * @param bit the bit to set
+	 */
+	private void setOccupied( int bit ){
+		int occupied;
+		do{
+			occupied = occupiedLanes;
+		}while( ( occupied & bit ) == 0 && ! OCCUPIED_LANES.compareAndSet( this, occupied, occupied | bit ) );
+	}
+
+	/**
+	 * Clears a bit of the bitmap of the not empty queues.
+	 * @param bit the bit to clear
+	 */
+	private void clearOccupied( int bit ){
+		int occupied;
+		do{
+			occupied = occupiedLanes;
+		}while( ( occupied & bit ) != 0 && ! OCCUPIED_LANES.compareAndSet( this, occupied, occupied & ~bit ) );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#copyMessages(java.util.List)
+	 */
+	@Override
+	protected void copyMessages( List<Message> messages ){
+		AtomicReferenceArray<MpscLinkedQueue<Message>> currentLanes = lanes;
+		if( currentLanes == null )
+			return;
+
+		for( int i = 0; i < MessagePriority.LEVEL_COUNT; i++ ){
+			MpscLinkedQueue<Message> lane = currentLanes.get( i );
+			if( lane != null )
+				lane.copyTo( messages );
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#getStorageLength()
+	 */
+	@Override
+	protected final int getStorageLength(){
+		int sum = 0;
+		AtomicReferenceArray<MpscLinkedQueue<Message>> currentLanes = lanes;
+		if( currentLanes == null )
+			return sum;
+
+		for( int i = 0; i < MessagePriority.LEVEL_COUNT; i++ ){
+			MpscLinkedQueue<Message> lane = currentLanes.get( i );
+			if( lane != null )
+				sum += lane.size();
+		}
+
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#getQueueLengthByPriority(flap.messaging.MessagePriority)
+	 */
+	@Override
+	public final int getQueueLengthByPriority( MessagePriority priority ){
+		AtomicReferenceArray<MpscLinkedQueue<Message>> currentLanes = lanes;
+		MpscLinkedQueue<Message> lane = currentLanes == null ? null : currentLanes.get( priority.getLevel() );
+		return lane == null ? 0 : lane.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#isStorageEmpty()
+	 */
+	@Override
+	protected final boolean isStorageEmpty(){
+		return occupiedLanes == 0;
+	}
+
+}
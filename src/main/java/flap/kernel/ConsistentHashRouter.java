@@ -0,0 +1,151 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.function.Function;
+
+import flap.agents.IAgentProxy;
+import flap.messaging.Message;
+
+/**
+ * A router that delivers all the messages with the same key to the same agent,
+ * so that each agent owns a share of the keys and the messages of a key are handled
+ * in the order they have been sent. The key of a message is its content, unless a
+ * different key extractor is specified.
+ *
+ * Each agent is placed on a ring of hashes (see HashRing) in many points, and a key
+ * goes to the agent of the first point that follows the hash of the key. This spreads
+ * the keys evenly. A router built for the agents of a context places each agent by its id,
+ * so routers built for groups that differ by an agent, added or removed anywhere in the
+ * group, move only the keys of such agent. A router built for agent proxies places each
+ * agent by its position among the routees instead: only adding agents at the end of the
+ * group keeps the keys of the other agents, while removing an agent shifts the positions
+ * of the following ones and moves their keys too.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class ConsistentHashRouter extends AgentRouter {
+
+	/**
+	 * The default number of points of each agent on the ring.
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	/**
+	 * How the key of a message is computed.
+	 */
+	private final Function<Message, Object> keyExtractor;
+
+	/**
+	 * The ring of the agents, whose members are the agent ids or the positions of the
+	 * routees, in the order of the routees.
+	 */
+	private final HashRing ring;
+
+	/**
+	 * Builds a router for the specified agents, using the content of the messages as key.
+	 * @param routees the proxies of the agents, at least one
+	 */
+	public ConsistentHashRouter(IAgentProxy... routees){
+		this( null, DEFAULT_VIRTUAL_NODES, routees );
+	}
+
+	/**
+	 * Builds a router for the specified agents of a context, using the content of the
+	 * messages as key.
+	 * @param context the context the agents are installed in
+	 * @param agentIDs the ids of the agents, at least one
+	 */
+	public ConsistentHashRouter(Context context, int agentIDs[]){
+		super( context, agentIDs );
+		this.keyExtractor = null;
+		this.ring = new HashRing( agentIDs, DEFAULT_VIRTUAL_NODES );
+	}
+
+	/**
+	 * Builds a router for the specified agents, placed on the ring by their positions.
+	 * @param keyExtractor how the key of a message is computed, null to use the content
+	 * @param virtualNodes the number of points of each agent on the ring
+	 * @param routees the proxies of the agents, at least one
+	 */
+	public ConsistentHashRouter(Function<Message, Object> keyExtractor, int virtualNodes, IAgentProxy... routees){
+		super( routees );
+		this.keyExtractor = keyExtractor;
+		this.ring = new HashRing( indexes( routees.length ), virtualNodes );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentRouter#select(flap.messaging.Message)
+	 */
+	@Override
+	protected int select(Message msg){
+		Object key = keyExtractor == null ? msg.getContent() : keyExtractor.apply( msg );
+		return getOwner( key );
+	}
+
+	/**
+	 * Provides the agent that receives the messages with the specified key.
+	 * @param key the key, can be null
+	 * @return the index of the agent proxy in the routees array
+	 */
+	public final int getOwner(Object key){
+		return ring.getOwner( key );
+	}
+
+	/**
+	 * Provides the indexes of the routees, that are the members of the ring.
+	 * @param count the number of routees
+	 * @return the indexes from 0 to count - 1
+	 */
+	private static int[] indexes(int count){
+		int indexes[] = new int[ count ];
+		for( int i = 0; i < count; i++ )
+			indexes[ i ] = i;
+
+		return indexes;
+	}
+
+}
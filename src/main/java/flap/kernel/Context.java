@@ -48,7 +48,22 @@ package flap.kernel;
 import flap.agents.*;
 import flap.messaging.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -68,8 +83,10 @@ public class Context {
 	 * The context keeps a map of all installed agents and their installedProxies.
 	 * The map stores the agent proxy (from which the context can extract the agent) and the id of
 	 * the agent (and agent proxy). The id of the agent is the key for the map.
+	 * Lookups in the map do not lock, so agents sending messages are never serialized
+	 * by the context.
 	 */
-	protected HashMap<Integer, AgentProxy> installedProxies = null;
+	protected final AgentRegistry installedProxies = new AgentRegistry();
 	
 	/**
 	 * Tabella che contiene riferimenti ai thread degli agenti effettivi (non ai loro proxy).
@@ -85,20 +102,110 @@ public class Context {
 	 */
 	private String name = null;
 	
+	/**
+	 * The administrative messages sent by the context. Such messages
+	 * have no state, so the same instances are sent to all the agents.
+	 */
+	private static final Message SETUP_MESSAGE    = new Message( MessagePriority.PRIORITY_ADMIN, "setup", MessageType.TYPE_SETUP );
+	private static final Message RUN_MESSAGE      = new Message( MessagePriority.PRIORITY_ADMIN, "run", MessageType.TYPE_RUN );
+	private static final Message SHUTDOWN_MESSAGE = new Message( MessagePriority.PRIORITY_ADMIN, "kill", MessageType.TYPE_SHUTDOWN );
+	
+	/**
+	 * The indexes to find the agents by name, class and service.
+	 */
+	private final AgentDirectory directory = new AgentDirectory();
+	
+	/**
+	 * The constructors of the agent classes, indexed by the fully qualified class name.
+	 */
+	private final Map<String, MethodHandle> agentConstructors = new ConcurrentHashMap<String, MethodHandle>();
+	
+	/**
+	 * Where the idle agents are stored, created when the first agent is passivated.
+	 */
+	private PassivationStore passivationStore = null;
+	
+	/**
+	 * The directory of the passivation store, null for a temporary directory.
+	 */
+	private File passivationDirectory = null;
+	
+	/**
+	 * The thread that periodically passivates the idle agents, created when needed.
+	 */
+	private ScheduledExecutorService passivationExecutor = null;
+	
+	/**
+	 * The periodic passivation of the idle agents, null if disabled.
+	 */
+	private ScheduledFuture<?> passivationTask = null;
+	
+	/**
+	 * The subscriptions of the agents to the topics.
+	 */
+	private final TopicRegistry topics = new TopicRegistry();
+	
 	/**
 	 * The logger of this context.
 	 */
 	private Log logger = LogFactory.getLog( Context.class );
 	
+	/**
+	 * The scheduler that provides threads to the agents of this context.
+	 */
+	private IScheduler scheduler = null;
+	
+	/**
+	 * If set, the agents created from now on use lock-free message queues.
+	 */
+	private volatile boolean lockFreeMailboxes = false;
+	
+	/**
+	 * The max number of messages an agent created from now on processes
+	 * each time it is scheduled.
+	 */
+	private volatile int throughput = AbstractMessageQueue.DEFAULT_THROUGHPUT;
+	
+	/**
+	 * The node of the agents created by this context, that is part of their ids
+	 * (see AgentID).
+	 */
+	private volatile int nodeID = AgentID.getLocalNode();
+	
+	/**
+	 * The metrics of this context and of its agents, null if disabled.
+	 */
+	private volatile ContextMetrics metrics = null;
+	
+	/**
+	 * The message queue configuration to use for the agents of a specific class,
+	 * indexed by the fully qualified class name.
+	 */
+	private HashMap<String, MailboxConfiguration> mailboxConfigurations = null;
+	
 	
 	/**
 	 * Costruttore del contesto.
+	 * The context uses a work-stealing scheduler with a worker for each
+	 * available processor.
 	 * @param name un nome simbolico da attribuire al contesto
 	 */
 	public Context(String name){
+		this( name, new WorkStealingScheduler() );
+	}
+	
+	/**
+	 * Builds a context that executes its agents on the specified scheduler.
+	 * @param name the mnemonic name of the context
+	 * @param scheduler the scheduler that will run the agents of this context
+	 */
+	public Context(String name, IScheduler scheduler){
 		super();
 		this.name = name;
-		installedProxies = new HashMap<Integer, AgentProxy>();
+		this.scheduler = scheduler;
+		if( Boolean.getBoolean( "flap.metrics" ) )
+			setMetricsEnabled( true );
+		mailboxConfigurations = new HashMap<String, MailboxConfiguration>();
 		this.threads  = new HashMap();
 	}
 	
@@ -112,40 +219,58 @@ public class Context {
 	 * @return l'identificativo dell'agente creato
 	 */
 	public final synchronized  int createAgent(String agentName, String clazz){
+		return createAgent( agentName, clazz, mailboxConfigurations.get( clazz ) );
+	}
+	
+	/**
+	 * Creates a new agent with a specific message queue configuration.
+	 * The configuration allows for limiting the number of messages that can wait
+	 * in the agent message queue.
+	 * @param agentName the mnemonic name of the agent
+	 * @param clazz the fully qualified name of the agent class
+	 * @param mailbox the configuration of the message queue, null for an unbounded queue
+	 * @return the agent id or -1 if the agent cannot be created
+	 */
+	public final synchronized int createAgent(String agentName, String clazz, MailboxConfiguration mailbox){
 		// check arguments
 		if(clazz == null)
 			return -1;
 		
 		try{
 			// step 1: create a new agent instance
-			logger.debug( String.format( "[CONTEXT %s] = createAgent: step 1 = Creating the agent %s from class %s", name, agentName, clazz ) );
-			Class agentClass = Class.forName(clazz);
-			Agent agent = (Agent) agentClass.newInstance();
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[CONTEXT %s] = createAgent: step 1 = Creating the agent %s from class %s", name, agentName, clazz ) );
+			Agent agent = newAgent( getAgentConstructor( clazz ) );
 			
 			// step 2: initialize the agent
 			agent.setName( agentName );
 			agent.setContext( this );
-			logger.debug( String.format( "[CONTEXT %s] = createAgent: step 2 = Agent %s associated to the context", name, agentName) );
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[CONTEXT %s] = createAgent: step 2 = Agent %s associated to the context", name, agentName) );
 			
 			// step 3: create a message queue 
-			IMessageQueue messageManager = new MessageQueue();
-			logger.debug( String.format( "[CONTEXT %s] = createAgent: step 3 = MessageQueue created", name) );
+			AbstractMessageQueue messageManager = createMessageQueue( mailbox );
+			messageManager.setThroughput( throughput );
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[CONTEXT %s] = createAgent: step 3 = MessageQueue created", name) );
 			
 			// step 4: create a new proxy
 			// and associate to the proxy both the agent and the message manager
-			AgentProxy proxy = new AgentProxy( agent, (MessageQueue) messageManager );
-			logger.debug( String.format( "[CONTEXT %s] = createAgent: step 4 = A new proxy for the agent has been created!", name) );
+			AgentProxy proxy = new AgentProxy( agent, messageManager );
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[CONTEXT %s] = createAgent: step 4 = A new proxy for the agent has been created!", name) );
 
 			// step 5: store the agent and its proxy into the map
 			// that contains the installed agents
 			installedProxies.put( agent.getId(), proxy );
-			logger.debug( String.format( "[CONTEXT %s] = createAgent: step 5 = The proxy and the agent have been stored in the installed agent map", name) );
+			directory.addAgent( agent.getId(), agentName, agent.getClass().getName() );
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[CONTEXT %s] = createAgent: step 5 = The proxy and the agent have been stored in the installed agent map", name) );
 			
 
-			// step 6: place messages into the queue in order to make the agent
-			// to start
-			messageManager.addMessage(  new Message( MessagePriority.PRIORITY_ADMIN, "setup", MessageType.TYPE_SETUP) );
-			messageManager.addMessage(  new Message( MessagePriority.PRIORITY_ADMIN, "run", MessageType.TYPE_RUN) );
+			// step 6: place messages into the queue in order to make the agent to start,
+			// then attach the queue to the scheduler so that it is scheduled once
+			startAgent( messageManager );
 			
 			// all done, return the agent id
 			return agent.getId();
@@ -160,6 +285,155 @@ public class Context {
 
 		
 		
+	}
+	
+	/**
+	 * Creates many agents of the same class at once, using the message queue configuration
+	 * set for the class (if any). See createAgents(String, int, String, MailboxConfiguration).
+	 * @param clazz the fully qualified name of the agent class
+	 * @param count the number of agents to create
+	 * @param agentName the mnemonic name of all the agents
+	 * @return the ids of the agents or null if the agents cannot be created
+	 */
+	public final int[] createAgents(String clazz, int count, String agentName){
+		MailboxConfiguration mailbox = null;
+		synchronized( this ){
+			mailbox = mailboxConfigurations.get( clazz );
+		}
+		
+		return createAgents( clazz, count, agentName, mailbox );
+	}
+	
+	/**
+	 * Creates many agents of the same class at once.
+	 * The agents are built without locking the context, then they are installed with a
+	 * single update of the installed agents map and of the directory, and finally they are
+	 * started. This is much faster than creating the agents one at a time, for instance
+	 * when thousands of agents are created at boot.
+	 * Each agent is started as soon as it has been installed, so the first agents can be
+	 * already running when the last ones are being started.
+	 * @param clazz the fully qualified name of the agent class
+	 * @param count the number of agents to create
+	 * @param agentName the mnemonic name of all the agents
+	 * @param mailbox the configuration of the message queues, null for unbounded queues
+	 * @return the ids of the agents or null if the agents cannot be created
+	 */
+	public final int[] createAgents(String clazz, int count, String agentName, MailboxConfiguration mailbox){
+		if( clazz == null || count < 0 )
+			return null;
+		
+		try{
+			// build all the agents, their queues and their proxies
+			MethodHandle constructor = getAgentConstructor( clazz );
+			int ids[] = new int[ count ];
+			AgentProxy proxies[] = new AgentProxy[ count ];
+			for( int i = 0; i < count; i++ ){
+				Agent agent = newAgent( constructor );
+				agent.setName( agentName );
+				agent.setContext( this );
+				
+				AbstractMessageQueue messageManager = createMessageQueue( mailbox );
+				messageManager.setThroughput( throughput );
+				proxies[ i ] = new AgentProxy( agent, messageManager );
+				ids[ i ] = agent.getId();
+			}
+			
+			// install all of them at once
+			installedProxies.putAll( ids, proxies );
+			if( count > 0 )
+				directory.addAgents( ids, agentName, proxies[ 0 ].getMyOwningAgent().getClass().getName() );
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[CONTEXT %s] = createAgents: %d agents of class %s installed", name, count, clazz ) );
+			
+			for( AgentProxy proxy : proxies )
+				startAgent( proxy.getMessageQueue() );
+			
+			return ids;
+			
+		}catch(Exception e){
+			logger.error( "Exception caught while creating new agents", e );
+			return null;
+		}
+	}
+	
+	/**
+	 * Provides the constructor of an agent class, searching for it only the
+	 * first time an agent of the class is created.
+	 * @param clazz the fully qualified name of the agent class
+	 * @return the handle of the default constructor, returning an Agent
+	 * @throws ReflectiveOperationException if the class or its default constructor cannot be found
+	 */
+	private MethodHandle getAgentConstructor(String clazz) throws ReflectiveOperationException {
+		MethodHandle constructor = agentConstructors.get( clazz );
+		if( constructor == null ){
+			Class<? extends Agent> agentClass = Class.forName( clazz ).asSubclass( Agent.class );
+			constructor = MethodHandles.publicLookup()
+								.findConstructor( agentClass, MethodType.methodType( void.class ) )
+								.asType( MethodType.methodType( Agent.class ) );
+			agentConstructors.put( clazz, constructor );
+		}
+		
+		return constructor;
+	}
+	
+	/**
+	 * Builds a new agent.
+	 * @param constructor the constructor of the agent class
+	 * @return the agent
+	 * @throws Exception if the constructor fails
+	 */
+	private static Agent newAgent(MethodHandle constructor) throws Exception {
+		try{
+			return (Agent) constructor.invokeExact();
+		}catch( Exception | Error e ){
+			throw e;
+		}catch( Throwable t ){
+			throw new InvocationTargetException( t );
+		}
+	}
+	
+	/**
+	 * Sends the setup and run messages to a new agent, then attaches its queue to
+	 * the scheduler: the agent is scheduled once for both the messages.
+	 * @param messageManager the queue of the agent
+	 */
+	private void startAgent(AbstractMessageQueue messageManager){
+		messageManager.addMessage( SETUP_MESSAGE );
+		messageManager.addMessage( RUN_MESSAGE );
+		messageManager.setScheduler( scheduler );
+	}
+	
+	/**
+	 * Builds the message queue for a new agent.
+	 * Depending on the context configuration the queue is a lock-free or
+	 * a monitor based one.
+	 * @param mailbox the configuration of the queue, null for an unbounded queue
+	 * @return the message queue for the agent
+	 */
+	protected AbstractMessageQueue createMessageQueue( MailboxConfiguration mailbox ){
+		AbstractMessageQueue queue = null;
+		if( lockFreeMailboxes )
+			queue = new ConcurrentMessageQueue( mailbox );
+		else
+			queue = new MessageQueue( mailbox );
+		
+		ContextMetrics currentMetrics = metrics;
+		if( currentMetrics != null )
+			queue.metrics = new AgentMetrics( currentMetrics, queue );
+		return queue;
+	}
+	
+	/**
+	 * Sets the message queue configuration for all the agents of the specified class
+	 * created from now on, unless a configuration is explicitly given at creation time.
+	 * @param clazz the fully qualified name of the agent class
+	 * @param mailbox the configuration, null to use unbounded queues
+	 */
+	public final synchronized void setMailboxConfiguration(String clazz, MailboxConfiguration mailbox){
+		if( mailbox == null )
+			mailboxConfigurations.remove( clazz );
+		else
+			mailboxConfigurations.put( clazz, mailbox );
 	}
 	
 	/**
@@ -168,11 +442,595 @@ public class Context {
 	 * @param agentID the id of the searching for agent
 	 * @return the agent proxy (if found and installed) or null
 	 */
-	public final synchronized IAgentProxy getAgentProxy(int agentID){
-		if( installedProxies.containsKey( agentID ) )
-			return (IAgentProxy) installedProxies.get( agentID );
-		else
-			return null;
+	public final IAgentProxy getAgentProxy(int agentID){
+		return installedProxies.get( agentID );
+	}
+	
+	/**
+	 * Sends a message to all the agents installed in the context.
+	 * The same message instance is delivered to every agent, so it must not carry
+	 * state that an addressee is expected to change. The context is not locked, and
+	 * each agent is scheduled at most once for the whole broadcast.
+	 * If the message is pooled, it goes back to its pool once every addressee has
+	 * handled it, and the caller must not release it.
+	 * @param message the message to send
+	 * @return the number of agents that have accepted the message
+	 */
+	public final int broadcast(Message message){
+		return broadcast( message, 0 );
+	}
+	
+	/**
+	 * Sends a message to all the agents installed in the context but one, usually
+	 * the sender. See broadcast(Message) for details.
+	 * @param message the message to send
+	 * @param excludedAgentID the id of the agent that does not receive the message
+	 * @return the number of agents that have accepted the message
+	 */
+	public final int broadcast(Message message, int excludedAgentID){
+		Broadcast broadcast = new Broadcast( message, excludedAgentID );
+		installedProxies.forEach( broadcast );
+		
+		// the reference of the sender
+		message.release();
+		return broadcast.delivered;
+	}
+	
+	/**
+	 * Sends a message to the specified agents. The same message instance is
+	 * delivered to every agent, see broadcast(Message) for details.
+	 * Ids of agents that are not installed are skipped.
+	 * @param agentIDs the ids of the agents to which send the message
+	 * @param message the message to send
+	 * @return the number of agents that have accepted the message
+	 */
+	public final int multicast(int agentIDs[], Message message){
+		int delivered = 0;
+		for( int i = 0; i < agentIDs.length; i++ )
+			if( deliverShared( installedProxies.get( agentIDs[ i ] ), message ) )
+				delivered++;
+		
+		// the reference of the sender
+		message.release();
+		return delivered;
+	}
+	
+	/**
+	 * Provides the ids of the installed agents with the specified mnemonic name.
+	 * This method does not lock the context.
+	 * @param agentName the name the agents had when they were created
+	 * @return a read-only view of the ids of the agents, empty if none
+	 */
+	public final Set<Integer> findAgentsByName(String agentName){
+		return directory.findByName( agentName );
+	}
+	
+	/**
+	 * Provides the ids of the installed agents of the specified class.
+	 * Subclasses are not included. This method does not lock the context.
+	 * @param clazz the fully qualified class name
+	 * @return a read-only view of the ids of the agents, empty if none
+	 */
+	public final Set<Integer> findAgentsByClass(String clazz){
+		return directory.findByClass( clazz );
+	}
+	
+	/**
+	 * Provides the ids of the installed agents offering the specified service.
+	 * This method does not lock the context.
+	 * @param service the description of the service
+	 * @return a read-only view of the ids of the agents, empty if none
+	 */
+	public final Set<Integer> findAgentsByService(String service){
+		return directory.findByService( service );
+	}
+	
+	/**
+	 * Registers a service offered by an agent, so that other agents can find it.
+	 * The service is deregistered when the agent is killed.
+	 * @param agentID the id of the agent
+	 * @param service the description of the service, like "weather-forecast"
+	 * @return true if the service has been registered, false if the agent is not
+	 * installed or has already registered the service
+	 */
+	public final synchronized boolean registerService(int agentID, String service){
+		if( service == null || ! installedProxies.containsKey( agentID ) )
+			return false;
+		
+		return directory.registerService( agentID, service );
+	}
+	
+	/**
+	 * Deregisters a service offered by an agent.
+	 * @param agentID the id of the agent
+	 * @param service the description of the service
+	 * @return true if the service has been deregistered
+	 */
+	public final boolean deregisterService(int agentID, String service){
+		return directory.deregisterService( agentID, service );
+	}
+	
+	/**
+	 * Subscribes an agent to a topic, so that it will receive the messages published
+	 * on the topic. Topics are made of levels separated by dots, and the subscription
+	 * can use the wildcard "*" to match a single level or end with the wildcard "#" to
+	 * match any number of levels, like "sensors.*.temperature" or "sensors.#".
+	 * @param agentID the id of the subscribing agent
+	 * @param topic the topic, with optional wildcards
+	 * @return true if the agent has been subscribed, false if the agent is not installed
+	 * or was already subscribed
+	 */
+	public final synchronized boolean subscribe(int agentID, String topic){
+		if( ! installedProxies.containsKey( agentID ) )
+			return false;
+		
+		return topics.subscribe( agentID, topic );
+	}
+	
+	/**
+	 * Removes the subscription of an agent to a topic.
+	 * @param agentID the id of the agent
+	 * @param topic the topic, as specified when subscribing
+	 * @return true if the subscription has been removed
+	 */
+	public final boolean unsubscribe(int agentID, String topic){
+		return topics.unsubscribe( agentID, topic );
+	}
+	
+	/**
+	 * Sends a message to all the agents subscribed to a topic.
+	 * The subscribers of a topic are cached, so publishing many times on the same topic
+	 * does not look at the subscriptions again. The same message instance is delivered to
+	 * every subscriber, see broadcast(Message) for details.
+	 * @param topic the topic, without wildcards
+	 * @param message the message to send
+	 * @return the number of agents that have accepted the message
+	 */
+	public final int publish(String topic, Message message){
+		return multicast( topics.getSubscribers( topic ), message );
+	}
+	
+	/**
+	 * Delivers a message that is shared among many agents.
+	 * @param proxy the proxy of the agent, can be null
+	 * @param message the message
+	 * @return true if the agent has accepted the message
+	 */
+	private static boolean deliverShared(AgentProxy proxy, Message message){
+		if( proxy == null )
+			return false;
+		
+		message.retain();
+		if( proxy.handleMessage( message ) )
+			return true;
+		
+		message.release();
+		return false;
+	}
+	
+	/**
+	 * The delivery of a message to each agent of the registry.
+	 */
+	private static final class Broadcast implements ObjIntConsumer<AgentProxy> {
+		
+		private final Message message;
+		
+		private final int excludedAgentID;
+		
+		private int delivered = 0;
+		
+		Broadcast(Message message, int excludedAgentID){
+			super();
+			this.message = message;
+			this.excludedAgentID = excludedAgentID;
+		}
+		
+		@Override
+		public void accept(AgentProxy proxy, int agentID){
+			if( agentID != excludedAgentID
+					&& deliverShared( proxy, message ) )
+				delivered++;
+		}
+	}
+	
+	/**
+	 * Passivates an agent: the agent is stored on disk and its message queue is released,
+	 * so that it does not use memory. The agent is reactivated, with a new message queue,
+	 * as soon as a message is sent to it. An agent is passivated only if it has no messages
+	 * to handle, is not running and can be serialized.
+	 * @param agentID the id of the agent
+	 * @return true if the agent has been passivated
+	 */
+	public final boolean passivateAgent(int agentID){
+		AgentProxy proxy = installedProxies.get( agentID );
+		PassivationStore store = getPassivationStore();
+		return proxy != null && store != null && proxy.passivate( this, store );
+	}
+	
+	/**
+	 * Passivates all the agents that have not handled a message for the specified time.
+	 * See passivateAgent(int) for details.
+	 * @param idleMillis the idle time in milliseconds
+	 * @return the number of passivated agents
+	 */
+	public final int passivateIdleAgents(long idleMillis){
+		PassivationStore store = getPassivationStore();
+		if( store == null )
+			return 0;
+		
+		Passivation passivation = new Passivation( this, store, System.currentTimeMillis() - idleMillis );
+		installedProxies.forEach( passivation );
+		if( passivation.passivated > 0 && logger.isDebugEnabled() )
+			logger.debug( String.format( "[CONTEXT %s] = %d idle agents passivated", name, passivation.passivated ) );
+		
+		return passivation.passivated;
+	}
+	
+	/**
+	 * Tells if an agent is passivated.
+	 * @param agentID the id of the agent
+	 * @return true if the agent is installed and passivated
+	 */
+	public final boolean isAgentPassivated(int agentID){
+		AgentProxy proxy = installedProxies.get( agentID );
+		return proxy != null && proxy.isPassivated();
+	}
+	
+	/**
+	 * Enables the automatic passivation of the agents that have not handled a message
+	 * for the specified time. The agents are checked periodically, at half of the idle time.
+	 * This allows the context to host a huge number of agents that are idle most of the time.
+	 * @param idleMillis the idle time in milliseconds, zero to disable the automatic passivation
+	 */
+	public final synchronized void setPassivationTimeout(final long idleMillis){
+		if( passivationTask != null ){
+			passivationTask.cancel( false );
+			passivationTask = null;
+		}
+		
+		if( idleMillis <= 0 )
+			return;
+		
+		if( passivationExecutor == null )
+			passivationExecutor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable task){
+					Thread thread = new Thread( task, "PassivationThread-" + name );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		
+		long period = Math.max( idleMillis / 2, 10 );
+		passivationTask = passivationExecutor.scheduleAtFixedRate( new Runnable(){
+			@Override
+			public void run(){
+				passivateIdleAgents( idleMillis );
+			}
+		}, period, period, TimeUnit.MILLISECONDS );
+	}
+	
+	/**
+	 * Sets the directory where passivated agents are stored. It must be called
+	 * before the first agent is passivated.
+	 * @param directory the directory, null for a temporary directory
+	 */
+	public final synchronized void setPassivationDirectory(File directory){
+		passivationDirectory = directory;
+	}
+	
+	/**
+	 * Provides the store of the passivated agents, creating it if needed.
+	 * @return the store, null if it cannot be created
+	 */
+	final synchronized PassivationStore getPassivationStore(){
+		if( passivationStore == null )
+			try{
+				passivationStore = new PassivationStore( passivationDirectory );
+			}catch( IOException e ){
+				logger.error( "Cannot create the passivation store", e );
+			}
+		
+		return passivationStore;
+	}
+	
+	/**
+	 * The passivation of the idle agents of the registry.
+	 */
+	private static final class Passivation implements ObjIntConsumer<AgentProxy> {
+		
+		private final Context context;
+		
+		private final PassivationStore store;
+		
+		private final long idleSince;
+		
+		private int passivated = 0;
+		
+		Passivation(Context context, PassivationStore store, long idleSince){
+			super();
+			this.context = context;
+			this.store = store;
+			this.idleSince = idleSince;
+		}
+		
+		@Override
+		public void accept(AgentProxy proxy, int agentID){
+			if( proxy.isIdleSince( idleSince ) && proxy.passivate( context, store ) )
+				passivated++;
+		}
+	}
+	
+	/**
+	 * How long a migration waits for a running agent, in milliseconds.
+	 */
+	public static final long MIGRATION_TIMEOUT = 5000;
+	
+	/**
+	 * Moves a running agent to another context, together with its pending messages, its
+	 * services and its topic subscriptions. The agent keeps its id and its state, and from
+	 * now on it runs on the threads of the target context.
+	 * The agent is moved when it is not running, so it does not lose or reorder messages:
+	 * the messages sent while it is moving wait for the move to end, and the proxy of the
+	 * agent in this context forwards them to the target context, so agents that keep
+	 * such a proxy do not have to look the agent up again.
+	 * An agent that keeps running for more than MIGRATION_TIMEOUT (like the agent calling
+	 * this method) is not moved. A passivated agent is reactivated to be moved.
+	 * @param agentID the id of the agent
+	 * @param target the context the agent is moved to
+	 * @return true if the agent has been moved
+	 */
+	public final boolean migrateAgent(int agentID, Context target){
+		AgentProxy proxy = installedProxies.get( agentID );
+		if( proxy == null || target == null || target == this )
+			return false;
+		
+		AgentProxy moved = null;
+		try{
+			moved = proxy.migrate( target, MIGRATION_TIMEOUT );
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+		}
+		
+		if( moved == null )
+			return false;
+		
+		// the agent is not running, so its services and subscriptions do not change
+		Agent agent = moved.getMyOwningAgent();
+		String services[] = null;
+		String subscriptions[] = null;
+		synchronized( this ){
+			services      = directory.getServices( agentID );
+			subscriptions = topics.getSubscriptions( agentID );
+			installedProxies.remove( agentID );
+			topics.unsubscribeAll( agentID );
+			directory.removeAgent( agentID, agent.getName(), agent.getClass().getName() );
+			if( metrics != null )
+				metrics.agentRemoved( agentID );
+		}
+		
+		target.installMigratedAgent( moved, services, subscriptions );
+		if( logger.isDebugEnabled() )
+			logger.debug( String.format( "[CONTEXT %s] = migrateAgent: agent %d moved to context %s", name, agentID, target.getName() ) );
+		return true;
+	}
+	
+	/**
+	 * Installs an agent moved from another context and starts delivering its messages.
+	 * @param proxy the proxy of the agent for this context
+	 * @param services the services offered by the agent
+	 * @param subscriptions the topic subscriptions of the agent
+	 */
+	private void installMigratedAgent(AgentProxy proxy, String services[], String subscriptions[]){
+		Agent agent = proxy.getMyOwningAgent();
+		synchronized( this ){
+			installedProxies.put( agent.getId(), proxy );
+			directory.addAgent( agent.getId(), agent.getName(), agent.getClass().getName() );
+			for( String service : services )
+				directory.registerService( agent.getId(), service );
+			for( String subscription : subscriptions )
+				topics.subscribe( agent.getId(), subscription );
+		}
+		
+		proxy.getMessageQueue().setScheduler( scheduler );
+	}
+	
+	/**
+	 * Provides the load of this context, that is the number of messages waiting in
+	 * the queues of its agents. A context whose threads cannot keep up with the messages
+	 * its agents receive has an increasing load. This method does not lock the context.
+	 * @return the number of waiting messages
+	 */
+	public final long getLoad(){
+		LoadSurvey survey = new LoadSurvey( false );
+		installedProxies.forEach( survey );
+		return survey.load;
+	}
+	
+	/**
+	 * Provides the agents with the most waiting messages.
+	 * @param max the max number of agents
+	 * @return the ids of the agents with at least a waiting message, the busiest first
+	 */
+	final int[] getBusiestAgents(int max){
+		LoadSurvey survey = new LoadSurvey( true );
+		installedProxies.forEach( survey );
+		
+		// each key holds the backlog in the high bits, so the busiest agents are the last
+		long keys[] = Arrays.copyOf( survey.keys, survey.count );
+		Arrays.sort( keys );
+		int busiest[] = new int[ Math.min( max, keys.length ) ];
+		for( int i = 0; i < busiest.length; i++ )
+			busiest[ i ] = (int) keys[ keys.length - 1 - i ];
+		
+		return busiest;
+	}
+	
+	/**
+	 * Provides the number of messages an agent has still to handle.
+	 * @param agentID the id of the agent
+	 * @return the number of messages, zero if the agent is not installed or not in memory
+	 */
+	final int getBacklog(int agentID){
+		AgentProxy proxy = installedProxies.get( agentID );
+		return proxy == null ? 0 : proxy.getBacklog();
+	}
+	
+	/**
+	 * The survey of the messages waiting in the queues of the registry.
+	 */
+	private static final class LoadSurvey implements ObjIntConsumer<AgentProxy> {
+		
+		private final boolean collectAgents;
+		
+		private long load = 0;
+		
+		private long keys[] = new long[ 16 ];
+		
+		private int count = 0;
+		
+		LoadSurvey(boolean collectAgents){
+			super();
+			this.collectAgents = collectAgents;
+		}
+		
+		@Override
+		public void accept(AgentProxy proxy, int agentID){
+			int backlog = proxy.getBacklog();
+			load += backlog;
+			if( ! collectAgents || backlog == 0 )
+				return;
+			
+			if( count == keys.length )
+				keys = Arrays.copyOf( keys, count * 2 );
+			keys[ count++ ] = ( (long) backlog << 32 ) | ( agentID & 0xFFFFFFFFL );
+		}
+	}
+	
+	/**
+	 * How long a checkpoint waits for a running agent, in milliseconds.
+	 */
+	public static final long CHECKPOINT_TIMEOUT = 5000;
+	
+	/**
+	 * Writes all the agents installed in the context to a snapshot file, so that they can
+	 * be restored after a restart with restore(Path). The snapshot keeps the state of each
+	 * agent, its pending messages, its services and its topic subscriptions.
+	 * The context keeps running: each agent is written when it is not running, and it is not
+	 * scheduled until it has been written, while passivated agents are written without
+	 * reactivating them. Agents that cannot be serialized, or that keep running for more than
+	 * CHECKPOINT_TIMEOUT (like the agent calling this method), are skipped.
+	 * The file is replaced only once the snapshot is complete.
+	 * @param path the snapshot file
+	 * @return the number of agents written
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public final int checkpoint(Path path) throws IOException {
+		int written = 0;
+		ContextSnapshot.Writer writer = new ContextSnapshot.Writer( path );
+		try{
+			for( int agentID : installedProxies.ids() ){
+				AgentProxy proxy = installedProxies.get( agentID );
+				if( proxy == null )
+					continue;		// killed in the meantime
+				
+				if( proxy.checkpoint( writer, CHECKPOINT_TIMEOUT ) )
+					written++;
+				else
+					logger.warn( String.format( "[CONTEXT %s] = checkpoint: agent %d is busy or cannot be serialized, it is not saved", name, agentID ) );
+			}
+			
+			writer.commit( directory.getServices(), topics.getSubscriptions() );
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "The checkpoint has been interrupted" );
+		}finally{
+			writer.close();
+		}
+		
+		if( logger.isDebugEnabled() )
+			logger.debug( String.format( "[CONTEXT %s] = checkpoint: %d agents saved to %s", name, written, path ) );
+		return written;
+	}
+	
+	/**
+	 * Installs the agents of a snapshot written by checkpoint(Path).
+	 * The snapshot file is mapped in memory and only its index is read, so the agents
+	 * are installed without being loaded: as for a passivated agent, each agent is loaded,
+	 * and gets a message queue, the first time it is used or a message is sent to it.
+	 * Agents that had pending messages get them back, and are therefore loaded at once.
+	 * The agents keep their ids, names, services and topic subscriptions; an agent whose
+	 * id is already installed in the context is skipped.
+	 * @param path the snapshot file
+	 * @return the number of agents installed
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public final int restore(Path path) throws IOException {
+		ContextSnapshot snapshot = ContextSnapshot.open( path );
+		ContextSnapshot.Index index = snapshot.getIndex();
+		int count = snapshot.getAgentCount();
+		AgentProxy proxies[] = new AgentProxy[ count ];
+		int restoredIDs[] = new int[ count ];
+		AgentProxy restoredProxies[] = new AgentProxy[ count ];
+		int restored = 0;
+		
+		synchronized( this ){
+			for( int i = 0; i < count; i++ ){
+				int agentID = snapshot.getAgentID( i );
+				if( installedProxies.containsKey( agentID ) ){
+					logger.error( String.format( "[CONTEXT %s] = restore: agent %d is already installed, it is not restored", name, agentID ) );
+					continue;
+				}
+				
+				String agentName = index.names[ i ] < 0 ? null : index.strings[ index.names[ i ] ];
+				String clazz = index.strings[ index.classes[ i ] ];
+				MailboxConfiguration mailbox = index.mailboxRefs[ i ] < 0 ? null : index.mailboxes[ index.mailboxRefs[ i ] ];
+				proxies[ i ] = new AgentProxy( this, snapshot, agentID, agentName, clazz, mailbox, index.throughputs[ i ] );
+				directory.addAgent( agentID, agentName, clazz );
+				
+				restoredIDs[ restored ] = agentID;
+				restoredProxies[ restored ] = proxies[ i ];
+				restored++;
+			}
+			
+			installedProxies.putAll( Arrays.copyOf( restoredIDs, restored ), Arrays.copyOf( restoredProxies, restored ) );
+			for( Map.Entry<String, int[]> service : index.services.entrySet() )
+				for( int agentID : service.getValue() )
+					if( isRestored( snapshot, proxies, agentID ) )
+						directory.registerService( agentID, service.getKey() );
+			
+			for( Map.Entry<String, int[]> subscription : index.subscriptions.entrySet() )
+				for( int agentID : subscription.getValue() )
+					if( isRestored( snapshot, proxies, agentID ) )
+						topics.subscribe( agentID, subscription.getKey() );
+		}
+		
+		// ids are sorted, so the last one of each node is the highest of that node
+		for( int i = 0; i < count; i++ )
+			if( i == count - 1 || AgentID.getNode( snapshot.getAgentID( i ) ) != AgentID.getNode( snapshot.getAgentID( i + 1 ) ) )
+				Agent.reserveAgentID( snapshot.getAgentID( i ) );
+		snapshot.releaseIndex();
+		
+		for( int i = 0; i < count; i++ )
+			if( proxies[ i ] != null && snapshot.hasMessages( i ) )
+				for( Message message : snapshot.loadMessages( i ) )
+					proxies[ i ].handleMessage( message );
+		
+		if( logger.isDebugEnabled() )
+			logger.debug( String.format( "[CONTEXT %s] = restore: %d agents installed from %s", name, restored, path ) );
+		return restored;
+	}
+	
+	/**
+	 * Tells if an agent has been installed from a snapshot.
+	 * @param snapshot the snapshot
+	 * @param proxies the installed proxies, indexed by position in the snapshot
+	 * @param agentID the id of the agent
+	 * @return true if the agent has been installed
+	 */
+	private static boolean isRestored(ContextSnapshot snapshot, AgentProxy proxies[], int agentID){
+		int position = snapshot.indexOf( agentID );
+		return position >= 0 && proxies[ position ] != null;
 	}
 	
 	/**
@@ -188,13 +1046,37 @@ public class Context {
 			return false;
 		}
 		
-		// send a message to kill the agent
-		IAgentProxy proxy = getAgentProxy( agentID );
-		proxy.handleMessage(  new Message( MessagePriority.PRIORITY_ADMIN, "kill", MessageType.TYPE_SHUTDOWN ) );
+		// a passivated agent is dropped from the store without loading it, otherwise
+		// send a message to kill the agent, then tell the scheduler that
+		// the agent queue will not be used anymore
+		AgentProxy proxy = installedProxies.get( agentID );
+		String agentName = null;
+		String agentClass = null;
+		String passivated[] = proxy.discard();
+		if( passivated != null ){
+			agentName  = passivated[ 0 ];
+			agentClass = passivated[ 1 ];
+		}
+		else{
+			Agent agent = proxy.getMyOwningAgent();
+			proxy.handleMessage( SHUTDOWN_MESSAGE );
+			AbstractMessageQueue queue = proxy.getMessageQueue();
+			if( queue != null && queue.getScheduler() != null )
+				queue.getScheduler().unregister( queue );
+			if( agent != null ){
+				agentName  = agent.getName();
+				agentClass = agent.getClass().getName();
+			}
+		}
 		
 		// now remove the agent from the proxy map, so that it is no more installed
 		logger.debug( String.format( "[CONTEXT %s] = killAgent: step 1 = Deinstalling agent %d and its proxy", name, agentID) );
 		installedProxies.remove( agentID );
+		topics.unsubscribeAll( agentID );
+		if( agentClass != null )
+			directory.removeAgent( agentID, agentName, agentClass );
+		if( metrics != null )
+			metrics.agentRemoved( agentID );
 		return true;
 /*		
 		// fase 1: rimuovo l'agente dalle tabelle, così nessuno può più mandargli
@@ -220,7 +1102,7 @@ public class Context {
 	 * agent has failed to be killed, and the kill action has not continued)
 	 */
 	public final synchronized boolean killAll(){
-		for( int agentID : installedProxies.keySet() )
+		for( int agentID : installedProxies.ids() )
 			if( ! killAgent( agentID ) )
 				return false;
 		
@@ -236,22 +1118,140 @@ public class Context {
 		return name;
 	}
 	
+	/**
+	 * Tells if the agents of this context use lock-free message queues.
+	 * @return true if lock-free message queues are used
+	 */
+	public final boolean isLockFreeMailboxes() {
+		return lockFreeMailboxes;
+	}
 	
 	/**
-	 * Provides an array of all the installed agent proxy ids known at this
-	 * time.
-	 * @return the array of ids
+	 * Selects the kind of message queue for the agents created from now on.
+	 * Lock-free queues do not serialize the senders on a monitor, and are therefore
+	 * suited for agents that receive messages from many other agents at the same time.
+	 * @param lockFreeMailboxes true to use lock-free message queues
+	 */
+	public final void setLockFreeMailboxes(boolean lockFreeMailboxes) {
+		this.lockFreeMailboxes = lockFreeMailboxes;
+	}
+	
+	/**
+	 * Returns the max number of messages an agent processes each time it is scheduled.
+	 * @return the throughput
+	 */
+	public final int getThroughput() {
+		return throughput;
+	}
+	
+	/**
+	 * Sets the max number of messages an agent created from now on processes each time
+	 * it is scheduled. Such messages are delivered to the agent as a single batch, so an
+	 * higher throughput reduces the dispatching overhead while a lower one gives a fairer
+	 * share of the threads to the agents.
+	 * @param throughput the number of messages, must be greater than zero
+	 */
+	public final void setThroughput(int throughput) {
+		if( throughput <= 0 )
+			throw new IllegalArgumentException( "The throughput must be greater than zero" );
+		
+		this.throughput = throughput;
+	}
+	
+	/**
+	 * Returns the node of the agents created by this context.
+	 * @return the node id
+	 */
+	public final int getNodeID() {
+		return nodeID;
+	}
+	
+	/**
+	 * Sets the node of the agents created by this context from now on. By default
+	 * it is the node of the virtual machine, many contexts of the same virtual machine
+	 * can act as different nodes to simulate a cluster.
+	 * @param nodeID the node id, between 0 and AgentID.MAX_NODES - 1
+	 */
+	public final void setNodeID(int nodeID) {
+		if( nodeID < 0 || nodeID >= AgentID.MAX_NODES )
+			throw new IllegalArgumentException( "Not a valid node: " + nodeID );
+		
+		this.nodeID = nodeID;
+	}
+	
+	/**
+	 * Tells if the metrics of this context are enabled.
+	 * @return true if the metrics are collected
 	 */
-	public synchronized int[] getInstalledAgentProxyIDs(){
-		if( installedProxies.isEmpty() )
-			return new int[0];
+	public final boolean isMetricsEnabled() {
+		return metrics != null;
+	}
+	
+	/**
+	 * Starts or stops collecting the metrics of this context and of its agents (see
+	 * ContextMetrics), that are exposed as management beans. The metrics can also be
+	 * enabled for all the contexts by the flap.metrics system property.
+	 * When the metrics are disabled the agents do not pay any measurement.
+	 * @param enabled true to collect the metrics
+	 */
+	public final synchronized void setMetricsEnabled(boolean enabled) {
+		if( enabled == ( metrics != null ) )
+			return;
 		
-		int ids[] = new int[ installedProxies.size() ];
-		int i = 0;
-		for( int currentID : installedProxies.keySet() )
-			ids[ i++ ] = currentID;
+		ContextMetrics newMetrics = enabled ? new ContextMetrics( this ) : null;
+		if( metrics != null )
+			metrics.unregister();
 		
-		return ids;
+		metrics = newMetrics;
+		installedProxies.forEach( new MetricsAttachment( newMetrics ) );
+		if( newMetrics != null )
+			newMetrics.register();
+	}
+	
+	/**
+	 * Provides the metrics of this context.
+	 * @return the metrics, null if disabled
+	 */
+	public final ContextMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Gives the queues of the installed agents new metrics, or removes them.
+	 */
+	private static final class MetricsAttachment implements ObjIntConsumer<AgentProxy> {
+		
+		private final ContextMetrics contextMetrics;
+		
+		MetricsAttachment(ContextMetrics contextMetrics){
+			super();
+			this.contextMetrics = contextMetrics;
+		}
+		
+		@Override
+		public void accept(AgentProxy proxy, int agentID){
+			AbstractMessageQueue queue = proxy.getMessageQueue();
+			if( queue != null )
+				queue.metrics = contextMetrics == null ? null : new AgentMetrics( contextMetrics, queue );
+		}
+	}
+	
+	/**
+	 * Returns the scheduler that runs the agents of this context.
+	 * @return the scheduler
+	 */
+	public final IScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	
+	/**
+	 * Provides an array of all the installed agent proxy ids known at this
+	 * time. This method does not lock the context.
+	 * @return the array of ids
+	 */
+	public int[] getInstalledAgentProxyIDs(){
+		return installedProxies.ids();
 	}
 	
 	
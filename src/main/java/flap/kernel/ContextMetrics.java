@@ -0,0 +1,449 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.Agent;
+
+/**
+ * The metrics of a context and of its agents, exposed as management beans.
+ * The context metrics are registered as flap:type=Context,name=the context name, while
+ * the metrics of an agent are registered as flap:type=Agent,context=the context name,id=the
+ * agent id only when asked (see exposeAgent), since registering thousands of beans
+ * would be useless and expensive; the hottest agents are found with getHottestAgents.
+ *
+ * All the counters shared by the agents are striped, so that agents running on
+ * different threads do not contend to update them. The counters are cumulative and
+ * reading them has no side effect, so that many clients can read the metrics at once;
+ * a client computes the rates over its own interval from two readings.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class ContextMetrics implements ContextMetricsMBean {
+
+	/**
+	 * The logger of all the context metrics.
+	 */
+	private static Log logger = LogFactory.getLog( ContextMetrics.class );
+
+	/**
+	 * The context the metrics belong to.
+	 */
+	private final Context context;
+
+	/**
+	 * The number of messages stored in the queues of the agents.
+	 */
+	private final LongAdder enqueued = new LongAdder();
+
+	/**
+	 * The number of messages handled by the agents.
+	 */
+	private final LongAdder processed = new LongAdder();
+
+	/**
+	 * The time the agents have spent handling messages, in nanoseconds.
+	 */
+	private final LongAdder busyNanos = new LongAdder();
+
+	/**
+	 * The time of the activations.
+	 */
+	private final LatencyHistogram processingTime = new LatencyHistogram();
+
+	/**
+	 * The time the agents have waited for a thread.
+	 */
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+
+	/**
+	 * The name the metrics are registered with, null if not registered.
+	 */
+	private ObjectName objectName = null;
+
+	/**
+	 * The names of the agent metrics that have been registered, by agent id.
+	 */
+	private final Map<Integer, ObjectName> exposedAgents = new ConcurrentHashMap<Integer, ObjectName>();
+
+	/**
+	 * When the metrics have been enabled, in nanoseconds.
+	 */
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Builds the metrics of a context.
+	 * @param context the context
+	 */
+	ContextMetrics( Context context ){
+		super();
+		this.context = context;
+	}
+
+	/**
+	 * Counts a message stored in the queue of an agent.
+	 */
+	final void messageEnqueued(){
+		enqueued.increment();
+	}
+
+	/**
+	 * Counts an activation of an agent.
+	 * @param waitNanos how long the agent has waited for a thread
+	 * @param processingNanos how long the activation has lasted
+	 * @param messages the number of messages handled
+	 */
+	final void activationCompleted( long waitNanos, long processingNanos, int messages ){
+		processed.add( messages );
+		busyNanos.add( processingNanos );
+		processingTime.record( processingNanos );
+		queueWait.record( waitNanos );
+	}
+
+	/**
+	 * Registers these metrics in the platform management server.
+	 * If another context with the same name has registered its metrics, an instance
+	 * number is added to the name.
+	 */
+	final synchronized void register(){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String name = "flap:type=Context,name=" + ObjectName.quote( context.getName() );
+		try{
+			for( int instance = 1; objectName == null; instance++ ){
+				ObjectName candidate = new ObjectName( instance == 1 ? name : name + ",instance=" + instance );
+				try{
+					server.registerMBean( this, candidate );
+					objectName = candidate;
+				}catch( InstanceAlreadyExistsException e ){
+					// try the next instance number
+				}
+			}
+		}catch( JMException e ){
+			logger.error( "Cannot register the metrics of the context " + context.getName(), e );
+		}
+	}
+
+	/**
+	 * Removes these metrics and the ones of the agents from the platform management server.
+	 */
+	final synchronized void unregister(){
+		for( Integer agentID : exposedAgents.keySet() )
+			agentRemoved( agentID );
+
+		if( objectName != null ){
+			unregister( objectName );
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Removes the metrics of an agent from the platform management server, if they
+	 * have been registered.
+	 * @param agentID the id of the agent
+	 */
+	final void agentRemoved( int agentID ){
+		ObjectName name = exposedAgents.remove( agentID );
+		if( name != null )
+			unregister( name );
+	}
+
+	/**
+	 * Removes a bean from the platform management server.
+	 * @param name the name of the bean
+	 */
+	private static void unregister( ObjectName name ){
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( name );
+		}catch( JMException e ){
+			logger.error( "Cannot unregister the bean " + name, e );
+		}
+	}
+
+	/**
+	 * Provides the name these metrics are registered with.
+	 * @return the name, null if not registered
+	 */
+	public final synchronized ObjectName getObjectName(){
+		return objectName;
+	}
+
+	/**
+	 * Provides the histogram of the time of the activations.
+	 * @return the histogram, in nanoseconds
+	 */
+	public final LatencyHistogram getProcessingTime(){
+		return processingTime;
+	}
+
+	/**
+	 * Provides the histogram of the time the agents have waited for a thread.
+	 * @return the histogram, in nanoseconds
+	 */
+	public final LatencyHistogram getQueueWait(){
+		return queueWait;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getAgentCount()
+	 */
+	@Override
+	public final int getAgentCount(){
+		return context.installedProxies.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getLoad()
+	 */
+	@Override
+	public final long getLoad(){
+		return context.getLoad();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getEnqueuedMessages()
+	 */
+	@Override
+	public final long getEnqueuedMessages(){
+		return enqueued.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getProcessedMessages()
+	 */
+	@Override
+	public final long getProcessedMessages(){
+		return processed.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getEnqueueRate()
+	 */
+	@Override
+	public final double getEnqueueRate(){
+		return enqueued.sum() * (double) TimeUnit.SECONDS.toNanos( 1 ) / Math.max( System.nanoTime() - startTime, 1 );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getElapsedMicros()
+	 */
+	@Override
+	public final long getElapsedMicros(){
+		return TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - startTime );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getBusyMicros()
+	 */
+	@Override
+	public final long getBusyMicros(){
+		return TimeUnit.NANOSECONDS.toMicros( busyNanos.sum() );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getSchedulerThreads()
+	 */
+	@Override
+	public final int getSchedulerThreads(){
+		IScheduler scheduler = context.getScheduler();
+		if( scheduler instanceof WorkStealingScheduler )
+			return ( (WorkStealingScheduler) scheduler ).getParallelism();
+		else if( scheduler instanceof ShardedScheduler )
+			return ( (ShardedScheduler) scheduler ).getShardCount();
+		else
+			// virtual threads run on a carrier for each processor
+			return Runtime.getRuntime().availableProcessors();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getSchedulerUtilization()
+	 */
+	@Override
+	public final double getSchedulerUtilization(){
+		double utilization = (double) busyNanos.sum() / Math.max( System.nanoTime() - startTime, 1 ) / getSchedulerThreads();
+		return Math.min( utilization, 1 );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getProcessingP50Micros()
+	 */
+	@Override
+	public final long getProcessingP50Micros(){
+		return TimeUnit.NANOSECONDS.toMicros( processingTime.getPercentile( 50 ) );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getProcessingP99Micros()
+	 */
+	@Override
+	public final long getProcessingP99Micros(){
+		return TimeUnit.NANOSECONDS.toMicros( processingTime.getPercentile( 99 ) );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getQueueWaitP50Micros()
+	 */
+	@Override
+	public final long getQueueWaitP50Micros(){
+		return TimeUnit.NANOSECONDS.toMicros( queueWait.getPercentile( 50 ) );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getQueueWaitP99Micros()
+	 */
+	@Override
+	public final long getQueueWaitP99Micros(){
+		return TimeUnit.NANOSECONDS.toMicros( queueWait.getPercentile( 99 ) );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#getHottestAgents(int)
+	 */
+	@Override
+	public final String[] getHottestAgents( int count ){
+		// the survey is sized by the agents, not by the (maybe huge) count asked for
+		HotAgents survey = new HotAgents( Math.max( Math.min( count, context.installedProxies.size() ), 0 ) );
+		context.installedProxies.forEach( survey );
+
+		String lines[] = new String[ survey.size ];
+		for( int i = 0; i < survey.size; i++ ){
+			AgentMetrics metrics = survey.metrics[ i ];
+			lines[ i ] = String.format( "%d %s: %d us busy, %d messages, mailbox %d, mean wait %d us",
+										survey.agentIDs[ i ],
+										survey.names[ i ],
+										TimeUnit.NANOSECONDS.toMicros( metrics.getProcessingNanos() ),
+										metrics.getProcessedMessages(),
+										metrics.getMailboxDepth(),
+										metrics.getMeanQueueWaitMicros() );
+		}
+
+		return lines;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.ContextMetricsMBean#exposeAgent(int)
+	 */
+	@Override
+	public final boolean exposeAgent( int agentID ){
+		AgentProxy proxy = context.installedProxies.get( agentID );
+		AbstractMessageQueue queue = proxy == null ? null : proxy.getMessageQueue();
+		AgentMetrics metrics = queue == null ? null : queue.metrics;
+		if( metrics == null || exposedAgents.containsKey( agentID ) )
+			return false;
+
+		try{
+			ObjectName name = new ObjectName( "flap:type=Agent,context=" + ObjectName.quote( context.getName() ) + ",id=" + agentID );
+			ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, name );
+			exposedAgents.put( agentID, name );
+			return true;
+		}catch( JMException e ){
+			logger.error( "Cannot register the metrics of the agent " + agentID, e );
+			return false;
+		}
+	}
+
+	/**
+	 * The survey of the agents that have been busy the longest.
+	 */
+	private static final class HotAgents implements ObjIntConsumer<AgentProxy> {
+
+		private final int agentIDs[];
+
+		private final String names[];
+
+		private final AgentMetrics metrics[];
+
+		private int size = 0;
+
+		HotAgents( int count ){
+			super();
+			agentIDs = new int[ count ];
+			names    = new String[ count ];
+			metrics  = new AgentMetrics[ count ];
+		}
+
+		@Override
+		public void accept( AgentProxy proxy, int agentID ){
+			AbstractMessageQueue queue = proxy.getMessageQueue();
+			AgentMetrics current = queue == null ? null : queue.metrics;
+			if( current == null || agentIDs.length == 0 )
+				return;
+
+			// keep the agents sorted, the hottest first
+			long busy = current.getProcessingNanos();
+			int position = size;
+			while( position > 0 && metrics[ position - 1 ].getProcessingNanos() < busy )
+				position--;
+			if( position == agentIDs.length )
+				return;
+
+			int moved = Math.min( size, agentIDs.length - 1 ) - position;
+			System.arraycopy( agentIDs, position, agentIDs, position + 1, moved );
+			System.arraycopy( names, position, names, position + 1, moved );
+			System.arraycopy( metrics, position, metrics, position + 1, moved );
+
+			Agent agent = proxy.getResidentAgent();
+			agentIDs[ position ] = agentID;
+			names[ position ]    = agent == null ? null : agent.getName();
+			metrics[ position ]  = current;
+			size = Math.min( size + 1, agentIDs.length );
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+
+/**
+ * The management interface of the metrics of a context.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public interface ContextMetricsMBean {
+
+	/**
+	 * Provides the number of agents installed in the context.
+	 * @return the number of agents
+	 */
+	public abstract int getAgentCount();
+
+	/**
+	 * Provides the number of messages waiting in the queues of the agents.
+	 * @return the number of messages
+	 */
+	public abstract long getLoad();
+
+	/**
+	 * Provides the number of messages stored in the queues of the agents.
+	 * @return the number of messages
+	 */
+	public abstract long getEnqueuedMessages();
+
+	/**
+	 * Provides the number of messages the agents have handled.
+	 * @return the number of messages
+	 */
+	public abstract long getProcessedMessages();
+
+	/**
+	 * Provides how many messages per second have been stored in the queues of the
+	 * agents since the metrics have been enabled. The rate over an interval is the
+	 * increase of the enqueued messages divided by the increase of the elapsed time.
+	 * @return the messages per second
+	 */
+	public abstract double getEnqueueRate();
+
+	/**
+	 * Provides the time elapsed since the metrics have been enabled.
+	 * @return the time in microseconds
+	 */
+	public abstract long getElapsedMicros();
+
+	/**
+	 * Provides the time the agents have spent handling messages.
+	 * @return the time in microseconds
+	 */
+	public abstract long getBusyMicros();
+
+	/**
+	 * Provides the number of threads of the scheduler of the context.
+	 * @return the number of threads
+	 */
+	public abstract int getSchedulerThreads();
+
+	/**
+	 * Provides the share of the scheduler threads the agents have used since the
+	 * metrics have been enabled. The utilization over an interval is the increase of the
+	 * busy time divided by the increase of the elapsed time and by the scheduler threads.
+	 * @return the utilization, from 0 (idle) to 1 (saturated)
+	 */
+	public abstract double getSchedulerUtilization();
+
+	/**
+	 * Provides the median time of an activation.
+	 * @return the time in microseconds
+	 */
+	public abstract long getProcessingP50Micros();
+
+	/**
+	 * Provides the 99th percentile of the time of an activation.
+	 * @return the time in microseconds
+	 */
+	public abstract long getProcessingP99Micros();
+
+	/**
+	 * Provides the median time an agent waits for a thread once it has messages.
+	 * @return the time in microseconds
+	 */
+	public abstract long getQueueWaitP50Micros();
+
+	/**
+	 * Provides the 99th percentile of the time an agent waits for a thread once it
+	 * has messages.
+	 * @return the time in microseconds
+	 */
+	public abstract long getQueueWaitP99Micros();
+
+	/**
+	 * Describes the agents that have used the threads the most.
+	 * @param count the max number of agents
+	 * @return a line for each agent, the hottest first
+	 */
+	public abstract String[] getHottestAgents( int count );
+
+	/**
+	 * Registers the metrics of an agent as a management bean of their own.
+	 * @param agentID the id of the agent
+	 * @return true if the metrics have been registered
+	 */
+	public abstract boolean exposeAgent( int agentID );
+
+}
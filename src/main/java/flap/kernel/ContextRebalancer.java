@@ -0,0 +1,289 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Moves the busiest agents from the most loaded context to the least loaded one.
+ * The load of a context is the number of messages waiting in the queues of its agents,
+ * so a context whose threads cannot keep up with its agents has an higher load than the
+ * others. When the most loaded context has more than imbalance times the load of the
+ * least loaded one, the agents with the most waiting messages are moved, as long as
+ * moving them makes the two loads closer.
+ *
+ * The contexts are rebalanced each time rebalance() is called, or periodically once
+ * start(long) has been called.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class ContextRebalancer {
+
+	/**
+	 * The default ratio between the highest and the lowest load that triggers a rebalance.
+	 */
+	public static final double DEFAULT_IMBALANCE = 2.0;
+
+	/**
+	 * The default max number of agents moved by each rebalance.
+	 */
+	public static final int DEFAULT_MAX_MIGRATIONS = 16;
+
+	/**
+	 * The default load under which a context is never rebalanced.
+	 */
+	public static final long DEFAULT_MIN_LOAD = 64;
+
+	/**
+	 * The logger of all the rebalancers.
+	 */
+	private static Log logger = LogFactory.getLog( ContextRebalancer.class );
+
+	/**
+	 * The contexts to keep balanced.
+	 */
+	private final List<Context> contexts = new CopyOnWriteArrayList<Context>();
+
+	/**
+	 * The ratio between the highest and the lowest load that triggers a rebalance.
+	 */
+	private volatile double imbalance = DEFAULT_IMBALANCE;
+
+	/**
+	 * The max number of agents moved by each rebalance.
+	 */
+	private volatile int maxMigrations = DEFAULT_MAX_MIGRATIONS;
+
+	/**
+	 * The load under which a context is never rebalanced.
+	 */
+	private volatile long minLoad = DEFAULT_MIN_LOAD;
+
+	/**
+	 * The thread that periodically rebalances the contexts, created when needed.
+	 */
+	private ScheduledExecutorService executor = null;
+
+	/**
+	 * The periodic rebalance, null if not started.
+	 */
+	private ScheduledFuture<?> task = null;
+
+	/**
+	 * Builds a rebalancer for the specified contexts.
+	 * @param contexts the contexts to keep balanced
+	 */
+	public ContextRebalancer( Context... contexts ){
+		super();
+		for( Context context : contexts )
+			addContext( context );
+	}
+
+	/**
+	 * Adds a context to the ones to keep balanced.
+	 * @param context the context
+	 */
+	public final void addContext( Context context ){
+		if( context != null && ! contexts.contains( context ) )
+			contexts.add( context );
+	}
+
+	/**
+	 * Removes a context from the ones to keep balanced.
+	 * @param context the context
+	 */
+	public final void removeContext( Context context ){
+		contexts.remove( context );
+	}
+
+	/**
+	 * Moves the busiest agents from the most loaded context to the least loaded one,
+	 * if their loads are too far apart.
+	 * @return the number of agents moved
+	 */
+	public final synchronized int rebalance(){
+		Context hottest = null;
+		Context coolest = null;
+		long hottestLoad = -1;
+		long coolestLoad = Long.MAX_VALUE;
+		for( Context context : contexts ){
+			long load = context.getLoad();
+			if( load > hottestLoad ){
+				hottest     = context;
+				hottestLoad = load;
+			}
+
+			if( load < coolestLoad ){
+				coolest     = context;
+				coolestLoad = load;
+			}
+		}
+
+		if( hottest == null || hottest == coolest
+				|| hottestLoad < minLoad || hottestLoad < imbalance * Math.max( coolestLoad, 1 ) )
+			return 0;
+
+		int moved = 0;
+		for( int agentID : hottest.getBusiestAgents( maxMigrations ) ){
+			// an agent that has more than half the difference would only move the hot spot
+			long backlog = hottest.getBacklog( agentID );
+			if( backlog == 0 || 2 * backlog > hottestLoad - coolestLoad )
+				continue;
+
+			if( hottest.migrateAgent( agentID, coolest ) ){
+				hottestLoad -= backlog;
+				coolestLoad += backlog;
+				moved++;
+			}
+		}
+
+		if( moved > 0 && logger.isDebugEnabled() )
+			logger.debug( String.format( "%d agents moved from context %s to context %s", moved, hottest.getName(), coolest.getName() ) );
+		return moved;
+	}
+
+	/**
+	 * Starts rebalancing the contexts periodically.
+	 * @param periodMillis the time between two rebalances, in milliseconds
+	 */
+	public final synchronized void start( long periodMillis ){
+		stop();
+		if( executor == null )
+			executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable runnable){
+					Thread thread = new Thread( runnable, "RebalancerThread" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+
+		task = executor.scheduleWithFixedDelay( new Runnable(){
+			@Override
+			public void run(){
+				try{
+					rebalance();
+				}catch( RuntimeException e ){
+					logger.error( "Exception caught while rebalancing the contexts", e );
+				}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Stops the periodic rebalance.
+	 */
+	public final synchronized void stop(){
+		if( task != null ){
+			task.cancel( false );
+			task = null;
+		}
+	}
+
+	/**
+	 * Returns the ratio between the highest and the lowest load that triggers a rebalance.
+	 * @return the imbalance
+	 */
+	public final double getImbalance(){
+		return imbalance;
+	}
+
+	/**
+	 * Sets the ratio between the highest and the lowest load that triggers a rebalance.
+	 * @param imbalance the imbalance, must be greater than one
+	 */
+	public final void setImbalance( double imbalance ){
+		if( imbalance <= 1 )
+			throw new IllegalArgumentException( "The imbalance must be greater than one" );
+
+		this.imbalance = imbalance;
+	}
+
+	/**
+	 * Returns the max number of agents moved by each rebalance.
+	 * @return the max number of migrations
+	 */
+	public final int getMaxMigrations(){
+		return maxMigrations;
+	}
+
+	/**
+	 * Sets the max number of agents moved by each rebalance.
+	 * @param maxMigrations the max number of migrations, must be greater than zero
+	 */
+	public final void setMaxMigrations( int maxMigrations ){
+		if( maxMigrations <= 0 )
+			throw new IllegalArgumentException( "The max number of migrations must be greater than zero" );
+
+		this.maxMigrations = maxMigrations;
+	}
+
+	/**
+	 * Returns the load under which a context is never rebalanced.
+	 * @return the min load
+	 */
+	public final long getMinLoad(){
+		return minLoad;
+	}
+
+	/**
+	 * Sets the load under which a context is never rebalanced.
+	 * @param minLoad the min load
+	 */
+	public final void setMinLoad( long minLoad ){
+		this.minLoad = minLoad;
+	}
+
+}
@@ -0,0 +1,785 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.Agent;
+import flap.messaging.Message;
+import flap.messaging.OverflowPolicy;
+
+/**
+ * A checkpoint of the agents of a context, stored in a memory-mapped file.
+ * The file starts with a short header, followed by a record for each agent and by
+ * the index of the records:
+ * <ul>
+ * <li>the header holds a magic number, the format version, the number of agents and
+ * the position of the index;</li>
+ * <li>the record of an agent holds the serialized agent followed by its serialized
+ * pending messages, if any;</li>
+ * <li>the index holds a table of the strings and of the mailbox configurations, the
+ * position and the description of each record sorted by agent id, the registered
+ * services and the topic subscriptions. Names, classes and configurations are stored
+ * once and referenced by their position in the tables.</li>
+ * </ul>
+ * Opening a snapshot reads only the index, while the records are read from the mapped
+ * file when an agent is loaded, so restoring a context does not deserialize any agent.
+ * A snapshot can be up to 2 GB long.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class ContextSnapshot implements AgentStore {
+
+	/**
+	 * The first bytes of a snapshot file.
+	 */
+	private static final int MAGIC = 0x464C4150;
+
+	/**
+	 * The version of the format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The length of the header.
+	 */
+	private static final int HEADER_SIZE = 32;
+
+	/**
+	 * A reference to a missing string or configuration.
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * The logger of all the snapshots.
+	 */
+	private static Log logger = LogFactory.getLog( ContextSnapshot.class );
+
+	/**
+	 * The mapped file.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The ids of the agents, sorted.
+	 */
+	private final int ids[];
+
+	/**
+	 * Where the record of each agent starts.
+	 */
+	private final int offsets[];
+
+	/**
+	 * The length of the serialized agents.
+	 */
+	private final int stateLengths[];
+
+	/**
+	 * The length of the serialized pending messages, zero if none.
+	 */
+	private final int messagesLengths[];
+
+	/**
+	 * The description of the agents, needed only while the context is being restored.
+	 */
+	private Index index;
+
+	/**
+	 * The description of the agents, as read from the file.
+	 */
+	static final class Index {
+
+		String strings[];
+
+		MailboxConfiguration mailboxes[];
+
+		int names[];
+
+		int classes[];
+
+		int mailboxRefs[];
+
+		int throughputs[];
+
+		Map<String, int[]> services;
+
+		Map<String, int[]> subscriptions;
+	}
+
+
+	/**
+	 * Builds a snapshot from its mapped file.
+	 * @param buffer the file
+	 * @param count the number of agents
+	 */
+	private ContextSnapshot( ByteBuffer buffer, int count ){
+		super();
+		this.buffer     = buffer;
+		ids             = new int[ count ];
+		offsets         = new int[ count ];
+		stateLengths    = new int[ count ];
+		messagesLengths = new int[ count ];
+		index           = new Index();
+	}
+
+	/**
+	 * Maps a snapshot file and reads its index.
+	 * @param path the file
+	 * @return the snapshot
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	static ContextSnapshot open( Path path ) throws IOException {
+		MappedByteBuffer buffer = null;
+		FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+		try{
+			if( channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_SIZE )
+				throw new IOException( path + " is not a snapshot" );
+
+			// the mapping stays valid once the channel is closed
+			buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+		}finally{
+			channel.close();
+		}
+
+		if( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION )
+			throw new IOException( path + " is not a snapshot" );
+
+		ContextSnapshot snapshot = new ContextSnapshot( buffer, buffer.getInt( 8 ) );
+		ByteBuffer indexBuffer = buffer.duplicate();
+		indexBuffer.position( (int) buffer.getLong( 12 ) );
+		snapshot.readIndex( new DataInputStream( new BufferInputStream( indexBuffer ) ) );
+		return snapshot;
+	}
+
+	/**
+	 * Reads the index of the snapshot.
+	 * @param in the stream positioned at the index
+	 * @throws IOException if the index cannot be read
+	 */
+	private void readIndex( DataInputStream in ) throws IOException {
+		index.strings = new String[ in.readInt() ];
+		for( int i = 0; i < index.strings.length; i++ )
+			index.strings[ i ] = in.readUTF();
+
+		OverflowPolicy policies[] = OverflowPolicy.values();
+		index.mailboxes = new MailboxConfiguration[ in.readInt() ];
+		for( int i = 0; i < index.mailboxes.length; i++ ){
+			MailboxConfiguration mailbox = new MailboxConfiguration( in.readInt(), policies[ in.readInt() ] );
+			mailbox.setBlockTimeout( in.readLong() );
+			int spillDirectory = in.readInt();
+			if( spillDirectory != NONE )
+				mailbox.setSpillDirectory( new File( index.strings[ spillDirectory ] ) );
+
+			index.mailboxes[ i ] = mailbox;
+		}
+
+		int count = ids.length;
+		index.names       = new int[ count ];
+		index.classes     = new int[ count ];
+		index.mailboxRefs = new int[ count ];
+		index.throughputs = new int[ count ];
+		for( int i = 0; i < count; i++ ){
+			ids[ i ]                = in.readInt();
+			offsets[ i ]            = in.readInt();
+			stateLengths[ i ]       = in.readInt();
+			messagesLengths[ i ]    = in.readInt();
+			index.names[ i ]        = in.readInt();
+			index.classes[ i ]      = in.readInt();
+			index.mailboxRefs[ i ]  = in.readInt();
+			index.throughputs[ i ]  = in.readInt();
+		}
+
+		index.services      = readIdTable( in, index.strings );
+		index.subscriptions = readIdTable( in, index.strings );
+	}
+
+	/**
+	 * Reads a table of ids indexed by string.
+	 * @param in the stream
+	 * @param strings the table of the strings
+	 * @return the table
+	 * @throws IOException if the table cannot be read
+	 */
+	private static Map<String, int[]> readIdTable( DataInputStream in, String strings[] ) throws IOException {
+		int size = in.readInt();
+		Map<String, int[]> table = new HashMap<String, int[]>( size * 2 );
+		for( int i = 0; i < size; i++ ){
+			String key = strings[ in.readInt() ];
+			int agentIDs[] = new int[ in.readInt() ];
+			for( int j = 0; j < agentIDs.length; j++ )
+				agentIDs[ j ] = in.readInt();
+
+			table.put( key, agentIDs );
+		}
+
+		return table;
+	}
+
+	/**
+	 * Provides the number of agents in the snapshot.
+	 * @return the number of agents
+	 */
+	final int getAgentCount(){
+		return ids.length;
+	}
+
+	/**
+	 * Provides the id of an agent.
+	 * @param position the position of the agent in the snapshot
+	 * @return the id
+	 */
+	final int getAgentID( int position ){
+		return ids[ position ];
+	}
+
+	/**
+	 * Provides the position of an agent in the snapshot.
+	 * @param agentID the id of the agent
+	 * @return the position, a negative value if the agent is not in the snapshot
+	 */
+	final int indexOf( int agentID ){
+		return Arrays.binarySearch( ids, agentID );
+	}
+
+	/**
+	 * Provides the description of the agents. It is available until
+	 * releaseIndex() is called.
+	 * @return the index
+	 */
+	final Index getIndex(){
+		return index;
+	}
+
+	/**
+	 * Discards the description of the agents, once the context has been restored.
+	 */
+	final void releaseIndex(){
+		index = null;
+	}
+
+	/**
+	 * Tells if an agent had pending messages.
+	 * @param position the position of the agent in the snapshot
+	 * @return true if the agent has messages to handle
+	 */
+	final boolean hasMessages( int position ){
+		return messagesLengths[ position ] > 0;
+	}
+
+	/**
+	 * Reads the pending messages of an agent.
+	 * @param position the position of the agent in the snapshot
+	 * @return the messages in the order they must be delivered
+	 * @throws IOException if the messages cannot be read
+	 */
+	final Message[] loadMessages( int position ) throws IOException {
+		if( messagesLengths[ position ] == 0 )
+			return new Message[0];
+
+		try{
+			return (Message[]) deserialize( offsets[ position ] + stateLengths[ position ], messagesLengths[ position ] );
+		}catch( ClassNotFoundException e ){
+			throw new IOException( "Cannot read the messages of the agent " + ids[ position ], e );
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentStore#load(int)
+	 */
+	@Override
+	public final Agent load( int agentID ){
+		int position = Arrays.binarySearch( ids, agentID );
+		if( position < 0 )
+			return null;
+
+		try{
+			return (Agent) deserialize( offsets[ position ], stateLengths[ position ] );
+		}catch( IOException | ClassNotFoundException e ){
+			logger.error( String.format( "Cannot restore the agent %d", agentID ), e );
+			return null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentStore#read(int)
+	 */
+	@Override
+	public final byte[] read( int agentID ){
+		int position = Arrays.binarySearch( ids, agentID );
+		if( position < 0 )
+			return null;
+
+		byte state[] = new byte[ stateLengths[ position ] ];
+		ByteBuffer record = buffer.duplicate();
+		record.position( offsets[ position ] );
+		record.get( state );
+		return state;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentStore#discard(int)
+	 */
+	@Override
+	public final void discard( int agentID ){
+		// the snapshot can be restored again, so its records are never removed
+	}
+
+	/**
+	 * Reads an object from the mapped file.
+	 * @param offset where the object starts
+	 * @param length the length of the serialized object
+	 * @return the object
+	 */
+	private Object deserialize( int offset, int length ) throws IOException, ClassNotFoundException {
+		ByteBuffer record = buffer.duplicate();
+		record.position( offset );
+		record.limit( offset + length );
+		ObjectInputStream in = new ObjectInputStream( new BufferInputStream( record ) );
+		try{
+			return in.readObject();
+		}finally{
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Writes a snapshot.
+	 * The snapshot is written to a temporary file that replaces the target only when
+	 * committed, so a snapshot that is being read is never changed.
+	 */
+	static final class Writer implements Closeable {
+
+		/**
+		 * The file to write.
+		 */
+		private final Path target;
+
+		/**
+		 * The file being written.
+		 */
+		private final Path temporary;
+
+		/**
+		 * The channel of the temporary file.
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * The output to the mapped file.
+		 */
+		private final MappedOutputStream output;
+
+		/**
+		 * The buffer objects are serialized into, so that their length is known.
+		 */
+		private final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+
+		/**
+		 * The strings of the index, with their position.
+		 */
+		private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+		/**
+		 * The mailbox configurations of the index, with their position.
+		 */
+		private final Map<MailboxConfiguration, Integer> mailboxes = new IdentityHashMap<MailboxConfiguration, Integer>();
+
+		private int count = 0;
+
+		private int ids[] = new int[ 64 ];
+
+		private int offsets[] = new int[ 64 ];
+
+		private int stateLengths[] = new int[ 64 ];
+
+		private int messagesLengths[] = new int[ 64 ];
+
+		private int names[] = new int[ 64 ];
+
+		private int classes[] = new int[ 64 ];
+
+		private int mailboxRefs[] = new int[ 64 ];
+
+		private int throughputs[] = new int[ 64 ];
+
+		/**
+		 * Set once the snapshot has replaced the target.
+		 */
+		private boolean committed = false;
+
+		/**
+		 * Starts a snapshot.
+		 * @param target the file to write
+		 * @throws IOException if the file cannot be created
+		 */
+		Writer( Path target ) throws IOException {
+			super();
+			this.target = target.toAbsolutePath();
+			temporary   = Files.createTempFile( this.target.getParent(), "flap-snapshot", ".tmp" );
+			channel     = FileChannel.open( temporary, StandardOpenOption.READ, StandardOpenOption.WRITE );
+			output      = new MappedOutputStream( channel, HEADER_SIZE );
+		}
+
+		/**
+		 * Serializes an object.
+		 * @param object the object
+		 * @return the bytes of the object
+		 * @throws IOException if the object cannot be serialized
+		 */
+		final byte[] serialize( Object object ) throws IOException {
+			serialized.reset();
+			ObjectOutputStream out = new ObjectOutputStream( serialized );
+			out.writeObject( object );
+			out.close();
+			return serialized.toByteArray();
+		}
+
+		/**
+		 * Writes the record of an agent.
+		 * @param agentID the id of the agent
+		 * @param name the name of the agent, can be null
+		 * @param clazz the fully qualified class name of the agent
+		 * @param mailbox the configuration of the agent queue, null for an unbounded queue
+		 * @param throughput the throughput of the agent queue
+		 * @param state the serialized agent
+		 * @param messages the serialized pending messages, null if none
+		 * @throws IOException if the record cannot be written
+		 */
+		final void writeAgent( int agentID, String name, String clazz, MailboxConfiguration mailbox,
+							   int throughput, byte state[], byte messages[] ) throws IOException {
+			int messagesLength = messages == null ? 0 : messages.length;
+			if( output.position() + state.length + messagesLength > Integer.MAX_VALUE )
+				throw new IOException( "The snapshot is too big" );
+
+			if( count == ids.length )
+				grow();
+
+			ids[ count ]             = agentID;
+			offsets[ count ]         = (int) output.position();
+			stateLengths[ count ]    = state.length;
+			messagesLengths[ count ] = messagesLength;
+			names[ count ]           = stringRef( name );
+			classes[ count ]         = stringRef( clazz );
+			mailboxRefs[ count ]     = mailboxRef( mailbox );
+			throughputs[ count ]     = throughput;
+
+			output.write( state );
+			if( messages != null )
+				output.write( messages );
+
+			count++;
+		}
+
+		/**
+		 * Writes the index and replaces the target with the snapshot.
+		 * @param services the agents offering each service
+		 * @param subscriptions the agents subscribed to each topic
+		 * @throws IOException if the snapshot cannot be written
+		 */
+		final void commit( Map<String, int[]> services, Map<String, int[]> subscriptions ) throws IOException {
+			// strings must be known before the table is written
+			for( String key : services.keySet() )
+				stringRef( key );
+			for( String key : subscriptions.keySet() )
+				stringRef( key );
+
+			long indexOffset = output.position();
+			DataOutputStream out = new DataOutputStream( output );
+			out.writeInt( strings.size() );
+			for( String string : strings.keySet() )
+				out.writeUTF( string );
+
+			MailboxConfiguration configurations[] = new MailboxConfiguration[ mailboxes.size() ];
+			for( Map.Entry<MailboxConfiguration, Integer> entry : mailboxes.entrySet() )
+				configurations[ entry.getValue() ] = entry.getKey();
+
+			out.writeInt( configurations.length );
+			for( MailboxConfiguration mailbox : configurations ){
+				out.writeInt( mailbox.getCapacity() );
+				out.writeInt( mailbox.getOverflowPolicy().ordinal() );
+				out.writeLong( mailbox.getBlockTimeout() );
+				out.writeInt( mailbox.getSpillDirectory() == null ? NONE : strings.get( mailbox.getSpillDirectory().getPath() ) );
+			}
+
+			// the records are listed by agent id, so that an agent is found with a binary search
+			long order[] = new long[ count ];
+			for( int i = 0; i < count; i++ )
+				order[ i ] = ( (long) ids[ i ] << 32 ) | i;
+			Arrays.sort( order );
+
+			for( long key : order ){
+				int i = (int) key;
+				out.writeInt( ids[ i ] );
+				out.writeInt( offsets[ i ] );
+				out.writeInt( stateLengths[ i ] );
+				out.writeInt( messagesLengths[ i ] );
+				out.writeInt( names[ i ] );
+				out.writeInt( classes[ i ] );
+				out.writeInt( mailboxRefs[ i ] );
+				out.writeInt( throughputs[ i ] );
+			}
+
+			writeIdTable( out, services );
+			writeIdTable( out, subscriptions );
+			out.flush();
+			output.close();
+
+			long length = output.position();
+			if( length > Integer.MAX_VALUE )
+				throw new IOException( "The snapshot is too big" );
+
+			MappedByteBuffer header = channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE );
+			header.putInt( MAGIC ).putInt( VERSION ).putInt( count ).putLong( indexOffset );
+			header.force();
+
+			// drop the unused part of the last mapped window
+			channel.truncate( length );
+			channel.close();
+			try{
+				Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}catch( AtomicMoveNotSupportedException e ){
+				Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING );
+			}
+
+			committed = true;
+		}
+
+		/**
+		 * Discards the snapshot if it has not been committed.
+		 */
+		@Override
+		public void close() throws IOException {
+			if( committed )
+				return;
+
+			channel.close();
+			Files.deleteIfExists( temporary );
+		}
+
+		/**
+		 * Writes a table of ids indexed by string.
+		 * @param out the stream
+		 * @param table the table
+		 */
+		private void writeIdTable( DataOutputStream out, Map<String, int[]> table ) throws IOException {
+			out.writeInt( table.size() );
+			for( Map.Entry<String, int[]> entry : table.entrySet() ){
+				out.writeInt( strings.get( entry.getKey() ) );
+				out.writeInt( entry.getValue().length );
+				for( int agentID : entry.getValue() )
+					out.writeInt( agentID );
+			}
+		}
+
+		/**
+		 * Provides the position of a string in the table, adding it if needed.
+		 * @param string the string, can be null
+		 * @return the position or NONE for a null string
+		 */
+		private int stringRef( String string ){
+			if( string == null )
+				return NONE;
+
+			Integer position = strings.get( string );
+			if( position == null ){
+				position = strings.size();
+				strings.put( string, position );
+			}
+
+			return position;
+		}
+
+		/**
+		 * Provides the position of a configuration in the table, adding it if needed.
+		 * @param mailbox the configuration, can be null
+		 * @return the position or NONE for an unbounded queue
+		 */
+		private int mailboxRef( MailboxConfiguration mailbox ){
+			if( mailbox == null || ! mailbox.isBounded() )
+				return NONE;
+
+			Integer position = mailboxes.get( mailbox );
+			if( position == null ){
+				position = mailboxes.size();
+				mailboxes.put( mailbox, position );
+				if( mailbox.getSpillDirectory() != null )
+					stringRef( mailbox.getSpillDirectory().getPath() );
+			}
+
+			return position;
+		}
+
+		/**
+		 * Makes room for more records.
+		 */
+		private void grow(){
+			int length = ids.length * 2;
+			ids             = Arrays.copyOf( ids, length );
+			offsets         = Arrays.copyOf( offsets, length );
+			stateLengths    = Arrays.copyOf( stateLengths, length );
+			messagesLengths = Arrays.copyOf( messagesLengths, length );
+			names           = Arrays.copyOf( names, length );
+			classes         = Arrays.copyOf( classes, length );
+			mailboxRefs     = Arrays.copyOf( mailboxRefs, length );
+			throughputs     = Arrays.copyOf( throughputs, length );
+		}
+	}
+
+
+	/**
+	 * A stream that writes a file through memory-mapped windows, mapping
+	 * the next window when the current one is full.
+	 */
+	private static final class MappedOutputStream extends OutputStream {
+
+		/**
+		 * The length of each window.
+		 */
+		private static final int WINDOW_SIZE = 8 << 20;
+
+		private final FileChannel channel;
+
+		private MappedByteBuffer window = null;
+
+		private long position;
+
+		MappedOutputStream( FileChannel channel, long position ){
+			super();
+			this.channel  = channel;
+			this.position = position;
+		}
+
+		final long position(){
+			return position;
+		}
+
+		@Override
+		public void write( int b ) throws IOException {
+			nextWindow();
+			window.put( (byte) b );
+			position++;
+		}
+
+		@Override
+		public void write( byte b[], int offset, int length ) throws IOException {
+			while( length > 0 ){
+				nextWindow();
+				int chunk = Math.min( length, window.remaining() );
+				window.put( b, offset, chunk );
+				offset   += chunk;
+				length   -= chunk;
+				position += chunk;
+			}
+		}
+
+		/**
+		 * Maps the next window if the current one is full.
+		 */
+		private void nextWindow() throws IOException {
+			if( window != null && window.hasRemaining() )
+				return;
+
+			if( window != null )
+				window.force();
+
+			window = channel.map( FileChannel.MapMode.READ_WRITE, position, WINDOW_SIZE );
+		}
+
+		@Override
+		public void close(){
+			if( window != null )
+				window.force();
+
+			window = null;
+		}
+	}
+
+	/**
+	 * A stream that reads a buffer.
+	 */
+	private static final class BufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		BufferInputStream( ByteBuffer buffer ){
+			super();
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read(){
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read( byte b[], int offset, int length ){
+			if( length == 0 )
+				return 0;
+
+			if( ! buffer.hasRemaining() )
+				return -1;
+
+			length = Math.min( length, buffer.remaining() );
+			buffer.get( b, offset, length );
+			return length;
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.Arrays;
+
+/**
+ * A ring of hashes that shares the keys among a group of members.
+ * Each member is placed on the ring in many points (virtual nodes), and a key
+ * belongs to the member of the first point that follows the hash of the key. This
+ * spreads the keys evenly, and the points of a member depend only on its id, so
+ * rings built for groups that differ by a member move only the keys of such member.
+ *
+ * A ring cannot be changed once built: a new ring is built when the group changes.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class HashRing {
+
+	/**
+	 * The ids of the members.
+	 */
+	private final int members[];
+
+	/**
+	 * The points of the ring, sorted.
+	 */
+	private final int points[];
+
+	/**
+	 * The index of the member of each point.
+	 */
+	private final int owners[];
+
+	/**
+	 * Builds a ring for the specified members.
+	 * @param members the ids of the members, at least one
+	 * @param virtualNodes the number of points of each member on the ring
+	 */
+	public HashRing(int members[], int virtualNodes){
+		super();
+		if( members == null || members.length == 0 )
+			throw new IllegalArgumentException( "A ring needs at least a member" );
+		if( virtualNodes <= 0 )
+			throw new IllegalArgumentException( "Each member needs at least a point on the ring" );
+
+		this.members = members.clone();
+		this.points  = new int[ members.length * virtualNodes ];
+		this.owners  = new int[ points.length ];
+
+		// each key holds the point in the high bits, so sorting the keys sorts the points
+		long keys[] = new long[ points.length ];
+		for( int i = 0; i < members.length; i++ )
+			for( int v = 0; v < virtualNodes; v++ )
+				keys[ i * virtualNodes + v ] = ( (long) mix( mix( members[ i ] ) + v ) << 32 ) | i;
+
+		Arrays.sort( keys );
+		for( int i = 0; i < keys.length; i++ ){
+			points[ i ] = (int) ( keys[ i ] >> 32 );
+			owners[ i ] = (int) keys[ i ];
+		}
+	}
+
+	/**
+	 * Provides the member that owns the specified key.
+	 * @param key the key, can be null
+	 * @return the index of the member in the array the ring has been built with
+	 */
+	public int getOwner(Object key){
+		int hash = mix( key == null ? 0 : key.hashCode() );
+
+		// the first point not lower than the hash, wrapping around the ring
+		int index = Arrays.binarySearch( points, hash );
+		if( index < 0 )
+			index = - index - 1;
+		if( index == points.length )
+			index = 0;
+
+		return owners[ index ];
+	}
+
+	/**
+	 * Provides the id of a member.
+	 * @param index the index of the member
+	 * @return the id of the member
+	 */
+	public int getMember(int index){
+		return members[ index ];
+	}
+
+	/**
+	 * Provides the number of members.
+	 * @return the number of members
+	 */
+	public int getMemberCount(){
+		return members.length;
+	}
+
+	/**
+	 * Spreads the bits of an hash code, so that close hash codes (like the ones of
+	 * consecutive integers) end in distant points of the ring.
+	 * @param hash the hash code
+	 * @return the mixed hash
+	 */
+	static int mix(int hash){
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+}
@@ -0,0 +1,90 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+
+/**
+ * Defines the API of an agent scheduler.
+ * A scheduler is in charge of providing a thread to an agent each time its message
+ * queue has something to process. The message queue asks to be scheduled only when
+ * it switches from idle to active, and the scheduler guarantees that a single thread at
+ * a time works on the same message queue.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public interface IScheduler {
+
+	/**
+	 * Notifies the scheduler that the specified queue is going to use it.
+	 * This is called once when a message queue is attached to the scheduler, before
+	 * any activation of the queue.
+	 * @param queue the message queue attached to this scheduler
+	 */
+	public abstract void register( AbstractMessageQueue queue );
+
+	/**
+	 * Notifies the scheduler that the specified queue will not be scheduled anymore,
+	 * for instance because its agent has been killed. Messages already stored into the
+	 * queue are still processed.
+	 * @param queue the message queue detached from this scheduler
+	 */
+	public abstract void unregister( AbstractMessageQueue queue );
+
+	/**
+	 * Asks the scheduler to process the messages stored in the specified queue.
+	 * This method must never suspend the caller: the queue activation is executed
+	 * as soon as a thread is available.
+	 * @param queue the message queue that has messages to process
+	 */
+	public abstract void schedule( AbstractMessageQueue queue );
+
+	/**
+	 * Stops the scheduler. Messages already scheduled may still be processed, but
+	 * no new activations are accepted after this call.
+	 */
+	public abstract void shutdown();
+
+}
@@ -0,0 +1,165 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations that many threads update at the same time.
+ * Durations are counted in buckets whose bounds are powers of two, from a microsecond
+ * up, so a percentile is known within a factor of two whatever the range of the
+ * durations is. Each bucket is a striped counter, so threads that record durations at
+ * the same time do not contend on the same memory location.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The number of buckets.
+	 */
+	public static final int BUCKETS = 32;
+
+	/**
+	 * The bits of the upper bound of the first bucket, that counts the durations
+	 * shorter than about a microsecond.
+	 */
+	private static final int FIRST_BUCKET_BITS = 10;
+
+	/**
+	 * The counter of each bucket.
+	 */
+	private final LongAdder buckets[] = new LongAdder[ BUCKETS ];
+
+	/**
+	 * The sum of the durations.
+	 */
+	private final LongAdder total = new LongAdder();
+
+	/**
+	 * The longest duration.
+	 */
+	private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+	/**
+	 * Builds an empty histogram.
+	 */
+	public LatencyHistogram(){
+		super();
+		for( int i = 0; i < BUCKETS; i++ )
+			buckets[ i ] = new LongAdder();
+	}
+
+	/**
+	 * Counts a duration.
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record( long nanos ){
+		if( nanos < 0 )
+			nanos = 0;
+
+		int bucket = Math.max( 0, 64 - Long.numberOfLeadingZeros( nanos ) - FIRST_BUCKET_BITS );
+		buckets[ Math.min( bucket, BUCKETS - 1 ) ].increment();
+		total.add( nanos );
+		max.accumulate( nanos );
+	}
+
+	/**
+	 * Provides the number of durations counted.
+	 * @return the number of durations
+	 */
+	public long getCount(){
+		long count = 0;
+		for( LongAdder bucket : buckets )
+			count += bucket.sum();
+
+		return count;
+	}
+
+	/**
+	 * Provides the average duration.
+	 * @return the average in nanoseconds, zero if no duration has been counted
+	 */
+	public long getMean(){
+		long count = getCount();
+		return count == 0 ? 0 : total.sum() / count;
+	}
+
+	/**
+	 * Provides the longest duration.
+	 * @return the longest duration in nanoseconds
+	 */
+	public long getMax(){
+		return max.get();
+	}
+
+	/**
+	 * Provides a percentile of the durations.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the upper bound of the bucket the percentile falls in, in nanoseconds,
+	 * zero if no duration has been counted
+	 */
+	public long getPercentile( double percentile ){
+		long counts[] = new long[ BUCKETS ];
+		long count = 0;
+		for( int i = 0; i < BUCKETS; i++ )
+			count += counts[ i ] = buckets[ i ].sum();
+		if( count == 0 )
+			return 0;
+
+		long rank = (long) Math.ceil( count * Math.min( Math.max( percentile, 0 ), 100 ) / 100 );
+		long seen = 0;
+		for( int i = 0; i < BUCKETS - 1; i++ ){
+			seen += counts[ i ];
+			if( seen >= rank )
+				return Math.min( 1L << ( i + FIRST_BUCKET_BITS ), getMax() );
+		}
+
+		return getMax();
+	}
+
+}
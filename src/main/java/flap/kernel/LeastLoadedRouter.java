@@ -0,0 +1,118 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import flap.agents.IAgentProxy;
+import flap.messaging.Message;
+
+/**
+ * A router that delivers each message to the agent with the fewest messages
+ * waiting in its queue, so that a slow message does not hold up the ones
+ * queued behind it while other agents are idle.
+ * The queues are looked at without locking them, so the choice is a snapshot that
+ * concurrent senders can make stale; the search starts from a different agent
+ * each time, so that idle agents get the messages in turn.
+ * Proxies that are not AgentProxy instances are considered always idle.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class LeastLoadedRouter extends AgentRouter {
+
+	/**
+	 * The number of messages routed so far.
+	 */
+	private volatile int next = 0;
+
+	/**
+	 * The updater of the counter.
+	 */
+	private static final AtomicIntegerFieldUpdater<LeastLoadedRouter> NEXT =
+			AtomicIntegerFieldUpdater.newUpdater( LeastLoadedRouter.class, "next" );
+
+	/**
+	 * Builds a router for the specified agents.
+	 * @param routees the proxies of the agents, at least one
+	 */
+	public LeastLoadedRouter(IAgentProxy... routees){
+		super( routees );
+	}
+
+	/**
+	 * Builds a router for the specified agents of a context.
+	 * @param context the context the agents are installed in
+	 * @param agentIDs the ids of the agents, at least one
+	 */
+	public LeastLoadedRouter(Context context, int agentIDs[]){
+		super( context, agentIDs );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.AgentRouter#select(flap.messaging.Message)
+	 */
+	@Override
+	protected int select(Message msg){
+		int start = ( NEXT.getAndIncrement( this ) & Integer.MAX_VALUE ) % routees.length;
+		int selected = start;
+		int minBacklog = Integer.MAX_VALUE;
+		for( int i = 0; i < routees.length; i++ ){
+			int index = ( start + i ) % routees.length;
+			int backlog = getBacklog( routees[ index ] );
+			if( backlog < minBacklog ){
+				selected = index;
+				minBacklog = backlog;
+
+				// no agent can do better than an empty queue
+				if( backlog == 0 )
+					break;
+			}
+		}
+
+		return selected;
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.io.File;
+
+import flap.messaging.OverflowPolicy;
+
+/**
+ * The configuration of the message queue of an agent.
+ * The configuration tells how many messages can wait in the queue of an agent and
+ * what happens when a message arrives and the queue is full. By default the queue
+ * is unbounded.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class MailboxConfiguration {
+
+	/**
+	 * The capacity of a queue without limits.
+	 */
+	public static final int UNBOUNDED = 0;
+
+	/**
+	 * The max number of (not administrative) messages that can wait in the queue.
+	 */
+	private int capacity = UNBOUNDED;
+
+	/**
+	 * What to do when the queue is full.
+	 */
+	private OverflowPolicy overflowPolicy = OverflowPolicy.OVERFLOW_REJECT;
+
+	/**
+	 * How many milliseconds a sender can wait for the queue to have room,
+	 * used only by the blocking policy.
+	 */
+	private long blockTimeout = 1000;
+
+	/**
+	 * The directory where spilled messages are stored, null means the
+	 * temporary directory of the system.
+	 */
+	private File spillDirectory = null;
+
+
+	/**
+	 * Builds the configuration of an unbounded queue.
+	 */
+	public MailboxConfiguration(){
+		super();
+	}
+
+	/**
+	 * Builds the configuration of a bounded queue.
+	 * @param capacity the max number of messages in the queue
+	 * @param overflowPolicy what to do when the queue is full
+	 */
+	public MailboxConfiguration( int capacity, OverflowPolicy overflowPolicy ){
+		this();
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Tells if the queue has a limited capacity.
+	 * @return true if the queue is bounded
+	 */
+	public final boolean isBounded() {
+		return capacity > UNBOUNDED;
+	}
+
+	/**
+	 * Returns the value of the capacity for the current class instance.
+	 * @return the capacity
+	 */
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Set the capacity value in the current instance.
+	 * @param capacity the capacity to set
+	 */
+	public final void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the value of the overflowPolicy for the current class instance.
+	 * @return the overflowPolicy
+	 */
+	public final OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Set the overflowPolicy value in the current instance.
+	 * @param overflowPolicy the overflowPolicy to set
+	 */
+	public final void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Returns the value of the blockTimeout for the current class instance.
+	 * @return the blockTimeout (milliseconds)
+	 */
+	public final long getBlockTimeout() {
+		return blockTimeout;
+	}
+
+	/**
+	 * Set the blockTimeout value in the current instance.
+	 * @param blockTimeout the blockTimeout to set (milliseconds)
+	 */
+	public final void setBlockTimeout(long blockTimeout) {
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 * Returns the value of the spillDirectory for the current class instance.
+	 * @return the spillDirectory
+	 */
+	public final File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * Set the spillDirectory value in the current instance.
+	 * @param spillDirectory the spillDirectory to set
+	 */
+	public final void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+}
@@ -50,7 +50,6 @@ import java.util.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import flap.messaging.IMessageQueue;
 import flap.messaging.Message;
 import flap.messaging.MessagePriority;
 
@@ -64,64 +63,69 @@ import flap.messaging.MessagePriority;
  * @author Luca Ferrari ferrari.luca (at) unimore.it
  * @version 1.0
  */
-public class MessageQueue implements IMessageQueue {
+public class MessageQueue extends AbstractMessageQueue {
 	
 	/**
 	 * Messages must be kept internally into a queue, that guarantees
 	 * that the right ordering is kept (i.e., a message is not processed before
 	 * a message that arrived before).
 	 * However messages must be kept separated depending on priorities, so the queues
-	 * are split into one for each kind of priority.
+	 * are split into one for each kind of priority, indexed by the priority level.
+	 * The container is created when the first message arrives, and each queue is
+	 * created when the first message of its priority arrives.
 	 */
-	private HashMap<MessagePriority, List<Message> > messageQueues = null;
+	private ArrayDeque<Message> messageQueues[] = null;
 	
 	/**
-	 * The logger of this message queue.
+	 * A bitmap of the not empty queues: the bit at the position of a priority level is set
+	 * if the queue of such priority has messages. Since the highest priority has the lowest
+	 * level, the next queue to process is the lowest set bit.
 	 */
-	private Log logger = LogFactory.getLog( MessageQueue.class );
+	private int occupiedQueues = 0;
 	
 	/**
-	 * The proxy owning the message queue.
+	 * The level of the administrative messages.
 	 */
-	private AgentProxy ownerProxy = null;
+	private static final int ADMIN_LEVEL = MessagePriority.PRIORITY_ADMIN.getLevel();
+	
+	/**
+	 * The logger of all the message queues.
+	 */
+	private static final Log logger = LogFactory.getLog( MessageQueue.class );
 	
 	/**
 	 * Default constructor.
-	 * Creates all the message queues.
 	 */
 	public MessageQueue() {
-		super();
-		
-		// init the message queue container
-		messageQueues = new HashMap<MessagePriority, List<Message>>();
-		
-		// create all the message queues
-		for( MessagePriority priority : MessagePriority.values() )
-			messageQueues.put( priority, new LinkedList<Message>() );
-		
+		this( null );
+	}
+	
+	/**
+	 * Builds a message queue with the specified configuration.
+	 * @param configuration the configuration of the queue, null for an unbounded queue
+	 */
+	public MessageQueue( MailboxConfiguration configuration ) {
+		super( configuration );
 	}
 
 	/* (non-Javadoc)
-	 * @see flap.messaging.IMessageQueue#addMessage(flap.messaging.Message)
+	 * @see flap.kernel.AbstractMessageQueue#storeMessage(flap.messaging.Message)
 	 */
 	@Override
-	public synchronized void addMessage(Message messaggio){
-		if( messaggio == null )	
-			return;		// skip null messages
-		
-	
+	protected synchronized void storeMessage(Message messaggio){
 		// store the message into the right queue depending on its
 		// priority
-		logger.debug( "[MessageQueue] Storing the message into the right queue" );
 		deliverMessageIntoTheRightQueue( messaggio );
-		
-		// get a thread to handle this message
-		logger.debug( "[MessageQueue] Asking a thread for processing the message" );
-		AgentThread thread = AgentThread.getThread();
-		thread.handleMessage( this, ownerProxy.getMyOwningAgent() );
-		
 	}
 	
+	/**
+	 * Builds the container of the queues, with a slot for each priority level.
+	 * @return the empty container
+	 */
+	@SuppressWarnings("unchecked")
+	private static ArrayDeque<Message>[] newMessageQueues(){
+		return (ArrayDeque<Message>[]) new ArrayDeque<?>[ MessagePriority.LEVEL_COUNT ];
+	}
 	
 	/**
 	 * A private service to deliver the message into the right queue
@@ -129,48 +133,98 @@ public class MessageQueue implements IMessageQueue {
 	 * @param msg the message to deliver
 	 */
 	private void deliverMessageIntoTheRightQueue( Message msg ){
+		// init the message queue container, queues are created on demand
+		if( messageQueues == null )
+			messageQueues = newMessageQueues();
+		
 		// get the right queue
-		List<Message> queue = messageQueues.get( msg.getPriority() );
+		int level = msg.getPriority().getLevel();
+		ArrayDeque<Message> queue = messageQueues[ level ];
+		if( queue == null ){
+			queue = new ArrayDeque<Message>();
+			messageQueues[ level ] = queue;
+		}
+		
 		queue.add( msg );
+		occupiedQueues |= 1 << level;
 	}
 	
 	/**
 	 * Provides the next method to be processed.
-	 * The method scans each priority queue in order to find the first not-null message and removes
-	 * it from the queue returning it. The side effect is that the message is no more into the
+	 * The method selects the highest priority queue that has messages and removes
+	 * its head, returning it. The side effect is that the message is no more into the
 	 * queue.
 	 * If no message is found at any priority level, than null is returned.
 	 * @return the next message to process or null if none
 	 */
-	public synchronized Message getNextMessage(){
-		for( MessagePriority priority : MessagePriority.values() ){
-			List<Message> currentQueue = messageQueues.get( priority );
-			if( ! currentQueue.isEmpty( ) ){
-				// get the head and remove it from the list
-				Message currentMessage = currentQueue.remove( 0 );
-				// this is the next message to be processed
-				return currentMessage;
-			}
-				
-		}
+	@Override
+	protected synchronized Message pollMessage(){
+		if( occupiedQueues == 0 )
+			// if here no message has been found in any priority queue
+			return null;
 		
+		return removeHead( Integer.numberOfTrailingZeros( occupiedQueues ) );
+	}
+	
+	/**
+	 * Removes the head of the lowest priority queue that has messages, skipping
+	 * the administrative messages.
+	 * @return true if a message has been removed
+	 */
+	@Override
+	protected synchronized boolean removeOldestMessage(){
+		int userQueues = occupiedQueues & ~( 1 << MessagePriority.PRIORITY_ADMIN.getLevel() );
+		if( userQueues == 0 )
+			return false;
 		
-		// if here no message has been found in any priority queue
-		return null;
-			
-			
+		removeHead( 31 - Integer.numberOfLeadingZeros( userQueues ) ).release();
+		return true;
 	}
 	
 	/**
-	 * Provides the total amount of messages waiting to be processed, without any regard to the
-	 * priority of each message.
-	 * @return the total number of not-yet-processed messages
+	 * Removes the head of a not empty queue, keeping the bitmap up to date.
+	 * Administrative messages are rare, so their queue is released as soon as it
+	 * is empty instead of being kept for the whole agent life.
+	 * @param level the level of the queue
+	 * @return the head of the queue
+	 */
+	private Message removeHead( int level ){
+		ArrayDeque<Message> queue = messageQueues[ level ];
+		Message head = queue.poll();
+		if( queue.isEmpty() ){
+			occupiedQueues &= ~( 1 << level );
+			if( level == ADMIN_LEVEL )
+				messageQueues[ level ] = null;
+		}
+		
+		return head;
+	}
+	
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#copyMessages(java.util.List)
+	 */
+	@Override
+	protected synchronized void copyMessages( List<Message> messages ){
+		if( messageQueues == null )
+			return;
+		
+		for( ArrayDeque<Message> queue : messageQueues )
+			if( queue != null )
+				messages.addAll( queue );
+	}
+	
+	/* (non-Javadoc)
+	 * @see flap.kernel.AbstractMessageQueue#getStorageLength()
 	 */
-	public final int getQueueLength(){
+	@Override
+	protected synchronized final int getStorageLength(){
 		int sum = 0;
+		if( messageQueues == null )
+			return sum;
 		
-		for( MessagePriority priority : MessagePriority.values() )
-			sum += getQueueLengthByPriority( priority );
+		for( ArrayDeque<Message> queue : messageQueues )
+			if( queue != null )
+				sum += queue.size();
 		
 		return sum;
 			
@@ -181,20 +235,21 @@ public class MessageQueue implements IMessageQueue {
 	 * @param priority the priority to inspect
 	 * @return the number of waiting messages at the given priority
 	 */
-	public final int getQueueLengthByPriority( MessagePriority priority ){
-		return messageQueues.get( priority ).size();
+	@Override
+	public synchronized final int getQueueLengthByPriority( MessagePriority priority ){
+		if( messageQueues == null )
+			return 0;
+		
+		ArrayDeque<Message> queue = messageQueues[ priority.getLevel() ];
+		return queue == null ? 0 : queue.size();
 	}
 	
 	/* (non-Javadoc)
-	 * @see flap.messaging.IMessageQueue#isEmpty()
+	 * @see flap.kernel.AbstractMessageQueue#isStorageEmpty()
 	 */
 	@Override
-	public final boolean isEmpty(){
-		for( MessagePriority priority : MessagePriority.values() )
-			if( ! messageQueues.get( priority ).isEmpty() )
-				return false;
-		
-		return true;
+	protected synchronized final boolean isStorageEmpty(){
+		return occupiedQueues == 0;
 	}
 	
 	
@@ -217,22 +272,6 @@ public class MessageQueue implements IMessageQueue {
 	public final synchronized void resume_message_queue(){
 		this.notifyAll();
 	}
-
-	/**
-	 * Returns the value of the ownerProxy for the current class instance.
-	 * @return the ownerProxy
-	 */
-	public synchronized final AgentProxy getOwnerProxy() {
-		return ownerProxy;
-	}
-
-	/**
-	 * Set the ownerProxy value in the current instance.
-	 * @param ownerProxy the ownerProxy to set
-	 */
-	public synchronized final void setOwnerProxy(AgentProxy ownerProxy) {
-		this.ownerProxy = ownerProxy;
-	}
 	
 	
 }
@@ -0,0 +1,297 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.messaging.Message;
+
+/**
+ * A disk based FIFO of messages, used by a bounded message queue to keep the
+ * messages that do not fit in memory.
+ * Each message is serialized on its own and appended to a temporary file as a
+ * length-prefixed record, so that a message that cannot be serialized does not corrupt
+ * the file. The file is removed as soon as all the messages have been read back.
+ *
+ * The files left behind by a virtual machine that has stopped with messages still
+ * spilled are removed the first time a store of this virtual machine uses the same
+ * directory, instead of registering each file to be deleted at exit.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class MessageSpillStore {
+
+	/**
+	 * The logger of all the spill stores.
+	 */
+	private static Log logger = LogFactory.getLog( MessageSpillStore.class );
+
+	/**
+	 * The prefix of the spill files.
+	 */
+	private static final String PREFIX = "flap-spill";
+
+	/**
+	 * The suffix of the spill files.
+	 */
+	private static final String SUFFIX = ".bin";
+
+	/**
+	 * The directories that have been cleaned of stale spill files.
+	 */
+	private static final Set<File> sweptDirectories = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The directory where the spill file is created.
+	 */
+	private final File directory;
+
+	/**
+	 * The spill file, null if no message is currently spilled.
+	 */
+	private RandomAccessFile file = null;
+
+	/**
+	 * The path of the spill file.
+	 */
+	private File path = null;
+
+	/**
+	 * Where the next message will be written.
+	 */
+	private long writePosition = 0;
+
+	/**
+	 * Where the next message will be read.
+	 */
+	private long readPosition = 0;
+
+	/**
+	 * How many messages are in the file and have not been read back.
+	 */
+	private volatile int size = 0;
+
+	/**
+	 * Builds a spill store.
+	 * @param directory the directory where the spill file is created, null for
+	 * the system temporary directory
+	 */
+	MessageSpillStore( File directory ){
+		super();
+		this.directory = directory;
+	}
+
+	/**
+	 * Appends a message to the store.
+	 * @param message the message to store
+	 * @return true if the message has been stored, false if it cannot be serialized or written
+	 */
+	final synchronized boolean write( Message message ){
+		try{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream( bytes );
+			out.writeObject( message );
+			out.close();
+
+			if( file == null ){
+				sweep( directory );
+				path = File.createTempFile( PREFIX, SUFFIX, directory );
+				file = new RandomAccessFile( path, "rw" );
+				writePosition = 0;
+				readPosition  = 0;
+			}
+
+			file.seek( writePosition );
+			file.writeInt( bytes.size() );
+			file.write( bytes.toByteArray() );
+			writePosition = file.getFilePointer();
+			size++;
+			return true;
+		}catch( IOException e ){
+			logger.error( "Cannot spill the message to disk", e );
+			return false;
+		}
+	}
+
+	/**
+	 * Reads back the oldest message in the store.
+	 * @return the message or null if the store is empty
+	 */
+	final synchronized Message read(){
+		while( size > 0 ){
+			byte[] record = null;
+			try{
+				file.seek( readPosition );
+				record = new byte[ file.readInt() ];
+				file.readFully( record );
+				readPosition = file.getFilePointer();
+				size--;
+			}catch( IOException e ){
+				// the file cannot be read anymore, all the spilled messages are lost
+				logger.error( String.format( "Cannot read the spill file, %d messages lost", size ), e );
+				size = 0;
+			}
+
+			if( size == 0 )
+				close();
+
+			if( record == null )
+				return null;
+
+			try{
+				ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( record ) );
+				Message message = (Message) in.readObject();
+				in.close();
+				return message;
+			}catch( Exception e ){
+				logger.error( "Cannot deserialize a spilled message, skipping it", e );
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Copies the spilled messages, in their arrival order, without removing them.
+	 * @param messages where the messages are copied
+	 */
+	final synchronized void copyMessages( List<Message> messages ){
+		long position = readPosition;
+		for( int i = 0; i < size; i++ ){
+			byte record[] = null;
+			try{
+				file.seek( position );
+				record = new byte[ file.readInt() ];
+				file.readFully( record );
+				position = file.getFilePointer();
+			}catch( IOException e ){
+				logger.error( "Cannot read the spill file, the spilled messages are not copied", e );
+				return;
+			}
+
+			try{
+				ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( record ) );
+				messages.add( (Message) in.readObject() );
+				in.close();
+			}catch( Exception e ){
+				logger.error( "Cannot deserialize a spilled message, skipping it", e );
+			}
+		}
+	}
+
+	/**
+	 * Tells if there are no spilled messages.
+	 * @return true if the store is empty
+	 */
+	final boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Provides the number of spilled messages.
+	 * @return the number of messages in the store
+	 */
+	final int size(){
+		return size;
+	}
+
+	/**
+	 * Closes and removes the spill file.
+	 */
+	private void close(){
+		if( file == null )
+			return;
+
+		try{
+			file.close();
+		}catch( IOException e ){
+			logger.error( "Cannot close the spill file", e );
+		}
+
+		if( ! path.delete() )
+			logger.debug( "Cannot remove the spill file " + path );
+
+		file = null;
+		path = null;
+	}
+
+	/**
+	 * Removes the spill files left in a directory by the virtual machines that have
+	 * stopped before reading them back. A directory is swept once, and only the files
+	 * not changed since this virtual machine has started are removed, so that the
+	 * files of running virtual machines sharing the directory are kept.
+	 * @param directory the directory, null for the system temporary directory
+	 */
+	private static void sweep( File directory ){
+		if( directory == null )
+			directory = new File( System.getProperty( "java.io.tmpdir" ) );
+		if( ! sweptDirectories.add( directory.getAbsoluteFile() ) )
+			return;
+
+		long startTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+		File stale[] = directory.listFiles( new FileFilter(){
+			@Override
+			public boolean accept( File candidate ){
+				String name = candidate.getName();
+				return name.startsWith( PREFIX ) && name.endsWith( SUFFIX )
+						&& candidate.isFile() && candidate.lastModified() < startTime;
+			}
+		} );
+
+		if( stale != null )
+			for( File path : stale )
+				if( ! path.delete() )
+					logger.debug( "Cannot remove the stale spill file " + path );
+	}
+
+}
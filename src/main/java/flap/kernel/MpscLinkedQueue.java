@@ -0,0 +1,188 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock-free, unbounded, multi-producer single-consumer linked queue.
+ * Producers append a node with a single atomic exchange on the last node, while
+ * the consumer walks the list from a stub node without any atomic operation.
+ * Many threads can offer elements at the same time, but only one thread at a time
+ * can poll them: this is the case of an agent message queue, that is drained by
+ * a single activation at a time.
+ *
+ * Please note that a producer that has swapped the last node but has not yet linked
+ * it makes the queue to look empty to the consumer until the link is completed, while
+ * the size of the queue already counts its element.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class MpscLinkedQueue<E> {
+
+	/**
+	 * A node of the queue.
+	 */
+	private static final class Node<E> {
+
+		/**
+		 * The element stored in this node.
+		 */
+		E value;
+
+		/**
+		 * The next node, written by the producer that appended it.
+		 */
+		volatile Node<E> next;
+
+		Node( E value ){
+			super();
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The last node of the queue, the one producers append to.
+	 */
+	private volatile Node<E> last;
+
+	/**
+	 * The updater of the last node.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<MpscLinkedQueue, Node> LAST =
+			AtomicReferenceFieldUpdater.newUpdater( MpscLinkedQueue.class, Node.class, "last" );
+
+	/**
+	 * The number of elements offered and not yet polled.
+	 */
+	private volatile int size = 0;
+
+	/**
+	 * The updater of the size.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<MpscLinkedQueue> SIZE =
+			AtomicIntegerFieldUpdater.newUpdater( MpscLinkedQueue.class, "size" );
+
+	/**
+	 * The node before the first element, accessed only by the consumer.
+	 */
+	private Node<E> stub;
+
+	/**
+	 * Builds an empty queue.
+	 */
+	MpscLinkedQueue(){
+		super();
+		stub = new Node<E>( null );
+		last = stub;
+	}
+
+	/**
+	 * Appends an element to the queue. This method can be called by any thread.
+	 * @param element the element to append, must not be null
+	 */
+	@SuppressWarnings("unchecked")
+	final void offer( E element ){
+		// the size is incremented before the element is visible, so that
+		// it is never lower than the number of elements that can be polled
+		SIZE.incrementAndGet( this );
+		Node<E> node = new Node<E>( element );
+		Node<E> previous = LAST.getAndSet( this, node );
+
+		// the link is a volatile write, so that a consumer that finds the
+		// queue empty and a producer that has just linked a node always agree
+		previous.next = node;
+	}
+
+	/**
+	 * Removes the first element of the queue. This method must be called by one
+	 * thread at a time.
+	 * @return the first element or null if the queue is empty
+	 */
+	final E poll(){
+		Node<E> next = stub.next;
+		if( next == null )
+			return null;
+
+		E element = next.value;
+		next.value = null;
+		stub = next;
+		SIZE.decrementAndGet( this );
+		return element;
+	}
+
+	/**
+	 * Copies the elements ready to be polled, without removing them. This method must
+	 * be called by the consumer thread, or while no thread is polling.
+	 * @param elements where the elements are copied
+	 */
+	final void copyTo( Collection<? super E> elements ){
+		for( Node<E> node = stub.next; node != null; node = node.next )
+			elements.add( node.value );
+	}
+
+	/**
+	 * Tells if the queue has no elements ready to be polled.
+	 * @return true if the queue is empty
+	 */
+	final boolean isEmpty(){
+		return stub.next == null;
+	}
+
+	/**
+	 * Provides the number of elements in the queue, including the ones that are
+	 * being offered.
+	 * @return the number of elements
+	 */
+	final int size(){
+		return size;
+	}
+
+}
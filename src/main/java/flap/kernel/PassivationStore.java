@@ -0,0 +1,183 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.io.*;
+import java.nio.file.Files;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.Agent;
+
+/**
+ * A disk based store of passivated agents.
+ * Each agent is serialized in its own file, named after the agent id, so that
+ * an agent can be stored and loaded without touching the others. The file is removed
+ * as soon as the agent has been loaded back.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class PassivationStore implements AgentStore {
+
+	/**
+	 * The logger of all the passivation stores.
+	 */
+	private static Log logger = LogFactory.getLog( PassivationStore.class );
+
+	/**
+	 * The directory of the agent files.
+	 */
+	private final File directory;
+
+	/**
+	 * Builds a store.
+	 * @param directory the directory of the agent files, null for a new
+	 * directory in the system temporary directory
+	 * @throws IOException if the directory cannot be created
+	 */
+	PassivationStore( File directory ) throws IOException {
+		super();
+		if( directory == null ){
+			directory = File.createTempFile( "flap-passivation", "" );
+			if( ! directory.delete() || ! directory.mkdir() )
+				throw new IOException( "Cannot create the passivation directory " + directory );
+
+			directory.deleteOnExit();
+		}
+
+		this.directory = directory;
+	}
+
+	/**
+	 * Stores an agent.
+	 * @param agentID the id of the agent
+	 * @param agent the agent to store
+	 * @return true if the agent has been stored, false if it cannot be serialized or written
+	 */
+	final boolean store( int agentID, Agent agent ){
+		File path = fileOf( agentID );
+		try{
+			ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream( new FileOutputStream( path ) ) );
+			try{
+				out.writeObject( agent );
+			}finally{
+				out.close();
+			}
+
+			path.deleteOnExit();
+			return true;
+		}catch( NotSerializableException e ){
+			// the agent keeps some state that cannot be stored, so it stays in memory
+			logger.debug( String.format( "Agent %d cannot be passivated: %s is not serializable", agentID, e.getMessage() ) );
+			path.delete();
+			return false;
+		}catch( IOException e ){
+			logger.error( String.format( "Cannot passivate the agent %d", agentID ), e );
+			path.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Loads an agent, removing it from the store.
+	 * @param agentID the id of the agent
+	 * @return the agent or null if it cannot be read
+	 */
+	@Override
+	public final Agent load( int agentID ){
+		File path = fileOf( agentID );
+		try{
+			Agent agent = null;
+			ObjectInputStream in = new ObjectInputStream( new BufferedInputStream( new FileInputStream( path ) ) );
+			try{
+				agent = (Agent) in.readObject();
+			}finally{
+				in.close();
+			}
+
+			path.delete();
+			return agent;
+		}catch( IOException | ClassNotFoundException e ){
+			logger.error( String.format( "Cannot reactivate the agent %d", agentID ), e );
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the stored agent without removing it from the store.
+	 * @param agentID the id of the agent
+	 * @return the serialized agent or null if it cannot be read
+	 */
+	@Override
+	public final byte[] read( int agentID ){
+		try{
+			return Files.readAllBytes( fileOf( agentID ).toPath() );
+		}catch( IOException e ){
+			logger.error( String.format( "Cannot read the passivated agent %d", agentID ), e );
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes the stored agent.
+	 * @param agentID the id of the agent
+	 */
+	@Override
+	public final void discard( int agentID ){
+		fileOf( agentID ).delete();
+	}
+
+	/**
+	 * Provides the file of an agent.
+	 * @param agentID the id of the agent
+	 * @return the file
+	 */
+	private File fileOf( int agentID ){
+		return new File( directory, "agent-" + agentID + ".bin" );
+	}
+
+}
@@ -0,0 +1,357 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.Agent;
+import flap.agents.AgentID;
+
+/**
+ * A scheduler that splits the agents into shards, and runs each shard on its own thread.
+ * An agent always runs on the thread of its shard, chosen by the agent id when its queue
+ * is registered, so that its state and its queue stay in the cache of the same core.
+ *
+ * Each shard thread runs an event loop over a queue of the agents ready to run, which
+ * is owned by the thread and needs no lock: when an agent sends a message to an agent of
+ * the same shard, the addressee is scheduled with a plain push on such queue. When the
+ * addressee is in another shard it is handed over through a single-producer single-consumer
+ * ring that links the two shards, so that shards never contend on a shared structure.
+ * Threads that do not belong to the scheduler (and shards whose ring is full) hand the
+ * agents over through a lock-free multi-producer queue of the shard.
+ * A shard thread sleeps when it has nothing to run, and it is awaken by the first
+ * agent handed over to it.
+ *
+ * This scheduler works best with lock-free message queues (see
+ * Context.setLockFreeMailboxes), so that sending a message takes no lock at all.
+ * Agents that block (for instance doing I/O) hold up all the agents of their shard,
+ * and should be run by a VirtualThreadScheduler instead.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class ShardedScheduler implements IScheduler {
+
+	/**
+	 * The default number of agents that each ring between two shards can hold.
+	 */
+	public static final int DEFAULT_RING_CAPACITY = 1024;
+
+	/**
+	 * The logger of this scheduler.
+	 */
+	private static Log logger = LogFactory.getLog( ShardedScheduler.class );
+
+	/**
+	 * The shards of this scheduler.
+	 */
+	private final Shard shards[];
+
+	/**
+	 * Tells if the scheduler has been shut down.
+	 */
+	private volatile boolean isActive = true;
+
+	/**
+	 * Builds a scheduler with a shard for each available processor.
+	 */
+	public ShardedScheduler(){
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Builds a scheduler with the specified number of shards.
+	 * @param shardCount the number of shards, that is the number of threads
+	 */
+	public ShardedScheduler( int shardCount ){
+		this( shardCount, DEFAULT_RING_CAPACITY );
+	}
+
+	/**
+	 * Builds a scheduler with the specified number of shards.
+	 * @param shardCount the number of shards, that is the number of threads
+	 * @param ringCapacity how many agents each ring between two shards can hold
+	 */
+	public ShardedScheduler( int shardCount, int ringCapacity ){
+		super();
+		if( shardCount <= 0 )
+			throw new IllegalArgumentException( "The scheduler needs at least a shard" );
+
+		shards = new Shard[ shardCount ];
+		for( int i = 0; i < shardCount; i++ )
+			shards[ i ] = new Shard( this, i, shardCount, ringCapacity );
+
+		for( Shard shard : shards )
+			shard.thread.start();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#register(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void register( AbstractMessageQueue queue ){
+		// a queue built again for the same agent (for instance after a passivation)
+		// goes back to the same shard, that is the one embedded in the agent id
+		AgentProxy proxy = queue.getOwnerProxy();
+		Agent agent = proxy == null ? null : proxy.getResidentAgent();
+		if( agent != null )
+			queue.schedulerSlot = AgentID.getShard( agent.getId() ) % shards.length;
+		else
+			queue.schedulerSlot = ( System.identityHashCode( queue ) & Integer.MAX_VALUE ) % shards.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#unregister(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void unregister( AbstractMessageQueue queue ){
+		// nothing to do, shards do not keep track of their queues
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#schedule(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void schedule( AbstractMessageQueue queue ){
+		if( ! isActive ){
+			logger.error( "The scheduler has been shut down, cannot activate the message queue" );
+			return;
+		}
+
+		Shard target = shards[ queue.schedulerSlot ];
+		Thread current = Thread.currentThread();
+		if( current == target.thread ){
+			// same shard: nobody else touches the ready queue
+			target.ready.addLast( queue );
+			return;
+		}
+
+		if( current instanceof ShardThread && ((ShardThread) current).shard.scheduler == this ){
+			SpscRing<AbstractMessageQueue> ring = target.rings[ ((ShardThread) current).shard.index ];
+			if( ! ring.offer( queue ) )
+				target.inbox.offer( queue );
+		}
+		else
+			target.inbox.offer( queue );
+
+		target.wakeUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#shutdown()
+	 */
+	@Override
+	public void shutdown(){
+		isActive = false;
+		for( Shard shard : shards )
+			LockSupport.unpark( shard.thread );
+	}
+
+	/**
+	 * Provides the number of shards of this scheduler.
+	 * @return the number of shards
+	 */
+	public final int getShardCount(){
+		return shards.length;
+	}
+
+	/**
+	 * Provides the shard that runs the agent of the specified queue.
+	 * @param queue a queue registered to this scheduler
+	 * @return the index of the shard
+	 */
+	public final int getShard( AbstractMessageQueue queue ){
+		return queue.schedulerSlot;
+	}
+
+
+	/**
+	 * The thread of a shard, which knows its shard so that a sender
+	 * can find the ring to use without any lookup.
+	 */
+	private static final class ShardThread extends Thread {
+
+		private final Shard shard;
+
+		ShardThread( Shard shard ){
+			super( shard, "ShardThread-" + shard.index );
+			this.shard = shard;
+			setDaemon( true );
+		}
+	}
+
+	/**
+	 * A shard and its event loop.
+	 */
+	private static final class Shard implements Runnable {
+
+		/**
+		 * The scheduler of this shard.
+		 */
+		private final ShardedScheduler scheduler;
+
+		/**
+		 * The position of this shard in the scheduler.
+		 */
+		private final int index;
+
+		/**
+		 * The queues ready to run, accessed only by the shard thread.
+		 */
+		private final ArrayDeque<AbstractMessageQueue> ready = new ArrayDeque<AbstractMessageQueue>();
+
+		/**
+		 * The queues handed over by each other shard, indexed by the shard index.
+		 */
+		private final SpscRing<AbstractMessageQueue> rings[];
+
+		/**
+		 * The queues handed over by the threads that are not shards.
+		 */
+		private final MpscLinkedQueue<AbstractMessageQueue> inbox = new MpscLinkedQueue<AbstractMessageQueue>();
+
+		/**
+		 * Set while the shard thread is going to sleep.
+		 */
+		private volatile boolean sleeping = false;
+
+		/**
+		 * The thread of this shard.
+		 */
+		private final ShardThread thread;
+
+		Shard( ShardedScheduler scheduler, int index, int shardCount, int ringCapacity ){
+			super();
+			this.scheduler = scheduler;
+			this.index = index;
+			rings = newRings( shardCount );
+			for( int i = 0; i < shardCount; i++ )
+				if( i != index )
+					rings[ i ] = new SpscRing<AbstractMessageQueue>( ringCapacity );
+
+			thread = new ShardThread( this );
+		}
+
+		/**
+		 * Builds the container of the rings, with a slot for each shard.
+		 * @param shardCount the number of shards
+		 * @return the empty container
+		 */
+		@SuppressWarnings("unchecked")
+		private static SpscRing<AbstractMessageQueue>[] newRings( int shardCount ){
+			return (SpscRing<AbstractMessageQueue>[]) new SpscRing<?>[ shardCount ];
+		}
+
+		/**
+		 * Awakes the shard thread if it is sleeping.
+		 */
+		final void wakeUp(){
+			if( sleeping )
+				LockSupport.unpark( thread );
+		}
+
+		/**
+		 * Moves the queues handed over by other threads to the ready queue.
+		 */
+		private void collect(){
+			AbstractMessageQueue queue = null;
+			for( SpscRing<AbstractMessageQueue> ring : rings ){
+				if( ring == null )
+					continue;
+
+				while( ( queue = ring.poll() ) != null )
+					ready.addLast( queue );
+			}
+
+			while( ( queue = inbox.poll() ) != null )
+				ready.addLast( queue );
+		}
+
+		/**
+		 * Tells if no thread has handed over a queue.
+		 * @return true if the rings and the inbox are empty
+		 */
+		private boolean isIdle(){
+			for( SpscRing<AbstractMessageQueue> ring : rings )
+				if( ring != null && ! ring.isEmpty() )
+					return false;
+
+			return inbox.isEmpty();
+		}
+
+		@Override
+		public void run(){
+			while( scheduler.isActive ){
+				collect();
+
+				// run only the queues ready so far, so that agents that keep
+				// messaging each other do not starve the other shards
+				int count = ready.size();
+				for( int i = 0; i < count; i++ ){
+					try{
+						AgentActivation.run( ready.pollFirst() );
+					}catch( RuntimeException e ){
+						logger.error( "Uncaught exception while draining a message queue", e );
+					}
+				}
+
+				if( count > 0 || ! ready.isEmpty() )
+					continue;
+
+				// the flag is set before looking at the rings, so that a sender
+				// either sees it or its queue is seen here
+				sleeping = true;
+				if( isIdle() && scheduler.isActive )
+					LockSupport.park( this );
+				sleeping = false;
+			}
+		}
+	}
+
+}
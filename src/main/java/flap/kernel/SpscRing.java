@@ -0,0 +1,157 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A lock-free, bounded, single-producer single-consumer ring buffer.
+ * The producer and the consumer each own one of the two counters, so that an element
+ * is passed from a thread to another with a couple of volatile accesses and without any
+ * atomic read-modify-write operation. Exactly one thread at a time can offer elements,
+ * and exactly one thread at a time can poll them.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class SpscRing<E> {
+
+	/**
+	 * The elements, the length is a power of two.
+	 */
+	private final Object buffer[];
+
+	/**
+	 * The mask that turns a counter into a position of the buffer.
+	 */
+	private final int mask;
+
+	/**
+	 * The number of elements polled so far, written only by the consumer.
+	 */
+	private volatile long head = 0;
+
+	/**
+	 * The updater of the head counter.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<SpscRing> HEAD =
+			AtomicLongFieldUpdater.newUpdater( SpscRing.class, "head" );
+
+	/**
+	 * The number of elements offered so far, written only by the producer.
+	 */
+	private volatile long tail = 0;
+
+	/**
+	 * Builds an empty ring.
+	 * @param capacity the max number of elements, rounded up to a power of two
+	 */
+	SpscRing( int capacity ){
+		super();
+		if( capacity <= 0 || capacity > ( 1 << 30 ) )
+			throw new IllegalArgumentException( "The capacity of the ring must be between 1 and 2^30" );
+
+		int length = 1;
+		while( length < capacity )
+			length <<= 1;
+
+		buffer = new Object[ length ];
+		mask   = length - 1;
+	}
+
+	/**
+	 * Appends an element to the ring. This method must be called by the producer.
+	 * The counter is written with a volatile store, so that a consumer that is going
+	 * to sleep either sees the element or is seen sleeping by the producer.
+	 * @param element the element to append, must not be null
+	 * @return false if the ring is full
+	 */
+	final boolean offer( E element ){
+		long currentTail = tail;
+		if( currentTail - head >= buffer.length )
+			return false;
+
+		buffer[ (int) currentTail & mask ] = element;
+		tail = currentTail + 1;
+		return true;
+	}
+
+	/**
+	 * Removes the first element of the ring. This method must be called by the consumer.
+	 * @return the first element or null if the ring is empty
+	 */
+	@SuppressWarnings("unchecked")
+	final E poll(){
+		long currentHead = head;
+		if( currentHead == tail )
+			return null;
+
+		int index = (int) currentHead & mask;
+		E element = (E) buffer[ index ];
+		buffer[ index ] = null;
+
+		// the producer only needs to see the slot free eventually
+		HEAD.lazySet( this, currentHead + 1 );
+		return element;
+	}
+
+	/**
+	 * Tells if the ring has no elements.
+	 * @return true if the ring is empty
+	 */
+	final boolean isEmpty(){
+		return head == tail;
+	}
+
+	/**
+	 * Provides the max number of elements of the ring.
+	 * @return the capacity
+	 */
+	final int capacity(){
+		return buffer.length;
+	}
+
+}
@@ -0,0 +1,397 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The subscriptions of the agents of a context to the topics.
+ * A topic is a hierarchical name made of levels separated by dots, like
+ * "sensors.room1.temperature". A subscription can use two wildcards: "*" matches
+ * exactly one level, while "#" matches any number of levels (even none) and can
+ * only be the last level of the subscription, like "sensors.*.temperature" or "sensors.#".
+ *
+ * Subscriptions are stored in a trie indexed by level, so the subscribers of a topic
+ * are found by walking the levels of the topic and not by scanning all the agents.
+ * The subscribers found for a topic are cached, so that publishing again on the same
+ * topic costs a single lookup. The cache is invalidated each time a subscription changes.
+ *
+ * Lookups never lock, while changes to the subscriptions are serialized.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class TopicRegistry {
+
+	/**
+	 * The separator of the levels of a topic.
+	 */
+	static final String SEPARATOR = "\\.";
+
+	/**
+	 * The wildcard matching a single level.
+	 */
+	static final String ANY_LEVEL = "*";
+
+	/**
+	 * The wildcard matching any number of levels.
+	 */
+	static final String ANY_LEVELS = "#";
+
+	/**
+	 * The max number of topics kept in the cache.
+	 */
+	private static final int MAX_CACHED_TOPICS = 4096;
+
+	/**
+	 * A level of the trie.
+	 */
+	private static final class TopicNode {
+
+		/**
+		 * The next levels, indexed by name (or wildcard).
+		 */
+		final Map<String, TopicNode> children = new ConcurrentHashMap<String, TopicNode>();
+
+		/**
+		 * The ids of the agents subscribed to the subscription ending at this level,
+		 * replaced as a whole on each change.
+		 */
+		volatile int subscribers[] = NO_SUBSCRIBERS;
+	}
+
+	/**
+	 * The subscribers of a topic, as found at a specific version of the subscriptions.
+	 */
+	private static final class CachedTopic {
+
+		final long version;
+
+		final int subscribers[];
+
+		CachedTopic( long version, int subscribers[] ){
+			super();
+			this.version = version;
+			this.subscribers = subscribers;
+		}
+	}
+
+	/**
+	 * An empty list of subscribers.
+	 */
+	static final int NO_SUBSCRIBERS[] = new int[0];
+
+	/**
+	 * The root of the trie.
+	 */
+	private final TopicNode root = new TopicNode();
+
+	/**
+	 * The subscribers already found for a topic.
+	 */
+	private final Map<String, CachedTopic> cache = new ConcurrentHashMap<String, CachedTopic>();
+
+	/**
+	 * Incremented each time a subscription changes, so that cached topics
+	 * computed before the change are discarded.
+	 */
+	private volatile long version = 0;
+
+
+	/**
+	 * Subscribes an agent to the topics matching the specified subscription.
+	 * @param agentID the id of the agent
+	 * @param subscription the topic, with optional wildcards
+	 * @return true if the agent has been subscribed, false if it was already subscribed
+	 */
+	final synchronized boolean subscribe( int agentID, String subscription ){
+		String levels[] = split( subscription );
+		for( int i = 0; i < levels.length - 1; i++ )
+			if( ANY_LEVELS.equals( levels[ i ] ) )
+				throw new IllegalArgumentException( "The wildcard " + ANY_LEVELS + " must be the last level of " + subscription );
+
+		TopicNode node = root;
+		for( String level : levels ){
+			TopicNode child = node.children.get( level );
+			if( child == null ){
+				child = new TopicNode();
+				node.children.put( level, child );
+			}
+
+			node = child;
+		}
+
+		if( indexOf( node.subscribers, agentID ) >= 0 )
+			return false;
+
+		int subscribers[] = Arrays.copyOf( node.subscribers, node.subscribers.length + 1 );
+		subscribers[ subscribers.length - 1 ] = agentID;
+		node.subscribers = subscribers;
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * Removes the subscription of an agent.
+	 * @param agentID the id of the agent
+	 * @param subscription the subscription, as it was specified when subscribing
+	 * @return true if the subscription has been removed, false if it did not exist
+	 */
+	final synchronized boolean unsubscribe( int agentID, String subscription ){
+		TopicNode node = root;
+		for( String level : split( subscription ) ){
+			node = node.children.get( level );
+			if( node == null )
+				return false;
+		}
+
+		if( ! removeSubscriber( node, agentID ) )
+			return false;
+
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * Removes all the subscriptions of an agent.
+	 * @param agentID the id of the agent
+	 */
+	final synchronized void unsubscribeAll( int agentID ){
+		if( removeFromTree( root, agentID ) )
+			invalidate();
+	}
+
+	/**
+	 * Provides the subscribers of each subscription.
+	 * @return the ids of the agents indexed by subscription, the arrays must not be modified
+	 */
+	final synchronized Map<String, int[]> getSubscriptions(){
+		Map<String, int[]> subscriptions = new HashMap<String, int[]>();
+		collectSubscriptions( root, null, subscriptions );
+		return subscriptions;
+	}
+
+	/**
+	 * Provides the subscriptions of an agent.
+	 * @param agentID the id of the agent
+	 * @return the subscriptions, an empty array if none
+	 */
+	final synchronized String[] getSubscriptions( int agentID ){
+		List<String> subscriptions = new ArrayList<String>();
+		for( Map.Entry<String, int[]> entry : getSubscriptions().entrySet() )
+			if( indexOf( entry.getValue(), agentID ) >= 0 )
+				subscriptions.add( entry.getKey() );
+
+		return subscriptions.toArray( new String[ subscriptions.size() ] );
+	}
+
+	/**
+	 * Collects the subscriptions of the descendants of a node.
+	 * @param node the node
+	 * @param prefix the subscription ending at the node, null for the root
+	 * @param subscriptions where the subscriptions are collected
+	 */
+	private static void collectSubscriptions( TopicNode node, String prefix, Map<String, int[]> subscriptions ){
+		for( Map.Entry<String, TopicNode> entry : node.children.entrySet() ){
+			String subscription = prefix == null ? entry.getKey() : prefix + "." + entry.getKey();
+			TopicNode child = entry.getValue();
+			if( child.subscribers.length > 0 )
+				subscriptions.put( subscription, child.subscribers );
+
+			collectSubscriptions( child, subscription, subscriptions );
+		}
+	}
+
+	/**
+	 * Provides the ids of the agents subscribed to a topic. This method never locks.
+	 * @param topic the topic, without wildcards
+	 * @return the ids of the subscribed agents, the array must not be modified
+	 */
+	final int[] getSubscribers( String topic ){
+		long currentVersion = version;
+		CachedTopic cached = cache.get( topic );
+		if( cached != null && cached.version == currentVersion )
+			return cached.subscribers;
+
+		int subscribers[] = resolve( split( topic ) );
+		if( cache.size() >= MAX_CACHED_TOPICS )
+			cache.clear();
+
+		cache.put( topic, new CachedTopic( currentVersion, subscribers ) );
+		return subscribers;
+	}
+
+	/**
+	 * Walks the trie collecting the subscribers of the topic.
+	 * @param levels the levels of the topic
+	 * @return the sorted ids of the subscribers, without duplicates
+	 */
+	private int[] resolve( String levels[] ){
+		int found[][] = { NO_SUBSCRIBERS };
+		int count = collect( root, levels, 0, found, 0 );
+		if( count == 0 )
+			return NO_SUBSCRIBERS;
+
+		// an agent can match with more subscriptions
+		int subscribers[] = found[ 0 ];
+		Arrays.sort( subscribers, 0, count );
+		int unique = 1;
+		for( int i = 1; i < count; i++ )
+			if( subscribers[ i ] != subscribers[ unique - 1 ] )
+				subscribers[ unique++ ] = subscribers[ i ];
+
+		return Arrays.copyOf( subscribers, unique );
+	}
+
+	/**
+	 * Collects the subscribers of the levels from the specified one on.
+	 * @param node the node matching the previous levels
+	 * @param levels the levels of the topic
+	 * @param level the level to match
+	 * @param found a holder of the array of the collected ids
+	 * @param count the number of ids already collected
+	 * @return the number of ids collected
+	 */
+	private int collect( TopicNode node, String levels[], int level, int found[][], int count ){
+		// the multi-level wildcard matches the rest of the topic, even if empty
+		TopicNode anyLevels = node.children.get( ANY_LEVELS );
+		if( anyLevels != null )
+			count = append( found, count, anyLevels.subscribers );
+
+		if( level == levels.length )
+			return append( found, count, node.subscribers );
+
+		TopicNode exact = node.children.get( levels[ level ] );
+		if( exact != null )
+			count = collect( exact, levels, level + 1, found, count );
+
+		TopicNode anyLevel = node.children.get( ANY_LEVEL );
+		if( anyLevel != null )
+			count = collect( anyLevel, levels, level + 1, found, count );
+
+		return count;
+	}
+
+	/**
+	 * Appends ids to the collected ones, growing the array if needed.
+	 */
+	private static int append( int found[][], int count, int ids[] ){
+		if( ids.length == 0 )
+			return count;
+
+		if( count + ids.length > found[ 0 ].length )
+			found[ 0 ] = Arrays.copyOf( found[ 0 ], Math.max( found[ 0 ].length * 2, count + ids.length ) );
+
+		System.arraycopy( ids, 0, found[ 0 ], count, ids.length );
+		return count + ids.length;
+	}
+
+	/**
+	 * Removes an agent from the subscribers of a node and of all its descendants.
+	 * @return true if at least a subscription has been removed
+	 */
+	private static boolean removeFromTree( TopicNode node, int agentID ){
+		boolean removed = removeSubscriber( node, agentID );
+		for( TopicNode child : node.children.values() )
+			removed |= removeFromTree( child, agentID );
+
+		return removed;
+	}
+
+	/**
+	 * Removes an agent from the subscribers of a node.
+	 * @return true if the agent was a subscriber
+	 */
+	private static boolean removeSubscriber( TopicNode node, int agentID ){
+		int subscribers[] = node.subscribers;
+		int index = indexOf( subscribers, agentID );
+		if( index < 0 )
+			return false;
+
+		int reduced[] = new int[ subscribers.length - 1 ];
+		System.arraycopy( subscribers, 0, reduced, 0, index );
+		System.arraycopy( subscribers, index + 1, reduced, index, reduced.length - index );
+		node.subscribers = reduced;
+		return true;
+	}
+
+	/**
+	 * Searches an id in an array.
+	 * @return the index of the id, or -1
+	 */
+	private static int indexOf( int ids[], int id ){
+		for( int i = 0; i < ids.length; i++ )
+			if( ids[ i ] == id )
+				return i;
+
+		return -1;
+	}
+
+	/**
+	 * Discards the cached topics.
+	 */
+	private void invalidate(){
+		version++;
+		cache.clear();
+	}
+
+	/**
+	 * Splits a topic into its levels.
+	 * @param topic the topic
+	 * @return the levels
+	 */
+	private static String[] split( String topic ){
+		if( topic == null || topic.isEmpty() )
+			throw new IllegalArgumentException( "The topic cannot be empty" );
+
+		return topic.split( SEPARATOR, -1 );
+	}
+
+}
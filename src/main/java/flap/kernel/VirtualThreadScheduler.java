@@ -0,0 +1,296 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A scheduler that gives each agent its own thread.
+ * The thread is created when the agent message queue is registered, and it sleeps
+ * on the queue until a new message arrives. Since each agent owns its thread, an agent
+ * that blocks (for instance doing I/O) in its run or handleMessage methods does not
+ * prevent other agents from running.
+ *
+ * When the Java runtime provides virtual threads each agent runs on a virtual thread,
+ * so that tens of thousands of blocking agents can be hosted without exhausting the
+ * operating system threads. On older runtimes a daemon platform thread is used
+ * instead, that is suitable only for a small number of agents.
+ *
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class VirtualThreadScheduler implements IScheduler {
+
+	/**
+	 * The logger of this scheduler.
+	 */
+	private static Log logger = LogFactory.getLog( VirtualThreadScheduler.class );
+
+	/**
+	 * The factory used to build virtual threads, null if the
+	 * runtime does not support virtual threads.
+	 */
+	private static final ThreadFactory virtualThreadFactory = lookupVirtualThreadFactory();
+
+	/**
+	 * The counter of the created threads, used to name them.
+	 */
+	private static final AtomicInteger createdThreadCounter = new AtomicInteger( 0 );
+
+	/**
+	 * The loop of each registered queue.
+	 */
+	private final Map<AbstractMessageQueue, AgentLoop> loops = new ConcurrentHashMap<AbstractMessageQueue, AgentLoop>();
+
+	/**
+	 * The loops of the queues that have been unregistered, until they have delivered
+	 * the messages still in their queue.
+	 */
+	private final Map<AbstractMessageQueue, AgentLoop> closingLoops = new ConcurrentHashMap<AbstractMessageQueue, AgentLoop>();
+
+	/**
+	 * Tells if the scheduler has been shut down.
+	 */
+	private volatile boolean isActive = true;
+
+
+	/**
+	 * Searches for the virtual thread support, that is the method
+	 * Thread.ofVirtual().factory().
+	 * @return the factory of virtual threads, or null if not available
+	 */
+	private static ThreadFactory lookupVirtualThreadFactory(){
+		try{
+			Method ofVirtual = Thread.class.getMethod( "ofVirtual" );
+			Method factory   = Class.forName( "java.lang.Thread$Builder" ).getMethod( "factory" );
+			return (ThreadFactory) factory.invoke( ofVirtual.invoke( null ) );
+		}catch( Exception e ){
+			logger.info( "Virtual threads are not available, agents will run on platform threads" );
+			return null;
+		}
+	}
+
+	/**
+	 * Tells if agents are going to run on virtual threads.
+	 * @return true if the runtime supports virtual threads
+	 */
+	public static final boolean isVirtualThreadAvailable(){
+		return virtualThreadFactory != null;
+	}
+
+	/**
+	 * Builds a new unstarted thread for an agent.
+	 * @param task the task the thread must execute
+	 * @return the thread
+	 */
+	private static Thread newAgentThread( Runnable task ){
+		Thread thread = null;
+		if( virtualThreadFactory != null )
+			thread = virtualThreadFactory.newThread( task );
+		else{
+			thread = new Thread( task );
+			thread.setDaemon( true );
+		}
+
+		thread.setName( "AgentThread-" + createdThreadCounter.incrementAndGet() );
+		return thread;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#register(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void register( AbstractMessageQueue queue ){
+		if( ! isActive ){
+			logger.error( "The scheduler has been shut down, cannot register the message queue" );
+			return;
+		}
+
+		AgentLoop loop = new AgentLoop( this, queue );
+		loops.put( queue, loop );
+		loop.thread.start();
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#unregister(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void unregister( AbstractMessageQueue queue ){
+		AgentLoop loop = loops.remove( queue );
+		if( loop != null ){
+			closingLoops.put( queue, loop );
+			loop.close();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#schedule(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void schedule( AbstractMessageQueue queue ){
+		AgentLoop loop = loops.get( queue );
+		if( loop == null )
+			loop = closingLoops.get( queue );
+
+		if( loop != null )
+			loop.wakeUp();
+		else
+			logger.debug( "The message queue is not registered (maybe its agent has been killed), the message is not processed" );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#shutdown()
+	 */
+	@Override
+	public void shutdown(){
+		isActive = false;
+		for( AbstractMessageQueue queue : loops.keySet() )
+			unregister( queue );
+	}
+
+	/**
+	 * Provides the number of agent threads currently alive.
+	 * @return the number of registered queues
+	 */
+	public final int getThreadCount(){
+		return loops.size();
+	}
+
+
+	/**
+	 * The loop executed by the thread of a single agent.
+	 * The loop drains the queue each time the queue is scheduled, and sleeps
+	 * when there are no more messages. The queue is drained only when the scheduler has
+	 * handed over its activation, never because the thread has been awaken for another
+	 * reason, so that the loop cannot steal the activation of a suspended queue.
+	 * The loop ends when the queue is closed and all its messages have been processed.
+	 */
+	private static final class AgentLoop implements Runnable {
+
+		/**
+		 * The scheduler of the loop.
+		 */
+		private final VirtualThreadScheduler scheduler;
+
+		/**
+		 * The queue of the agent.
+		 */
+		private final AbstractMessageQueue queue;
+
+		/**
+		 * Set (1) when the queue has been scheduled and not yet drained.
+		 */
+		private volatile int pending = 0;
+
+		/**
+		 * The updater of the pending flag.
+		 */
+		private static final AtomicIntegerFieldUpdater<AgentLoop> PENDING =
+				AtomicIntegerFieldUpdater.newUpdater( AgentLoop.class, "pending" );
+
+		/**
+		 * The thread running this loop.
+		 */
+		private final Thread thread;
+
+		/**
+		 * Set when the queue will not be scheduled anymore.
+		 */
+		private volatile boolean closed = false;
+
+		AgentLoop( VirtualThreadScheduler scheduler, AbstractMessageQueue queue ){
+			super();
+			this.scheduler = scheduler;
+			this.queue = queue;
+			this.thread = newAgentThread( this );
+		}
+
+		/**
+		 * Hands the activation of the queue to the loop.
+		 */
+		final void wakeUp(){
+			pending = 1;
+			LockSupport.unpark( thread );
+		}
+
+		/**
+		 * Asks the loop to end as soon as the queue is empty.
+		 */
+		final void close(){
+			closed = true;
+			LockSupport.unpark( thread );
+		}
+
+		@Override
+		public void run(){
+			while( true ){
+				// process all available messages, if the queue has been scheduled
+				if( PENDING.getAndSet( this, 0 ) == 1 ){
+					AgentActivation.run( queue );
+					continue;
+				}
+
+				if( closed && queue.isEmpty() )
+					break;
+
+				// sleep until the queue is scheduled again
+				LockSupport.park( this );
+			}
+
+			scheduler.closingLoops.remove( queue, this );
+		}
+	}
+
+}
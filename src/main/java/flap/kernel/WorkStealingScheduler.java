@@ -0,0 +1,188 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.kernel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A scheduler based on a work-stealing thread pool.
+ * Each time a message queue becomes active an activation task is pushed into the pool,
+ * and any idle worker can steal it. The task is the only object allocated for each
+ * activation, since the pool would wrap any other runnable anyway. The pool works in asynchronous (FIFO) mode, since
+ * agent activations are never joined.
+ * Please note that the message queue ensures that a queue is scheduled only once
+ * until its activation has completed, so two workers never drain the same agent
+ * at the same time.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class WorkStealingScheduler implements IScheduler {
+
+	/**
+	 * The pool of worker threads.
+	 */
+	private ForkJoinPool pool = null;
+
+	/**
+	 * The logger of this scheduler.
+	 */
+	private static Log logger = LogFactory.getLog( WorkStealingScheduler.class );
+
+	/**
+	 * Builds a scheduler with a worker for each available processor.
+	 */
+	public WorkStealingScheduler(){
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Builds a scheduler with the specified number of workers.
+	 * @param parallelism the number of worker threads
+	 */
+	public WorkStealingScheduler( int parallelism ){
+		super();
+		pool = new ForkJoinPool( parallelism,
+								 ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+								 new Thread.UncaughtExceptionHandler() {
+									@Override
+									public void uncaughtException(Thread t, Throwable e) {
+										logger.error( String.format( "Uncaught exception in worker %s", t.getName() ), e );
+									}
+								 },
+								 true );
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#register(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void register( AbstractMessageQueue queue ){
+		// nothing to do, workers are shared among all the queues
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#unregister(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void unregister( AbstractMessageQueue queue ){
+		// nothing to do, workers are shared among all the queues
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#schedule(flap.kernel.AbstractMessageQueue)
+	 */
+	@Override
+	public void schedule( AbstractMessageQueue queue ){
+		try{
+			pool.execute( new ActivationTask( queue ) );
+		}catch( RejectedExecutionException e ){
+			logger.error( "The scheduler has been shut down, cannot activate the message queue", e );
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.kernel.IScheduler#shutdown()
+	 */
+	@Override
+	public void shutdown(){
+		pool.shutdown();
+	}
+
+	/**
+	 * Provides the number of workers of this scheduler.
+	 * @return the parallelism level of the pool
+	 */
+	public final int getParallelism(){
+		return pool.getParallelism();
+	}
+
+
+	/**
+	 * The task that drains a message queue once.
+	 */
+	private static final class ActivationTask extends ForkJoinTask<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The queue to drain.
+		 */
+		private final transient AbstractMessageQueue queue;
+
+		ActivationTask( AbstractMessageQueue queue ){
+			super();
+			this.queue = queue;
+		}
+
+		@Override
+		public Void getRawResult(){
+			return null;
+		}
+
+		@Override
+		protected void setRawResult( Void value ){
+			// activations have no result
+		}
+
+		@Override
+		protected boolean exec(){
+			try{
+				AgentActivation.run( queue );
+			}catch( RuntimeException e ){
+				// the pool would silently keep the exception in the task
+				logger.error( "Uncaught exception while draining a message queue", e );
+			}
+
+			return true;
+		}
+	}
+
+}
@@ -62,8 +62,11 @@ public interface IMessageQueue {
 	 * the message.
 	 * This means that each time a new message arrives, the threading system is re-activated in order
 	 * to deliver as soon as possible the message.
+	 * If the queue is bounded and full, the message is handled according to the overflow policy
+	 * of the queue.
+	 * @return true if the message has been accepted, false if it has been rejected
 	 */
-	public abstract void addMessage(Message messaggio);
+	public abstract boolean addMessage(Message messaggio);
 
 	/**
 	 * Tells if the message queue is empty, that is if there are no messages that have not yet been
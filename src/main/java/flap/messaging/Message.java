@@ -46,6 +46,9 @@
  */
 package flap.messaging;
 
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * This class represents a message that can be sent to an agent.
@@ -59,36 +62,93 @@ package flap.messaging;
  * special and has been sent from the platform itself.
  * 
  * Please note that once the message has been constructed its content and its priority
- * cannot be changed. However, if the content is an object it can be manipulated from
- * the addressee thru the reference to the content itself. 
+ * cannot be changed, so a message can be read by any thread without locking. However,
+ * if the content is an object it can be manipulated from the addressee thru the reference
+ * to the content itself. 
  * To avoid this the content of the message could be accepted only if cloneable and each time
  * it is accessed a clone of the content is returned. This could be very time consuming and
  * CPU intensive, depending on the purpose of the message and the size of its content.
  * 
+ * Numeric contents can be carried as primitive values (long, double) or as a slice
+ * of a primitive array (int[], long[]), so that they are neither boxed nor copied. Such
+ * messages are built with a Builder, and their content is read with the specialized
+ * getters.
+ * 
+ * Messages can be obtained from a MessagePool instead of being constructed: a pooled
+ * message is given back to its pool by the platform once the addressee has handled it,
+ * and is then reused for another send.
+ * 
  * @author Luca Ferrari
  */
-public class Message {
-
-	
+public final class Message implements Serializable {
 
-	
+	/**
+	 * Messages are serialized when spilled to disk.
+	 */
+	private static final long serialVersionUID = 2L;
 	
 	/**
 	 * The priority of this message. By default the priority is normal.
 	 */
-	protected MessagePriority priority = MessagePriority.PRIORITY_NORMAL;
+	private MessagePriority priority = MessagePriority.PRIORITY_NORMAL;
 	
 	/**
 	 * The content of the message.
-	 * It can be anything of any type.
+	 * It can be anything of any type, and it is the array for array payloads.
 	 */
-	protected Object content = null; 
+	private Object content = null; 
 	
 	/**
 	 * The message type.
 	 */
 	private MessageType type = MessageType.TYPE_USER;
 	
+	/**
+	 * The kind of content of this message.
+	 */
+	private MessagePayload payload = MessagePayload.PAYLOAD_OBJECT;
+	
+	/**
+	 * The primitive content: the value for a long payload or the
+	 * raw bits for a double payload.
+	 */
+	private long primitiveValue = 0;
+	
+	/**
+	 * The first element of the slice for array payloads.
+	 */
+	private int offset = 0;
+	
+	/**
+	 * The number of elements of the slice for array payloads.
+	 */
+	private int length = 0;
+	
+	/**
+	 * The pool this message has been taken from, null if the message is not pooled
+	 * or has already been released.
+	 */
+	private transient volatile MessagePool pool = null;
+	
+	/**
+	 * Used to release a message only once.
+	 */
+	private static final AtomicReferenceFieldUpdater<Message, MessagePool> poolUpdater =
+		AtomicReferenceFieldUpdater.newUpdater( Message.class, MessagePool.class, "pool" );
+	
+	/**
+	 * The number of holders of a pooled message, that is the sender and the addressees
+	 * that have not handled it yet. The message goes back to the pool when there
+	 * are no more holders.
+	 */
+	private transient volatile int holders = 0;
+	
+	/**
+	 * Used to count the holders without locking.
+	 */
+	private static final AtomicIntegerFieldUpdater<Message> holdersUpdater =
+		AtomicIntegerFieldUpdater.newUpdater( Message.class, "holders" );
+	
 
 	/**
 	 * Constructs the message.
@@ -119,12 +179,20 @@ public class Message {
 	public Message(){
 		this( MessagePriority.PRIORITY_NORMAL, null, MessageType.TYPE_USER );
 	}
+	
+	/**
+	 * Provides a builder for a new message.
+	 * @return the builder
+	 */
+	public static Builder builder(){
+		return new Builder();
+	}
 
 	/**
 	 * Returns the value of the priority for the current class instance.
 	 * @return the priority
 	 */
-	public synchronized final MessagePriority getPriority() {
+	public final MessagePriority getPriority() {
 		if( priority == null )
 			return MessagePriority.PRIORITY_NORMAL;
 		else
@@ -133,20 +201,316 @@ public class Message {
 
 	/**
 	 * Returns the value of the content for the current class instance.
+	 * A primitive value is boxed, while for array payloads the whole array is returned.
 	 * @return the content
 	 */
-	public synchronized final Object getContent() {
-		return content;
+	public final Object getContent() {
+		switch( payload ){
+		case PAYLOAD_LONG:
+			return Long.valueOf( primitiveValue );
+		case PAYLOAD_DOUBLE:
+			return Double.valueOf( Double.longBitsToDouble( primitiveValue ) );
+		default:
+			return content;
+		}
 	}
 
 	/**
 	 * Returns the value of the type for the current class instance.
 	 * @return the type
 	 */
-	public synchronized final MessageType getType() {
+	public final MessageType getType() {
 		return type;
 	}
+	
+	/**
+	 * Returns the kind of content of this message.
+	 * @return the payload kind
+	 */
+	public final MessagePayload getPayload() {
+		return payload;
+	}
+	
+	/**
+	 * Provides the content of a long payload, or the truncated content of a double one.
+	 * @return the value
+	 * @throws IllegalStateException if the content is not numeric
+	 */
+	public final long getLongValue() {
+		if( payload == MessagePayload.PAYLOAD_LONG )
+			return primitiveValue;
+		else if( payload == MessagePayload.PAYLOAD_DOUBLE )
+			return (long) Double.longBitsToDouble( primitiveValue );
+		else
+			throw new IllegalStateException( "The message does not carry a numeric value but " + payload );
+	}
+	
+	/**
+	 * Provides the content of a double payload, or the converted content of a long one.
+	 * @return the value
+	 * @throws IllegalStateException if the content is not numeric
+	 */
+	public final double getDoubleValue() {
+		if( payload == MessagePayload.PAYLOAD_DOUBLE )
+			return Double.longBitsToDouble( primitiveValue );
+		else if( payload == MessagePayload.PAYLOAD_LONG )
+			return primitiveValue;
+		else
+			throw new IllegalStateException( "The message does not carry a numeric value but " + payload );
+	}
+	
+	/**
+	 * Provides the array of an int array payload. Only the elements between
+	 * the offset and the offset plus the length belong to the message.
+	 * Please note that the array is not copied, so it must not be modified.
+	 * @return the array
+	 * @throws IllegalStateException if the content is not an int array
+	 */
+	public final int[] getIntArray() {
+		if( payload != MessagePayload.PAYLOAD_INT_ARRAY )
+			throw new IllegalStateException( "The message does not carry an int array but " + payload );
+		
+		return (int[]) content;
+	}
+	
+	/**
+	 * Provides the array of a long array payload. Only the elements between
+	 * the offset and the offset plus the length belong to the message.
+	 * Please note that the array is not copied, so it must not be modified.
+	 * @return the array
+	 * @throws IllegalStateException if the content is not a long array
+	 */
+	public final long[] getLongArray() {
+		if( payload != MessagePayload.PAYLOAD_LONG_ARRAY )
+			throw new IllegalStateException( "The message does not carry a long array but " + payload );
+		
+		return (long[]) content;
+	}
+	
+	/**
+	 * Returns the index of the first element of the slice for array payloads.
+	 * @return the offset
+	 */
+	public final int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Returns the number of elements of the slice for array payloads.
+	 * @return the length
+	 */
+	public final int getLength() {
+		return length;
+	}
 
+	/**
+	 * Gives this message back to the pool it has been taken from, so that it can be reused.
+	 * The platform releases each message once the addressee has handled it, so this method
+	 * must be called explicitly only for a message that has not been delivered (for
+	 * instance because the addressee has refused it). The message must not be used
+	 * anymore after it has been released.
+	 * A message that has been retained goes back to its pool only once it has been
+	 * released as many times as it has been retained, plus one.
+	 * Releasing a message that is not pooled, or releasing a message that is already
+	 * back in its pool, has no effect.
+	 */
+	public final void release(){
+		MessagePool owner = pool;
+		if( owner != null
+				&& holdersUpdater.decrementAndGet( this ) <= 0
+				&& poolUpdater.compareAndSet( this, owner, null ) )
+			owner.recycle( this );
+	}
+	
+	/**
+	 * Adds a holder to a pooled message, so that the message can be delivered to
+	 * more than one addressee; each holder releases the message once.
+	 * Retaining a message that is not pooled has no effect.
+	 */
+	public final void retain(){
+		if( pool != null )
+			holdersUpdater.incrementAndGet( this );
+	}
+	
+	/**
+	 * Tells if this message has been taken from a pool and has not been released yet.
+	 * @return true if the message is pooled
+	 */
+	public final boolean isPooled(){
+		return pool != null;
+	}
 	
+	/**
+	 * Reinitializes this message so that it can be reused by a pool.
+	 * This is the only way the state of a message can change, and it happens only
+	 * while the pool owns the message, that is before it is sent or after it has been
+	 * handled; the message is then published to other threads by the message queue.
+	 * @param priority the priority for this message
+	 * @param type the type of the message
+	 * @param payload the kind of content
+	 * @param content the content of this message or the array of the slice (can be null)
+	 * @param primitiveValue the primitive content
+	 * @param offset the first element of the slice
+	 * @param length the number of elements of the slice
+	 * @param owner the pool the message belongs to, null to clear the message
+	 */
+	final void reset(MessagePriority priority, MessageType type, MessagePayload payload, Object content,
+					 long primitiveValue, int offset, int length, MessagePool owner){
+		this.priority       = priority;
+		this.type           = type;
+		this.payload        = payload;
+		this.content        = content;
+		this.primitiveValue = primitiveValue;
+		this.offset         = offset;
+		this.length         = length;
+		this.holders        = owner != null ? 1 : 0;
+		this.pool           = owner;
+	}
+	
+	
+	/**
+	 * A builder of messages.
+	 * The builder can be reused to build more messages, each one keeping the
+	 * values the builder had when the message was built.
+	 * @author Luca Ferrari
+	 * @version 1.0
+	 */
+	public static final class Builder {
+		
+		private MessagePriority priority = MessagePriority.PRIORITY_NORMAL;
+		
+		private MessageType type = MessageType.TYPE_USER;
+		
+		private MessagePayload payload = MessagePayload.PAYLOAD_OBJECT;
+		
+		private Object content = null;
+		
+		private long primitiveValue = 0;
+		
+		private int offset = 0;
+		
+		private int length = 0;
+		
+		/**
+		 * Use Message.builder() to get a builder.
+		 */
+		private Builder(){
+			super();
+		}
+		
+		/**
+		 * Sets the priority of the message.
+		 * @param priority the priority
+		 * @return this builder
+		 */
+		public final Builder priority( MessagePriority priority ){
+			this.priority = priority;
+			return this;
+		}
+		
+		/**
+		 * Sets the type of the message.
+		 * @param type the type
+		 * @return this builder
+		 */
+		public final Builder type( MessageType type ){
+			this.type = type;
+			return this;
+		}
+		
+		/**
+		 * Sets an object as the content of the message.
+		 * @param content the content (can be null)
+		 * @return this builder
+		 */
+		public final Builder content( Object content ){
+			return payload( MessagePayload.PAYLOAD_OBJECT, content, 0, 0, 0 );
+		}
+		
+		/**
+		 * Sets a long value as the content of the message.
+		 * @param value the value
+		 * @return this builder
+		 */
+		public final Builder longValue( long value ){
+			return payload( MessagePayload.PAYLOAD_LONG, null, value, 0, 0 );
+		}
+		
+		/**
+		 * Sets a double value as the content of the message.
+		 * @param value the value
+		 * @return this builder
+		 */
+		public final Builder doubleValue( double value ){
+			return payload( MessagePayload.PAYLOAD_DOUBLE, null, Double.doubleToRawLongBits( value ), 0, 0 );
+		}
+		
+		/**
+		 * Sets a slice of an int array as the content of the message.
+		 * The array is not copied.
+		 * @param array the array
+		 * @param offset the first element of the slice
+		 * @param length the number of elements of the slice
+		 * @return this builder
+		 */
+		public final Builder intArray( int array[], int offset, int length ){
+			checkSlice( array.length, offset, length );
+			return payload( MessagePayload.PAYLOAD_INT_ARRAY, array, 0, offset, length );
+		}
+		
+		/**
+		 * Sets a slice of a long array as the content of the message.
+		 * The array is not copied.
+		 * @param array the array
+		 * @param offset the first element of the slice
+		 * @param length the number of elements of the slice
+		 * @return this builder
+		 */
+		public final Builder longArray( long array[], int offset, int length ){
+			checkSlice( array.length, offset, length );
+			return payload( MessagePayload.PAYLOAD_LONG_ARRAY, array, 0, offset, length );
+		}
+		
+		/**
+		 * Builds a new message.
+		 * @return the message
+		 */
+		public final Message build(){
+			Message message = new Message();
+			message.reset( priority, type, payload, content, primitiveValue, offset, length, null );
+			return message;
+		}
+		
+		/**
+		 * Builds a message taking it from the specified pool.
+		 * @param pool the pool to use
+		 * @return the pooled message
+		 */
+		public final Message build( MessagePool pool ){
+			Message message = pool.take();
+			message.reset( priority, type, payload, content, primitiveValue, offset, length, pool );
+			return message;
+		}
+		
+		/**
+		 * Stores the content of the message.
+		 */
+		private Builder payload( MessagePayload payload, Object content, long primitiveValue, int offset, int length ){
+			this.payload        = payload;
+			this.content        = content;
+			this.primitiveValue = primitiveValue;
+			this.offset         = offset;
+			this.length         = length;
+			return this;
+		}
+		
+		/**
+		 * Checks that a slice is within its array.
+		 */
+		private static void checkSlice( int arrayLength, int offset, int length ){
+			if( offset < 0 || length < 0 || offset > arrayLength - length )
+				throw new IndexOutOfBoundsException( String.format( "Slice [%d, %d) out of an array of %d elements", offset, offset + length, arrayLength ) );
+		}
+	}
 
 }
@@ -0,0 +1,372 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.messaging;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes messages into binary frames, and decodes them back, so that they can be
+ * sent over a channel.
+ * A frame is made by:
+ * - the length of the rest of the frame (4 bytes)
+ * - the id of the addressee agent (4 bytes)
+ * - the priority level, the type and the payload kind of the message (1 byte each)
+ * - the content of the message.
+ * Numeric contents, array slices, strings, byte arrays and boxed primitives are written
+ * in their raw binary form, while any other content is written with Java serialization,
+ * that is much more expensive. All the numbers are big endian.
+ *
+ * Please note that serialized contents are read back with Java serialization, so frames
+ * must come only from trusted peers.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class MessageCodec {
+
+	/**
+	 * The length of the frame header, that is the length and the addressee.
+	 */
+	public static final int HEADER_SIZE = 8;
+
+	/**
+	 * The max length of a frame, header included.
+	 */
+	public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The tags of the object contents.
+	 */
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_STRING = 1;
+	private static final byte TAG_INTEGER = 2;
+	private static final byte TAG_LONG = 3;
+	private static final byte TAG_DOUBLE = 4;
+	private static final byte TAG_BOOLEAN = 5;
+	private static final byte TAG_BYTES = 6;
+	private static final byte TAG_SERIALIZED = 7;
+
+	/**
+	 * The message types, indexed by ordinal.
+	 */
+	private static final MessageType TYPES[] = MessageType.values();
+
+	/**
+	 * The payload kinds, indexed by ordinal.
+	 */
+	private static final MessagePayload PAYLOADS[] = MessagePayload.values();
+
+	/**
+	 * No instances of this class are required.
+	 */
+	private MessageCodec(){
+		super();
+	}
+
+	/**
+	 * Appends the frame of a message to a buffer.
+	 * @param agentID the id of the addressee agent
+	 * @param message the message to encode
+	 * @param buffer where the frame is written, starting from its position
+	 * @return true if the frame has been written, false if it does not fit in the buffer:
+	 * in this case the buffer position is left unchanged
+	 * @throws NotSerializableException if the content of the message cannot be encoded:
+	 * in this case too the buffer position is left unchanged
+	 */
+	public static boolean encode( int agentID, Message message, ByteBuffer buffer ) throws IOException {
+		int start = buffer.position();
+		try{
+			buffer.putInt( 0 );
+			buffer.putInt( agentID );
+			buffer.put( (byte) message.getPriority().getLevel() );
+			buffer.put( (byte) message.getType().ordinal() );
+			buffer.put( (byte) message.getPayload().ordinal() );
+			switch( message.getPayload() ){
+			case PAYLOAD_LONG:
+			case PAYLOAD_DOUBLE:
+				// the raw bits of a double are kept as they are
+				buffer.putLong( message.getPayload() == MessagePayload.PAYLOAD_LONG
+									? message.getLongValue()
+									: Double.doubleToRawLongBits( message.getDoubleValue() ) );
+				break;
+
+			case PAYLOAD_INT_ARRAY:
+				int ints[] = message.getIntArray();
+				buffer.putInt( message.getLength() );
+				buffer.asIntBuffer().put( ints, message.getOffset(), message.getLength() );
+				buffer.position( buffer.position() + 4 * message.getLength() );
+				break;
+
+			case PAYLOAD_LONG_ARRAY:
+				long longs[] = message.getLongArray();
+				buffer.putInt( message.getLength() );
+				buffer.asLongBuffer().put( longs, message.getOffset(), message.getLength() );
+				buffer.position( buffer.position() + 8 * message.getLength() );
+				break;
+
+			default:
+				encodeObject( message.getContent(), buffer );
+			}
+		}catch( BufferOverflowException e ){
+			buffer.position( start );
+			return false;
+		}catch( IOException | RuntimeException e ){
+			// never leave a partial frame, without its length, in the buffer
+			buffer.position( start );
+			throw e;
+		}
+
+		int length = buffer.position() - start;
+		if( length > MAX_FRAME_SIZE ){
+			buffer.position( start );
+			throw new NotSerializableException( "The message needs a frame of " + length + " bytes" );
+		}
+
+		buffer.putInt( start, length - 4 );
+		return true;
+	}
+
+	/**
+	 * Writes an object content.
+	 * @param content the content, can be null
+	 * @param buffer where the content is written
+	 * @throws NotSerializableException if the content cannot be encoded
+	 */
+	private static void encodeObject( Object content, ByteBuffer buffer ) throws IOException {
+		if( content == null )
+			buffer.put( TAG_NULL );
+		else if( content instanceof String ){
+			byte bytes[] = ((String) content).getBytes( StandardCharsets.UTF_8 );
+			buffer.put( TAG_STRING );
+			buffer.putInt( bytes.length );
+			buffer.put( bytes );
+		}
+		else if( content instanceof Integer ){
+			buffer.put( TAG_INTEGER );
+			buffer.putInt( (Integer) content );
+		}
+		else if( content instanceof Long ){
+			buffer.put( TAG_LONG );
+			buffer.putLong( (Long) content );
+		}
+		else if( content instanceof Double ){
+			buffer.put( TAG_DOUBLE );
+			buffer.putDouble( (Double) content );
+		}
+		else if( content instanceof Boolean ){
+			buffer.put( TAG_BOOLEAN );
+			buffer.put( (byte) ( (Boolean) content ? 1 : 0 ) );
+		}
+		else if( content instanceof byte[] ){
+			byte bytes[] = (byte[]) content;
+			buffer.put( TAG_BYTES );
+			buffer.putInt( bytes.length );
+			buffer.put( bytes );
+		}
+		else if( content instanceof Serializable ){
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream output = new ObjectOutputStream( bytes );
+			output.writeObject( content );
+			output.close();
+			buffer.put( TAG_SERIALIZED );
+			buffer.putInt( bytes.size() );
+			buffer.put( bytes.toByteArray() );
+		}
+		else
+			throw new NotSerializableException( content.getClass().getName() );
+	}
+
+	/**
+	 * Provides the length of the frame at the buffer position.
+	 * @param buffer the buffer, whose position is not changed
+	 * @return the length of the frame, header included, or -1 if the buffer does not
+	 * contain the whole frame
+	 * @throws StreamCorruptedException if the frame length is not valid
+	 */
+	public static int getFrameLength( ByteBuffer buffer ) throws IOException {
+		if( buffer.remaining() < 4 )
+			return -1;
+
+		int length = buffer.getInt( buffer.position() ) + 4;
+		if( length < HEADER_SIZE + 3 || length > MAX_FRAME_SIZE )
+			throw new StreamCorruptedException( "Not a valid frame length: " + length );
+
+		return buffer.remaining() < length ? -1 : length;
+	}
+
+	/**
+	 * Provides the id of the addressee of the frame at the buffer position.
+	 * @param buffer the buffer, whose position is not changed
+	 * @return the id of the agent
+	 */
+	public static int getAddressee( ByteBuffer buffer ){
+		return buffer.getInt( buffer.position() + 4 );
+	}
+
+	/**
+	 * Reads the frame at the buffer position, that must be complete (see getFrameLength).
+	 * @param buffer the buffer, whose position is moved after the frame
+	 * @return the message
+	 * @throws StreamCorruptedException if the frame is not valid
+	 */
+	public static Message decode( ByteBuffer buffer ) throws IOException {
+		int end = buffer.position() + getFrameLength( buffer );
+		buffer.position( buffer.position() + HEADER_SIZE );
+		try{
+			MessagePriority priority = MessagePriority.fromLevel( buffer.get() );
+			MessageType type         = TYPES[ buffer.get() ];
+			MessagePayload payload   = PAYLOADS[ buffer.get() ];
+			Object content = null;
+			long primitiveValue = 0;
+			int length = 0;
+			switch( payload ){
+			case PAYLOAD_LONG:
+			case PAYLOAD_DOUBLE:
+				primitiveValue = buffer.getLong();
+				break;
+
+			case PAYLOAD_INT_ARRAY:
+				length = readLength( buffer, 4 );
+				int ints[] = new int[ length ];
+				buffer.asIntBuffer().get( ints );
+				buffer.position( buffer.position() + 4 * length );
+				content = ints;
+				break;
+
+			case PAYLOAD_LONG_ARRAY:
+				length = readLength( buffer, 8 );
+				long longs[] = new long[ length ];
+				buffer.asLongBuffer().get( longs );
+				buffer.position( buffer.position() + 8 * length );
+				content = longs;
+				break;
+
+			default:
+				content = decodeObject( buffer );
+			}
+
+			if( buffer.position() != end )
+				throw new StreamCorruptedException( "The frame content does not match its length" );
+
+			Message message = new Message();
+			message.reset( priority, type, payload, content, primitiveValue, 0, length, null );
+			return message;
+		}catch( RuntimeException e ){
+			// a wrong tag, level or length
+			throw new StreamCorruptedException( "Not a valid frame: " + e );
+		}finally{
+			buffer.position( end );
+		}
+	}
+
+	/**
+	 * Reads an object content.
+	 * @param buffer where the content is read
+	 * @return the content
+	 * @throws StreamCorruptedException if the content is not valid
+	 */
+	private static Object decodeObject( ByteBuffer buffer ) throws IOException {
+		byte tag = buffer.get();
+		switch( tag ){
+		case TAG_NULL:
+			return null;
+		case TAG_STRING:
+			byte chars[] = new byte[ readLength( buffer, 1 ) ];
+			buffer.get( chars );
+			return new String( chars, StandardCharsets.UTF_8 );
+		case TAG_INTEGER:
+			return buffer.getInt();
+		case TAG_LONG:
+			return buffer.getLong();
+		case TAG_DOUBLE:
+			return buffer.getDouble();
+		case TAG_BOOLEAN:
+			return buffer.get() != 0;
+		case TAG_BYTES:
+			byte bytes[] = new byte[ readLength( buffer, 1 ) ];
+			buffer.get( bytes );
+			return bytes;
+		case TAG_SERIALIZED:
+			byte serialized[] = new byte[ readLength( buffer, 1 ) ];
+			buffer.get( serialized );
+			ObjectInputStream input = new ObjectInputStream( new ByteArrayInputStream( serialized ) );
+			try{
+				return input.readObject();
+			}catch( ClassNotFoundException e ){
+				throw new StreamCorruptedException( "Unknown content class: " + e.getMessage() );
+			}finally{
+				input.close();
+			}
+		default:
+			throw new StreamCorruptedException( "Unknown content tag: " + tag );
+		}
+	}
+
+	/**
+	 * Reads the number of elements of an array content, checking that they are in the buffer.
+	 * @param buffer where the length is read
+	 * @param elementSize the size of each element, in bytes
+	 * @return the number of elements
+	 * @throws StreamCorruptedException if the elements exceed the buffer
+	 */
+	private static int readLength( ByteBuffer buffer, int elementSize ) throws IOException {
+		int length = buffer.getInt();
+		if( length < 0 || length > buffer.remaining() / elementSize )
+			throw new StreamCorruptedException( "Not a valid content length: " + length );
+
+		return length;
+	}
+
+}
@@ -0,0 +1,252 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of reusable messages.
+ * Agents that send a lot of messages can take them from a pool instead of constructing
+ * them: once the addressee has handled a pooled message the platform releases it, and the
+ * message is handed to the next sender. In steady state no message is allocated at all.
+ *
+ * The pool is split into stripes, each one protected by its own monitor and selected by
+ * the thread id, so that threads rarely contend for the same stripe. Since messages are
+ * usually taken by the sender thread and released by the addressee thread, a thread that
+ * finds its stripe empty (or full) looks into the other stripes.
+ *
+ * Please note that a pooled message must not be kept after it has been handled: an agent
+ * that needs the message content later must copy it.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public final class MessagePool {
+
+	/**
+	 * The default number of messages each stripe keeps.
+	 */
+	public static final int DEFAULT_STRIPE_CAPACITY = 256;
+
+	/**
+	 * The pool shared by all the agents.
+	 */
+	private static final MessagePool defaultPool = new MessagePool( DEFAULT_STRIPE_CAPACITY );
+
+	/**
+	 * A stripe of the pool, that is a stack of free messages.
+	 */
+	private static final class Stripe {
+
+		/**
+		 * The free messages.
+		 */
+		final Message messages[];
+
+		/**
+		 * How many free messages are in the stack.
+		 */
+		int size = 0;
+
+		Stripe( int capacity ){
+			super();
+			messages = new Message[ capacity ];
+		}
+	}
+
+	/**
+	 * The stripes of the pool, their number is a power of two.
+	 */
+	private final Stripe stripes[];
+
+	/**
+	 * The number of messages the pool had to construct because it was empty.
+	 */
+	private final AtomicLong createdMessages = new AtomicLong( 0 );
+
+
+	/**
+	 * Builds a pool with a stripe for each couple of available processors.
+	 * @param stripeCapacity the max number of free messages each stripe keeps
+	 */
+	public MessagePool( int stripeCapacity ){
+		super();
+		int count = Integer.highestOneBit( Math.max( 1, Runtime.getRuntime().availableProcessors() * 2 - 1 ) ) << 1;
+		stripes = new Stripe[ count ];
+		for( int i = 0; i < count; i++ )
+			stripes[ i ] = new Stripe( stripeCapacity );
+	}
+
+	/**
+	 * Provides the pool shared by all the agents.
+	 * @return the default pool
+	 */
+	public static final MessagePool getDefault(){
+		return defaultPool;
+	}
+
+	/**
+	 * Provides a user message with the normal priority.
+	 * @param content the content of the message (can be null)
+	 * @return the message
+	 */
+	public final Message acquire( Object content ){
+		return acquire( MessagePriority.PRIORITY_NORMAL, content, MessageType.TYPE_USER );
+	}
+
+	/**
+	 * Provides a user message.
+	 * @param priority the priority of the message
+	 * @param content the content of the message (can be null)
+	 * @return the message
+	 */
+	public final Message acquire( MessagePriority priority, Object content ){
+		return acquire( priority, content, MessageType.TYPE_USER );
+	}
+
+	/**
+	 * Provides a message, reusing a released one if available.
+	 * @param priority the priority of the message
+	 * @param content the content of the message (can be null)
+	 * @param type the type of the message
+	 * @return the message
+	 */
+	public final Message acquire( MessagePriority priority, Object content, MessageType type ){
+		Message message = take();
+		message.reset( priority, type, MessagePayload.PAYLOAD_OBJECT, content, 0, 0, 0, this );
+		return message;
+	}
+
+	/**
+	 * Provides a user message carrying a long value.
+	 * @param priority the priority of the message
+	 * @param value the content of the message
+	 * @return the message
+	 */
+	public final Message acquireLong( MessagePriority priority, long value ){
+		Message message = take();
+		message.reset( priority, MessageType.TYPE_USER, MessagePayload.PAYLOAD_LONG, null, value, 0, 0, this );
+		return message;
+	}
+
+	/**
+	 * Provides a user message carrying a double value.
+	 * @param priority the priority of the message
+	 * @param value the content of the message
+	 * @return the message
+	 */
+	public final Message acquireDouble( MessagePriority priority, double value ){
+		Message message = take();
+		message.reset( priority, MessageType.TYPE_USER, MessagePayload.PAYLOAD_DOUBLE, null, Double.doubleToRawLongBits( value ), 0, 0, this );
+		return message;
+	}
+
+	/**
+	 * Takes a free message from the pool, constructing it if the pool is empty.
+	 * The message must be reset by the caller.
+	 * @return the message
+	 */
+	final Message take(){
+		Message message = null;
+		int home = homeStripe();
+		for( int i = 0; i < stripes.length && message == null; i++ ){
+			Stripe stripe = stripes[ ( home + i ) & ( stripes.length - 1 ) ];
+			synchronized( stripe ){
+				if( stripe.size > 0 ){
+					message = stripe.messages[ --stripe.size ];
+					stripe.messages[ stripe.size ] = null;
+				}
+			}
+		}
+
+		if( message == null ){
+			createdMessages.incrementAndGet();
+			message = new Message();
+		}
+
+		return message;
+	}
+
+	/**
+	 * Stores a released message, so that it can be reused.
+	 * If the pool is full the message is left to the garbage collector.
+	 * @param message the message that has been released
+	 */
+	final void recycle( Message message ){
+		// do not keep the content alive
+		message.reset( MessagePriority.PRIORITY_NORMAL, MessageType.TYPE_USER, MessagePayload.PAYLOAD_OBJECT, null, 0, 0, 0, null );
+
+		int home = homeStripe();
+		for( int i = 0; i < stripes.length; i++ ){
+			Stripe stripe = stripes[ ( home + i ) & ( stripes.length - 1 ) ];
+			synchronized( stripe ){
+				if( stripe.size < stripe.messages.length ){
+					stripe.messages[ stripe.size++ ] = message;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Provides the index of the stripe of the current thread.
+	 * @return the stripe index
+	 */
+	private final int homeStripe(){
+		long id = Thread.currentThread().getId();
+		return (int) ( id ^ ( id >>> 16 ) ) & ( stripes.length - 1 );
+	}
+
+	/**
+	 * Provides the number of messages constructed because no released message was available.
+	 * In steady state this number does not grow.
+	 * @return the number of constructed messages
+	 */
+	public final long getCreatedMessages(){
+		return createdMessages.get();
+	}
+
+}
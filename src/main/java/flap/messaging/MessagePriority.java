@@ -50,6 +50,10 @@ package flap.messaging;
  * The message priority.
  * Each message has associated a priority that express how the message should
  * be handled and how important it is.
+ * Besides the administrative and normal priorities, a few levels above and below
+ * the normal one are available, so that latency sensitive messages (e.g., control traffic)
+ * can overtake bulk data. Each priority has a numeric level, that is zero for the
+ * administrative priority and grows as the priority decreases.
  * 
  * @author Luca Ferrari
  * @version 1.0
@@ -57,10 +61,52 @@ package flap.messaging;
 public enum MessagePriority {
 
 	// -- ORDER IS IMPORTANT: the values() method returns the priorities in the order
-	// they are defined, so the highest priorities must be listed first
+	// they are defined, so the highest priorities must be listed first. Message queues
+	// use the ordinal as the numeric level of the priority, and support at most 32 levels.
 	
 	PRIORITY_ADMIN,		// highest priority, for instance message sent by the platform
-	PRIORITY_NORMAL		// normal priority, for instance intra-agent messaging
+	PRIORITY_HIGH_7,	// user defined priorities higher than the normal one
+	PRIORITY_HIGH_6,
+	PRIORITY_HIGH_5,
+	PRIORITY_HIGH_4,
+	PRIORITY_HIGH_3,
+	PRIORITY_HIGH_2,
+	PRIORITY_HIGH_1,
+	PRIORITY_NORMAL,	// normal priority, for instance intra-agent messaging
+	PRIORITY_LOW_1,		// user defined priorities lower than the normal one, for instance bulk data
+	PRIORITY_LOW_2,
+	PRIORITY_LOW_3,
+	PRIORITY_LOW_4,
+	PRIORITY_LOW_5,
+	PRIORITY_LOW_6,
+	PRIORITY_LOW_7;
 	
 	
+	/**
+	 * All the priorities indexed by level, kept to avoid cloning the values at each call.
+	 */
+	private static final MessagePriority[] LEVELS = values();
+	
+	/**
+	 * The number of available priority levels.
+	 */
+	public static final int LEVEL_COUNT = LEVELS.length;
+	
+	/**
+	 * Provides the numeric level of this priority.
+	 * @return the level, zero for the highest priority
+	 */
+	public final int getLevel(){
+		return ordinal();
+	}
+	
+	/**
+	 * Provides the priority with the specified numeric level.
+	 * @param level the level of the priority, zero for the highest priority
+	 * @return the priority
+	 */
+	public static final MessagePriority fromLevel( int level ){
+		return LEVELS[ level ];
+	}
+	
 }
@@ -0,0 +1,259 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.net;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import flap.agents.AgentID;
+import flap.agents.IAgentProxy;
+import flap.kernel.Context;
+import flap.kernel.HashRing;
+
+/**
+ * Places the agents on the nodes of a cluster and finds them wherever they are.
+ * A node is either a local context or a remote one, reached by a socket transport,
+ * and the nodes are placed on a ring of hashes (see HashRing): an agent created for
+ * a key goes to the node that owns the key, so that each node gets an even share of
+ * the agents and adding or removing a node moves only the keys of such node.
+ *
+ * Since the id of an agent embeds the node that has created it (see AgentID), a proxy
+ * of any agent is found in constant time, without asking the other nodes where the
+ * agent lives.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class AgentPlacement {
+
+	/**
+	 * The default number of points of each node on the ring.
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	/**
+	 * The transport used to reach the remote nodes, can be null if all the nodes are local.
+	 */
+	private final SocketTransport transport;
+
+	/**
+	 * The local contexts, indexed by node.
+	 */
+	private final AtomicReferenceArray<Context> contexts = new AtomicReferenceArray<Context>( AgentID.MAX_NODES );
+
+	/**
+	 * The addresses of the remote nodes, indexed by node.
+	 */
+	private final AtomicReferenceArray<InetSocketAddress> addresses = new AtomicReferenceArray<InetSocketAddress>( AgentID.MAX_NODES );
+
+	/**
+	 * The nodes that own keys, indexed by node. A removed node does not own keys anymore,
+	 * but its agents can still be resolved.
+	 */
+	private final boolean placed[] = new boolean[ AgentID.MAX_NODES ];
+
+	/**
+	 * The ring of the nodes, built again each time a node joins or leaves; null if
+	 * there are no nodes.
+	 */
+	private volatile HashRing ring = null;
+
+	/**
+	 * Builds a placement for local nodes only.
+	 */
+	public AgentPlacement(){
+		this( null );
+	}
+
+	/**
+	 * Builds a placement that reaches the remote nodes with the specified transport.
+	 * @param transport the transport, null if all the nodes are local
+	 */
+	public AgentPlacement( SocketTransport transport ){
+		super();
+		this.transport = transport;
+	}
+
+	/**
+	 * Adds a local context as the node of its node id (see Context.getNodeID).
+	 * @param context the context
+	 */
+	public final synchronized void addLocalNode( Context context ){
+		int node = context.getNodeID();
+		checkFree( node );
+		contexts.set( node, context );
+		addresses.set( node, null );
+		placed[ node ]    = true;
+		buildRing();
+	}
+
+	/**
+	 * Adds a remote node.
+	 * @param node the node id of the remote context
+	 * @param address the address the transport of the remote context is listening on
+	 */
+	public final synchronized void addRemoteNode( int node, InetSocketAddress address ){
+		if( transport == null )
+			throw new IllegalStateException( "Remote nodes require a transport" );
+
+		checkFree( node );
+		contexts.set( node, null );
+		addresses.set( node, address );
+		placed[ node ]    = true;
+		buildRing();
+	}
+
+	/**
+	 * Removes a node. The keys of the node go to the other nodes, while the agents
+	 * already created by the node can still be resolved as long as the node runs.
+	 * @param node the node id
+	 * @return true if the node has been removed
+	 */
+	public final synchronized boolean removeNode( int node ){
+		if( node < 0 || node >= AgentID.MAX_NODES || ! placed[ node ] )
+			return false;
+
+		placed[ node ] = false;
+		buildRing();
+		return true;
+	}
+
+	/**
+	 * Provides the node that owns the specified key.
+	 * @param key the key, can be null
+	 * @return the node id, or -1 if there are no nodes
+	 */
+	public final int getNode( Object key ){
+		HashRing currentRing = ring;
+		return currentRing == null ? -1 : currentRing.getMember( currentRing.getOwner( key ) );
+	}
+
+	/**
+	 * Tells if a node is a local context.
+	 * @param node the node id
+	 * @return true if the node is local
+	 */
+	public final boolean isLocal( int node ){
+		return node >= 0 && node < AgentID.MAX_NODES && contexts.get( node ) != null;
+	}
+
+	/**
+	 * Creates an agent on the node that owns the specified key, if such node is local.
+	 * An agent owned by a remote node must be created by the process of such node.
+	 * @param key the key of the agent
+	 * @param agentName the mnemonic name of the agent
+	 * @param clazz the fully qualified name of the agent class
+	 * @return the id of the agent, or -1 if the agent cannot be created here
+	 */
+	public final int createAgent( Object key, String agentName, String clazz ){
+		int node = getNode( key );
+		Context context = node < 0 ? null : contexts.get( node );
+		return context == null ? -1 : context.createAgent( agentName, clazz );
+	}
+
+	/**
+	 * Provides the proxy of an agent, wherever it lives. An agent moved to another local
+	 * context is looked up in all the local contexts.
+	 * @param agentID the id of the agent
+	 * @return the proxy, or null if the agent cannot be found
+	 * @throws IOException if the connection to the remote node cannot be opened
+	 */
+	public final IAgentProxy resolve( int agentID ) throws IOException {
+		int node = AgentID.getNode( agentID );
+		Context context = contexts.get( node );
+		if( context != null ){
+			IAgentProxy proxy = context.getAgentProxy( agentID );
+			return proxy != null ? proxy : findLocally( agentID );
+		}
+
+		InetSocketAddress address = addresses.get( node );
+		return address == null ? findLocally( agentID ) : transport.getRemoteProxy( address, agentID );
+	}
+
+	/**
+	 * Looks for an agent in all the local contexts.
+	 * @param agentID the id of the agent
+	 * @return the proxy, or null if no local context has the agent
+	 */
+	private IAgentProxy findLocally( int agentID ){
+		for( int i = 0; i < AgentID.MAX_NODES; i++ ){
+			Context context = contexts.get( i );
+			if( context != null ){
+				IAgentProxy proxy = context.getAgentProxy( agentID );
+				if( proxy != null )
+					return proxy;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks that a node id is valid and not taken.
+	 * @param node the node id
+	 */
+	private void checkFree( int node ){
+		if( node < 0 || node >= AgentID.MAX_NODES )
+			throw new IllegalArgumentException( "Not a valid node: " + node );
+		if( placed[ node ] )
+			throw new IllegalArgumentException( "The node " + node + " has already been added" );
+	}
+
+	/**
+	 * Builds the ring of the current nodes.
+	 */
+	private void buildRing(){
+		int nodes[] = new int[ AgentID.MAX_NODES ];
+		int count = 0;
+		for( int i = 0; i < AgentID.MAX_NODES; i++ )
+			if( placed[ i ] )
+				nodes[ count++ ] = i;
+
+		ring = count == 0 ? null : new HashRing( Arrays.copyOf( nodes, count ), DEFAULT_VIRTUAL_NODES );
+	}
+
+}
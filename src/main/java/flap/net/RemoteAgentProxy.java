@@ -0,0 +1,122 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.net;
+import java.net.InetSocketAddress;
+
+import flap.agents.IAgentProxy;
+import flap.messaging.Message;
+
+/**
+ * The proxy of an agent that lives in the context of another virtual machine.
+ * Messages are queued on the connection to such context and written by the
+ * transport thread, so the sender never waits for the network. A message is
+ * accepted as long as the connection is open and has not reached the outbound
+ * capacity of its transport, but there is no guarantee that the
+ * remote agent accepts it: the remote context discards the messages addressed to
+ * agents it does not know or whose queues refuse them.
+ *
+ * Proxies are built by SocketTransport.getRemoteProxy. Once the connection has been
+ * closed the proxy refuses all the messages, and a new proxy must be requested.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class RemoteAgentProxy implements IAgentProxy {
+
+	/**
+	 * The connection to the context of the agent.
+	 */
+	private final SocketTransport.Connection connection;
+
+	/**
+	 * The id of the agent in its context.
+	 */
+	private final int agentID;
+
+	/**
+	 * Builds the proxy of a remote agent.
+	 * @param connection the connection to the context of the agent
+	 * @param agentID the id of the agent in its context
+	 */
+	RemoteAgentProxy( SocketTransport.Connection connection, int agentID ){
+		super();
+		this.connection = connection;
+		this.agentID = agentID;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.agents.IAgentProxy#handleMessage(flap.messaging.Message)
+	 */
+	@Override
+	public final boolean handleMessage( Message msg ){
+		return connection.send( agentID, msg );
+	}
+
+	/**
+	 * Provides the id of the agent in its context.
+	 * @return the agent id
+	 */
+	public final int getAgentID(){
+		return agentID;
+	}
+
+	/**
+	 * Provides the address of the context of the agent.
+	 * @return the address of the remote transport
+	 */
+	public final InetSocketAddress getAddress(){
+		return connection.getAddress();
+	}
+
+	/**
+	 * Tells if the connection to the context of the agent is open.
+	 * @return false if the proxy refuses the messages
+	 */
+	public final boolean isConnected(){
+		return ! connection.isClosed();
+	}
+
+}
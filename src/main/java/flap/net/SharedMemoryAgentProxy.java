@@ -0,0 +1,130 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.net;
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.IAgentProxy;
+import flap.messaging.Message;
+
+/**
+ * The proxy of an agent that lives in the context of another virtual machine on
+ * the same host. Each message is encoded directly into the ring file the context of the
+ * agent is listening on, by the thread of the sender.
+ * The message is refused if the ring is full, and there is no guarantee that the remote
+ * agent accepts it: the remote context discards the messages addressed to agents it
+ * does not know or whose queues refuse them.
+ *
+ * Proxies are built by SharedMemoryTransport.getRemoteProxy.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class SharedMemoryAgentProxy implements IAgentProxy {
+
+	/**
+	 * The logger of all the proxies.
+	 */
+	private static Log logger = LogFactory.getLog( SharedMemoryAgentProxy.class );
+
+	/**
+	 * The ring of the context of the agent.
+	 */
+	private final SharedMemoryRing ring;
+
+	/**
+	 * The id of the agent in its context.
+	 */
+	private final int agentID;
+
+	/**
+	 * Builds the proxy of a remote agent.
+	 * @param ring the ring of the context of the agent
+	 * @param agentID the id of the agent in its context
+	 */
+	SharedMemoryAgentProxy( SharedMemoryRing ring, int agentID ){
+		super();
+		this.ring = ring;
+		this.agentID = agentID;
+	}
+
+	/* (non-Javadoc)
+	 * @see flap.agents.IAgentProxy#handleMessage(flap.messaging.Message)
+	 */
+	@Override
+	public final boolean handleMessage( Message msg ){
+		try{
+			if( ! ring.offer( agentID, msg ) )
+				return false;
+		}catch( IOException e ){
+			logger.error( String.format( "Cannot encode a message for agent %d", agentID ), e );
+			return false;
+		}
+
+		// the message has been copied into the ring
+		msg.release();
+		return true;
+	}
+
+	/**
+	 * Provides the id of the agent in its context.
+	 * @return the agent id
+	 */
+	public final int getAgentID(){
+		return agentID;
+	}
+
+	/**
+	 * Tells if the ring of the context of the agent is still mapped.
+	 * @return false if the proxy refuses the messages
+	 */
+	public final boolean isConnected(){
+		return ! ring.isClosed();
+	}
+
+}
@@ -0,0 +1,439 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.net;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjIntConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.messaging.Message;
+import flap.messaging.MessageCodec;
+
+/**
+ * A single-producer single-consumer ring of message frames, stored in a memory
+ * mapped file so that two virtual machines on the same host can share it.
+ * The file starts with an header that holds the capacity of the ring and the two
+ * counters of the bytes written and read so far, each on its own cache line; the rest
+ * of the file holds the frames. Messages are encoded by MessageCodec directly into the
+ * mapped memory, and decoded from it.
+ *
+ * Each frame starts at a multiple of 8 bytes. When a frame does not fit in the space
+ * left before the end of the ring, such space is marked as padding and the frame is
+ * written at the beginning of the ring.
+ *
+ * Each side of the ring locks its own region of the file, so that two processes cannot
+ * produce (or consume) on the same ring. The threads of the producer process
+ * take turns on a monitor, while the two sides never lock each other.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+final class SharedMemoryRing implements Closeable {
+
+	/**
+	 * The magic number of the ring files.
+	 */
+	private static final int MAGIC = 0x464C5252;
+
+	/**
+	 * The version of the file layout.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The offset of the capacity in the header.
+	 */
+	private static final int CAPACITY_OFFSET = 8;
+
+	/**
+	 * The offset of the counter of the bytes read, on its own cache line.
+	 */
+	private static final int HEAD_OFFSET = 64;
+
+	/**
+	 * The offset of the counter of the bytes written, on its own cache line.
+	 */
+	private static final int TAIL_OFFSET = 128;
+
+	/**
+	 * The size of the header, the frames start after it.
+	 */
+	static final int HEADER_SIZE = 192;
+
+	/**
+	 * The length that marks the padding at the end of the ring.
+	 */
+	private static final int PADDING = -1;
+
+	/**
+	 * The logger of all the rings.
+	 */
+	private static Log logger = LogFactory.getLog( SharedMemoryRing.class );
+
+	/**
+	 * The fence that keeps the accesses before it from moving after the following
+	 * stores, that is the release half of a volatile write.
+	 */
+	private static final MethodHandle STORE_FENCE = lookupFence( "storeFence" );
+
+	/**
+	 * The fence that keeps the loads before it from moving after the following
+	 * accesses, that is the acquire half of a volatile read.
+	 */
+	private static final MethodHandle LOAD_FENCE = lookupFence( "loadFence" );
+
+	/**
+	 * Used as a fence when the runtime does not provide one.
+	 */
+	private static volatile int fallbackFence = 0;
+
+	/**
+	 * The file of the ring.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The lock on the region of the file of this side of the ring.
+	 */
+	private final FileLock lock;
+
+	/**
+	 * The mapped file.
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The frames area, the position 0 is the first byte after the header.
+	 */
+	private final ByteBuffer frames;
+
+	/**
+	 * The size of the frames area, a power of two.
+	 */
+	private final int capacity;
+
+	/**
+	 * Set when the ring has been closed.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Searches for a memory fence of the runtime, that is sun.misc.Unsafe.
+	 * @param name the name of the fence method
+	 * @return the fence, or null if not available
+	 */
+	private static MethodHandle lookupFence( String name ){
+		try{
+			Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+			Field field = unsafeClass.getDeclaredField( "theUnsafe" );
+			field.setAccessible( true );
+			return MethodHandles.lookup()
+						.findVirtual( unsafeClass, name, MethodType.methodType( void.class ) )
+						.bindTo( field.get( null ) );
+		}catch( Exception e ){
+			logger.info( "Memory fences are not available, shared memory rings use volatile accesses" );
+			return null;
+		}
+	}
+
+	/**
+	 * Executes a fence.
+	 * @param fence the fence, null to use a volatile access
+	 */
+	private static void fence( MethodHandle fence ){
+		if( fence == null ){
+			fallbackFence++;
+			return;
+		}
+
+		try{
+			fence.invokeExact();
+		}catch( Throwable t ){
+			throw new IllegalStateException( t );
+		}
+	}
+
+	/**
+	 * Maps a ring file.
+	 * @param path the file
+	 * @param capacity the size of the frames area, zero to read it from an existing file
+	 * @param producer true for the producer side, false for the consumer side
+	 * @throws IOException if the file cannot be mapped, is not a ring, or the side is
+	 * already taken by another process
+	 */
+	private SharedMemoryRing( Path path, int capacity, boolean producer ) throws IOException {
+		super();
+		channel = capacity > 0
+					? FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE )
+					: FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		try{
+			// each side locks a byte of the magic number, the lock is advisory
+			FileLock sideLock = null;
+			try{
+				sideLock = channel.tryLock( producer ? 0 : 1, 1, false );
+			}catch( OverlappingFileLockException e ){
+				// the side is taken by this process
+			}
+
+			lock = sideLock;
+			if( lock == null )
+				throw new IOException( String.format( "The %s of the ring %s is another process", producer ? "producer" : "consumer", path ) );
+
+			if( capacity > 0 ){
+				// a new ring, or a ring left by a previous consumer, starts empty; the file
+				// is not truncated, since a producer may still have it mapped
+				buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity );
+				buffer.putInt( 4, VERSION );
+				buffer.putInt( CAPACITY_OFFSET, capacity );
+				buffer.putLong( HEAD_OFFSET, 0 );
+				buffer.putLong( TAIL_OFFSET, 0 );
+				fence( STORE_FENCE );
+				buffer.putInt( 0, MAGIC );
+			}
+			else{
+				if( channel.size() < HEADER_SIZE )
+					throw new StreamCorruptedException( path + " is not a ring file" );
+
+				buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, channel.size() );
+				capacity = buffer.getInt( CAPACITY_OFFSET );
+				if( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION
+						|| Integer.bitCount( capacity ) != 1 || channel.size() < HEADER_SIZE + (long) capacity )
+					throw new StreamCorruptedException( path + " is not a ring file" );
+			}
+		}catch( IOException | RuntimeException e ){
+			channel.close();
+			throw e;
+		}
+
+		this.capacity = capacity;
+		buffer.position( HEADER_SIZE );
+		frames = buffer.slice();
+	}
+
+	/**
+	 * Creates a ring file, or resets an existing one, and maps it as consumer.
+	 * @param path the file
+	 * @param capacity the size of the frames area, rounded up to a power of two
+	 * @return the consumer side of the ring
+	 * @throws IOException if the file cannot be created or another process consumes it
+	 */
+	static SharedMemoryRing create( Path path, int capacity ) throws IOException {
+		if( capacity < 64 || capacity > ( 1 << 30 ) )
+			throw new IllegalArgumentException( "The capacity of the ring must be between 64 bytes and 1GB" );
+
+		int length = 64;
+		while( length < capacity )
+			length <<= 1;
+
+		return new SharedMemoryRing( path, length, false );
+	}
+
+	/**
+	 * Maps an existing ring file as producer.
+	 * @param path the file, created by the consumer
+	 * @return the producer side of the ring
+	 * @throws IOException if the file is not a ring or another process produces on it
+	 */
+	static SharedMemoryRing open( Path path ) throws IOException {
+		return new SharedMemoryRing( path, 0, true );
+	}
+
+	/**
+	 * Encodes a message into the ring. This method must be called by the producer side.
+	 * @param agentID the id of the addressee agent
+	 * @param message the message
+	 * @return false if the ring is full or closed
+	 * @throws IOException if the message cannot be encoded
+	 */
+	final synchronized boolean offer( int agentID, Message message ) throws IOException {
+		if( closed )
+			return false;
+
+		long tail = buffer.getLong( TAIL_OFFSET );
+		long head = buffer.getLong( HEAD_OFFSET );
+		fence( LOAD_FENCE );
+
+		int position = (int) tail & ( capacity - 1 );
+		long free = capacity - ( tail - head );
+		int contiguous = capacity - position;
+		if( free == 0 )
+			return false;
+
+		frames.limit( position + (int) Math.min( contiguous, free ) ).position( position );
+		if( ! MessageCodec.encode( agentID, message, frames ) ){
+			// the frame may fit at the beginning of the ring
+			if( free <= contiguous )
+				return false;
+
+			frames.limit( (int) ( free - contiguous ) ).position( 0 );
+			if( ! MessageCodec.encode( agentID, message, frames ) )
+				return false;
+
+			frames.limit( capacity );
+			frames.putInt( position, PADDING );
+			tail += contiguous;
+		}
+
+		int length = align( frames.position() - ( (int) tail & ( capacity - 1 ) ) );
+		fence( STORE_FENCE );
+		buffer.putLong( TAIL_OFFSET, tail + length );
+		return true;
+	}
+
+	/**
+	 * Decodes the messages in the ring. This method must be called by the consumer side.
+	 * The head is published after each frame, before the message is handed to the consumer,
+	 * so a frame is never read twice: a frame whose content cannot be decoded, or whose
+	 * consumer fails, is logged and skipped.
+	 * @param consumer what handles each message with the id of its addressee
+	 * @return the number of messages decoded
+	 * @throws IOException if the length of a frame is not valid, so the following frames cannot be found
+	 */
+	final int drain( ObjIntConsumer<Message> consumer ) throws IOException {
+		long head = buffer.getLong( HEAD_OFFSET );
+		long tail = buffer.getLong( TAIL_OFFSET );
+		fence( LOAD_FENCE );
+
+		int count = 0;
+		while( head < tail ){
+			int position = (int) head & ( capacity - 1 );
+			if( frames.getInt( position ) == PADDING ){
+				head += capacity - position;
+				continue;
+			}
+
+			frames.limit( capacity ).position( position );
+			int length = MessageCodec.getFrameLength( frames );
+			if( length < 0 || length > tail - head )
+				throw new StreamCorruptedException( "Not a valid frame at " + head );
+
+			int agentID = MessageCodec.getAddressee( frames );
+			Message message = null;
+			try{
+				message = MessageCodec.decode( frames );
+			}catch( IOException | RuntimeException e ){
+				logger.warn( String.format( "[SHARED MEMORY] skipping the frame at %d for agent %d, its content is not valid", head, agentID ), e );
+			}
+
+			// the frame has been read before the producer can overwrite it
+			head += align( length );
+			fence( STORE_FENCE );
+			buffer.putLong( HEAD_OFFSET, head );
+			if( message == null )
+				continue;
+
+			count++;
+			try{
+				consumer.accept( message, agentID );
+			}catch( RuntimeException e ){
+				logger.warn( String.format( "[SHARED MEMORY] the message for agent %d has not been delivered", agentID ), e );
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Tells if the ring has no frames.
+	 * @return true if the ring is empty
+	 */
+	final boolean isEmpty(){
+		return buffer.getLong( HEAD_OFFSET ) == buffer.getLong( TAIL_OFFSET );
+	}
+
+	/**
+	 * Provides the size of the frames area.
+	 * @return the capacity in bytes
+	 */
+	final int getCapacity(){
+		return capacity;
+	}
+
+	/**
+	 * Tells if the ring has been closed.
+	 * @return true if the ring is closed
+	 */
+	final boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * Rounds a length up to a multiple of 8.
+	 * @param length the length
+	 * @return the aligned length
+	 */
+	private static int align( int length ){
+		return ( length + 7 ) & ~7;
+	}
+
+	/**
+	 * Unmaps the file and releases the lock of this side.
+	 */
+	@Override
+	public final synchronized void close() throws IOException {
+		closed = true;
+		try{
+			lock.release();
+		}finally{
+			channel.close();
+		}
+	}
+
+}
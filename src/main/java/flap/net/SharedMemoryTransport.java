@@ -0,0 +1,303 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.net;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ObjIntConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+
+/**
+ * Exchanges messages between contexts that live in different virtual machines
+ * on the same host, through memory mapped files and without the network stack.
+ * A transport consumes a ring file (see listen), and delivers the messages found
+ * there to the agents of its context. The proxies of the agents of another context
+ * write the messages into the ring file of such context, encoding them directly
+ * into the shared memory.
+ *
+ * The ring is polled by a thread of the transport: it spins for a while when the ring
+ * is empty, then yields, and finally sleeps for short periods, so that a busy ring is
+ * served with the lowest latency while an idle one does not waste a core.
+ * A proxy refuses the messages when the ring is full, like a bounded message queue does.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class SharedMemoryTransport implements Closeable {
+
+	/**
+	 * The default size of a ring file, frames area only.
+	 */
+	public static final int DEFAULT_RING_CAPACITY = 4 * 1024 * 1024;
+
+	/**
+	 * How many times the thread polls an empty ring before yielding.
+	 */
+	private static final int SPIN_COUNT = 1000;
+
+	/**
+	 * How many times the thread yields before sleeping.
+	 */
+	private static final int YIELD_COUNT = 100;
+
+	/**
+	 * How long the thread sleeps when the ring is idle.
+	 */
+	private static final long IDLE_SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos( 50 );
+
+	/**
+	 * The logger of all the transports.
+	 */
+	private static Log logger = LogFactory.getLog( SharedMemoryTransport.class );
+
+	/**
+	 * The context the received messages are delivered to.
+	 */
+	private final Context context;
+
+	/**
+	 * The ring consumed by this transport, null if not listening.
+	 */
+	private SharedMemoryRing inbound = null;
+
+	/**
+	 * The thread polling the ring, null if not listening.
+	 */
+	private Thread thread = null;
+
+	/**
+	 * Tells if the transport has been closed.
+	 */
+	private volatile boolean isActive = true;
+
+	/**
+	 * The rings of the other contexts, indexed by file.
+	 */
+	private final Map<Path, SharedMemoryRing> outbound = new ConcurrentHashMap<Path, SharedMemoryRing>();
+
+	/**
+	 * The number of messages received, updated only by the transport thread.
+	 */
+	private volatile long receivedMessages = 0;
+
+	/**
+	 * Builds a transport for a context.
+	 * @param context the context the received messages are delivered to
+	 */
+	public SharedMemoryTransport( Context context ){
+		super();
+		this.context = context;
+	}
+
+	/**
+	 * Starts delivering the messages written into a ring file, with the default capacity.
+	 * @param path the ring file, created or reset
+	 * @throws IOException if the file cannot be mapped or is consumed by another process
+	 */
+	public final void listen( Path path ) throws IOException {
+		listen( path, DEFAULT_RING_CAPACITY );
+	}
+
+	/**
+	 * Starts delivering the messages written into a ring file.
+	 * @param path the ring file, created or reset
+	 * @param capacity the size of the ring, rounded up to a power of two
+	 * @throws IOException if the file cannot be mapped or is consumed by another process
+	 */
+	public final synchronized void listen( Path path, int capacity ) throws IOException {
+		if( inbound != null )
+			throw new IOException( "The transport is already listening" );
+		if( ! isActive )
+			throw new IOException( "The transport has been closed" );
+
+		inbound = SharedMemoryRing.create( path, capacity );
+		final Delivery delivery = new Delivery( this );
+		thread = new Thread( new Runnable(){
+			@Override
+			public void run(){
+				serve( delivery );
+			}
+		}, "SharedMemoryThread-" + context.getName() );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Provides the proxy of an agent of another context. The ring file of the context
+	 * is mapped the first time, and it is shared by all the proxies of its agents.
+	 * @param path the ring file the other context is listening on
+	 * @param agentID the id of the agent in the other context
+	 * @return the proxy of the remote agent
+	 * @throws IOException if the file is not a ring or another process writes into it
+	 */
+	public final IAgentProxy getRemoteProxy( Path path, int agentID ) throws IOException {
+		SharedMemoryRing ring = outbound.get( path );
+		if( ring == null ){
+			synchronized( outbound ){
+				if( ! isActive )
+					throw new IOException( "The transport has been closed" );
+
+				ring = outbound.get( path );
+				if( ring == null ){
+					ring = SharedMemoryRing.open( path );
+					outbound.put( path, ring );
+				}
+			}
+		}
+
+		return new SharedMemoryAgentProxy( ring, agentID );
+	}
+
+	/**
+	 * The loop of the transport thread.
+	 * @param delivery what delivers the messages
+	 */
+	private void serve( Delivery delivery ){
+		int idle = 0;
+		try{
+			while( isActive ){
+				if( inbound.drain( delivery ) > 0 ){
+					idle = 0;
+					continue;
+				}
+
+				idle++;
+				if( idle > SPIN_COUNT + YIELD_COUNT )
+					LockSupport.parkNanos( this, IDLE_SLEEP_NANOS );
+				else if( idle > SPIN_COUNT )
+					Thread.yield();
+			}
+		}catch( IOException e ){
+			logger.error( String.format( "[SHARED MEMORY %s] the ring is corrupted, no more messages are delivered", context.getName() ), e );
+		}
+	}
+
+	/**
+	 * Delivers a received message to an agent of the context.
+	 * @param agentID the id of the agent
+	 * @param message the message
+	 */
+	private void deliver( int agentID, Message message ){
+		receivedMessages++;
+		IAgentProxy proxy = context.getAgentProxy( agentID );
+		if( proxy == null || ! proxy.handleMessage( message ) ){
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[SHARED MEMORY %s] the message for agent %d has not been accepted", context.getName(), agentID ) );
+		}
+	}
+
+	/**
+	 * Provides the number of messages read from the ring.
+	 * @return the number of messages received
+	 */
+	public final long getReceivedMessages(){
+		return receivedMessages;
+	}
+
+	/**
+	 * Stops the transport thread and unmaps all the ring files.
+	 * The messages still in the ring of this transport are not delivered.
+	 */
+	@Override
+	public final void close() throws IOException {
+		Thread current = null;
+		synchronized( outbound ){
+			isActive = false;
+		}
+
+		synchronized( this ){
+			current = thread;
+		}
+
+		if( current != null ){
+			LockSupport.unpark( current );
+			try{
+				current.join();
+			}catch( InterruptedException e ){
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		for( SharedMemoryRing ring : outbound.values() )
+			ring.close();
+		outbound.clear();
+
+		synchronized( this ){
+			if( inbound != null )
+				inbound.close();
+		}
+	}
+
+
+	/**
+	 * The delivery of each message drained from the ring.
+	 */
+	private static final class Delivery implements ObjIntConsumer<Message> {
+
+		private final SharedMemoryTransport transport;
+
+		Delivery( SharedMemoryTransport transport ){
+			super();
+			this.transport = transport;
+		}
+
+		@Override
+		public void accept( Message message, int agentID ){
+			transport.deliver( agentID, message );
+		}
+	}
+
+}
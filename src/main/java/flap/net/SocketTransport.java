@@ -0,0 +1,751 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.net;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessageCodec;
+
+/**
+ * Exchanges messages between contexts that live in different virtual machines,
+ * over TCP connections.
+ * A transport delivers the messages it receives to the agents of its context, and
+ * provides proxies of the agents of other contexts: a message handed to such a proxy
+ * is encoded by MessageCodec and written to the connection to the remote context.
+ *
+ * All the connections are served by a single thread with non blocking channels.
+ * Senders never wait for the network: they queue the message on the connection and
+ * wake the transport thread up only if the connection is not already going to be
+ * written. The transport thread encodes all the messages queued so far into the same
+ * buffer and writes them at once, so that under load many small messages travel in a
+ * single write, while a lone message is written as soon as it is sent. Frames are written
+ * one after another without waiting for the peer (pipelining); when the peer is slow the
+ * messages keep waiting in memory until the connection can be written again, up to the
+ * outbound capacity of the transport: once a connection holds that many messages it
+ * refuses the new ones, and the sender can retry later or give up.
+ * Connections are opened by the transport thread too, so a peer that is slow to answer
+ * or not reachable delays only the messages addressed to it: they are queued while the
+ * connection is being established, and refused once it has failed.
+ *
+ * Please note that the transport thread delivers the received messages, so an agent
+ * whose queue is configured to block the senders when full stops the delivery of the
+ * messages of all the connections.
+ * @author Luca Ferrari
+ * @version 1.0
+ */
+public class SocketTransport implements Closeable {
+
+	/**
+	 * The size of the buffers of each connection.
+	 */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The default number of messages a connection can hold before they are written.
+	 */
+	public static final int DEFAULT_OUTBOUND_CAPACITY = 64 * 1024;
+
+	/**
+	 * The logger of all the transports.
+	 */
+	private static Log logger = LogFactory.getLog( SocketTransport.class );
+
+	/**
+	 * The context the received messages are delivered to.
+	 */
+	private final Context context;
+
+	/**
+	 * The selector of all the channels.
+	 */
+	private final Selector selector;
+
+	/**
+	 * The thread serving the channels.
+	 */
+	private final Thread thread;
+
+	/**
+	 * The number of messages each connection can hold before they are written.
+	 */
+	private final int outboundCapacity;
+
+	/**
+	 * Tells if the transport has been closed.
+	 */
+	private volatile boolean isActive = true;
+
+	/**
+	 * The channel accepting the connections, null if the transport is not listening.
+	 */
+	private ServerSocketChannel server = null;
+
+	/**
+	 * Set when the server channel has to be registered to the selector.
+	 */
+	private volatile boolean acceptPending = false;
+
+	/**
+	 * The connections opened to other contexts, indexed by address.
+	 */
+	private final Map<InetSocketAddress, Connection> connections = new ConcurrentHashMap<InetSocketAddress, Connection>();
+
+	/**
+	 * The connections to register to the selector.
+	 */
+	private final ConcurrentLinkedQueue<Connection> registrations = new ConcurrentLinkedQueue<Connection>();
+
+	/**
+	 * The connections that have messages to write.
+	 */
+	private final ConcurrentLinkedQueue<Connection> flushes = new ConcurrentLinkedQueue<Connection>();
+
+	/**
+	 * The number of messages written, updated only by the transport thread.
+	 */
+	private volatile long sentMessages = 0;
+
+	/**
+	 * The number of messages received, updated only by the transport thread.
+	 */
+	private volatile long receivedMessages = 0;
+
+	/**
+	 * The number of writes to the channels, updated only by the transport thread.
+	 */
+	private volatile long writes = 0;
+
+	/**
+	 * Builds a transport for a context and starts its thread, with the default
+	 * outbound capacity.
+	 * @param context the context the received messages are delivered to
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public SocketTransport( Context context ) throws IOException {
+		this( context, DEFAULT_OUTBOUND_CAPACITY );
+	}
+
+	/**
+	 * Builds a transport for a context and starts its thread.
+	 * @param context the context the received messages are delivered to
+	 * @param outboundCapacity the number of messages each connection can hold before
+	 * they are written, the following messages are refused
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public SocketTransport( Context context, int outboundCapacity ) throws IOException {
+		super();
+		if( outboundCapacity <= 0 )
+			throw new IllegalArgumentException( "The outbound capacity must be positive: " + outboundCapacity );
+
+		this.context = context;
+		this.outboundCapacity = outboundCapacity;
+		selector = Selector.open();
+		thread = new Thread( new Runnable(){
+			@Override
+			public void run(){
+				serve();
+			}
+		}, "TransportThread-" + context.getName() );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Starts accepting connections from other contexts.
+	 * @param address the local address to listen on, with port zero for any free port
+	 * @return the address the transport is listening on
+	 * @throws IOException if the address cannot be bound
+	 */
+	public final synchronized InetSocketAddress listen( InetSocketAddress address ) throws IOException {
+		if( server != null )
+			throw new IOException( "The transport is already listening on " + server.getLocalAddress() );
+
+		server = ServerSocketChannel.open();
+		server.bind( address );
+		server.configureBlocking( false );
+		acceptPending = true;
+		selector.wakeup();
+		return (InetSocketAddress) server.getLocalAddress();
+	}
+
+	/**
+	 * Provides the proxy of an agent of another context. The connection to the context
+	 * is opened the first time, and it is shared by all the proxies of its agents.
+	 * This method does not wait for the connection to be established: if it fails,
+	 * the proxy refuses the messages and a new proxy must be requested.
+	 * @param address the address the transport of the other context is listening on
+	 * @param agentID the id of the agent in the other context
+	 * @return the proxy of the remote agent
+	 * @throws IOException if the connection cannot be started
+	 */
+	public final IAgentProxy getRemoteProxy( InetSocketAddress address, int agentID ) throws IOException {
+		return new RemoteAgentProxy( getConnection( address ), agentID );
+	}
+
+	/**
+	 * Provides the connection to the specified address, starting to open it if needed.
+	 * The channel connects without blocking, the transport thread completes the connection.
+	 * @param address the address of the remote transport
+	 * @return the connection
+	 * @throws IOException if the connection cannot be started
+	 */
+	private Connection getConnection( InetSocketAddress address ) throws IOException {
+		Connection connection = connections.get( address );
+		if( connection != null && ! connection.closed )
+			return connection;
+
+		synchronized( connections ){
+			connection = connections.get( address );
+			if( connection != null && ! connection.closed )
+				return connection;
+
+			if( ! isActive )
+				throw new IOException( "The transport has been closed" );
+
+			if( address.isUnresolved() )
+				throw new IOException( "Unresolved address " + address );
+
+			SocketChannel channel = SocketChannel.open();
+			try{
+				channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+				channel.configureBlocking( false );
+				channel.connect( address );
+			}catch( IOException e ){
+				channel.close();
+				throw e;
+			}
+			connection = new Connection( this, channel, address );
+			connections.put( address, connection );
+		}
+
+		registrations.offer( connection );
+		selector.wakeup();
+		return connection;
+	}
+
+	/**
+	 * Asks the transport thread to write the messages queued on a connection.
+	 * @param connection the connection
+	 */
+	final void requestFlush( Connection connection ){
+		flushes.offer( connection );
+		selector.wakeup();
+	}
+
+	/**
+	 * The loop of the transport thread.
+	 */
+	private void serve(){
+		try{
+			while( isActive ){
+				selector.select();
+				register();
+
+				Connection connection = null;
+				while( ( connection = flushes.poll() ) != null ){
+					// the flag is cleared before writing, so that a message queued from
+					// now on asks for another flush
+					connection.flushRequested = 0;
+					if( connection.key == null )
+						register();
+					flush( connection );
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while( keys.hasNext() ){
+					SelectionKey key = keys.next();
+					keys.remove();
+					if( ! key.isValid() )
+						continue;
+
+					if( key.isAcceptable() )
+						accept();
+					else{
+						connection = (Connection) key.attachment();
+						if( key.isConnectable() ){
+							connect( connection );
+							continue;
+						}
+						if( key.isReadable() )
+							read( connection );
+						if( key.isValid() && key.isWritable() )
+							flush( connection );
+					}
+				}
+			}
+		}catch( IOException | ClosedSelectorException e ){
+			if( isActive )
+				logger.error( "The transport thread has failed", e );
+		}
+	}
+
+	/**
+	 * Registers the new channels to the selector.
+	 * @throws IOException if a channel cannot be registered
+	 */
+	private void register() throws IOException {
+		if( acceptPending ){
+			acceptPending = false;
+			server.register( selector, SelectionKey.OP_ACCEPT );
+		}
+
+		Connection connection = null;
+		while( ( connection = registrations.poll() ) != null )
+			if( ! connection.closed ){
+				int operations = connection.channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ;
+				connection.key = connection.channel.register( selector, operations, connection );
+			}
+	}
+
+	/**
+	 * Completes the connection to another context and writes the messages queued meanwhile.
+	 * If the connection fails it is closed, and its messages are discarded.
+	 * @param connection the connection
+	 */
+	private void connect( Connection connection ){
+		try{
+			if( ! connection.channel.finishConnect() )
+				return;
+		}catch( IOException e ){
+			logger.error( String.format( "[TRANSPORT %s] cannot connect to %s, closing the connection", context.getName(), connection.address ), e );
+			close( connection );
+			return;
+		}
+
+		connection.key.interestOps( SelectionKey.OP_READ );
+		flush( connection );
+	}
+
+	/**
+	 * Accepts a new connection from another context.
+	 */
+	private void accept(){
+		try{
+			SocketChannel channel = server.accept();
+			if( channel == null )
+				return;
+
+			channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+			channel.configureBlocking( false );
+			Connection connection = new Connection( this, channel, null );
+			connection.key = channel.register( selector, SelectionKey.OP_READ, connection );
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[TRANSPORT %s] connection accepted from %s", context.getName(), channel.getRemoteAddress() ) );
+		}catch( IOException e ){
+			logger.error( "Cannot accept a connection", e );
+		}
+	}
+
+	/**
+	 * Reads the frames arrived on a connection and delivers their messages.
+	 * @param connection the connection
+	 */
+	private void read( Connection connection ){
+		try{
+			if( connection.channel.read( connection.readBuffer ) < 0 ){
+				close( connection );
+				return;
+			}
+
+			ByteBuffer buffer = connection.readBuffer;
+			buffer.flip();
+			while( MessageCodec.getFrameLength( buffer ) > 0 ){
+				int agentID = MessageCodec.getAddressee( buffer );
+				deliver( agentID, MessageCodec.decode( buffer ) );
+			}
+
+			// a frame bigger than the buffer needs a bigger buffer
+			if( buffer.remaining() >= 4 && buffer.getInt( buffer.position() ) + 4 > buffer.capacity() ){
+				ByteBuffer bigger = ByteBuffer.allocate( buffer.getInt( buffer.position() ) + 4 );
+				bigger.put( buffer );
+				connection.readBuffer = bigger;
+			}
+			else
+				buffer.compact();
+		}catch( IOException e ){
+			logger.error( String.format( "[TRANSPORT %s] cannot read from a connection, closing it", context.getName() ), e );
+			close( connection );
+		}
+	}
+
+	/**
+	 * Delivers a received message to an agent of the context.
+	 * @param agentID the id of the agent
+	 * @param message the message
+	 */
+	private void deliver( int agentID, Message message ){
+		receivedMessages++;
+		IAgentProxy proxy = context.getAgentProxy( agentID );
+		if( proxy == null || ! proxy.handleMessage( message ) ){
+			if( logger.isDebugEnabled() )
+				logger.debug( String.format( "[TRANSPORT %s] the message for agent %d has not been accepted", context.getName(), agentID ) );
+		}
+	}
+
+	/**
+	 * Writes the messages queued on a connection, as long as the channel accepts them.
+	 * @param connection the connection
+	 */
+	private void flush( Connection connection ){
+		// the messages are written once the connection has been established
+		if( connection.closed || ! connection.channel.isConnected() )
+			return;
+
+		try{
+			ByteBuffer buffer = connection.writeBuffer;
+			while( true ){
+				// encode as many messages as the buffer can hold
+				Envelope envelope = null;
+				while( ( envelope = connection.nextEnvelope() ) != null ){
+					if( ! encode( connection, envelope ) ){
+						connection.stalled = envelope;
+						break;
+					}
+				}
+				buffer = connection.writeBuffer;
+				if( buffer.position() == 0 ){
+					connection.key.interestOps( SelectionKey.OP_READ );
+					return;
+				}
+
+				buffer.flip();
+				connection.channel.write( buffer );
+				writes++;
+				boolean pending = buffer.hasRemaining();
+				buffer.compact();
+
+				// the peer is slow: go on when the channel can be written again
+				if( pending ){
+					connection.key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+					return;
+				}
+
+				if( connection.stalled == null && connection.outbound.isEmpty() ){
+					connection.key.interestOps( SelectionKey.OP_READ );
+					return;
+				}
+			}
+		}catch( IOException e ){
+			logger.error( String.format( "[TRANSPORT %s] cannot write to a connection, closing it", context.getName() ), e );
+			close( connection );
+		}
+	}
+
+	/**
+	 * Encodes a message into the write buffer of a connection.
+	 * @param connection the connection
+	 * @param envelope the message and its addressee
+	 * @return false if the buffer is full and must be written first
+	 */
+	private boolean encode( Connection connection, Envelope envelope ){
+		try{
+			while( ! MessageCodec.encode( envelope.agentID, envelope.message, connection.writeBuffer ) ){
+				if( connection.writeBuffer.position() > 0 )
+					return false;
+
+				// the frame is bigger than the empty buffer
+				connection.writeBuffer = ByteBuffer.allocate( connection.writeBuffer.capacity() * 2 );
+			}
+
+			sentMessages++;
+		}catch( IOException e ){
+			logger.error( String.format( "[TRANSPORT %s] cannot encode a message for agent %d, message discarded", context.getName(), envelope.agentID ), e );
+		}
+
+		envelope.message.release();
+		return true;
+	}
+
+	/**
+	 * Closes a connection, discarding the messages not yet written.
+	 * @param connection the connection
+	 */
+	private void close( Connection connection ){
+		connection.closed = true;
+		if( connection.address != null )
+			connections.remove( connection.address, connection );
+
+		if( connection.key != null )
+			connection.key.cancel();
+		try{
+			connection.channel.close();
+		}catch( IOException e ){
+			logger.debug( "Exception caught while closing a connection", e );
+		}
+
+		Envelope envelope = null;
+		while( ( envelope = connection.nextEnvelope() ) != null )
+			envelope.message.release();
+	}
+
+	/**
+	 * Closes all the connections and stops the transport thread.
+	 * Messages not yet written are discarded.
+	 */
+	@Override
+	public final void close() throws IOException {
+		synchronized( connections ){
+			isActive = false;
+		}
+
+		selector.wakeup();
+		try{
+			thread.join();
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+		}
+
+		for( SelectionKey key : selector.keys() )
+			if( key.attachment() instanceof Connection )
+				close( (Connection) key.attachment() );
+		for( Connection connection : connections.values() )
+			close( connection );
+
+		synchronized( this ){
+			if( server != null )
+				server.close();
+		}
+		selector.close();
+	}
+
+	/**
+	 * Provides the number of messages written to the connections.
+	 * @return the number of messages sent
+	 */
+	public final long getSentMessages(){
+		return sentMessages;
+	}
+
+	/**
+	 * Provides the number of messages read from the connections.
+	 * @return the number of messages received
+	 */
+	public final long getReceivedMessages(){
+		return receivedMessages;
+	}
+
+	/**
+	 * Provides the number of writes to the connections. Compared to the number of messages
+	 * sent, it tells how many messages have been batched into each write.
+	 * @return the number of writes
+	 */
+	public final long getWrites(){
+		return writes;
+	}
+
+
+	/**
+	 * A message waiting to be written, with its addressee.
+	 */
+	private static final class Envelope {
+
+		private final int agentID;
+
+		private final Message message;
+
+		Envelope( int agentID, Message message ){
+			super();
+			this.agentID = agentID;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * A connection to another context.
+	 */
+	static final class Connection {
+
+		/**
+		 * The transport of this connection.
+		 */
+		private final SocketTransport transport;
+
+		/**
+		 * The channel of the connection.
+		 */
+		private final SocketChannel channel;
+
+		/**
+		 * The address of the remote context, null for the accepted connections.
+		 */
+		private final InetSocketAddress address;
+
+		/**
+		 * The key of the channel, written by the transport thread.
+		 */
+		private volatile SelectionKey key = null;
+
+		/**
+		 * The messages waiting to be written.
+		 */
+		private final ConcurrentLinkedQueue<Envelope> outbound = new ConcurrentLinkedQueue<Envelope>();
+
+		/**
+		 * The number of messages in the outbound queue.
+		 */
+		private volatile int queued = 0;
+
+		/**
+		 * The updater of the number of queued messages.
+		 */
+		private static final AtomicIntegerFieldUpdater<Connection> QUEUED =
+				AtomicIntegerFieldUpdater.newUpdater( Connection.class, "queued" );
+
+		/**
+		 * The message that has not fit in the write buffer, accessed only by the transport thread.
+		 */
+		private Envelope stalled = null;
+
+		/**
+		 * The frames waiting to be written, accessed only by the transport thread.
+		 */
+		private ByteBuffer writeBuffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+		/**
+		 * The bytes read and not yet decoded, accessed only by the transport thread.
+		 */
+		private ByteBuffer readBuffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+		/**
+		 * Set (1) when the connection is waiting for the transport thread to be written.
+		 */
+		private volatile int flushRequested = 0;
+
+		/**
+		 * The updater of the flush flag.
+		 */
+		private static final AtomicIntegerFieldUpdater<Connection> FLUSH_REQUESTED =
+				AtomicIntegerFieldUpdater.newUpdater( Connection.class, "flushRequested" );
+
+		/**
+		 * Set when the connection has been closed.
+		 */
+		private volatile boolean closed = false;
+
+		Connection( SocketTransport transport, SocketChannel channel, InetSocketAddress address ){
+			super();
+			this.transport = transport;
+			this.channel = channel;
+			this.address = address;
+		}
+
+		/**
+		 * Queues a message to be written. This method can be called by any thread.
+		 * @param agentID the id of the addressee agent
+		 * @param message the message
+		 * @return false if the connection has been closed or already holds as many messages
+		 * as the outbound capacity of the transport
+		 */
+		final boolean send( int agentID, Message message ){
+			if( closed )
+				return false;
+
+			if( QUEUED.incrementAndGet( this ) > transport.outboundCapacity ){
+				QUEUED.decrementAndGet( this );
+				return false;
+			}
+
+			outbound.offer( new Envelope( agentID, message ) );
+			if( FLUSH_REQUESTED.compareAndSet( this, 0, 1 ) )
+				transport.requestFlush( this );
+			return true;
+		}
+
+		/**
+		 * Provides the next message to write.
+		 * @return the message or null if there are no messages
+		 */
+		private Envelope nextEnvelope(){
+			Envelope envelope = stalled;
+			if( envelope == null ){
+				envelope = outbound.poll();
+				if( envelope != null )
+					QUEUED.decrementAndGet( this );
+				return envelope;
+			}
+
+			stalled = null;
+			return envelope;
+		}
+
+		/**
+		 * Provides the address of the remote context.
+		 * @return the address, null for an accepted connection
+		 */
+		final InetSocketAddress getAddress(){
+			return address;
+		}
+
+		/**
+		 * Tells if the connection has been closed.
+		 * @return true if the connection is closed
+		 */
+		final boolean isClosed(){
+			return closed;
+		}
+	}
+
+}
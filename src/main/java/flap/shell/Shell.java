@@ -46,12 +46,18 @@
  */
 package flap.shell;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 import flap.kernel.Context;
+import flap.kernel.ContextMetrics;
 
 /**
  * The FLAP shell is an interactive command line program that
@@ -195,7 +201,9 @@ public class Shell {
 		do{
 			// give the shell prompt
 			doShellPrompt( "\nStatus: READY", true );
-			// take the user command
+			// take the user command, exiting if the input has been closed
+			if( ! reader.hasNextLine() )
+				break;
 			userCommand = reader.nextLine();
 			
 			// what command to execute?
@@ -261,6 +269,8 @@ public class Shell {
 					
 				}
 			}
+			else if( listThreadCommand.getCommand().equals( userCommand ) )
+				doListThreads();
 			else if( helpCommand.getCommand().equals( userCommand ) )
 				doHelp();
 			else
@@ -436,7 +446,9 @@ public class Shell {
 		if( contexts == null )
 			contexts = new LinkedList<Context>();
 		
+		// the shell shows the utilization of the contexts, so they collect metrics
 		Context context = new Context( name );
+		context.setMetricsEnabled( true );
 		contexts.add( context );
 	}
 	
@@ -456,6 +468,41 @@ public class Shell {
 		}
 	}
 	
+	/**
+	 * Prints the threads of the virtual machine with their state and cpu time,
+	 * then the utilization of the schedulers of the contexts that collect metrics.
+	 */
+	private final void doListThreads(){
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Thread threads[] = Thread.getAllStackTraces().keySet().toArray( new Thread[ 0 ] );
+		Arrays.sort( threads, new Comparator<Thread>(){
+			@Override
+			public int compare(Thread first, Thread second){
+				return first.getName().compareTo( second.getName() );
+			}
+		} );
+		
+		for( Thread thread : threads ){
+			long cpuTime = threadBean.isThreadCpuTimeSupported() ? threadBean.getThreadCpuTime( thread.getId() ) : -1;
+			System.out.println( String.format( "\t%-30s %-14s %s cpu %d ms",
+											   thread.getName(),
+											   thread.getState(),
+											   thread.isDaemon() ? "daemon" : "      ",
+											   cpuTime < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis( cpuTime ) ) );
+		}
+		
+		if( contexts != null )
+			for( Context context : contexts ){
+				ContextMetrics metrics = context.getMetrics();
+				if( metrics != null )
+					System.out.println( String.format( "\tcontext %s: %d scheduler threads, %.0f%% used, %d waiting messages",
+													   context.getName(),
+													   metrics.getSchedulerThreads(),
+													   metrics.getSchedulerUtilization() * 100,
+													   metrics.getLoad() ) );
+			}
+	}
+	
 	/**
 	 * Performs agent creation.
 	 * @param contextName
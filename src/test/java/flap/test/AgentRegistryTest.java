@@ -0,0 +1,183 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.AgentRegistry;
+import flap.kernel.Context;
+import flap.kernel.MessageQueue;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the agent registry of a context.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class AgentRegistryTest {
+
+	private AgentRegistry registry = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		registry = new AgentRegistry();
+	}
+	
+	@Test
+	public void testPutGetRemove(){
+		final int agents = 10000;
+		AgentProxy proxies[] = new AgentProxy[ agents + 1 ];
+		for( int id = 1; id <= agents; id++ ){
+			proxies[ id ] = newProxy();
+			assertNull( registry.put( id, proxies[ id ] ) );
+		}
+		
+		assertEquals( agents, registry.size() );
+		for( int id = 1; id <= agents; id++ )
+			assertSame( proxies[ id ], registry.get( id ) );
+		assertNull( registry.get( agents + 1 ) );
+		assertNull( registry.get( 0 ) );
+		
+		// remove the even agents
+		for( int id = 2; id <= agents; id += 2 )
+			assertSame( proxies[ id ], registry.remove( id ) );
+		assertNull( registry.remove( 2 ) );
+		assertEquals( agents / 2, registry.size() );
+		
+		int ids[] = registry.ids();
+		Arrays.sort( ids );
+		assertEquals( agents / 2, ids.length );
+		for( int i = 0; i < ids.length; i++ )
+			assertEquals( i * 2 + 1, ids[ i ] );
+		
+		// a removed agent can be installed again
+		registry.put( 2, proxies[ 2 ] );
+		assertSame( proxies[ 2 ], registry.get( 2 ) );
+		assertSame( proxies[ 3 ], registry.get( 3 ) );
+	}
+	
+	@Test
+	public void testReadsDuringChanges() throws Exception {
+		final AgentProxy stable = newProxy();
+		registry.put( 1, stable );
+		final AtomicBoolean running = new AtomicBoolean( true );
+		final AtomicBoolean lost = new AtomicBoolean( false );
+		
+		Thread reader = new Thread(){
+			public void run(){
+				while( running.get() )
+					if( registry.get( 1 ) != stable )
+						lost.set( true );
+			}
+		};
+		reader.start();
+		
+		// install and remove agents so that the table is rebuilt many times
+		AgentProxy proxy = newProxy();
+		for( int id = 2; id < 50000; id++ ){
+			registry.put( id, proxy );
+			if( id % 3 != 0 )
+				registry.remove( id );
+		}
+		
+		running.set( false );
+		reader.join();
+		assertFalse( "A lookup has missed an installed agent", lost.get() );
+	}
+	
+	@Test
+	public void testKillAll() throws Exception {
+		Context context = new Context( "KILL-TEST" );
+		for( int i = 0; i < 10; i++ )
+			context.createAgent( "countingAgent" + i, "flap.test.CountingAgent" );
+		
+		assertEquals( 10, context.getInstalledAgentProxyIDs().length );
+		assertTrue( context.killAll() );
+		assertEquals( 0, context.getInstalledAgentProxyIDs().length );
+	}
+	
+	@Test
+	public void testCreateAgents() throws Exception {
+		Context context = new Context( "BULK-TEST" );
+		final int agents = 10000;
+		int ids[] = context.createAgents( "flap.test.CountingAgent", agents, "bulk" );
+		assertEquals( agents, ids.length );
+		assertEquals( agents, context.getInstalledAgentProxyIDs().length );
+		assertEquals( agents, context.findAgentsByName( "bulk" ).size() );
+		assertEquals( agents, context.findAgentsByClass( "flap.test.CountingAgent" ).size() );
+		
+		// all the agents have been started and can receive messages
+		assertEquals( agents, context.broadcast( new Message( MessagePriority.PRIORITY_NORMAL, "hello" ) ) );
+		for( int id : ids )
+			assertTrue( ((CountingAgent) ((AgentProxy) context.getAgentProxy( id )).getMyOwningAgent()).waitForMessages( 1, 10000 ) );
+		
+		assertNull( context.createAgents( "flap.test.NoSuchAgent", 10, "missing" ) );
+		assertNull( context.createAgents( "java.lang.String", 10, "notAnAgent" ) );
+		assertEquals( agents, context.getInstalledAgentProxyIDs().length );
+	}
+	
+	/**
+	 * Builds a proxy for a new agent.
+	 * @return the proxy
+	 */
+	private static AgentProxy newProxy(){
+		return new AgentProxy( new CountingAgent(), new MessageQueue() );
+	}
+
+}
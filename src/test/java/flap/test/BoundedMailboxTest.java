@@ -0,0 +1,268 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.AbstractMessageQueue;
+import flap.kernel.AgentProxy;
+import flap.kernel.ConcurrentMessageQueue;
+import flap.kernel.Context;
+import flap.kernel.MailboxConfiguration;
+import flap.kernel.MessageQueue;
+import flap.messaging.Message;
+import flap.messaging.MessagePool;
+import flap.messaging.MessagePriority;
+import flap.messaging.MessageType;
+import flap.messaging.OverflowPolicy;
+
+/**
+ * A test case for the bounded message queues and their overflow policies.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class BoundedMailboxTest {
+
+	/**
+	 * Builds a normal priority message with the specified content.
+	 */
+	private Message message( int content ){
+		return new Message( MessagePriority.PRIORITY_NORMAL, content );
+	}
+	
+	/**
+	 * Fills the queue with the messages 1..count.
+	 */
+	private void fill( AbstractMessageQueue queue, int count ){
+		for( int i = 1; i <= count; i++ )
+			assertTrue( queue.addMessage( message( i ) ) );
+	}
+	
+	@Test
+	public void testReject(){
+		MessageQueue queue = new MessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_REJECT ) );
+		fill( queue, 2 );
+		assertFalse( queue.addMessage( message( 3 ) ) );
+		assertEquals( 1, queue.getOverflowCount( OverflowPolicy.OVERFLOW_REJECT ) );
+		
+		// administrative messages are never refused
+		assertTrue( queue.addMessage( new Message( MessagePriority.PRIORITY_ADMIN, "kill", MessageType.TYPE_SHUTDOWN ) ) );
+		assertEquals( 3, queue.getQueueLength() );
+		assertEquals( MessageType.TYPE_SHUTDOWN, queue.getNextMessage().getType() );
+		
+		// consuming a message makes room
+		assertEquals( 1, queue.getNextMessage().getContent() );
+		assertTrue( queue.addMessage( message( 3 ) ) );
+	}
+	
+	@Test
+	public void testDropNewest(){
+		MessageQueue queue = new MessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_DROP_NEWEST ) );
+		fill( queue, 3 );
+		assertEquals( 2, queue.getQueueLength() );
+		assertEquals( 1, queue.getOverflowCount( OverflowPolicy.OVERFLOW_DROP_NEWEST ) );
+		assertEquals( 1, queue.getNextMessage().getContent() );
+		assertEquals( 2, queue.getNextMessage().getContent() );
+		assertNull( queue.getNextMessage() );
+	}
+	
+	@Test
+	public void testDropOldest(){
+		AbstractMessageQueue queues[] = { new MessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_DROP_OLDEST ) ),
+										  new ConcurrentMessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_DROP_OLDEST ) ) };
+		for( AbstractMessageQueue queue : queues ){
+			fill( queue, 4 );
+			assertEquals( 2, queue.getQueueLength() );
+			assertEquals( 2, queue.getOverflowCount( OverflowPolicy.OVERFLOW_DROP_OLDEST ) );
+			assertEquals( 3, queue.getNextMessage().getContent() );
+			assertEquals( 4, queue.getNextMessage().getContent() );
+			assertNull( queue.getNextMessage() );
+			assertTrue( queue.isEmpty() );
+		}
+	}
+	
+	@Test
+	public void testDropOldestReleasesMessages(){
+		AbstractMessageQueue queues[] = { new MessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_DROP_OLDEST ) ),
+										  new ConcurrentMessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_DROP_OLDEST ) ) };
+		for( AbstractMessageQueue queue : queues ){
+			MessagePool pool = new MessagePool( 16 );
+			for( int i = 1; i <= 3; i++ )
+				assertTrue( queue.addMessage( pool.acquire( MessagePriority.PRIORITY_NORMAL, i ) ) );
+			assertEquals( 2, queue.getNextMessage().getContent() );
+			assertEquals( 3, queue.getNextMessage().getContent() );
+			
+			// the dropped message is back in the pool
+			assertEquals( 3, pool.getCreatedMessages() );
+			pool.acquire( MessagePriority.PRIORITY_NORMAL, 4 );
+			assertEquals( 3, pool.getCreatedMessages() );
+		}
+	}
+	
+	@Test
+	public void testBlock() throws Exception {
+		MailboxConfiguration configuration = new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_BLOCK );
+		configuration.setBlockTimeout( 50 );
+		MessageQueue queue = new MessageQueue( configuration );
+		fill( queue, 2 );
+		
+		// nobody consumes, the sender gives up
+		long start = System.currentTimeMillis();
+		assertFalse( queue.addMessage( message( 3 ) ) );
+		assertTrue( System.currentTimeMillis() - start >= 50 );
+		
+		// a consumer makes room while the sender is waiting
+		configuration.setBlockTimeout( 10000 );
+		final MessageQueue waitingQueue = new MessageQueue( configuration );
+		fill( waitingQueue, 2 );
+		Thread consumer = new Thread(){
+			public void run(){
+				try{
+					Thread.sleep( 50 );
+				}catch( InterruptedException e ){}
+				waitingQueue.getNextMessage();
+			}
+		};
+		consumer.start();
+		assertTrue( waitingQueue.addMessage( message( 3 ) ) );
+		consumer.join();
+		assertEquals( 1, waitingQueue.getOverflowCount( OverflowPolicy.OVERFLOW_BLOCK ) );
+		assertEquals( 2, waitingQueue.getQueueLength() );
+	}
+	
+	@Test
+	public void testSpill(){
+		MessageQueue queue = new MessageQueue( new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_SPILL ) );
+		fill( queue, 5 );
+		assertEquals( 5, queue.getQueueLength() );
+		assertEquals( 3, queue.getOverflowCount( OverflowPolicy.OVERFLOW_SPILL ) );
+		
+		// the spilled messages are delivered in order after the ones in memory
+		for( int i = 1; i <= 5; i++ )
+			assertEquals( i, queue.getNextMessage().getContent() );
+		
+		assertTrue( queue.isEmpty() );
+		assertNull( queue.getNextMessage() );
+	}
+	
+	@Test
+	public void testStaleSpillFilesRemoved() throws Exception {
+		Path directory = Files.createTempDirectory( "flap-spill-test" );
+		try{
+			// a file left by a virtual machine that has stopped with spilled messages
+			File stale = new File( directory.toFile(), "flap-spill123.bin" );
+			assertTrue( stale.createNewFile() );
+			assertTrue( stale.setLastModified( 0 ) );
+			
+			MailboxConfiguration configuration = new MailboxConfiguration( 1, OverflowPolicy.OVERFLOW_SPILL );
+			configuration.setSpillDirectory( directory.toFile() );
+			MessageQueue queue = new MessageQueue( configuration );
+			fill( queue, 2 );
+			assertFalse( stale.exists() );
+			
+			// the spill file is removed once read back
+			assertEquals( 1, queue.getNextMessage().getContent() );
+			assertEquals( 2, queue.getNextMessage().getContent() );
+			assertEquals( 0, directory.toFile().list().length );
+		}finally{
+			for( File file : directory.toFile().listFiles() )
+				file.delete();
+			Files.delete( directory );
+		}
+	}
+
+	@Test
+	public void testAsynchronousSend() throws Exception {
+		Context context = new Context( "TEST" );
+		try{
+			// the agent stays in its run method, so nobody consumes
+			MailboxConfiguration blocking = new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_BLOCK );
+			blocking.setBlockTimeout( 10000 );
+			int id = context.createAgent( "blocking", BatchingAgent.class.getName(), blocking );
+			IAgentProxy proxy = context.getAgentProxy( id );
+			BatchingAgent agent = (BatchingAgent) ((AgentProxy) proxy).getMyOwningAgent();
+			assertTrue( proxy.sendMessage( message( 0 ) ).toCompletableFuture().get() );
+			assertTrue( proxy.sendMessage( message( 1 ) ).toCompletableFuture().get() );
+			
+			// a full blocking queue refuses at once instead of suspending the sender
+			long start = System.currentTimeMillis();
+			CompletionStage<Boolean> refused = proxy.sendMessage( message( 2 ) );
+			assertTrue( refused.toCompletableFuture().isDone() );
+			assertFalse( refused.toCompletableFuture().get() );
+			assertTrue( System.currentTimeMillis() - start < 5000 );
+			agent.release();
+			assertTrue( agent.waitForMessages( 2, 10000 ) );
+			
+			// spilled messages are written by another thread, in order
+			int spillingID = context.createAgent( "spilling", BatchingAgent.class.getName(), new MailboxConfiguration( 2, OverflowPolicy.OVERFLOW_SPILL ) );
+			IAgentProxy spillingProxy = context.getAgentProxy( spillingID );
+			BatchingAgent spillingAgent = (BatchingAgent) ((AgentProxy) spillingProxy).getMyOwningAgent();
+			CompletionStage<?> results[] = new CompletionStage<?>[ 20 ];
+			for( int i = 0; i < results.length; i++ )
+				results[ i ] = spillingProxy.sendMessage( message( i ) );
+			for( CompletionStage<?> result : results )
+				assertEquals( Boolean.TRUE, result.toCompletableFuture().get( 10, TimeUnit.SECONDS ) );
+			
+			spillingAgent.release();
+			assertTrue( spillingAgent.waitForMessages( results.length, 10000 ) );
+			assertFalse( spillingAgent.isOutOfOrder() );
+		}finally{
+			context.killAll();
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePool;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the broadcast and multicast of messages.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class BroadcastTest {
+
+	private static final int AGENTS = 100;
+	
+	private Context context = null;
+	
+	private int ids[] = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context = new Context( "BROADCAST-TEST" );
+		ids = new int[ AGENTS ];
+		for( int i = 0; i < AGENTS; i++ )
+			ids[ i ] = context.createAgent( "countingAgent" + i, "flap.test.CountingAgent" );
+	}
+	
+	@Test
+	public void testBroadcast() throws Exception {
+		assertEquals( AGENTS, context.broadcast( new Message( MessagePriority.PRIORITY_NORMAL, "all" ) ) );
+		for( int id : ids )
+			assertTrue( getAgent( id ).waitForMessages( 1, 10000 ) );
+		
+		// the excluded agent does not receive the message
+		assertEquals( AGENTS - 1, context.broadcast( new Message( MessagePriority.PRIORITY_NORMAL, "others" ), ids[ 0 ] ) );
+		for( int i = 1; i < AGENTS; i++ )
+			assertTrue( getAgent( ids[ i ] ).waitForMessages( 2, 10000 ) );
+		assertEquals( 1, getAgent( ids[ 0 ] ).getHandledMessages() );
+	}
+	
+	@Test
+	public void testMulticast() throws Exception {
+		int addressees[] = { ids[ 1 ], ids[ 3 ], -1 };
+		assertEquals( 2, context.multicast( addressees, new Message( MessagePriority.PRIORITY_NORMAL, "some" ) ) );
+		assertTrue( getAgent( ids[ 1 ] ).waitForMessages( 1, 10000 ) );
+		assertTrue( getAgent( ids[ 3 ] ).waitForMessages( 1, 10000 ) );
+		assertEquals( 0, getAgent( ids[ 2 ] ).getHandledMessages() );
+	}
+	
+	@Test
+	public void testPooledBroadcast() throws Exception {
+		MessagePool pool = new MessagePool( MessagePool.DEFAULT_STRIPE_CAPACITY );
+		Message message = pool.acquire( "pooled" );
+		assertEquals( AGENTS, context.broadcast( message ) );
+		for( int id : ids )
+			assertTrue( getAgent( id ).waitForMessages( 1, 10000 ) );
+		
+		// the message is back in the pool only once all the agents have handled it
+		long deadline = System.currentTimeMillis() + 10000;
+		while( message.isPooled() && System.currentTimeMillis() < deadline )
+			Thread.sleep( 5 );
+		assertFalse( message.isPooled() );
+		assertSame( message, pool.acquire( "again" ) );
+	}
+	
+	/**
+	 * Provides the agent with the specified id.
+	 * @param id the agent id
+	 * @return the agent
+	 */
+	private CountingAgent getAgent( int id ){
+		return (CountingAgent) ((AgentProxy) context.getAgentProxy( id )).getMyOwningAgent();
+	}
+
+}
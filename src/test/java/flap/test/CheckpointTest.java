@@ -0,0 +1,165 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the checkpoint and the restore of a context.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class CheckpointTest {
+
+	private Path snapshot = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		snapshot = Files.createTempFile( "flap-checkpoint-test", ".snapshot" );
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists( snapshot );
+	}
+	
+	@Test
+	public void testCheckpointAndRestore() throws Exception {
+		Context context = new Context( "CHECKPOINT-TEST" );
+		int ids[] = context.createAgents( "flap.test.CountingAgent", 3, "counting" );
+		for( int id : ids ){
+			AgentProxy proxy = (AgentProxy) context.getAgentProxy( id );
+			for( int i = 0; i < 5; i++ )
+				proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+			assertTrue( ((CountingAgent) proxy.getMyOwningAgent()).waitForMessages( 5, 10000 ) );
+		}
+		
+		assertTrue( context.registerService( ids[ 0 ], "counting-service" ) );
+		assertTrue( context.subscribe( ids[ 1 ], "sensors.#" ) );
+		
+		// a passivated agent is saved without being reactivated
+		long deadline = System.currentTimeMillis() + 10000;
+		while( ! context.passivateAgent( ids[ 2 ] ) && System.currentTimeMillis() < deadline )
+			Thread.sleep( 5 );
+		assertTrue( context.isAgentPassivated( ids[ 2 ] ) );
+		
+		assertEquals( 3, context.checkpoint( snapshot ) );
+		assertTrue( context.isAgentPassivated( ids[ 2 ] ) );
+		context.killAll();
+		
+		// the agents are installed without being loaded
+		Context restored = new Context( "RESTORE-TEST" );
+		assertEquals( 3, restored.restore( snapshot ) );
+		for( int id : ids )
+			assertTrue( restored.isAgentPassivated( id ) );
+		
+		assertEquals( Collections.singleton( ids[ 0 ] ), restored.findAgentsByService( "counting-service" ) );
+		assertEquals( 3, restored.findAgentsByName( "counting" ).size() );
+		assertEquals( 1, restored.publish( "sensors.temperature", new Message( MessagePriority.PRIORITY_NORMAL, "hot" ) ) );
+		
+		// each agent is loaded with its state on first use
+		for( int i = 0; i < ids.length; i++ ){
+			CountingAgent agent = (CountingAgent) ((AgentProxy) restored.getAgentProxy( ids[ i ] )).getMyOwningAgent();
+			assertEquals( ids[ i ], agent.getId() );
+			assertSame( restored, agent.getContext() );
+			assertTrue( agent.waitForMessages( i == 1 ? 6 : 5, 10000 ) );
+		}
+		
+		// new agents do not take the restored ids
+		int id = restored.createAgent( "counting", "flap.test.CountingAgent" );
+		for( int restoredID : ids )
+			assertTrue( id > restoredID );
+		restored.killAll();
+	}
+	
+	@Test
+	public void testPendingMessages() throws Exception {
+		// without a scheduler the messages stay in the queue
+		Context context = new Context( "CHECKPOINT-TEST", null );
+		int id = context.createAgent( "counting", "flap.test.CountingAgent" );
+		for( int i = 0; i < 10; i++ )
+			context.getAgentProxy( id ).handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		assertEquals( 1, context.checkpoint( snapshot ) );
+		
+		// the checkpoint does not consume the messages
+		assertEquals( 12, ((AgentProxy) context.getAgentProxy( id )).getMessageQueue().getQueueLength() );
+		
+		Context restored = new Context( "RESTORE-TEST" );
+		assertEquals( 1, restored.restore( snapshot ) );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) restored.getAgentProxy( id )).getMyOwningAgent();
+		assertTrue( agent.waitForMessages( 10, 10000 ) );
+		restored.killAll();
+	}
+	
+	@Test( expected = IOException.class )
+	public void testNotASnapshot() throws Exception {
+		Files.write( snapshot, new byte[ 64 ] );
+		new Context( "RESTORE-TEST" ).restore( snapshot );
+	}
+
+}
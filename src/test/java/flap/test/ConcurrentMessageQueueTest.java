@@ -0,0 +1,154 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.AgentProxy;
+import flap.kernel.ConcurrentMessageQueue;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the lock-free message queue.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class ConcurrentMessageQueueTest {
+
+	
+	private ConcurrentMessageQueue queue = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		queue = new ConcurrentMessageQueue();
+	}
+	
+	@Test
+	public void testPriority(){
+		Message lowPriorityMessage  = new Message( MessagePriority.PRIORITY_NORMAL, "A normal priority message" );
+		Message highPriorityMessage = new Message( MessagePriority.PRIORITY_ADMIN,  "An high priority message" );
+		
+		// delive two messages out of order
+		queue.addMessage( lowPriorityMessage );
+		queue.addMessage( highPriorityMessage );
+		assertEquals( 2, queue.getQueueLength() );
+		assertEquals( 1, queue.getQueueLengthByPriority( MessagePriority.PRIORITY_ADMIN ) );
+		
+		// the first message returned should be the higher priority one
+		assertSame( highPriorityMessage, queue.getNextMessage() );
+		assertSame( lowPriorityMessage, queue.getNextMessage() );
+		
+		// the queue should be empty now
+		assertTrue( queue.isEmpty() );
+		assertEquals( 0, queue.getQueueLength() );
+		assertNull( queue.getNextMessage() );
+	}
+	
+	@Test
+	public void testConcurrentSenders() throws Exception {
+		Context context = new Context( "TEST" );
+		context.setLockFreeMailboxes( true );
+		int id = context.createAgent( "countingAgent", "flap.test.CountingAgent" );
+		final IAgentProxy proxy = context.getAgentProxy( id );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) proxy).getMyOwningAgent();
+		assertTrue( ((AgentProxy) proxy).getMessageQueue() instanceof ConcurrentMessageQueue );
+		
+		final int senders = 8;
+		final int messagesPerSender = 10000;
+		Thread threads[] = new Thread[ senders ];
+		for( int i = 0; i < senders; i++ ){
+			threads[ i ] = new Thread(){
+				public void run(){
+					for( int j = 0; j < messagesPerSender; j++ )
+						proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, j ) );
+				}
+			};
+			threads[ i ].start();
+		}
+		
+		for( Thread t : threads )
+			t.join();
+		
+		assertTrue( agent.waitForMessages( senders * messagesPerSender, 10000 ) );
+		assertEquals( senders * messagesPerSender, agent.getHandledMessages() );
+		assertFalse( agent.isConcurrentAccess() );
+	}
+	
+	@Test
+	public void testPriorityLevels(){
+		// deliver a message for each level, from the lowest to the highest priority
+		MessagePriority priorities[] = MessagePriority.values();
+		for( int i = priorities.length - 1; i >= 0; i-- ){
+			queue.addMessage( new Message( priorities[ i ], "first " + i ) );
+			queue.addMessage( new Message( priorities[ i ], "second " + i ) );
+		}
+		
+		assertEquals( 2, queue.getQueueLengthByPriority( MessagePriority.PRIORITY_HIGH_3 ) );
+		
+		// messages must come back from the highest priority, in arrival order within a level
+		for( int i = 0; i < priorities.length; i++ ){
+			Message first  = queue.getNextMessage();
+			Message second = queue.getNextMessage();
+			assertEquals( priorities[ i ], first.getPriority() );
+			assertEquals( "first " + i, first.getContent() );
+			assertEquals( "second " + i, second.getContent() );
+		}
+		
+		assertTrue( queue.isEmpty() );
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+
+/**
+ * A test case for the agent directory of a context.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class DirectoryTest {
+
+	private Context context = null;
+	
+	private int counter1, counter2, batcher;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context  = new Context( "DIRECTORY-TEST" );
+		counter1 = context.createAgent( "counter", "flap.test.CountingAgent" );
+		counter2 = context.createAgent( "counter", "flap.test.CountingAgent" );
+		batcher  = context.createAgent( "batcher", "flap.test.BatchingAgent" );
+		
+		// do not keep the batching agent in its run method
+		((BatchingAgent) ((AgentProxy) context.getAgentProxy( batcher )).getMyOwningAgent()).release();
+	}
+	
+	@Test
+	public void testFindByNameAndClass(){
+		assertArrayEquals( new int[]{ counter1, counter2 }, sorted( context.findAgentsByName( "counter" ) ) );
+		assertArrayEquals( new int[]{ batcher }, sorted( context.findAgentsByName( "batcher" ) ) );
+		assertEquals( 0, context.findAgentsByName( "nobody" ).size() );
+		assertArrayEquals( new int[]{ counter1, counter2 }, sorted( context.findAgentsByClass( "flap.test.CountingAgent" ) ) );
+		assertArrayEquals( new int[]{ batcher }, sorted( context.findAgentsByClass( "flap.test.BatchingAgent" ) ) );
+		
+		// killed agents are removed from the indexes
+		context.killAgent( counter1 );
+		assertArrayEquals( new int[]{ counter2 }, sorted( context.findAgentsByName( "counter" ) ) );
+		assertArrayEquals( new int[]{ counter2 }, sorted( context.findAgentsByClass( "flap.test.CountingAgent" ) ) );
+	}
+	
+	@Test
+	public void testFindByService(){
+		assertTrue( context.registerService( counter1, "counting" ) );
+		assertTrue( context.registerService( counter2, "counting" ) );
+		assertTrue( context.registerService( counter2, "summing" ) );
+		assertFalse( context.registerService( counter2, "summing" ) );
+		assertFalse( context.registerService( -1, "summing" ) );
+		
+		assertArrayEquals( new int[]{ counter1, counter2 }, sorted( context.findAgentsByService( "counting" ) ) );
+		assertArrayEquals( new int[]{ counter2 }, sorted( context.findAgentsByService( "summing" ) ) );
+		
+		assertTrue( context.deregisterService( counter1, "counting" ) );
+		assertFalse( context.deregisterService( counter1, "counting" ) );
+		assertArrayEquals( new int[]{ counter2 }, sorted( context.findAgentsByService( "counting" ) ) );
+		
+		// killed agents lose their services
+		context.killAgent( counter2 );
+		assertEquals( 0, context.findAgentsByService( "counting" ).size() );
+		assertEquals( 0, context.findAgentsByService( "summing" ).size() );
+	}
+	
+	/**
+	 * Sorts a set of ids.
+	 * @param ids the ids
+	 * @return the sorted ids
+	 */
+	private static int[] sorted( Set<Integer> ids ){
+		int sorted[] = new int[ ids.size() ];
+		int count = 0;
+		for( int id : ids )
+			sorted[ count++ ] = id;
+
+		Arrays.sort( sorted );
+		return sorted;
+	}
+
+}
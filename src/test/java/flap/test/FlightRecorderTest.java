@@ -0,0 +1,193 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * A test case for the flight recorder events of the agents.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class FlightRecorderTest {
+
+	private Context context = null;
+	
+	private Path file = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context = new Context( "JFR-TEST" );
+		file = Files.createTempFile( "flap", ".jfr" );
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		context.killAll();
+		Files.deleteIfExists( file );
+	}
+	
+	@Test
+	public void testEvents() throws Exception {
+		final int messages = 100;
+		RecordedCounts counts = null;
+		Recording recording = new Recording();
+		try{
+			recording.enable( "flap.MessageEnqueued" );
+			recording.enable( "flap.MessageDispatch" );
+			recording.enable( "flap.AgentLifecycle" );
+			recording.start();
+			
+			int id = context.createAgent( "counting", "flap.test.CountingAgent" );
+			AgentProxy proxy = (AgentProxy) context.getAgentProxy( id );
+			CountingAgent agent = (CountingAgent) proxy.getMyOwningAgent();
+			for( int i = 0; i < messages; i++ )
+				proxy.handleMessage( new Message( MessagePriority.PRIORITY_HIGH_1, i ) );
+			assertTrue( agent.waitForMessages( messages, 10000 ) );
+			
+			// the dispatch event is committed after the agent has handled the batch,
+			// so poll the recording until the last one shows up
+			long deadline = System.currentTimeMillis() + 10000;
+			do{
+				recording.dump( file );
+				counts = new RecordedCounts( file, id );
+			}while( counts.dispatched < messages && System.currentTimeMillis() < deadline && sleep() );
+			
+			recording.stop();
+		}finally{
+			recording.close();
+		}
+		
+		assertEquals( messages, counts.enqueued );
+		assertEquals( messages, counts.dispatched );
+		assertTrue( counts.phases.contains( "TYPE_SETUP" ) );
+		assertTrue( counts.phases.contains( "TYPE_RUN" ) );
+	}
+	
+	/**
+	 * Pauses before polling the recording again.
+	 * @return always true
+	 */
+	private static boolean sleep() throws InterruptedException {
+		Thread.sleep( 10 );
+		return true;
+	}
+	
+	
+	/**
+	 * The events of an agent found in a recording.
+	 * @author Luca Ferrari
+	 * @version 1.0
+	 */
+	private static final class RecordedCounts {
+		
+		/**
+		 * The number of high priority messages enqueued.
+		 */
+		private int enqueued = 0;
+		
+		/**
+		 * The number of messages dispatched.
+		 */
+		private int dispatched = 0;
+		
+		/**
+		 * The life cycle phases recorded.
+		 */
+		private final Set<String> phases = new HashSet<String>();
+		
+		/**
+		 * Reads the events of an agent.
+		 * @param file the recording
+		 * @param id the id of the agent
+		 */
+		RecordedCounts( Path file, int id ) throws Exception {
+			super();
+			List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+			for( RecordedEvent event : events ){
+				if( event.getInt( "agentID" ) != id )
+					continue;
+				
+				String type = event.getEventType().getName();
+				if( "flap.MessageEnqueued".equals( type ) && "PRIORITY_HIGH_1".equals( event.getString( "priority" ) ) )
+					enqueued++;
+				else if( "flap.MessageDispatch".equals( type ) ){
+					dispatched += event.getInt( "messages" );
+					assertTrue( event.getLong( "queueWait" ) >= 0 );
+				}
+				else if( "flap.AgentLifecycle".equals( type ) )
+					phases.add( event.getString( "phase" ) );
+			}
+		}
+	}
+
+}
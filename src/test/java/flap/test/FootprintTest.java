@@ -0,0 +1,140 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import flap.agents.Agent;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+
+/**
+ * A test case for the memory footprint of idle agents.
+ * The overhead of an agent is the memory the platform needs to host it, that is
+ * the agent base class, its proxy, its message queue and its entries in the registry
+ * and in the directory of the context.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class FootprintTest {
+
+	/**
+	 * The number of agents to create, so that the heap noise is negligible.
+	 */
+	private static final int AGENTS = 50000;
+	
+	/**
+	 * The max number of bytes the platform can use for each idle agent.
+	 */
+	private static final long BYTES_PER_AGENT_BUDGET = 320;
+	
+	/**
+	 * An agent without any state of its own.
+	 */
+	public static final class IdleAgent extends Agent {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/* (non-Javadoc)
+		 * @see flap.agents.Agent#run()
+		 */
+		@Override
+		public void run() {
+			// nothing to do
+		}
+	}
+	
+	@Test
+	public void testIdleAgentFootprint() throws Exception {
+		Context context = new Context( "TEST" );
+		long before = usedMemory();
+		
+		int ids[] = context.createAgents( IdleAgent.class.getName(), AGENTS, "idleAgent" );
+		assertNotNull( ids );
+		assertEquals( AGENTS, ids.length );
+		
+		// wait for the life cycle messages to be processed
+		for( int id : ids )
+			waitUntilIdle( (AgentProxy) context.getAgentProxy( id ) );
+		
+		long bytesPerAgent = ( usedMemory() - before ) / AGENTS;
+		assertTrue( String.format( "An idle agent uses %d bytes, the budget is %d", bytesPerAgent, BYTES_PER_AGENT_BUDGET ),
+					bytesPerAgent <= BYTES_PER_AGENT_BUDGET );
+		
+		// keep the agents reachable until the memory has been measured
+		assertEquals( AGENTS, context.getInstalledAgentProxyIDs().length );
+		context.killAll();
+	}
+	
+	/**
+	 * Waits until the queue of an agent has been drained.
+	 * @param proxy the proxy of the agent
+	 */
+	private static void waitUntilIdle( AgentProxy proxy ) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while( ! proxy.getMessageQueue().isEmpty() && System.currentTimeMillis() < deadline )
+			Thread.sleep( 1 );
+	}
+	
+	/**
+	 * Provides the heap in use after a few garbage collections.
+	 * @return the used bytes
+	 */
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for( int i = 0; i < 4; i++ ){
+			System.gc();
+			Thread.sleep( 50 );
+		}
+		
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
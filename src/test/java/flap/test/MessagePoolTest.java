@@ -0,0 +1,142 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.MessageQueue;
+import flap.messaging.Message;
+import flap.messaging.MessagePool;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the message pool.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class MessagePoolTest {
+
+	private MessagePool pool = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		pool = new MessagePool( MessagePool.DEFAULT_STRIPE_CAPACITY );
+	}
+	
+	@Test
+	public void testRecycle(){
+		Message message = pool.acquire( MessagePriority.PRIORITY_HIGH_1, "pooled" );
+		assertTrue( message.isPooled() );
+		assertEquals( MessagePriority.PRIORITY_HIGH_1, message.getPriority() );
+		assertEquals( "pooled", message.getContent() );
+		
+		// a released message is reused and does not keep its content
+		message.release();
+		assertFalse( message.isPooled() );
+		assertNull( message.getContent() );
+		
+		// releasing twice must not store the message twice
+		message.release();
+		Message first  = pool.acquire( "first" );
+		Message second = pool.acquire( "second" );
+		assertSame( message, first );
+		assertNotSame( first, second );
+		assertEquals( 2, pool.getCreatedMessages() );
+		
+		// not pooled messages are not affected by a release
+		Message plain = new Message( MessagePriority.PRIORITY_NORMAL, "plain" );
+		plain.release();
+		assertEquals( "plain", plain.getContent() );
+	}
+	
+	@Test
+	public void testSteadyStateAllocation(){
+		MessageQueue queue = new MessageQueue();
+		final int messages = 200000;
+		
+		// warm up the pool and the queue
+		sendAndConsume( queue, messages );
+		long created = pool.getCreatedMessages();
+		
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		boolean measure = threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+		long before = measure ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes( Thread.currentThread().getId() ) : 0;
+		
+		sendAndConsume( queue, messages );
+		
+		long after = measure ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes( Thread.currentThread().getId() ) : 0;
+		assertEquals( "No message should be constructed in steady state", created, pool.getCreatedMessages() );
+		if( measure )
+			assertTrue( "Too many bytes allocated: " + ( after - before ), after - before < messages / 10 );
+	}
+	
+	/**
+	 * Sends a number of pooled messages thru a queue, releasing them as the platform does.
+	 * @param queue the queue to use
+	 * @param messages how many messages to send
+	 */
+	private void sendAndConsume( MessageQueue queue, int messages ){
+		for( int i = 0; i < messages; i++ ){
+			queue.addMessage( pool.acquire( MessagePriority.PRIORITY_NORMAL, queue ) );
+			if( ( i & 7 ) == 7 )
+				while( ! queue.isEmpty() )
+					queue.getNextMessage().release();
+		}
+	}
+
+}
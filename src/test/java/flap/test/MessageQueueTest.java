@@ -99,5 +99,28 @@ public class MessageQueueTest {
 		if( ! queue.isEmpty() )
 			fail("The queue has still messages in it!");
 	}
+	
+	@Test
+	public void testPriorityLevels(){
+		// deliver a message for each level, from the lowest to the highest priority
+		MessagePriority priorities[] = MessagePriority.values();
+		for( int i = priorities.length - 1; i >= 0; i-- ){
+			queue.addMessage( new Message( priorities[ i ], "first " + i ) );
+			queue.addMessage( new Message( priorities[ i ], "second " + i ) );
+		}
+		
+		assertEquals( 2, queue.getQueueLengthByPriority( MessagePriority.PRIORITY_HIGH_3 ) );
+		
+		// messages must come back from the highest priority, in arrival order within a level
+		for( int i = 0; i < priorities.length; i++ ){
+			Message first  = queue.getNextMessage();
+			Message second = queue.getNextMessage();
+			assertEquals( priorities[ i ], first.getPriority() );
+			assertEquals( "first " + i, first.getContent() );
+			assertEquals( "second " + i, second.getContent() );
+		}
+		
+		assertTrue( queue.isEmpty() );
+	}
 
 }
@@ -0,0 +1,142 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import flap.messaging.Message;
+import flap.messaging.MessagePayload;
+import flap.messaging.MessagePool;
+import flap.messaging.MessagePriority;
+import flap.messaging.MessageType;
+
+/**
+ * A test case for the message payloads.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class MessageTest {
+
+	@Test
+	public void testObjectPayload(){
+		Message message = Message.builder().priority( MessagePriority.PRIORITY_HIGH_2 ).content( "hello" ).build();
+		assertEquals( MessagePriority.PRIORITY_HIGH_2, message.getPriority() );
+		assertEquals( MessageType.TYPE_USER, message.getType() );
+		assertEquals( MessagePayload.PAYLOAD_OBJECT, message.getPayload() );
+		assertEquals( "hello", message.getContent() );
+		
+		// the old constructors build object payloads
+		assertEquals( MessagePayload.PAYLOAD_OBJECT, new Message( MessagePriority.PRIORITY_NORMAL, 1 ).getPayload() );
+	}
+	
+	@Test
+	public void testPrimitivePayloads(){
+		Message.Builder builder = Message.builder();
+		Message longMessage   = builder.longValue( Long.MAX_VALUE ).build();
+		Message doubleMessage = builder.doubleValue( 2.5 ).build();
+		
+		// the builder can be reused without affecting the built messages
+		assertEquals( MessagePayload.PAYLOAD_LONG, longMessage.getPayload() );
+		assertEquals( Long.MAX_VALUE, longMessage.getLongValue() );
+		assertEquals( Long.valueOf( Long.MAX_VALUE ), longMessage.getContent() );
+		assertEquals( MessagePayload.PAYLOAD_DOUBLE, doubleMessage.getPayload() );
+		assertEquals( 2.5, doubleMessage.getDoubleValue(), 0 );
+		assertEquals( 2, doubleMessage.getLongValue() );
+		
+		try{
+			builder.content( "text" ).build().getLongValue();
+			fail( "An object payload is not numeric" );
+		}catch( IllegalStateException e ){
+			// expected
+		}
+	}
+	
+	@Test
+	public void testArraySlices(){
+		int samples[] = { 1, 2, 3, 4, 5 };
+		Message message = Message.builder().intArray( samples, 1, 3 ).build();
+		assertEquals( MessagePayload.PAYLOAD_INT_ARRAY, message.getPayload() );
+		assertSame( samples, message.getIntArray() );
+		assertEquals( 1, message.getOffset() );
+		assertEquals( 3, message.getLength() );
+		
+		long values[] = { 10L, 20L };
+		message = Message.builder().longArray( values, 0, 2 ).build();
+		assertSame( values, message.getLongArray() );
+		assertEquals( 2, message.getLength() );
+		
+		try{
+			Message.builder().longArray( values, 1, 2 );
+			fail( "The slice is out of the array" );
+		}catch( IndexOutOfBoundsException e ){
+			// expected
+		}
+	}
+	
+	@Test
+	public void testPooledPrimitives(){
+		MessagePool pool = new MessagePool( MessagePool.DEFAULT_STRIPE_CAPACITY );
+		Message message = pool.acquireLong( MessagePriority.PRIORITY_NORMAL, 42 );
+		assertEquals( 42, message.getLongValue() );
+		message.release();
+		
+		// the recycled message carries the new payload only
+		message = pool.acquireDouble( MessagePriority.PRIORITY_LOW_1, 0.5 );
+		assertEquals( 0.5, message.getDoubleValue(), 0 );
+		assertEquals( MessagePriority.PRIORITY_LOW_1, message.getPriority() );
+		message.release();
+		
+		message = Message.builder().intArray( new int[ 4 ], 0, 4 ).build( pool );
+		assertTrue( message.isPooled() );
+		assertEquals( 4, message.getLength() );
+		assertEquals( 1, pool.getCreatedMessages() );
+	}
+
+}
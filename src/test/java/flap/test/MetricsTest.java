@@ -0,0 +1,181 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentMetrics;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.kernel.ContextMetrics;
+import flap.kernel.LatencyHistogram;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the metrics of the contexts and of the agents.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class MetricsTest {
+
+	private Context context = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context = new Context( "METRICS-TEST" );
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		context.killAll();
+		context.setMetricsEnabled( false );
+	}
+	
+	@Test
+	public void testHistogram(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals( 0, histogram.getPercentile( 50 ) );
+		
+		for( int i = 0; i < 99; i++ )
+			histogram.record( 2000 );
+		histogram.record( 5000000 );
+		
+		// percentiles are known within a factor of two
+		assertEquals( 100, histogram.getCount() );
+		assertTrue( histogram.getPercentile( 50 ) >= 2000 && histogram.getPercentile( 50 ) < 4000 );
+		assertTrue( histogram.getPercentile( 99 ) < 4000 );
+		assertEquals( 5000000, histogram.getPercentile( 100 ) );
+		assertEquals( 5000000, histogram.getMax() );
+	}
+	
+	@Test
+	public void testAgentMetrics() throws Exception {
+		int before = context.createAgent( "counting", "flap.test.CountingAgent" );
+		assertNull( ((AgentProxy) context.getAgentProxy( before )).getMessageQueue().getMetrics() );
+		
+		// agents already installed get their metrics too
+		context.setMetricsEnabled( true );
+		ContextMetrics metrics = context.getMetrics();
+		int id = context.createAgent( "counting", "flap.test.CountingAgent" );
+		AgentProxy proxy = (AgentProxy) context.getAgentProxy( id );
+		CountingAgent agent = (CountingAgent) proxy.getMyOwningAgent();
+		AgentMetrics agentMetrics = proxy.getMessageQueue().getMetrics();
+		assertNotNull( agentMetrics );
+		assertNotNull( ((AgentProxy) context.getAgentProxy( before )).getMessageQueue().getMetrics() );
+		
+		final int messages = 1000;
+		for( int i = 0; i < messages; i++ )
+			proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		assertTrue( agent.waitForMessages( messages, 10000 ) );
+		
+		// the life cycle messages are counted too
+		assertTrue( agentMetrics.getEnqueuedMessages() >= messages );
+		long deadline = System.currentTimeMillis() + 5000;
+		while( agentMetrics.getProcessedMessages() < agentMetrics.getEnqueuedMessages() && System.currentTimeMillis() < deadline )
+			Thread.sleep( 1 );
+		assertEquals( agentMetrics.getEnqueuedMessages(), agentMetrics.getProcessedMessages() );
+		assertTrue( agentMetrics.getActivations() > 0 );
+		assertTrue( metrics.getProcessedMessages() >= messages );
+		assertEquals( 2, metrics.getAgentCount() );
+		
+		// reading the rates does not reset them
+		assertTrue( agentMetrics.getEnqueueRate() > 0 );
+		assertTrue( agentMetrics.getEnqueueRate() > 0 );
+		assertTrue( metrics.getEnqueueRate() > 0 );
+		assertTrue( metrics.getEnqueueRate() > 0 );
+		assertTrue( metrics.getBusyMicros() <= metrics.getElapsedMicros() * metrics.getSchedulerThreads() );
+		
+		// the agent that has handled the messages is the hottest one
+		String hottest[] = metrics.getHottestAgents( 5 );
+		assertEquals( 2, hottest.length );
+		assertTrue( hottest[ 0 ].startsWith( id + " " ) );
+		assertEquals( 2, metrics.getHottestAgents( Integer.MAX_VALUE ).length );
+	}
+	
+	@Test
+	public void testManagementBeans() throws Exception {
+		context.setMetricsEnabled( true );
+		int id = context.createAgent( "counting", "flap.test.CountingAgent" );
+		ContextMetrics metrics = context.getMetrics();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		ObjectName name = metrics.getObjectName();
+		assertNotNull( name );
+		assertTrue( server.isRegistered( name ) );
+		assertEquals( 1, server.getAttribute( name, "AgentCount" ) );
+		
+		assertTrue( metrics.exposeAgent( id ) );
+		ObjectName agentName = new ObjectName( "flap:type=Agent,context=" + ObjectName.quote( context.getName() ) + ",id=" + id );
+		assertTrue( server.isRegistered( agentName ) );
+		assertNotNull( server.getAttribute( agentName, "MailboxDepth" ) );
+		
+		// killing the agent removes its bean, disabling the metrics removes the context one
+		context.killAgent( id );
+		assertFalse( server.isRegistered( agentName ) );
+		context.setMetricsEnabled( false );
+		assertFalse( server.isRegistered( name ) );
+		assertNull( context.getMetrics() );
+	}
+
+}
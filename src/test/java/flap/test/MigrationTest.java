@@ -0,0 +1,211 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.kernel.ContextRebalancer;
+import flap.kernel.VirtualThreadScheduler;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the migration of the agents among contexts.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class MigrationTest {
+
+	@Test
+	public void testMigration() throws Exception {
+		// without a scheduler the messages stay in the queue and move with the agent
+		Context source = new Context( "SOURCE-TEST", null );
+		Context target = new Context( "TARGET-TEST" );
+		int id = source.createAgent( "sequence", "flap.test.SequenceAgent" );
+		assertTrue( source.registerService( id, "sequence-service" ) );
+		assertTrue( source.subscribe( id, "numbers.*" ) );
+		
+		AgentProxy proxy = (AgentProxy) source.getAgentProxy( id );
+		SequenceAgent agent = (SequenceAgent) proxy.getMyOwningAgent();
+		for( int i = 0; i < 1000; i++ )
+			proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		
+		assertTrue( source.migrateAgent( id, target ) );
+		assertFalse( source.migrateAgent( id, target ) );
+		assertTrue( proxy.isForwarding() );
+		assertSame( target, agent.getContext() );
+		
+		// the old proxy forwards the messages after the pending ones
+		for( int i = 1000; i < 2000; i++ )
+			assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) ) );
+		assertTrue( agent.waitForMessages( 2000, 10000 ) );
+		assertFalse( agent.isOutOfOrder() );
+		
+		// the agent has left the source context with its services and subscriptions
+		assertNull( source.getAgentProxy( id ) );
+		assertEquals( 0, source.findAgentsByService( "sequence-service" ).size() );
+		assertEquals( Collections.singleton( id ), target.findAgentsByService( "sequence-service" ) );
+		assertEquals( Collections.singleton( id ), target.findAgentsByName( "sequence" ) );
+		assertEquals( 0, source.publish( "numbers.next", new Message( MessagePriority.PRIORITY_NORMAL, 2000 ) ) );
+		assertEquals( 1, target.publish( "numbers.next", new Message( MessagePriority.PRIORITY_NORMAL, 2000 ) ) );
+		assertTrue( agent.waitForMessages( 2001, 10000 ) );
+		assertFalse( agent.isOutOfOrder() );
+		target.killAll();
+	}
+	
+	@Test
+	public void testMigrationWhileSending() throws Exception {
+		Context source = new Context( "SOURCE-TEST" );
+		Context target = new Context( "TARGET-TEST" );
+		source.setLockFreeMailboxes( true );
+		int id = source.createAgent( "sequence", "flap.test.SequenceAgent" );
+		final IAgentProxy proxy = source.getAgentProxy( id );
+		SequenceAgent agent = (SequenceAgent) ((AgentProxy) proxy).getMyOwningAgent();
+		
+		final int messages = 100000;
+		Thread sender = new Thread(){
+			public void run(){
+				for( int i = 0; i < messages; i++ )
+					proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+			}
+		};
+		sender.start();
+		
+		while( agent.getHandledMessages() == 0 )
+			Thread.sleep( 1 );
+		assertTrue( source.migrateAgent( id, target ) );
+		sender.join();
+		
+		assertTrue( agent.waitForMessages( messages, 10000 ) );
+		assertEquals( messages, agent.getHandledMessages() );
+		assertFalse( agent.isOutOfOrder() );
+		target.killAll();
+	}
+	
+	@Test
+	public void testMigrationOnVirtualThreads() throws Exception {
+		// the thread of the agent must not drain the queue while it is being moved
+		Context source = new Context( "SOURCE-TEST", new VirtualThreadScheduler() );
+		Context target = new Context( "TARGET-TEST", new VirtualThreadScheduler() );
+		int id = source.createAgent( "sequence", "flap.test.SequenceAgent" );
+		final IAgentProxy proxy = source.getAgentProxy( id );
+		SequenceAgent agent = (SequenceAgent) ((AgentProxy) proxy).getMyOwningAgent();
+		
+		final int messages = 100000;
+		Thread sender = new Thread(){
+			public void run(){
+				for( int i = 0; i < messages; i++ )
+					proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+			}
+		};
+		sender.start();
+		
+		// the agent bounces between the contexts while the messages arrive
+		Context contexts[] = { source, target };
+		for( int move = 0; move < 20; move++ ){
+			long handled = agent.getHandledMessages();
+			while( agent.getHandledMessages() == handled && sender.isAlive() )
+				Thread.sleep( 1 );
+			assertTrue( contexts[ move % 2 ].migrateAgent( id, contexts[ ( move + 1 ) % 2 ] ) );
+		}
+		sender.join();
+		
+		assertTrue( agent.waitForMessages( messages, 10000 ) );
+		assertEquals( messages, agent.getHandledMessages() );
+		assertFalse( agent.isOutOfOrder() );
+		target.killAll();
+		source.killAll();
+	}
+	
+	@Test
+	public void testRebalance() throws Exception {
+		// the agents of the hot and cool contexts never run, so their loads change
+		// only when the agents are moved
+		Context hot  = new Context( "HOT-TEST", null );
+		Context cool = new Context( "COOL-TEST", null );
+		Context running = new Context( "RUNNING-TEST" );
+		int ids[] = hot.createAgents( "flap.test.SequenceAgent", 10, "sequence" );
+		for( int id : ids )
+			for( int i = 0; i < 100; i++ )
+				hot.getAgentProxy( id ).handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		assertTrue( hot.getLoad() >= 1000 );
+		
+		// half the agents are moved, then the loads are close enough
+		ContextRebalancer rebalancer = new ContextRebalancer( hot, cool );
+		assertEquals( 5, rebalancer.rebalance() );
+		assertEquals( hot.getLoad(), cool.getLoad() );
+		assertEquals( 0, rebalancer.rebalance() );
+		
+		// the moved agents still have their messages, in order
+		int moved = 0;
+		for( int id : ids ){
+			if( hot.getAgentProxy( id ) != null )
+				continue;
+			
+			assertTrue( cool.migrateAgent( id, running ) );
+			SequenceAgent agent = (SequenceAgent) ((AgentProxy) running.getAgentProxy( id )).getMyOwningAgent();
+			assertTrue( agent.waitForMessages( 100, 10000 ) );
+			assertFalse( agent.isOutOfOrder() );
+			moved++;
+		}
+		
+		assertEquals( 5, moved );
+		assertEquals( 5, hot.findAgentsByName( "sequence" ).size() );
+		running.killAll();
+		cool.killAll();
+		hot.killAll();
+	}
+
+}
@@ -0,0 +1,167 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the passivation of idle agents.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class PassivationTest {
+
+	private Context context = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context = new Context( "PASSIVATION-TEST" );
+	}
+	
+	@Test
+	public void testPassivateAndReactivate() throws Exception {
+		int id = context.createAgent( "countingAgent", "flap.test.CountingAgent" );
+		AgentProxy proxy = (AgentProxy) context.getAgentProxy( id );
+		for( int i = 0; i < 5; i++ )
+			proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		assertTrue( ((CountingAgent) proxy.getMyOwningAgent()).waitForMessages( 5, 10000 ) );
+		
+		assertTrue( waitForPassivation( id ) );
+		assertNull( proxy.getMessageQueue() );
+		
+		// a message reactivates the agent, with its state
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, 5 ) ) );
+		assertFalse( context.isAgentPassivated( id ) );
+		CountingAgent agent = (CountingAgent) proxy.getMyOwningAgent();
+		assertEquals( id, agent.getId() );
+		assertSame( context, agent.getContext() );
+		assertTrue( agent.waitForMessages( 6, 10000 ) );
+		
+		// an asynchronous send reactivates the agent without the sender
+		assertTrue( waitForPassivation( id ) );
+		CompletionStage<Boolean> accepted = proxy.sendMessage( new Message( MessagePriority.PRIORITY_NORMAL, 6 ) );
+		assertTrue( accepted.toCompletableFuture().get( 10, TimeUnit.SECONDS ) );
+		assertTrue( ((CountingAgent) proxy.getMyOwningAgent()).waitForMessages( 7, 10000 ) );
+		
+		// a passivated agent can be killed, without loading it
+		assertTrue( waitForPassivation( id ) );
+		assertTrue( context.killAgent( id ) );
+		assertNull( context.getAgentProxy( id ) );
+		assertNull( proxy.getMyOwningAgent() );
+		assertFalse( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, 7 ) ) );
+		assertEquals( 0, context.findAgentsByName( "countingAgent" ).size() );
+	}
+	
+	@Test
+	public void testAgentsNotPassivated() throws Exception {
+		int id = context.createAgent( "batchingAgent", "flap.test.BatchingAgent" );
+		BatchingAgent agent = (BatchingAgent) ((AgentProxy) context.getAgentProxy( id )).getMyOwningAgent();
+		
+		// a running agent is not passivated
+		Thread.sleep( 50 );
+		assertFalse( context.passivateAgent( id ) );
+		
+		// an agent that cannot be serialized is not passivated
+		agent.release();
+		long deadline = System.currentTimeMillis() + 10000;
+		while( ! ((AgentProxy) context.getAgentProxy( id )).getMessageQueue().isEmpty() && System.currentTimeMillis() < deadline )
+			Thread.sleep( 5 );
+		Thread.sleep( 50 );
+		assertFalse( context.passivateAgent( id ) );
+		assertFalse( context.isAgentPassivated( id ) );
+		assertTrue( context.getAgentProxy( id ).handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, 0 ) ) );
+		assertTrue( agent.waitForMessages( 1, 10000 ) );
+	}
+	
+	@Test
+	public void testAutomaticPassivation() throws Exception {
+		final int agents = 100;
+		int ids[] = context.createAgents( "flap.test.CountingAgent", agents, "idle" );
+		context.setPassivationTimeout( 50 );
+		for( int id : ids )
+			assertTrue( waitForPassivation( id ) );
+		
+		// all the agents come back when a message arrives
+		context.setPassivationTimeout( 0 );
+		assertEquals( agents, context.broadcast( new Message( MessagePriority.PRIORITY_NORMAL, "wake up" ) ) );
+		for( int id : ids )
+			assertTrue( ((CountingAgent) ((AgentProxy) context.getAgentProxy( id )).getMyOwningAgent()).waitForMessages( 1, 10000 ) );
+	}
+	
+	/**
+	 * Waits until an agent is passivated, passivating it if the context
+	 * does not do it automatically.
+	 * @param id the agent id
+	 * @return true if the agent has been passivated
+	 */
+	private boolean waitForPassivation( int id ) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while( ! context.isAgentPassivated( id ) && ! context.passivateAgent( id ) ){
+			if( System.currentTimeMillis() > deadline )
+				return false;
+			Thread.sleep( 5 );
+		}
+		
+		return true;
+	}
+
+}
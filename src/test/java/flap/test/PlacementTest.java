@@ -0,0 +1,214 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.agents.AgentID;
+import flap.agents.IAgentProxy;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+import flap.net.AgentPlacement;
+import flap.net.SocketTransport;
+
+/**
+ * A test case for the placement of the agents on the nodes of a cluster,
+ * simulated by many contexts.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class PlacementTest {
+
+	private Context contexts[] = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		contexts = new Context[ 4 ];
+		for( int i = 0; i < contexts.length; i++ ){
+			contexts[ i ] = new Context( "NODE-" + ( i + 1 ) );
+			contexts[ i ].setNodeID( i + 1 );
+		}
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		for( Context context : contexts )
+			context.killAll();
+	}
+	
+	@Test
+	public void testAgentID(){
+		int id = AgentID.compose( 5, 3, 1000 );
+		assertEquals( 5, AgentID.getNode( id ) );
+		assertEquals( 3, AgentID.getShard( id ) );
+		assertEquals( 1000, AgentID.getSequence( id ) );
+		assertTrue( id > 0 );
+		
+		// the agents of a context carry its node
+		int agentID = contexts[ 1 ].createAgent( "counting", "flap.test.CountingAgent" );
+		assertEquals( 2, AgentID.getNode( agentID ) );
+		assertNotNull( contexts[ 1 ].getAgentProxy( agentID ) );
+		
+		// the ids of a node grow, and consecutive agents go to different shards
+		int nextID = contexts[ 1 ].createAgent( "counting", "flap.test.CountingAgent" );
+		assertTrue( nextID > agentID );
+		assertTrue( AgentID.getShard( agentID ) != AgentID.getShard( nextID ) );
+	}
+	
+	@Test
+	public void testIdExhaustion(){
+		// a node not used by the other tests gets to its last id
+		int node = AgentID.MAX_NODES - 1;
+		int last = AgentID.compose( node, AgentID.MAX_SHARDS - 1, ( 1 << AgentID.SEQUENCE_BITS ) - 1 );
+		assertEquals( AgentID.MAX_IDS_PER_NODE, last & AgentID.MAX_IDS_PER_NODE );
+		AgentID.reserve( last - 1 );
+		assertEquals( last, AgentID.next( node ) );
+		try{
+			AgentID.next( node );
+			fail( "The node has run out of ids" );
+		}catch( IllegalStateException e ){
+			// expected
+		}
+		
+		// the other nodes go on
+		assertTrue( AgentID.next( 0 ) > 0 );
+		assertTrue( AgentID.MAX_IDS_PER_NODE >= 100000000 );
+	}
+	
+	@Test
+	public void testPlacement() throws Exception {
+		AgentPlacement placement = new AgentPlacement();
+		for( int i = 0; i < 3; i++ )
+			placement.addLocalNode( contexts[ i ] );
+		
+		final int keys = 3000;
+		int owners[] = new int[ keys ];
+		int perNode[] = new int[ 4 ];
+		for( int key = 0; key < keys; key++ ){
+			owners[ key ] = placement.getNode( "key-" + key );
+			perNode[ owners[ key ] ]++;
+		}
+		
+		// the keys are spread evenly
+		for( int node = 1; node <= 3; node++ )
+			assertTrue( perNode[ node ] > keys / 6 );
+		
+		// an agent created for a key lives on the owner, and is resolved from its id
+		int agentID = placement.createAgent( "key-42", "counting", "flap.test.CountingAgent" );
+		assertEquals( owners[ 42 ], AgentID.getNode( agentID ) );
+		IAgentProxy proxy = placement.resolve( agentID );
+		assertSame( contexts[ owners[ 42 ] - 1 ].getAgentProxy( agentID ), proxy );
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, "hello" ) ) );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) proxy).getMyOwningAgent();
+		assertTrue( agent.waitForMessages( 1, 5000 ) );
+		
+		// a new node takes keys only from the others
+		placement.addLocalNode( contexts[ 3 ] );
+		int moved = 0;
+		for( int key = 0; key < keys; key++ ){
+			int owner = placement.getNode( "key-" + key );
+			if( owner != owners[ key ] ){
+				assertEquals( 4, owner );
+				moved++;
+			}
+		}
+		
+		assertTrue( moved > 0 && moved < keys / 2 );
+		
+		// the agents of a removed node are still found
+		assertTrue( placement.removeNode( owners[ 42 ] ) );
+		assertSame( proxy, placement.resolve( agentID ) );
+	}
+	
+	@Test
+	public void testRemoteNode() throws Exception {
+		SocketTransport localTransport  = new SocketTransport( contexts[ 0 ] );
+		SocketTransport remoteTransport = new SocketTransport( contexts[ 1 ] );
+		try{
+			InetSocketAddress address = remoteTransport.listen( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+			AgentPlacement placement = new AgentPlacement( localTransport );
+			placement.addLocalNode( contexts[ 0 ] );
+			placement.addRemoteNode( contexts[ 1 ].getNodeID(), address );
+			
+			// find a key owned by the remote node, that cannot be created here
+			int key = 0;
+			while( placement.isLocal( placement.getNode( key ) ) )
+				key++;
+			assertEquals( -1, placement.createAgent( key, "sequence", "flap.test.SequenceAgent" ) );
+			
+			// the remote process creates it, and the id is enough to reach it
+			int agentID = contexts[ 1 ].createAgent( "sequence", "flap.test.SequenceAgent" );
+			SequenceAgent agent = (SequenceAgent) ((AgentProxy) contexts[ 1 ].getAgentProxy( agentID )).getMyOwningAgent();
+			IAgentProxy proxy = placement.resolve( agentID );
+			for( int i = 0; i < 100; i++ )
+				assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) ) );
+			
+			assertTrue( agent.waitForMessages( 100, 10000 ) );
+			assertFalse( agent.isOutOfOrder() );
+		}finally{
+			localTransport.close();
+			remoteTransport.close();
+		}
+	}
+
+}
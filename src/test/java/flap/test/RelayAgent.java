@@ -0,0 +1,111 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+import flap.agents.IAgentProxy;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * An agent used by the test cases: it counts the received messages like a
+ * CountingAgent, and forwards each message carrying a positive number to the next
+ * agent of a chain, decreasing the number. It also keeps track of the threads
+ * it has been executed by.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class RelayAgent extends CountingAgent {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The agent messages are forwarded to.
+	 */
+	private volatile IAgentProxy next = null;
+	
+	/**
+	 * The thread that has delivered the last message.
+	 */
+	private volatile Thread lastThread = null;
+	
+	/**
+	 * Set if the messages have been delivered by more than one thread.
+	 */
+	private volatile boolean threadChanged = false;
+	
+	/* (non-Javadoc)
+	 * @see flap.test.CountingAgent#handleMessage(flap.messaging.Message)
+	 */
+	@Override
+	public boolean handleMessage(Message msg) {
+		Thread current = Thread.currentThread();
+		if( lastThread != null && lastThread != current )
+			threadChanged = true;
+		lastThread = current;
+		
+		super.handleMessage( msg );
+		if( next != null && msg.getContent() instanceof Integer && (Integer) msg.getContent() > 0 )
+			next.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, (Integer) msg.getContent() - 1 ) );
+		return true;
+	}
+	
+	/**
+	 * Sets the agent messages are forwarded to.
+	 * @param next the proxy of the next agent
+	 */
+	public void setNext( IAgentProxy next ) {
+		this.next = next;
+	}
+	
+	/**
+	 * Tells if the messages have been delivered by more than one thread.
+	 * @return true if the agent has changed thread
+	 */
+	public boolean isThreadChanged() {
+		return threadChanged;
+	}
+}
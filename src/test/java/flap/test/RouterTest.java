@@ -0,0 +1,159 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.ConsistentHashRouter;
+import flap.kernel.Context;
+import flap.kernel.LeastLoadedRouter;
+import flap.kernel.RoundRobinRouter;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the routers of groups of agents.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class RouterTest {
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		Context context = new Context( "ROUTER-TEST" );
+		int ids[] = context.createAgents( "flap.test.CountingAgent", 4, "counting" );
+		RoundRobinRouter router = new RoundRobinRouter( context, ids );
+		assertEquals( 4, router.getRouteeCount() );
+		
+		for( int i = 0; i < 400; i++ )
+			assertTrue( router.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) ) );
+		
+		// each agent gets the same share
+		for( int id : ids ){
+			CountingAgent agent = (CountingAgent) ((AgentProxy) context.getAgentProxy( id )).getMyOwningAgent();
+			assertTrue( agent.waitForMessages( 100, 10000 ) );
+			assertEquals( 100, agent.getHandledMessages() );
+		}
+		context.killAll();
+	}
+	
+	@Test
+	public void testLeastLoaded() throws Exception {
+		// without a scheduler the messages stay in the queues
+		Context context = new Context( "ROUTER-TEST", null );
+		int ids[] = context.createAgents( "flap.test.CountingAgent", 4, "counting" );
+		AgentProxy busy = (AgentProxy) context.getAgentProxy( ids[ 0 ] );
+		for( int i = 0; i < 3; i++ )
+			busy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		int busyLength = busy.getMessageQueue().getQueueLength();
+		
+		// the other agents get the messages until they are as busy as the first one
+		LeastLoadedRouter router = new LeastLoadedRouter( context, ids );
+		for( int i = 0; i < 9; i++ )
+			assertTrue( router.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) ) );
+		
+		for( int id : ids )
+			assertEquals( busyLength, ((AgentProxy) context.getAgentProxy( id )).getMessageQueue().getQueueLength() );
+	}
+	
+	@Test
+	public void testConsistentHash() throws Exception {
+		Context context = new Context( "ROUTER-TEST", null );
+		int ids[] = context.createAgents( "flap.test.CountingAgent", 4, "counting" );
+		ConsistentHashRouter router = new ConsistentHashRouter( context, ids );
+		int initialLength = ((AgentProxy) context.getAgentProxy( ids[ 0 ] )).getMessageQueue().getQueueLength();
+		
+		// the keys are spread over all the agents
+		int owned[] = new int[ ids.length ];
+		for( int key = 0; key < 10000; key++ )
+			owned[ router.getOwner( key ) ]++;
+		for( int count : owned )
+			assertTrue( count > 1000 );
+		
+		// the messages of a key always go to the same agent
+		int expected[] = new int[ ids.length ];
+		for( int i = 0; i < 100; i++ ){
+			String key = "key-" + ( i % 10 );
+			assertTrue( router.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, key ) ) );
+			expected[ router.getOwner( key ) ]++;
+		}
+		
+		for( int i = 0; i < ids.length; i++ ){
+			assertEquals( 0, expected[ i ] % 10 );
+			assertEquals( initialLength + expected[ i ], ((AgentProxy) router.getRoutee( i )).getMessageQueue().getQueueLength() );
+		}
+		
+		// a router for a bigger group moves only the keys of the new agent
+		int bigger[] = new int[ ids.length + 1 ];
+		System.arraycopy( ids, 0, bigger, 0, ids.length );
+		bigger[ ids.length ] = context.createAgent( "counting", "flap.test.CountingAgent" );
+		ConsistentHashRouter biggerRouter = new ConsistentHashRouter( context, bigger );
+		for( int key = 0; key < 10000; key++ ){
+			int owner = biggerRouter.getOwner( key );
+			assertTrue( owner == ids.length || owner == router.getOwner( key ) );
+		}
+		
+		// a router for a group without one of the first agents moves only the keys of such agent
+		int smaller[] = { ids[ 0 ], ids[ 2 ], ids[ 3 ] };
+		ConsistentHashRouter smallerRouter = new ConsistentHashRouter( context, smaller );
+		int moved = 0;
+		for( int key = 0; key < 10000; key++ ){
+			int owner = ids[ router.getOwner( key ) ];
+			if( owner == ids[ 1 ] )
+				moved++;
+			else
+				assertEquals( owner, smaller[ smallerRouter.getOwner( key ) ] );
+		}
+		assertEquals( owned[ 1 ], moved );
+		context.killAll();
+	}
+
+}
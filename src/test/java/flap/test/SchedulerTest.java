@@ -0,0 +1,164 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletionStage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.kernel.VirtualThreadScheduler;
+import flap.kernel.WorkStealingScheduler;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the work-stealing scheduler.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class SchedulerTest {
+
+	private Context context = null;
+	
+	private CountingAgent agent = null;
+	
+	private IAgentProxy proxy = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context = new Context( "TEST", new WorkStealingScheduler( 4 ) );
+		int id = context.createAgent( "countingAgent", "flap.test.CountingAgent" );
+		proxy = context.getAgentProxy( id );
+		agent = (CountingAgent) ((AgentProxy) proxy).getMyOwningAgent();
+	}
+	
+	@Test
+	public void testConcurrentSenders() throws Exception {
+		final int senders = 8;
+		final int messagesPerSender = 10000;
+		
+		Thread threads[] = new Thread[ senders ];
+		for( int i = 0; i < senders; i++ ){
+			threads[ i ] = new Thread(){
+				public void run(){
+					for( int j = 0; j < messagesPerSender; j++ )
+						proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, j ) );
+				}
+			};
+			threads[ i ].start();
+		}
+		
+		for( Thread t : threads )
+			t.join();
+		
+		if( ! agent.waitForMessages( senders * messagesPerSender, 10000 ) )
+			fail( "Not all the messages have been delivered: " + agent.getHandledMessages() );
+		
+		assertEquals( senders * messagesPerSender, agent.getHandledMessages() );
+		assertFalse( "The agent has been run by two threads at the same time", agent.isConcurrentAccess() );
+	}
+
+	@Test
+	public void testThreadPerAgent() throws Exception {
+		VirtualThreadScheduler scheduler = new VirtualThreadScheduler();
+		Context threadContext = new Context( "THREAD-TEST", scheduler );
+		int id = threadContext.createAgent( "countingAgent", "flap.test.CountingAgent" );
+		IAgentProxy threadProxy = threadContext.getAgentProxy( id );
+		CountingAgent threadAgent = (CountingAgent) ((AgentProxy) threadProxy).getMyOwningAgent();
+		assertEquals( 1, scheduler.getThreadCount() );
+		
+		for( int i = 0; i < 1000; i++ )
+			threadProxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		
+		assertTrue( threadAgent.waitForMessages( 1000, 10000 ) );
+		assertEquals( 1000, threadAgent.getHandledMessages() );
+		
+		// killing the agent releases its thread
+		threadContext.killAgent( id );
+		assertEquals( 0, scheduler.getThreadCount() );
+	}
+
+	@Test
+	public void testAsynchronousSend() throws Exception {
+		CompletionStage<Boolean> accepted = proxy.sendMessage( new Message( MessagePriority.PRIORITY_NORMAL, "async" ) );
+		assertTrue( accepted.toCompletableFuture().isDone() );
+		assertTrue( accepted.toCompletableFuture().get() );
+		assertTrue( agent.waitForMessages( 1, 10000 ) );
+	}
+
+	@Test
+	public void testBatchDelivery() throws Exception {
+		Context batchContext = new Context( "BATCH-TEST", new WorkStealingScheduler( 2 ) );
+		batchContext.setThroughput( 10 );
+		int id = batchContext.createAgent( "batchingAgent", "flap.test.BatchingAgent" );
+		IAgentProxy batchProxy = batchContext.getAgentProxy( id );
+		BatchingAgent batchAgent = (BatchingAgent) ((AgentProxy) batchProxy).getMyOwningAgent();
+		
+		// the agent is still in its run method, so the messages pile up
+		for( int i = 0; i < 1000; i++ )
+			batchProxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) );
+		
+		batchAgent.release();
+		assertTrue( batchAgent.waitForMessages( 1000, 10000 ) );
+		assertEquals( 1000, batchAgent.getHandledMessages() );
+		assertFalse( batchAgent.isOutOfOrder() );
+		assertEquals( 10, batchAgent.getMaxBatchSize() );
+		assertTrue( batchAgent.getHandledBatches() <= 101 );
+		batchContext.getScheduler().shutdown();
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.kernel.ShardedScheduler;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the thread-per-core sharded scheduler.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class ShardedSchedulerTest {
+
+	private ShardedScheduler scheduler = null;
+	
+	private Context context = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new ShardedScheduler( 4 );
+		context = new Context( "SHARDED-TEST", scheduler );
+		context.setLockFreeMailboxes( true );
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		context.killAll();
+		scheduler.shutdown();
+	}
+	
+	@Test
+	public void testRelayAcrossShards() throws Exception {
+		int ids[] = context.createAgents( "flap.test.RelayAgent", 8, "relay" );
+		RelayAgent agents[] = new RelayAgent[ ids.length ];
+		boolean shardsUsed[] = new boolean[ scheduler.getShardCount() ];
+		for( int i = 0; i < ids.length; i++ ){
+			AgentProxy proxy = (AgentProxy) context.getAgentProxy( ids[ i ] );
+			agents[ i ] = (RelayAgent) proxy.getMyOwningAgent();
+			shardsUsed[ scheduler.getShard( proxy.getMessageQueue() ) ] = true;
+		}
+		
+		// the agents are spread over all the shards
+		for( boolean used : shardsUsed )
+			assertTrue( used );
+		
+		// a chain of agents, each message crosses most of the shards
+		for( int i = 0; i < ids.length; i++ )
+			agents[ i ].setNext( context.getAgentProxy( ids[ ( i + 1 ) % ids.length ] ) );
+		
+		final int hops = 80000;
+		assertTrue( context.getAgentProxy( ids[ 0 ] ).handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, hops - 1 ) ) );
+		for( RelayAgent agent : agents )
+			assertTrue( agent.waitForMessages( hops / ids.length, 10000 ) );
+		
+		// each agent has always run on the thread of its shard
+		for( RelayAgent agent : agents ){
+			assertEquals( hops / ids.length, agent.getHandledMessages() );
+			assertFalse( agent.isThreadChanged() );
+		}
+	}
+	
+	@Test
+	public void testExternalSenders() throws Exception {
+		int ids[] = context.createAgents( "flap.test.CountingAgent", 16, "counting" );
+		final AgentProxy proxies[] = new AgentProxy[ ids.length ];
+		for( int i = 0; i < ids.length; i++ )
+			proxies[ i ] = (AgentProxy) context.getAgentProxy( ids[ i ] );
+		
+		final int senders = 4;
+		final int messagesPerAgent = 2000;
+		Thread threads[] = new Thread[ senders ];
+		for( int i = 0; i < senders; i++ ){
+			threads[ i ] = new Thread(){
+				public void run(){
+					for( int j = 0; j < messagesPerAgent; j++ )
+						for( AgentProxy proxy : proxies )
+							proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, j ) );
+				}
+			};
+			threads[ i ].start();
+		}
+		
+		for( Thread t : threads )
+			t.join();
+		
+		for( AgentProxy proxy : proxies ){
+			CountingAgent agent = (CountingAgent) proxy.getMyOwningAgent();
+			assertTrue( agent.waitForMessages( senders * messagesPerAgent, 10000 ) );
+			assertFalse( agent.isConcurrentAccess() );
+		}
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+import flap.net.SharedMemoryTransport;
+
+/**
+ * A test case for the shared memory transport between contexts. Both the
+ * sides of the rings are mapped by this virtual machine.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class SharedMemoryTest {
+
+	private Path ringFile = null;
+	
+	private Context local = null;
+	
+	private Context remote = null;
+	
+	private SharedMemoryTransport localTransport = null;
+	
+	private SharedMemoryTransport remoteTransport = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		ringFile = Files.createTempFile( "flap-shared-memory-test", ".ring" );
+		local  = new Context( "LOCAL-TEST" );
+		remote = new Context( "REMOTE-TEST" );
+		localTransport  = new SharedMemoryTransport( local );
+		remoteTransport = new SharedMemoryTransport( remote );
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		localTransport.close();
+		remoteTransport.close();
+		local.killAll();
+		remote.killAll();
+		Files.deleteIfExists( ringFile );
+	}
+	
+	@Test
+	public void testRing() throws Exception {
+		// a small ring, so that it wraps around and fills up many times
+		remoteTransport.listen( ringFile, 4096 );
+		int id = remote.createAgent( "sequence", "flap.test.SequenceAgent" );
+		SequenceAgent agent = (SequenceAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		IAgentProxy proxy = localTransport.getRemoteProxy( ringFile, id );
+		
+		final int messages = 100000;
+		int refused = 0;
+		for( int i = 0; i < messages; i++ ){
+			Message message = new Message( MessagePriority.PRIORITY_NORMAL, i );
+			while( ! proxy.handleMessage( message ) ){
+				refused++;
+				Thread.yield();
+			}
+		}
+		
+		assertTrue( agent.waitForMessages( messages, 10000 ) );
+		assertFalse( agent.isOutOfOrder() );
+		assertEquals( messages, remoteTransport.getReceivedMessages() );
+		assertTrue( refused > 0 );
+	}
+	
+	@Test
+	public void testTooBigMessage() throws Exception {
+		remoteTransport.listen( ringFile, 4096 );
+		int id = remote.createAgent( "counting", "flap.test.CountingAgent" );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		IAgentProxy proxy = localTransport.getRemoteProxy( ringFile, id );
+		
+		// a message bigger than the ring is always refused
+		assertFalse( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, new byte[ 8192 ] ) ) );
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, new byte[ 1024 ] ) ) );
+		assertTrue( agent.waitForMessages( 1, 10000 ) );
+	}
+	
+	@Test
+	public void testUndecodableMessage() throws Exception {
+		remoteTransport.listen( ringFile, 4096 );
+		int id = remote.createAgent( "counting", "flap.test.CountingAgent" );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		IAgentProxy proxy = localTransport.getRemoteProxy( ringFile, id );
+		
+		// the first frame is skipped, the following ones are still delivered
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, new UndecodableContent() ) ) );
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, "valid" ) ) );
+		assertTrue( agent.waitForMessages( 1, 10000 ) );
+		assertEquals( 1, remoteTransport.getReceivedMessages() );
+	}
+	
+	@Test( expected = IOException.class )
+	public void testSecondConsumer() throws Exception {
+		remoteTransport.listen( ringFile );
+		localTransport.listen( ringFile );
+	}
+	
+	@Test( expected = IOException.class )
+	public void testNotARing() throws Exception {
+		Files.write( ringFile, new byte[ 1024 ] );
+		localTransport.getRemoteProxy( ringFile, 1 );
+	}
+	
+	/**
+	 * A content that can be encoded but not decoded.
+	 */
+	private static final class UndecodableContent implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private void readObject( ObjectInputStream input ) throws IOException {
+			throw new InvalidObjectException( "Not decodable" );
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessagePriority;
+
+/**
+ * A test case for the publish and subscribe of topics.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class TopicTest {
+
+	private Context context = null;
+	
+	private int exact, singleLevel, multiLevel, other;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		context = new Context( "TOPIC-TEST" );
+		exact       = context.createAgent( "exact", "flap.test.CountingAgent" );
+		singleLevel = context.createAgent( "singleLevel", "flap.test.CountingAgent" );
+		multiLevel  = context.createAgent( "multiLevel", "flap.test.CountingAgent" );
+		other       = context.createAgent( "other", "flap.test.CountingAgent" );
+		
+		assertTrue( context.subscribe( exact, "sensors.room1.temperature" ) );
+		assertTrue( context.subscribe( singleLevel, "sensors.*.temperature" ) );
+		assertTrue( context.subscribe( multiLevel, "sensors.#" ) );
+		assertTrue( context.subscribe( other, "alarms.#" ) );
+		assertFalse( context.subscribe( exact, "sensors.room1.temperature" ) );
+		assertFalse( context.subscribe( -1, "sensors.#" ) );
+	}
+	
+	@Test
+	public void testWildcards() throws Exception {
+		assertEquals( 3, publish( "sensors.room1.temperature" ) );
+		assertEquals( 2, publish( "sensors.room2.temperature" ) );
+		assertEquals( 1, publish( "sensors.room2.humidity" ) );
+		assertEquals( 1, publish( "sensors" ) );
+		assertEquals( 0, publish( "lights.room1" ) );
+		
+		// publishing again uses the cache, and gives the same subscribers
+		assertEquals( 3, publish( "sensors.room1.temperature" ) );
+		
+		assertTrue( getAgent( exact ).waitForMessages( 2, 10000 ) );
+		assertTrue( getAgent( singleLevel ).waitForMessages( 3, 10000 ) );
+		assertTrue( getAgent( multiLevel ).waitForMessages( 5, 10000 ) );
+		assertEquals( 0, getAgent( other ).getHandledMessages() );
+	}
+	
+	@Test
+	public void testUnsubscribe() throws Exception {
+		assertEquals( 3, publish( "sensors.room1.temperature" ) );
+		
+		// the cached subscribers must be discarded
+		assertTrue( context.unsubscribe( singleLevel, "sensors.*.temperature" ) );
+		assertFalse( context.unsubscribe( singleLevel, "sensors.*.temperature" ) );
+		assertEquals( 2, publish( "sensors.room1.temperature" ) );
+		
+		// killed agents lose their subscriptions
+		context.killAgent( multiLevel );
+		assertEquals( 1, publish( "sensors.room1.temperature" ) );
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSubscription(){
+		context.subscribe( other, "sensors.#.temperature" );
+	}
+	
+	/**
+	 * Publishes a message on a topic.
+	 * @param topic the topic
+	 * @return the number of subscribers that have accepted the message
+	 */
+	private int publish( String topic ){
+		return context.publish( topic, new Message( MessagePriority.PRIORITY_NORMAL, topic ) );
+	}
+	
+	/**
+	 * Provides the agent with the specified id.
+	 * @param id the agent id
+	 * @return the agent
+	 */
+	private CountingAgent getAgent( int id ){
+		return (CountingAgent) ((AgentProxy) context.getAgentProxy( id )).getMyOwningAgent();
+	}
+
+}
@@ -0,0 +1,263 @@
+/**
+ * ##### FLAP - Ferrari Luca's Agent PlatformExample ####
+ * 
+ * FLAP is mini-mini-micro agent platform I developed in order to introduce
+ * students to agent and multi-agents contexts. The platform is designed to
+ * help students to learn what are the issues and the main solutions in the
+ * agent field. 
+ * The platform is intentionally kept simple, its aim is not to be a competitive
+ * product but a didactic framework on which students can experiments and debug
+ * simple agent and multi-agent applications.
+ * Source code represents also a good starting point for a complex project design and
+ * can be used as a base to organize other Java projects.
+ * 
+ * This project is released as Open Source, so you can freely use and redistribute.
+ * If you want to add features and/or improve the project source code and/or documentation,
+ * please contact the author.
+ * 
+ * If you are using this project in your school or academic course, or even by your own,
+ * please notify the author.
+ * 
+ *  Copyright (C) Luca Ferrari 2006-2013 - fluca1978 (at) gmail.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Luca Ferrari nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Luca Ferrari ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL Luca Ferrari BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package flap.test;
+
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import flap.agents.IAgentProxy;
+import flap.kernel.AgentProxy;
+import flap.kernel.Context;
+import flap.messaging.Message;
+import flap.messaging.MessageCodec;
+import flap.messaging.MessagePayload;
+import flap.messaging.MessagePriority;
+import flap.messaging.MessageType;
+import flap.net.SocketTransport;
+
+/**
+ * A test case for the socket transport between contexts, run over the loopback interface.
+ * @author Luca Ferrari 
+ * @version 1.0
+ */
+public class TransportTest {
+
+	private Context local = null;
+	
+	private Context remote = null;
+	
+	private SocketTransport localTransport = null;
+	
+	private SocketTransport remoteTransport = null;
+	
+	private InetSocketAddress remoteAddress = null;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		local  = new Context( "LOCAL-TEST" );
+		remote = new Context( "REMOTE-TEST" );
+		localTransport  = new SocketTransport( local );
+		remoteTransport = new SocketTransport( remote );
+		remoteAddress   = remoteTransport.listen( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		localTransport.close();
+		remoteTransport.close();
+		local.killAll();
+		remote.killAll();
+	}
+	
+	@Test
+	public void testCodec() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate( 4096 );
+		long longs[] = new long[]{ 1, 2, 3, 4, 5 };
+		Message messages[] = new Message[]{
+			new Message( MessagePriority.PRIORITY_HIGH_2, "A string è" ),
+			new Message( MessagePriority.PRIORITY_ADMIN, null, MessageType.TYPE_SHUTDOWN ),
+			new Message( MessagePriority.PRIORITY_NORMAL, 42 ),
+			new Message( MessagePriority.PRIORITY_NORMAL, new ArrayList<String>( Arrays.asList( "a", "b" ) ) ),
+			Message.builder().doubleValue( 3.5 ).build(),
+			Message.builder().intArray( new int[]{ 9, 8, 7 }, 0, 3 ).build(),
+			Message.builder().longArray( longs, 1, 3 ).build()
+		};
+		
+		for( int i = 0; i < messages.length; i++ )
+			assertTrue( MessageCodec.encode( i, messages[ i ], buffer ) );
+		buffer.flip();
+		
+		for( int i = 0; i < messages.length; i++ ){
+			assertTrue( MessageCodec.getFrameLength( buffer ) > 0 );
+			assertEquals( i, MessageCodec.getAddressee( buffer ) );
+			Message decoded = MessageCodec.decode( buffer );
+			assertEquals( messages[ i ].getPriority(), decoded.getPriority() );
+			assertEquals( messages[ i ].getType(), decoded.getType() );
+			assertEquals( messages[ i ].getPayload(), decoded.getPayload() );
+			if( decoded.getPayload() == MessagePayload.PAYLOAD_OBJECT )
+				assertEquals( messages[ i ].getContent(), decoded.getContent() );
+			else if( decoded.getPayload() == MessagePayload.PAYLOAD_DOUBLE )
+				assertEquals( 3.5, decoded.getDoubleValue(), 0 );
+		}
+		
+		assertFalse( buffer.hasRemaining() );
+		
+		// only the slices travel
+		buffer.rewind();
+		for( int i = 0; i < 5; i++ )
+			MessageCodec.decode( buffer );
+		assertArrayEquals( new int[]{ 9, 8, 7 }, MessageCodec.decode( buffer ).getIntArray() );
+		assertArrayEquals( new long[]{ 2, 3, 4 }, MessageCodec.decode( buffer ).getLongArray() );
+		
+		// a frame that does not fit leaves the buffer as it was
+		ByteBuffer small = ByteBuffer.allocate( 16 );
+		assertFalse( MessageCodec.encode( 0, messages[ 0 ], small ) );
+		assertEquals( 0, small.position() );
+		
+		// so does a content that cannot be encoded
+		buffer.clear();
+		try{
+			MessageCodec.encode( 0, new Message( MessagePriority.PRIORITY_NORMAL, new Object() ), buffer );
+			fail( "The content cannot be encoded" );
+		}catch( NotSerializableException e ){
+			assertEquals( 0, buffer.position() );
+		}
+	}
+	
+	@Test( expected = IOException.class )
+	public void testCorruptedFrame() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate( 64 );
+		buffer.putInt( -5 ).flip();
+		MessageCodec.getFrameLength( buffer );
+	}
+	
+	@Test
+	public void testLoopback() throws Exception {
+		int id = remote.createAgent( "sequence", "flap.test.SequenceAgent" );
+		SequenceAgent agent = (SequenceAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		IAgentProxy proxy = localTransport.getRemoteProxy( remoteAddress, id );
+		
+		final int messages = 50000;
+		for( int i = 0; i < messages; i++ )
+			assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, i ) ) );
+		
+		// the messages arrive in order, many in each write
+		assertTrue( agent.waitForMessages( messages, 10000 ) );
+		assertFalse( agent.isOutOfOrder() );
+		assertEquals( messages, localTransport.getSentMessages() );
+		assertEquals( messages, remoteTransport.getReceivedMessages() );
+		assertTrue( localTransport.getWrites() < messages );
+	}
+	
+	@Test
+	public void testNotSerializableMessage() throws Exception {
+		int id = remote.createAgent( "counting", "flap.test.CountingAgent" );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		IAgentProxy proxy = localTransport.getRemoteProxy( remoteAddress, id );
+		
+		// the message that cannot be encoded is discarded, the connection stays usable
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, new Object() ) ) );
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, "valid" ) ) );
+		assertTrue( agent.waitForMessages( 1, 10000 ) );
+		assertEquals( 1, remoteTransport.getReceivedMessages() );
+	}
+	
+	@Test
+	public void testOutboundCapacity() throws Exception {
+		// a peer that never reads, so the messages pile up on the connection
+		ServerSocketChannel peer = ServerSocketChannel.open();
+		peer.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+		SocketTransport transport = new SocketTransport( local, 4 );
+		try{
+			IAgentProxy proxy = transport.getRemoteProxy( (InetSocketAddress) peer.getLocalAddress(), 1 );
+			byte content[] = new byte[ 1024 * 1024 ];
+			int accepted = 0;
+			while( accepted < 1000 && proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, content ) ) )
+				accepted++;
+			
+			assertTrue( accepted < 1000 );
+		}finally{
+			transport.close();
+			peer.close();
+		}
+	}
+	
+	@Test
+	public void testUnreachablePeer() throws Exception {
+		ServerSocketChannel peer = ServerSocketChannel.open();
+		peer.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+		InetSocketAddress address = (InetSocketAddress) peer.getLocalAddress();
+		peer.close();
+		
+		// the proxy is provided at once, and refuses the messages when the connection fails
+		IAgentProxy proxy = localTransport.getRemoteProxy( address, 1 );
+		long deadline = System.currentTimeMillis() + 10000;
+		while( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, "lost" ) ) ){
+			assertTrue( System.currentTimeMillis() < deadline );
+			Thread.sleep( 5 );
+		}
+		
+		// the other connections are not affected
+		int id = remote.createAgent( "counting", "flap.test.CountingAgent" );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		assertTrue( localTransport.getRemoteProxy( remoteAddress, id ).handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, "valid" ) ) );
+		assertTrue( agent.waitForMessages( 1, 10000 ) );
+	}
+	
+	@Test
+	public void testLargeMessage() throws Exception {
+		int id = remote.createAgent( "counting", "flap.test.CountingAgent" );
+		CountingAgent agent = (CountingAgent) ((AgentProxy) remote.getAgentProxy( id )).getMyOwningAgent();
+		IAgentProxy proxy = localTransport.getRemoteProxy( remoteAddress, id );
+		
+		// bigger than the buffers of the connections
+		long values[] = new long[ 100000 ];
+		assertTrue( proxy.handleMessage( Message.builder().longArray( values, 0, values.length ).build() ) );
+		assertTrue( proxy.handleMessage( new Message( MessagePriority.PRIORITY_NORMAL, "small" ) ) );
+		assertTrue( agent.waitForMessages( 2, 10000 ) );
+	}
+
+}